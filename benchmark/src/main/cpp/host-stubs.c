@@ -0,0 +1,19 @@
+// There are no bitmaps nor a GL context on the host, adjustBitmap returns right away
+#include <android/bitmap.h>
+#include <GLES2/gl2.h>
+
+int AndroidBitmap_getInfo(JNIEnv *env, jobject jbitmap, AndroidBitmapInfo *info) {
+    return ANDROID_BITMAP_RESULT_JNI_EXCEPTION;
+}
+
+int AndroidBitmap_lockPixels(JNIEnv *env, jobject jbitmap, void **addrPtr) {
+    return ANDROID_BITMAP_RESULT_JNI_EXCEPTION;
+}
+
+int AndroidBitmap_unlockPixels(JNIEnv *env, jobject jbitmap) {
+    return ANDROID_BITMAP_RESULT_JNI_EXCEPTION;
+}
+
+void glReadPixels(GLint x, GLint y, GLsizei width, GLsizei height, GLenum format, GLenum type,
+                  GLvoid *pixels) {
+}
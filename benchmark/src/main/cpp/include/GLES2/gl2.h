@@ -0,0 +1,16 @@
+// The part of the NDK's GLES2/gl2.h the library uses, to build it for the host
+#ifndef BENCHMARK_GLES2_GL2_H
+#define BENCHMARK_GLES2_GL2_H
+
+typedef unsigned int GLenum;
+typedef int GLint;
+typedef int GLsizei;
+typedef void GLvoid;
+
+#define GL_UNSIGNED_BYTE 0x1401
+#define GL_RGBA 0x1908
+
+void glReadPixels(GLint x, GLint y, GLsizei width, GLsizei height, GLenum format, GLenum type,
+                  GLvoid *pixels);
+
+#endif
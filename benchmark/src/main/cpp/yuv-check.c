@@ -0,0 +1,145 @@
+// Checks that the vectorised and striped YUV converters write exactly the pixels of
+// yuv_nv21_row_scalar. Built and run by ./gradlew :benchmark:yuvCheck, for another CPU with a
+// cross compiler and an emulator, see benchmark/build.gradle.
+#include "yuv-convert.h"
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#define MAX_WIDTH 130
+#define MAX_MISALIGNMENT 3
+#define GUARD 64
+#define GUARD_BYTE 0x5a
+
+static int failures;
+
+static void fill(uint8_t *data, size_t size, unsigned int seed) {
+    // Every byte value, the edges around 0, 128 and 255 included, then random ones
+    size_t i;
+    srand(seed);
+    for (i = 0; i < size; i++) {
+        data[i] = (uint8_t) (i < 256 ? (i * 97 + seed) & 0xff : rand() & 0xff);
+    }
+}
+
+static int compare(const char *name, const uint8_t *expected, const uint8_t *actual,
+                   int width, const char *detail) {
+    int i;
+    for (i = 0; i < width * 4; i++) {
+        if (expected[i] != actual[i]) {
+            fprintf(stderr, "%s: %s, pixel %d byte %d: %d instead of %d\n",
+                    name, detail, i / 4, i % 4, actual[i], expected[i]);
+            failures++;
+            return 0;
+        }
+    }
+    for (i = width * 4; i < width * 4 + GUARD; i++) {
+        if (actual[i] != GUARD_BYTE) {
+            fprintf(stderr, "%s: %s, wrote past the end at byte %d\n", name, detail, i);
+            failures++;
+            return 0;
+        }
+    }
+    return 1;
+}
+
+// Every width up to MAX_WIDTH covers the vector loops with any tail, the inputs and output
+// are offset to catch aligned accesses.
+static void check_row(const char *name, yuv_row_fn row) {
+    static uint8_t y[MAX_WIDTH + MAX_MISALIGNMENT + GUARD];
+    static uint8_t vu[MAX_WIDTH + 1 + MAX_MISALIGNMENT + GUARD];
+    static uint8_t expected[MAX_WIDTH * 4 + GUARD];
+    static uint8_t actual[MAX_WIDTH * 4 + MAX_MISALIGNMENT + GUARD];
+    char detail[64];
+    int width;
+    int order;
+    int offset;
+    int seed;
+    for (seed = 0; seed < 8; seed++) {
+        fill(y, sizeof(y), (unsigned int) seed);
+        fill(vu, sizeof(vu), (unsigned int) seed + 100);
+        for (width = 1; width <= MAX_WIDTH; width++) {
+            for (order = YUV_ORDER_BGRA; order <= YUV_ORDER_RGBA; order++) {
+                for (offset = 0; offset <= MAX_MISALIGNMENT; offset++) {
+                    memset(expected, GUARD_BYTE, sizeof(expected));
+                    memset(actual, GUARD_BYTE, sizeof(actual));
+                    yuv_nv21_row_scalar(y + offset, vu + offset, expected, width, order);
+                    row(y + offset, vu + offset, actual + offset, width, order);
+                    snprintf(detail, sizeof(detail), "width %d, order %d, offset %d",
+                             width, order, offset);
+                    if (!compare(name, expected, actual + offset, width, detail)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+    printf("%s: OK\n", name);
+}
+
+// Whole frames of odd sizes, large enough to be split into as many stripes as threads.
+static void check_frames(void) {
+    static const int sizes[][2] = {{1, 1}, {3, 5}, {129, 7}, {641, 481}, {1027, 513},
+                                   {1025, 1023}, {1920, 1081}};
+    char detail[64];
+    int failed = failures;
+    int s;
+    int threads;
+    int order;
+    int j;
+    for (s = 0; s < (int) (sizeof(sizes) / sizeof(sizes[0])); s++) {
+        int width = sizes[s][0];
+        int height = sizes[s][1];
+        size_t size = (size_t) width * height + (size_t) ((height + 1) / 2) * width + 1;
+        uint8_t *nv21 = malloc(size);
+        uint8_t *expected = malloc((size_t) width * height * 4 + GUARD);
+        uint8_t *actual = malloc((size_t) width * height * 4 + GUARD);
+        fill(nv21, size, (unsigned int) s);
+        for (order = YUV_ORDER_BGRA; order <= YUV_ORDER_RGBA; order++) {
+            for (j = 0; j < height; j++) {
+                yuv_nv21_row_scalar(nv21 + j * width, nv21 + width * height + (j / 2) * width,
+                                    expected + (size_t) j * width * 4, width, order);
+            }
+            for (threads = 1; threads <= 4; threads++) {
+                yuv_set_thread_count(threads);
+                memset(actual, GUARD_BYTE, (size_t) width * height * 4 + GUARD);
+                yuv_nv21_to_rgb(nv21, actual, width, height, order);
+                snprintf(detail, sizeof(detail), "%dx%d, order %d, %d threads",
+                         width, height, order, threads);
+                // The frame is compared as one long row, the guard follows its last pixel
+                if (!compare("frame", expected, actual, width * height, detail)) {
+                    break;
+                }
+            }
+        }
+        free(nv21);
+        free(expected);
+        free(actual);
+    }
+    yuv_set_thread_count(1);
+    if (failures == failed) {
+        printf("frames, 1 to 4 threads: OK\n");
+    }
+}
+
+int main(void) {
+#if defined(YUV_HAVE_NEON)
+    check_row("neon", yuv_nv21_row_neon);
+#endif
+#if defined(YUV_HAVE_X86)
+    check_row("sse2", yuv_nv21_row_sse2);
+    __builtin_cpu_init();
+    if (__builtin_cpu_supports("avx2")) {
+        check_row("avx2", yuv_nv21_row_avx2);
+    } else {
+        printf("avx2: skipped, not supported by the CPU\n");
+    }
+#endif
+    check_frames();
+    if (failures > 0) {
+        fprintf(stderr, "%d check(s) failed\n", failures);
+        return 1;
+    }
+    return 0;
+}
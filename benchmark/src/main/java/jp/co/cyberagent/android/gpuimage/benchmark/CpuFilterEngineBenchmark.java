@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.cyberagent.android.gpuimage.cpu.CpuBlendFilter;
+import jp.co.cyberagent.android.gpuimage.cpu.CpuBrightnessFilter;
+import jp.co.cyberagent.android.gpuimage.cpu.CpuContrastFilter;
+import jp.co.cyberagent.android.gpuimage.cpu.CpuFilter;
+import jp.co.cyberagent.android.gpuimage.cpu.CpuFilterEngine;
+import jp.co.cyberagent.android.gpuimage.cpu.CpuGammaFilter;
+import jp.co.cyberagent.android.gpuimage.cpu.CpuSaturationFilter;
+import jp.co.cyberagent.android.gpuimage.cpu.CpuSepiaToneFilter;
+
+/**
+ * Applies a chain of color adjustments and a blend to a 12 megapixel image on the CPU, with
+ * one thread and with a thread per processor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CpuFilterEngineBenchmark {
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+
+    @Param({"1", "0"})
+    public int threads;
+
+    private CpuFilterEngine engine;
+    private int[] source;
+    private int[] pixels;
+    private CpuFilter[] adjustments;
+    private CpuFilter[] blend;
+
+    @Setup
+    public void setUp() {
+        engine = threads > 0 ? new CpuFilterEngine(threads) : new CpuFilterEngine();
+        Random random = new Random(42);
+        source = new int[WIDTH * HEIGHT];
+        int[] overlay = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = random.nextInt();
+            overlay[i] = random.nextInt();
+        }
+        pixels = new int[source.length];
+        adjustments = new CpuFilter[]{
+                new CpuBrightnessFilter(0.1f),
+                new CpuContrastFilter(1.2f),
+                new CpuSaturationFilter(1.3f),
+                new CpuGammaFilter(0.9f),
+                new CpuSepiaToneFilter(0.5f)
+        };
+        CpuBlendFilter overlayBlend = new CpuBlendFilter(CpuBlendFilter.Mode.OVERLAY);
+        overlayBlend.setOverlay(overlay);
+        blend = new CpuFilter[]{overlayBlend};
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public int[] adjustments() {
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        engine.apply(pixels, WIDTH, HEIGHT, adjustments);
+        return pixels;
+    }
+
+    @Benchmark
+    public int[] blend() {
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        engine.apply(pixels, WIDTH, HEIGHT, blend);
+        return pixels;
+    }
+}
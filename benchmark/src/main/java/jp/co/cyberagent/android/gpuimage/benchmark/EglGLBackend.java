@@ -0,0 +1,650 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.egl.EGL10;
+import org.lwjgl.egl.EGL12;
+import org.lwjgl.egl.EGL14;
+import org.lwjgl.egl.EGL15;
+import org.lwjgl.opengles.GLES;
+import org.lwjgl.opengles.GLES20;
+import org.lwjgl.opengles.GLES30;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+
+/**
+ * A backend over the EGL and GL ES of the host, e.g. Mesa's llvmpipe on a Linux box
+ * without a GPU, so the filters draw for real off the device. Every thread calling
+ * {@link #makeCurrent()} gets its own context with a pbuffer of the given size, which is what
+ * framebuffer 0 draws into.
+ * <p>
+ * Mesa's surfaceless platform is used when the EGL offers it, so no display server is needed.
+ */
+final class EglGLBackend extends GLBackend {
+    private static final int EGL_PLATFORM_SURFACELESS_MESA = 0x31DD;
+    private static final int EGL_OPENGL_ES2_BIT = 0x0004;
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+    private final long display;
+    private final long config;
+    private final int width;
+    private final int height;
+    private final ThreadLocal<long[]> contexts = new ThreadLocal<>();
+
+    EglGLBackend(final int width, final int height) {
+        this.width = width;
+        this.height = height;
+        display = getDisplay();
+        if (display == EGL10.EGL_NO_DISPLAY) {
+            throw new IllegalStateException("no EGL display");
+        }
+        int[] major = new int[1];
+        int[] minor = new int[1];
+        if (!EGL10.eglInitialize(display, major, minor)) {
+            throw new IllegalStateException("eglInitialize failed: " + eglError());
+        }
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer configs = stack.mallocPointer(1);
+            int[] count = new int[1];
+            int[] attributes = new int[]{
+                    EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+                    EGL12.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+                    EGL10.EGL_RED_SIZE, 8,
+                    EGL10.EGL_GREEN_SIZE, 8,
+                    EGL10.EGL_BLUE_SIZE, 8,
+                    EGL10.EGL_ALPHA_SIZE, 8,
+                    EGL10.EGL_NONE
+            };
+            if (!EGL10.eglChooseConfig(display, attributes, configs, count) || count[0] == 0) {
+                throw new IllegalStateException("no EGL config for GL ES 2.0: " + eglError());
+            }
+            config = configs.get(0);
+        }
+        if (!EGL12.eglBindAPI(EGL14.EGL_OPENGL_ES_API)) {
+            throw new IllegalStateException("eglBindAPI failed: " + eglError());
+        }
+    }
+
+    private static long getDisplay() {
+        String extensions = EGL10.eglQueryString(EGL10.EGL_NO_DISPLAY, EGL10.EGL_EXTENSIONS);
+        if (extensions != null && extensions.contains("EGL_MESA_platform_surfaceless")) {
+            long display = EGL15.eglGetPlatformDisplay(EGL_PLATFORM_SURFACELESS_MESA,
+                    EGL14.EGL_DEFAULT_DISPLAY, (PointerBuffer) null);
+            if (display != EGL10.EGL_NO_DISPLAY) {
+                return display;
+            }
+        }
+        return EGL10.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+    }
+
+    private static String eglError() {
+        return "0x" + Integer.toHexString(EGL10.eglGetError());
+    }
+
+    /**
+     * Makes the context of the calling thread current, creating it on the first call.
+     */
+    void makeCurrent() {
+        long[] context = contexts.get();
+        if (context == null) {
+            // GL ES 3.0 if the EGL has it, so the filters take the same paths as on most devices
+            long eglContext = createContext(3);
+            if (eglContext == EGL10.EGL_NO_CONTEXT) {
+                eglContext = createContext(2);
+            }
+            if (eglContext == EGL10.EGL_NO_CONTEXT) {
+                throw new IllegalStateException("eglCreateContext failed: " + eglError());
+            }
+            int[] surfaceAttributes = new int[]{
+                    EGL10.EGL_WIDTH, width, EGL10.EGL_HEIGHT, height, EGL10.EGL_NONE
+            };
+            long surface = EGL10.eglCreatePbufferSurface(display, config, surfaceAttributes);
+            if (surface == EGL10.EGL_NO_SURFACE) {
+                EGL10.eglDestroyContext(display, eglContext);
+                throw new IllegalStateException("eglCreatePbufferSurface failed: " + eglError());
+            }
+            context = new long[]{eglContext, surface};
+            contexts.set(context);
+        }
+        if (!EGL10.eglMakeCurrent(display, context[1], context[1], context[0])) {
+            throw new IllegalStateException("eglMakeCurrent failed: " + eglError());
+        }
+        // LWJGL keeps the GL ES functions per thread
+        GLES.createCapabilities();
+    }
+
+    private long createContext(final int version) {
+        int[] attributes = new int[]{EGL_CONTEXT_CLIENT_VERSION, version, EGL10.EGL_NONE};
+        return EGL10.eglCreateContext(display, config, EGL10.EGL_NO_CONTEXT, attributes);
+    }
+
+    /**
+     * Releases the context of the calling thread.
+     */
+    void release() {
+        long[] context = contexts.get();
+        if (context != null) {
+            EGL10.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE,
+                    EGL10.EGL_NO_CONTEXT);
+            EGL10.eglDestroySurface(display, context[1]);
+            EGL10.eglDestroyContext(display, context[0]);
+            contexts.remove();
+        }
+    }
+
+    /**
+     * Gets the address of the remaining bytes of a buffer, copying the ones of a heap buffer
+     * into native memory the caller frees with {@link #free(Buffer, long)}.
+     */
+    private static long address(final Buffer buffer) {
+        if (buffer == null) {
+            return MemoryUtil.NULL;
+        }
+        if (buffer.isDirect()) {
+            return MemoryUtil.memAddress(buffer);
+        }
+        ByteBuffer copy = MemoryUtil.memAlloc(byteCount(buffer));
+        if (buffer instanceof ByteBuffer) {
+            copy.put(((ByteBuffer) buffer).duplicate());
+        } else if (buffer instanceof IntBuffer) {
+            copy.asIntBuffer().put(((IntBuffer) buffer).duplicate());
+        } else if (buffer instanceof FloatBuffer) {
+            copy.asFloatBuffer().put(((FloatBuffer) buffer).duplicate());
+        } else if (buffer instanceof ShortBuffer) {
+            copy.asShortBuffer().put(((ShortBuffer) buffer).duplicate());
+        } else {
+            MemoryUtil.memFree(copy);
+            throw new IllegalArgumentException("unsupported buffer " + buffer.getClass());
+        }
+        return MemoryUtil.memAddress0(copy);
+    }
+
+    private static void free(final Buffer buffer, final long address) {
+        if (buffer != null && !buffer.isDirect()) {
+            MemoryUtil.nmemFree(address);
+        }
+    }
+
+    private static int byteCount(final Buffer buffer) {
+        int elementSize = buffer instanceof ByteBuffer ? 1
+                : buffer instanceof ShortBuffer ? 2 : 4;
+        return buffer.remaining() * elementSize;
+    }
+
+    private static long ints(final MemoryStack stack, final int[] values, final int offset,
+                             final int length) {
+        IntBuffer buffer = stack.mallocInt(length);
+        buffer.put(values, offset, length).flip();
+        return MemoryUtil.memAddress(buffer);
+    }
+
+    private static long floats(final MemoryStack stack, final float[] values, final int offset,
+                               final int length) {
+        FloatBuffer buffer = stack.mallocFloat(length);
+        buffer.put(values, offset, length).flip();
+        return MemoryUtil.memAddress(buffer);
+    }
+
+    @Override
+    public Object getCurrentContext() {
+        return EGL14.eglGetCurrentContext();
+    }
+
+    @Override
+    public void glActiveTexture(final int texture) {
+        GLES20.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glAttachShader(final int program, final int shader) {
+        GLES20.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindBuffer(final int target, final int buffer) {
+        GLES20.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBindFramebuffer(final int target, final int framebuffer) {
+        GLES20.glBindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void glBindTexture(final int target, final int texture) {
+        GLES20.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glBufferData(final int target, final int size, final Buffer data,
+                             final int usage) {
+        long address = address(data);
+        GLES20.nglBufferData(target, size, address, usage);
+        free(data, address);
+    }
+
+    @Override
+    public void glClear(final int mask) {
+        GLES20.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(final float red, final float green, final float blue,
+                             final float alpha) {
+        GLES20.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glCompileShader(final int shader) {
+        GLES20.glCompileShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return GLES20.glCreateProgram();
+    }
+
+    @Override
+    public int glCreateShader(final int type) {
+        return GLES20.glCreateShader(type);
+    }
+
+    @Override
+    public void glDeleteBuffers(final int n, final int[] buffers, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES20.nglDeleteBuffers(n, ints(stack, buffers, offset, n));
+        }
+    }
+
+    @Override
+    public void glDeleteFramebuffers(final int n, final int[] framebuffers, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES20.nglDeleteFramebuffers(n, ints(stack, framebuffers, offset, n));
+        }
+    }
+
+    @Override
+    public void glDeleteProgram(final int program) {
+        GLES20.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glDeleteShader(final int shader) {
+        GLES20.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glDeleteTextures(final int n, final int[] textures, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES20.nglDeleteTextures(n, ints(stack, textures, offset, n));
+        }
+    }
+
+    @Override
+    public void glDisable(final int cap) {
+        GLES20.glDisable(cap);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(final int index) {
+        GLES20.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDrawArrays(final int mode, final int first, final int count) {
+        GLES20.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(final int index) {
+        GLES20.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glFlush() {
+        GLES20.glFlush();
+    }
+
+    @Override
+    public void glFramebufferTexture2D(final int target, final int attachment,
+                                       final int textarget, final int texture, final int level) {
+        GLES20.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+    }
+
+    @Override
+    public void glGenBuffers(final int n, final int[] buffers, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer names = stack.mallocInt(n);
+            GLES20.glGenBuffers(names);
+            names.get(buffers, offset, n);
+        }
+    }
+
+    @Override
+    public void glGenFramebuffers(final int n, final int[] framebuffers, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer names = stack.mallocInt(n);
+            GLES20.glGenFramebuffers(names);
+            names.get(framebuffers, offset, n);
+        }
+    }
+
+    @Override
+    public void glGenTextures(final int n, final int[] textures, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer names = stack.mallocInt(n);
+            GLES20.glGenTextures(names);
+            names.get(textures, offset, n);
+        }
+    }
+
+    @Override
+    public int glGetAttribLocation(final int program, final String name) {
+        return GLES20.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public void glGetIntegerv(final int pname, final int[] params, final int offset) {
+        params[offset] = GLES20.glGetInteger(pname);
+    }
+
+    @Override
+    public void glGetProgramiv(final int program, final int pname, final int[] params,
+                               final int offset) {
+        params[offset] = GLES20.glGetProgrami(program, pname);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(final int shader) {
+        return GLES20.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(final int shader, final int pname, final int[] params,
+                              final int offset) {
+        params[offset] = GLES20.glGetShaderi(shader, pname);
+    }
+
+    @Override
+    public String glGetString(final int name) {
+        return GLES20.glGetString(name);
+    }
+
+    @Override
+    public int glGetUniformLocation(final int program, final String name) {
+        return GLES20.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public boolean glIsBuffer(final int buffer) {
+        return GLES20.glIsBuffer(buffer);
+    }
+
+    @Override
+    public boolean glIsProgram(final int program) {
+        return GLES20.glIsProgram(program);
+    }
+
+    @Override
+    public boolean glIsTexture(final int texture) {
+        return GLES20.glIsTexture(texture);
+    }
+
+    @Override
+    public void glLinkProgram(final int program) {
+        GLES20.glLinkProgram(program);
+    }
+
+    @Override
+    public void glPixelStorei(final int pname, final int param) {
+        GLES20.glPixelStorei(pname, param);
+    }
+
+    @Override
+    public void glReadPixels(final int x, final int y, final int width, final int height,
+                             final int format, final int type, final Buffer pixels) {
+        if (!pixels.isDirect()) {
+            throw new IllegalArgumentException("pixels must be a direct buffer");
+        }
+        GLES20.nglReadPixels(x, y, width, height, format, type, MemoryUtil.memAddress(pixels));
+    }
+
+    @Override
+    public void glShaderSource(final int shader, final String string) {
+        GLES20.glShaderSource(shader, string);
+    }
+
+    @Override
+    public void glTexImage2D(final int target, final int level, final int internalformat,
+                             final int width, final int height, final int border, final int format,
+                             final int type, final Buffer pixels) {
+        long address = address(pixels);
+        GLES20.nglTexImage2D(target, level, internalformat, width, height, border, format, type,
+                address);
+        free(pixels, address);
+    }
+
+    @Override
+    public void glTexParameterf(final int target, final int pname, final float param) {
+        GLES20.glTexParameterf(target, pname, param);
+    }
+
+    @Override
+    public void glTexParameteri(final int target, final int pname, final int param) {
+        GLES20.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glTexSubImage2D(final int target, final int level, final int xoffset,
+                                final int yoffset, final int width, final int height,
+                                final int format, final int type, final Buffer pixels) {
+        long address = address(pixels);
+        GLES20.nglTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type,
+                address);
+        free(pixels, address);
+    }
+
+    @Override
+    public void glUniform1f(final int location, final float x) {
+        GLES20.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform1fv(final int location, final int count, final float[] v,
+                             final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES20.nglUniform1fv(location, count, floats(stack, v, offset, count));
+        }
+    }
+
+    @Override
+    public void glUniform1i(final int location, final int x) {
+        GLES20.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform2fv(final int location, final int count, final float[] v,
+                             final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES20.nglUniform2fv(location, count, floats(stack, v, offset, count * 2));
+        }
+    }
+
+    @Override
+    public void glUniform3fv(final int location, final int count, final float[] v,
+                             final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES20.nglUniform3fv(location, count, floats(stack, v, offset, count * 3));
+        }
+    }
+
+    @Override
+    public void glUniform4fv(final int location, final int count, final float[] v,
+                             final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES20.nglUniform4fv(location, count, floats(stack, v, offset, count * 4));
+        }
+    }
+
+    @Override
+    public void glUniformMatrix3fv(final int location, final int count, final boolean transpose,
+                                   final float[] value, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES20.nglUniformMatrix3fv(location, count, transpose,
+                    floats(stack, value, offset, count * 9));
+        }
+    }
+
+    @Override
+    public void glUniformMatrix4fv(final int location, final int count, final boolean transpose,
+                                   final float[] value, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES20.nglUniformMatrix4fv(location, count, transpose,
+                    floats(stack, value, offset, count * 16));
+        }
+    }
+
+    @Override
+    public void glUseProgram(final int program) {
+        GLES20.glUseProgram(program);
+    }
+
+    @Override
+    public void glVertexAttribPointer(final int index, final int size, final int type,
+                                      final boolean normalized, final int stride,
+                                      final Buffer ptr) {
+        // Read at draw time, so the buffer must be native memory which outlives the call
+        if (!ptr.isDirect()) {
+            throw new IllegalArgumentException("ptr must be a direct buffer");
+        }
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride,
+                MemoryUtil.memAddress(ptr));
+    }
+
+    @Override
+    public void glVertexAttribPointer(final int index, final int size, final int type,
+                                      final boolean normalized, final int stride,
+                                      final int offset) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glViewport(final int x, final int y, final int width, final int height) {
+        GLES20.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void glBeginQuery(final int target, final int id) {
+        GLES30.glBeginQuery(target, id);
+    }
+
+    @Override
+    public void glBindVertexArray(final int array) {
+        GLES30.glBindVertexArray(array);
+    }
+
+    @Override
+    public int glClientWaitSync(final long sync, final int flags, final long timeout) {
+        return GLES30.glClientWaitSync(sync, flags, timeout);
+    }
+
+    @Override
+    public void glDeleteSync(final long sync) {
+        GLES30.glDeleteSync(sync);
+    }
+
+    @Override
+    public void glDeleteVertexArrays(final int n, final int[] arrays, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            GLES30.nglDeleteVertexArrays(n, ints(stack, arrays, offset, n));
+        }
+    }
+
+    @Override
+    public void glEndQuery(final int target) {
+        GLES30.glEndQuery(target);
+    }
+
+    @Override
+    public long glFenceSync(final int condition, final int flags) {
+        return GLES30.glFenceSync(condition, flags);
+    }
+
+    @Override
+    public void glGenQueries(final int n, final int[] ids, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer names = stack.mallocInt(n);
+            GLES30.glGenQueries(names);
+            names.get(ids, offset, n);
+        }
+    }
+
+    @Override
+    public void glGenVertexArrays(final int n, final int[] arrays, final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer names = stack.mallocInt(n);
+            GLES30.glGenVertexArrays(names);
+            names.get(arrays, offset, n);
+        }
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(final int id, final int pname, final int[] params,
+                                    final int offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer result = stack.mallocInt(1);
+            GLES30.glGetQueryObjectuiv(id, pname, result);
+            params[offset] = result.get(0);
+        }
+    }
+
+    @Override
+    public ByteBuffer glMapBufferRange(final int target, final int offset, final int length,
+                                       final int access) {
+        return GLES30.glMapBufferRange(target, offset, length, access);
+    }
+
+    @Override
+    public void glReadPixels(final int x, final int y, final int width, final int height,
+                             final int format, final int type, final int offset) {
+        GLES20.nglReadPixels(x, y, width, height, format, type, offset);
+    }
+
+    @Override
+    public void glTexImage3D(final int target, final int level, final int internalformat,
+                             final int width, final int height, final int depth, final int border,
+                             final int format, final int type, final Buffer pixels) {
+        long address = address(pixels);
+        GLES30.nglTexImage3D(target, level, internalformat, width, height, depth, border, format,
+                type, address);
+        free(pixels, address);
+    }
+
+    @Override
+    public boolean glUnmapBuffer(final int target) {
+        return GLES30.glUnmapBuffer(target);
+    }
+}
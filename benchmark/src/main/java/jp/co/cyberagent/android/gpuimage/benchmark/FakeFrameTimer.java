@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import java.util.Arrays;
+
+import jp.co.cyberagent.android.gpuimage.util.FrameTimer;
+
+/**
+ * FrameTimer without GL whose clock only moves when advanced. GPU timers either finish at once
+ * with a fixed duration or stay pending until {@link #finish(int, long)} is called.
+ */
+final class FakeFrameTimer implements FrameTimer {
+    private final long gpuNanos;
+    private long now;
+    private long[] results = new long[16];
+    private int timerCount;
+    private int releasedCount;
+
+    /**
+     * @param gpuNanos the GPU time every timer finishes with, or {@link #PENDING} to leave them
+     *                 pending
+     */
+    FakeFrameTimer(final long gpuNanos) {
+        this.gpuNanos = gpuNanos;
+    }
+
+    void advance(final long nanos) {
+        now += nanos;
+    }
+
+    /**
+     * Sets the result of a pending timer.
+     */
+    void finish(final int timer, final long nanos) {
+        results[timer] = nanos;
+    }
+
+    /**
+     * @return the number of timers begun so far, the next handle
+     */
+    int getTimerCount() {
+        return timerCount;
+    }
+
+    int getReleasedCount() {
+        return releasedCount;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public int beginGpuTimer() {
+        if (timerCount == results.length) {
+            results = Arrays.copyOf(results, timerCount * 2);
+        }
+        results[timerCount] = PENDING;
+        return timerCount++;
+    }
+
+    @Override
+    public void endGpuTimer(final int timer) {
+        if (gpuNanos != PENDING) {
+            results[timer] = gpuNanos;
+        }
+    }
+
+    @Override
+    public long getGpuNanos(final int timer) {
+        return results[timer];
+    }
+
+    @Override
+    public void releaseGpuTimer(final int timer) {
+        releasedCount++;
+    }
+}
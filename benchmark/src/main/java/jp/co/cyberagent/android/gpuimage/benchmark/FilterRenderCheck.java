@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import jp.co.cyberagent.android.gpuimage.GPUImageRenderer;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageBrightnessFilter;
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+import jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil;
+
+import static jp.co.cyberagent.android.gpuimage.benchmark.HostChecks.check;
+
+/**
+ * Draws a filter through the host's EGL and GL ES and compares the pixels read back, to check
+ * that the library runs on a backend other than android.opengl. Needs -PjmhGL=egl, without a
+ * driver there is nothing to read back.
+ */
+final class FilterRenderCheck {
+    private static final int SIZE = 16;
+    private static final float BRIGHTNESS = 0.25f;
+
+    private FilterRenderCheck() {
+    }
+
+    /**
+     * @return false if skipped as no driver is used
+     */
+    static boolean verify() {
+        HostGL.install();
+        if (!HostGL.isEgl()) {
+            return false;
+        }
+        GLBackend gl = GLBackend.current();
+        int[] colors = new int[SIZE * SIZE];
+        for (int i = 0; i < colors.length; i++) {
+            // Bytes R, G, B, A in memory, a native order int is little endian on the hosts
+            colors[i] = 0xff000000 | (i & 0xff) << 16 | (255 - i & 0xff) << 8 | i * 7 & 0xff;
+        }
+        int texture = OpenGlUtils.loadTexture(IntBuffer.wrap(colors), SIZE, SIZE,
+                OpenGlUtils.NO_TEXTURE);
+        GPUImageBrightnessFilter filter = new GPUImageBrightnessFilter(BRIGHTNESS);
+        filter.ifNeedInit();
+        filter.onOutputSizeChanged(SIZE, SIZE);
+        GLState.current().bindFramebuffer(0);
+        GLState.current().viewport(0, 0, SIZE, SIZE);
+        filter.onDraw(texture, createBuffer(GPUImageRenderer.CUBE),
+                createBuffer(TextureRotationUtil.TEXTURE_NO_ROTATION));
+        ByteBuffer pixels = ByteBuffer.allocateDirect(SIZE * SIZE * 4);
+        gl.glReadPixels(0, 0, SIZE, SIZE, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+        filter.destroy();
+        GLState.current().deleteTextures(1, new int[]{texture}, 0);
+        int offset = Math.round(BRIGHTNESS * 255);
+        for (int i = 0; i < colors.length; i++) {
+            // The texture coordinates flip the rows, like they turn bitmaps upright
+            int source = (SIZE - 1 - i / SIZE) * SIZE + i % SIZE;
+            for (int c = 0; c < 4; c++) {
+                int input = colors[source] >>> (8 * c) & 0xff;
+                int expected = c == 3 ? input : Math.min(255, input + offset);
+                int actual = pixels.get(i * 4 + c) & 0xff;
+                if (Math.abs(actual - expected) > 1) {
+                    check(false, "pixel " + i + " byte " + c + ": " + actual + " instead of "
+                            + expected + ", " + gl.glGetString(GLES20.GL_RENDERER));
+                }
+            }
+        }
+        return true;
+    }
+
+    private static FloatBuffer createBuffer(final float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.cyberagent.android.gpuimage.GPUImageRenderer;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageBrightnessFilter;
+import jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil;
+
+/**
+ * Sets a uniform of a filter, alone and followed by the draw which uploads it, to measure the
+ * CPU cost the library adds to every frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FilterUniformBenchmark {
+    private GPUImageBrightnessFilter filter;
+    private FloatBuffer cubeBuffer;
+    private FloatBuffer textureBuffer;
+    private float brightness;
+
+    @Setup
+    public void setUp() {
+        HostGL.install();
+        filter = new GPUImageBrightnessFilter();
+        filter.ifNeedInit();
+        filter.onOutputSizeChanged(1080, 1920);
+        cubeBuffer = createBuffer(GPUImageRenderer.CUBE);
+        textureBuffer = createBuffer(TextureRotationUtil.TEXTURE_NO_ROTATION);
+    }
+
+    @Benchmark
+    public GPUImageBrightnessFilter setUniform() {
+        filter.setBrightness(nextBrightness());
+        return filter;
+    }
+
+    @Benchmark
+    public GPUImageBrightnessFilter setUniformAndDraw() {
+        filter.setBrightness(nextBrightness());
+        filter.onDraw(1, cubeBuffer, textureBuffer);
+        return filter;
+    }
+
+    private float nextBrightness() {
+        // A new value every time, so no setter can skip it as unchanged
+        brightness = brightness > 0.5f ? -0.5f : brightness + 0.001f;
+        return brightness;
+    }
+
+    private static FloatBuffer createBuffer(final float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+}
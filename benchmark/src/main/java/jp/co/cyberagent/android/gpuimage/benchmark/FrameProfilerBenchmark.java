@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageBrightnessFilter;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageContrastFilter;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageSharpenFilter;
+import jp.co.cyberagent.android.gpuimage.util.FrameProfiler;
+import jp.co.cyberagent.android.gpuimage.util.FrameStats;
+import jp.co.cyberagent.android.gpuimage.util.FrameTimer;
+
+import static jp.co.cyberagent.android.gpuimage.benchmark.HostChecks.check;
+
+/**
+ * Measures the bookkeeping FrameProfiler adds to a frame of ten passes, driven by a fake
+ * timer so only the profiler itself is timed. The setup first checks what the profiler
+ * reports against known fake timings, see {@link #verify()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameProfilerBenchmark {
+    private static final int PASSES = 10;
+
+    private final GPUImageFilter[] filters = new GPUImageFilter[PASSES];
+    private FrameProfiler profiler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        verify();
+        for (int i = 0; i < PASSES; i++) {
+            filters[i] = i % 2 == 0 ? new GPUImageBrightnessFilter() : new GPUImageContrastFilter();
+        }
+        profiler = new FrameProfiler(new FakeFrameTimer(1000), 120);
+    }
+
+    @Benchmark
+    public FrameProfiler profileFrame() {
+        profiler.beginFrame();
+        profiler.beginDrain();
+        profiler.endDrain();
+        for (GPUImageFilter filter : filters) {
+            profiler.beginPass(filter);
+            profiler.endPass();
+        }
+        profiler.endFrame();
+        return profiler;
+    }
+
+    /**
+     * Checks the attribution of time to passes, the rolling percentiles and giving up on GPU
+     * times after four frames in flight.
+     *
+     * @throws AssertionError if the profiler reports something else
+     */
+    static void verify() {
+        verifyAttribution();
+        verifyPercentiles();
+        verifyPendingGpuTimes();
+    }
+
+    private static void verifyAttribution() {
+        FakeFrameTimer timer = new FakeFrameTimer(1000);
+        FrameProfiler profiler = new FrameProfiler(timer, 10);
+        List<FrameStats> published = listen(profiler);
+
+        profiler.beginFrame();
+        timer.advance(10);
+        profiler.beginDrain();
+        timer.advance(20);
+        profiler.beginUpload();
+        timer.advance(5);
+        profiler.endUpload();
+        profiler.endDrain();
+        profiler.beginPass(new GPUImageBrightnessFilter());
+        timer.advance(100);
+        // Nested passes, e.g. of a group drawn by a pass, count as part of the outer one
+        profiler.beginPass(new GPUImageContrastFilter());
+        timer.advance(50);
+        profiler.endPass();
+        profiler.endPass();
+        profiler.beginPass(new GPUImageSharpenFilter());
+        timer.advance(30);
+        profiler.endPass();
+        profiler.endFrame();
+
+        check(published.size() == 1, "a frame with finished GPU timers is published at once");
+        FrameStats stats = published.get(0);
+        check(stats.getFrameNumber() == 0, "frame number");
+        check(stats.getTotalNanos() == 215, "total time " + stats.getTotalNanos());
+        check(stats.getDrainNanos() == 25, "drain time " + stats.getDrainNanos());
+        check(stats.getUploadNanos() == 5, "upload time " + stats.getUploadNanos());
+        check(stats.getPassCount() == 2, "pass count " + stats.getPassCount());
+        check(stats.getPassName(0).equals("GPUImageBrightnessFilter"), stats.getPassName(0));
+        check(stats.getPassName(1).equals("GPUImageSharpenFilter"), stats.getPassName(1));
+        check(stats.getPassCpuNanos(0) == 150, "outer pass time " + stats.getPassCpuNanos(0));
+        check(stats.getPassCpuNanos(1) == 30, "second pass time " + stats.getPassCpuNanos(1));
+        check(stats.getPassGpuNanos(0) == 1000 && stats.getPassGpuNanos(1) == 1000, "GPU time");
+        check(stats.getGpuNanos() == 2000, "summed GPU time " + stats.getGpuNanos());
+        check(timer.getReleasedCount() == 2, "GPU timers are released");
+    }
+
+    private static void verifyPercentiles() {
+        FakeFrameTimer timer = new FakeFrameTimer(1000);
+        FrameProfiler profiler = new FrameProfiler(timer, 100);
+        GPUImageFilter filter = new GPUImageBrightnessFilter();
+        // Frames of 1 to 200 ns, the window only keeps the last 100
+        for (int i = 1; i <= 200; i++) {
+            profiler.beginFrame();
+            profiler.beginPass(filter);
+            timer.advance(i);
+            profiler.endPass();
+            profiler.endFrame();
+        }
+        checkPercentiles(profiler.getTotalPercentiles(), 150, 195, 199);
+        checkPercentiles(profiler.getPassCpuPercentiles("GPUImageBrightnessFilter"),
+                150, 195, 199);
+        checkPercentiles(profiler.getPassGpuPercentiles("GPUImageBrightnessFilter"),
+                1000, 1000, 1000);
+        check(profiler.getPassCpuPercentiles("GPUImageContrastFilter") == null,
+                "no percentiles of a filter which was not drawn");
+    }
+
+    private static void verifyPendingGpuTimes() {
+        FakeFrameTimer timer = new FakeFrameTimer(FrameTimer.PENDING);
+        FrameProfiler profiler = new FrameProfiler(timer, 10);
+        List<FrameStats> published = listen(profiler);
+        GPUImageFilter filter = new GPUImageBrightnessFilter();
+        for (int i = 0; i < 4; i++) {
+            drawFrame(profiler, timer, filter);
+        }
+        check(published.isEmpty(), "frames wait for their GPU times");
+
+        // The fifth frame in flight gives up on the first one
+        drawFrame(profiler, timer, filter);
+        check(published.size() == 1, "published after four frames in flight");
+        check(published.get(0).getFrameNumber() == 0, "the oldest frame is published first");
+        check(published.get(0).getPassGpuNanos(0) == FrameTimer.UNAVAILABLE,
+                "a GPU time still pending is unavailable");
+        check(published.get(0).getGpuNanos() == FrameTimer.UNAVAILABLE, "summed GPU time");
+        check(timer.getReleasedCount() == 1, "the timer of an abandoned frame is released");
+
+        // Finishing the second frame's timer publishes it with its time
+        timer.finish(1, 700);
+        drawFrame(profiler, timer, filter);
+        check(published.size() == 2, "a finished frame is published");
+        check(published.get(1).getFrameNumber() == 1, "frames are published in order");
+        check(published.get(1).getPassGpuNanos(0) == 700, "GPU time of a finished timer");
+    }
+
+    private static void drawFrame(final FrameProfiler profiler, final FakeFrameTimer timer,
+                                  final GPUImageFilter filter) {
+        profiler.beginFrame();
+        profiler.beginPass(filter);
+        timer.advance(10);
+        profiler.endPass();
+        profiler.endFrame();
+    }
+
+    private static List<FrameStats> listen(final FrameProfiler profiler) {
+        final List<FrameStats> published = new ArrayList<>();
+        profiler.setListener(new FrameProfiler.Listener() {
+            @Override
+            public void onFrameStats(final FrameStats stats) {
+                published.add(stats);
+            }
+        });
+        return published;
+    }
+
+    private static void checkPercentiles(final FrameProfiler.Percentiles percentiles,
+                                         final long p50, final long p95, final long p99) {
+        check(percentiles != null, "percentiles are collected");
+        check(percentiles.getP50() == p50 && percentiles.getP95() == p95
+                        && percentiles.getP99() == p99,
+                "percentiles " + percentiles.getP50() + "/" + percentiles.getP95() + "/"
+                        + percentiles.getP99() + ", expected " + p50 + "/" + p95 + "/" + p99);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+/**
+ * Checks the results of the code the benchmarks measure, on the host without a device:
+ * ./gradlew :benchmark:hostCheck. The benchmarks run the same checks in their setup.
+ */
+public final class HostChecks {
+
+    private HostChecks() {
+    }
+
+    public static void main(final String[] args) {
+        FrameProfilerBenchmark.verify();
+        System.out.println("FrameProfiler: OK");
+        YuvConverterBenchmark.verify();
+        System.out.println("YUV converters: OK");
+        if (FilterRenderCheck.verify()) {
+            System.out.println("Filter render through EGL: OK");
+        } else {
+            System.out.println("Filter render: skipped, needs -PjmhGL=egl");
+        }
+    }
+
+    /**
+     * @throws AssertionError with the message if the condition is false
+     */
+    static void check(final boolean condition, final String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
+
+/**
+ * Picks the GL backend of the benchmarks: without a driver by default, reporting GL ES 2.0 or,
+ * with -Dgpuimage.gl=es3, GL ES 3.0. Or the host's EGL and GL ES with -Dgpuimage.gl=egl, e.g.
+ * Mesa's llvmpipe, to include the driver's share.
+ */
+final class HostGL {
+    private static final int SURFACE_SIZE = 64;
+
+    private static GLBackend backend;
+
+    private HostGL() {
+    }
+
+    /**
+     * Installs the backend and makes a context current on the calling thread.
+     */
+    static synchronized void install() {
+        if (backend == null) {
+            String gl = System.getProperty("gpuimage.gl");
+            if ("egl".equals(gl)) {
+                backend = new EglGLBackend(SURFACE_SIZE, SURFACE_SIZE);
+            } else if ("es3".equals(gl)) {
+                backend = new NoOpGLBackend("OpenGL ES 3.0");
+            } else {
+                backend = new NoOpGLBackend("OpenGL ES 2.0");
+            }
+            GLBackend.set(backend);
+        }
+        if (backend instanceof EglGLBackend) {
+            ((EglGLBackend) backend).makeCurrent();
+        }
+        GLState.current().invalidate();
+    }
+
+    /**
+     * Whether the installed backend draws through the host's EGL rather than doing nothing.
+     */
+    static synchronized boolean isEgl() {
+        return backend instanceof EglGLBackend;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import jp.co.cyberagent.android.gpuimage.GPUImage;
+import jp.co.cyberagent.android.gpuimage.GPUImageRenderer;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.Rotation;
+
+/**
+ * Fits a camera frame into the output, which the renderer does whenever the frame size,
+ * rotation or output size changes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ImageScalingBenchmark {
+    private static final int FRAME_WIDTH = 1280;
+    private static final int FRAME_HEIGHT = 720;
+
+    @Param({"CENTER_CROP", "CENTER_INSIDE"})
+    public GPUImage.ScaleType scaleType;
+
+    private GPUImageRenderer renderer;
+
+    @Setup
+    public void setUp() {
+        HostGL.install();
+        renderer = new GPUImageRenderer(new GPUImageFilter());
+        renderer.setScaleType(scaleType);
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1080, 1920);
+        // The image size comes from the first frame drawn
+        renderer.onPreviewFrame(new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2],
+                FRAME_WIDTH, FRAME_HEIGHT);
+        renderer.prepare();
+    }
+
+    @Benchmark
+    public GPUImageRenderer adjustImageScaling() {
+        renderer.setRotation(Rotation.ROTATION_90, false, true);
+        return renderer;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.cyberagent.android.gpuimage.util.LookupTable;
+import jp.co.cyberagent.android.gpuimage.util.LookupTextureCache;
+
+/**
+ * Reads .cube files and switches between two lookup tables through the texture cache, which
+ * uploads each of them only once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupTableBenchmark {
+    @Param({"33", "65"})
+    public int size;
+
+    private byte[] cubeFile;
+    private LookupTable first;
+    private LookupTable second;
+
+    @Setup
+    public void setUp() throws IOException {
+        HostGL.install();
+        cubeFile = createCubeFile(size, 1.0f);
+        first = LookupTable.fromCube(new ByteArrayInputStream(cubeFile));
+        second = LookupTable.fromCube(new ByteArrayInputStream(createCubeFile(size, 0.5f)));
+    }
+
+    @Benchmark
+    public LookupTable readCubeFile() throws IOException {
+        return LookupTable.fromCube(new ByteArrayInputStream(cubeFile));
+    }
+
+    @Benchmark
+    public LookupTextureCache.Texture switchTables() {
+        LookupTextureCache.Texture texture = LookupTextureCache.acquire(first, false);
+        LookupTextureCache.release(texture);
+        texture = LookupTextureCache.acquire(second, false);
+        LookupTextureCache.release(texture);
+        return texture;
+    }
+
+    private static byte[] createCubeFile(final int size, final float gain) {
+        StringBuilder cube = new StringBuilder();
+        cube.append("TITLE \"Benchmark\"\n")
+                .append("LUT_3D_SIZE ").append(size).append('\n');
+        float step = 1.0f / (size - 1);
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    cube.append(String.format(Locale.US, "%.6f %.6f %.6f\n",
+                            r * step * gain, g * step, b * step));
+                }
+            }
+        }
+        return cube.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
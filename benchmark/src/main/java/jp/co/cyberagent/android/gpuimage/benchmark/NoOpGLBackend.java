@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+
+/**
+ * A backend without a driver behind it, to measure the Java side of every GL call. It does
+ * nothing except handing out names and locations, reporting every shader and program as
+ * compiled and reporting the given GL_VERSION.
+ */
+final class NoOpGLBackend extends GLBackend {
+    private static final int GL_VERSION = 0x1F02;
+    private static final int GL_MAX_TEXTURE_SIZE = 0x0D33;
+    private static final int GL_MAX_TEXTURE_IMAGE_UNITS = 0x8872;
+    private static final int GL_QUERY_RESULT_AVAILABLE = 0x8867;
+    private static final int GL_ALREADY_SIGNALED = 0x911A;
+    private static final Object CONTEXT = new Object();
+
+    private final String version;
+    private int nextName = 1;
+    private final Map<String, Integer> locations = new HashMap<>();
+    private ByteBuffer mappedBuffer;
+
+    /**
+     * @param version the GL_VERSION to report, which picks the GL ES 2.0 or 3.0 paths
+     */
+    NoOpGLBackend(final String version) {
+        this.version = version;
+    }
+
+    private synchronized int nextName() {
+        return nextName++;
+    }
+
+    private synchronized void genNames(final int n, final int[] names, final int offset) {
+        for (int i = 0; i < n; i++) {
+            names[offset + i] = nextName++;
+        }
+    }
+
+    private synchronized int location(final String name) {
+        Integer location = locations.get(name);
+        if (location == null) {
+            location = locations.size();
+            locations.put(name, location);
+        }
+        return location;
+    }
+
+    private static int integer(final int pname) {
+        switch (pname) {
+            case GL_MAX_TEXTURE_SIZE:
+                return 4096;
+            case GL_MAX_TEXTURE_IMAGE_UNITS:
+                return 16;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public Object getCurrentContext() {
+        return CONTEXT;
+    }
+
+    @Override
+    public void glActiveTexture(final int texture) {
+    }
+
+    @Override
+    public void glAttachShader(final int program, final int shader) {
+    }
+
+    @Override
+    public void glBindBuffer(final int target, final int buffer) {
+    }
+
+    @Override
+    public void glBindFramebuffer(final int target, final int framebuffer) {
+    }
+
+    @Override
+    public void glBindTexture(final int target, final int texture) {
+    }
+
+    @Override
+    public void glBufferData(final int target, final int size, final Buffer data, final int usage) {
+    }
+
+    @Override
+    public void glClear(final int mask) {
+    }
+
+    @Override
+    public void glClearColor(final float red, final float green, final float blue,
+                             final float alpha) {
+    }
+
+    @Override
+    public void glCompileShader(final int shader) {
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return nextName();
+    }
+
+    @Override
+    public int glCreateShader(final int type) {
+        return nextName();
+    }
+
+    @Override
+    public void glDeleteBuffers(final int n, final int[] buffers, final int offset) {
+    }
+
+    @Override
+    public void glDeleteFramebuffers(final int n, final int[] framebuffers, final int offset) {
+    }
+
+    @Override
+    public void glDeleteProgram(final int program) {
+    }
+
+    @Override
+    public void glDeleteShader(final int shader) {
+    }
+
+    @Override
+    public void glDeleteTextures(final int n, final int[] textures, final int offset) {
+    }
+
+    @Override
+    public void glDisable(final int cap) {
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(final int index) {
+    }
+
+    @Override
+    public void glDrawArrays(final int mode, final int first, final int count) {
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(final int index) {
+    }
+
+    @Override
+    public void glFlush() {
+    }
+
+    @Override
+    public void glFramebufferTexture2D(final int target, final int attachment, final int textarget,
+                                       final int texture, final int level) {
+    }
+
+    @Override
+    public void glGenBuffers(final int n, final int[] buffers, final int offset) {
+        genNames(n, buffers, offset);
+    }
+
+    @Override
+    public void glGenFramebuffers(final int n, final int[] framebuffers, final int offset) {
+        genNames(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glGenTextures(final int n, final int[] textures, final int offset) {
+        genNames(n, textures, offset);
+    }
+
+    @Override
+    public int glGetAttribLocation(final int program, final String name) {
+        return location(name);
+    }
+
+    @Override
+    public void glGetIntegerv(final int pname, final int[] params, final int offset) {
+        params[offset] = integer(pname);
+    }
+
+    @Override
+    public void glGetProgramiv(final int program, final int pname, final int[] params,
+                               final int offset) {
+        params[offset] = 1;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(final int shader) {
+        return "";
+    }
+
+    @Override
+    public void glGetShaderiv(final int shader, final int pname, final int[] params,
+                              final int offset) {
+        params[offset] = 1;
+    }
+
+    @Override
+    public String glGetString(final int name) {
+        return name == GL_VERSION ? version : "";
+    }
+
+    @Override
+    public int glGetUniformLocation(final int program, final String name) {
+        return location(name);
+    }
+
+    @Override
+    public boolean glIsBuffer(final int buffer) {
+        return true;
+    }
+
+    @Override
+    public boolean glIsProgram(final int program) {
+        return true;
+    }
+
+    @Override
+    public boolean glIsTexture(final int texture) {
+        return true;
+    }
+
+    @Override
+    public void glLinkProgram(final int program) {
+    }
+
+    @Override
+    public void glPixelStorei(final int pname, final int param) {
+    }
+
+    @Override
+    public void glReadPixels(final int x, final int y, final int width, final int height,
+                             final int format, final int type, final Buffer pixels) {
+    }
+
+    @Override
+    public void glShaderSource(final int shader, final String string) {
+    }
+
+    @Override
+    public void glTexImage2D(final int target, final int level, final int internalformat,
+                             final int width, final int height, final int border, final int format,
+                             final int type, final Buffer pixels) {
+    }
+
+    @Override
+    public void glTexParameterf(final int target, final int pname, final float param) {
+    }
+
+    @Override
+    public void glTexParameteri(final int target, final int pname, final int param) {
+    }
+
+    @Override
+    public void glTexSubImage2D(final int target, final int level, final int xoffset,
+                                final int yoffset, final int width, final int height,
+                                final int format, final int type, final Buffer pixels) {
+    }
+
+    @Override
+    public void glUniform1f(final int location, final float x) {
+    }
+
+    @Override
+    public void glUniform1fv(final int location, final int count, final float[] v,
+                             final int offset) {
+    }
+
+    @Override
+    public void glUniform1i(final int location, final int x) {
+    }
+
+    @Override
+    public void glUniform2fv(final int location, final int count, final float[] v,
+                             final int offset) {
+    }
+
+    @Override
+    public void glUniform3fv(final int location, final int count, final float[] v,
+                             final int offset) {
+    }
+
+    @Override
+    public void glUniform4fv(final int location, final int count, final float[] v,
+                             final int offset) {
+    }
+
+    @Override
+    public void glUniformMatrix3fv(final int location, final int count, final boolean transpose,
+                                   final float[] value, final int offset) {
+    }
+
+    @Override
+    public void glUniformMatrix4fv(final int location, final int count, final boolean transpose,
+                                   final float[] value, final int offset) {
+    }
+
+    @Override
+    public void glUseProgram(final int program) {
+    }
+
+    @Override
+    public void glVertexAttribPointer(final int index, final int size, final int type,
+                                      final boolean normalized, final int stride,
+                                      final Buffer ptr) {
+    }
+
+    @Override
+    public void glVertexAttribPointer(final int index, final int size, final int type,
+                                      final boolean normalized, final int stride,
+                                      final int offset) {
+    }
+
+    @Override
+    public void glViewport(final int x, final int y, final int width, final int height) {
+    }
+
+    @Override
+    public void glBeginQuery(final int target, final int id) {
+    }
+
+    @Override
+    public void glBindVertexArray(final int array) {
+    }
+
+    @Override
+    public int glClientWaitSync(final long sync, final int flags, final long timeout) {
+        return GL_ALREADY_SIGNALED;
+    }
+
+    @Override
+    public void glDeleteSync(final long sync) {
+    }
+
+    @Override
+    public void glDeleteVertexArrays(final int n, final int[] arrays, final int offset) {
+    }
+
+    @Override
+    public void glEndQuery(final int target) {
+    }
+
+    @Override
+    public long glFenceSync(final int condition, final int flags) {
+        return nextName();
+    }
+
+    @Override
+    public void glGenQueries(final int n, final int[] ids, final int offset) {
+        genNames(n, ids, offset);
+    }
+
+    @Override
+    public void glGenVertexArrays(final int n, final int[] arrays, final int offset) {
+        genNames(n, arrays, offset);
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(final int id, final int pname, final int[] params,
+                                    final int offset) {
+        // Every query is done right away and measured nothing
+        params[offset] = pname == GL_QUERY_RESULT_AVAILABLE ? 1 : 0;
+    }
+
+    @Override
+    public synchronized ByteBuffer glMapBufferRange(final int target, final int offset,
+                                                    final int length, final int access) {
+        if (mappedBuffer == null || mappedBuffer.capacity() < length) {
+            mappedBuffer = ByteBuffer.allocateDirect(length);
+        }
+        mappedBuffer.clear().limit(length);
+        return mappedBuffer;
+    }
+
+    @Override
+    public void glReadPixels(final int x, final int y, final int width, final int height,
+                             final int format, final int type, final int offset) {
+    }
+
+    @Override
+    public void glTexImage3D(final int target, final int level, final int internalformat,
+                             final int width, final int height, final int depth, final int border,
+                             final int format, final int type, final Buffer pixels) {
+    }
+
+    @Override
+    public boolean glUnmapBuffer(final int target) {
+        return true;
+    }
+}
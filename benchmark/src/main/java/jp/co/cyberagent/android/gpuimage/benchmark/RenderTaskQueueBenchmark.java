@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import jp.co.cyberagent.android.gpuimage.util.RenderTaskQueue;
+
+/**
+ * Posts tasks to the queue drained before every frame, from the draining thread and from UI
+ * threads racing the GL thread.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderTaskQueueBenchmark {
+    private static final int TASKS = 16;
+    private static final Object KEY = new Object();
+
+    private final RenderTaskQueue queue = new RenderTaskQueue();
+    private final Runnable task = new Runnable() {
+        @Override
+        public void run() {
+            Blackhole.consumeCPU(1);
+        }
+    };
+
+    @Benchmark
+    @Group("single")
+    @OperationsPerInvocation(TASKS)
+    public void postAndRun() {
+        for (int i = 0; i < TASKS; i++) {
+            queue.post(task);
+        }
+        queue.runAll();
+    }
+
+    @Benchmark
+    @Group("keyed")
+    @OperationsPerInvocation(TASKS)
+    public void postKeyedAndRun() {
+        // Every post replaces the last one, like a slider moved faster than the frame rate
+        for (int i = 0; i < TASKS; i++) {
+            queue.post(KEY, task);
+        }
+        queue.runAll();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        // Keyed, so the posts stay within the capacity when the consumer falls behind
+        final Object key = new Object();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void post(final Producer producer) {
+        queue.post(producer.key, task);
+    }
+
+    @Benchmark
+    @Group("contended")
+    public void runAll() {
+        queue.runAll();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import android.graphics.PointF;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageToneCurveFilter;
+
+/**
+ * Generates the splines of the tone curve filter and the texture made of them, and reads a
+ * Photoshop .acv curve file. The splines of recently used points are cached, dragging a point
+ * through more positions than the cache holds measures evaluating them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ToneCurveBenchmark {
+    private static final PointF[] POINTS = new PointF[]{
+            new PointF(0.0f, 0.0f),
+            new PointF(0.25f, 0.15f),
+            new PointF(0.5f, 0.5f),
+            new PointF(0.75f, 0.85f),
+            new PointF(1.0f, 1.0f)
+    };
+
+    private static final int DRAG_POSITIONS = 100;
+
+    private final PointF[] dragged = new PointF[]{
+            new PointF(0.0f, 0.0f),
+            new PointF(0.5f, 0.5f),
+            new PointF(1.0f, 1.0f)
+    };
+    private GPUImageToneCurveFilter filter;
+    private byte[] curveFile;
+    private int dragPosition;
+
+    @Setup
+    public void setUp() throws IOException {
+        HostGL.install();
+        filter = new GPUImageToneCurveFilter();
+        filter.ifNeedInit();
+        filter.prepare();
+        curveFile = createCurveFile();
+    }
+
+    @Benchmark
+    public GPUImageToneCurveFilter setControlPoints() {
+        filter.setRgbCompositeControlPoints(POINTS);
+        filter.setRedControlPoints(POINTS);
+        filter.setGreenControlPoints(POINTS);
+        filter.setBlueControlPoints(POINTS);
+        // Builds the texture from the four curves
+        filter.prepare();
+        return filter;
+    }
+
+    @Benchmark
+    public GPUImageToneCurveFilter dragControlPoint() {
+        dragPosition = (dragPosition + 1) % DRAG_POSITIONS;
+        dragged[1].y = 0.25f + 0.5f * dragPosition / DRAG_POSITIONS;
+        filter.setRedControlPoints(dragged);
+        filter.prepare();
+        return filter;
+    }
+
+    @Benchmark
+    public GPUImageToneCurveFilter readCurveFile() {
+        filter.setFromCurveFileInputStream(new ByteArrayInputStream(curveFile));
+        filter.prepare();
+        return filter;
+    }
+
+    private static byte[] createCurveFile() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        // Version, then the composite, red, green, blue and an unused fifth curve
+        output.writeShort(1);
+        output.writeShort(5);
+        for (int curve = 0; curve < 5; curve++) {
+            output.writeShort(POINTS.length);
+            for (PointF point : POINTS) {
+                output.writeShort(Math.round(point.y * 255));
+                output.writeShort(Math.round(point.x * 255));
+            }
+        }
+        output.close();
+        return bytes.toByteArray();
+    }
+}
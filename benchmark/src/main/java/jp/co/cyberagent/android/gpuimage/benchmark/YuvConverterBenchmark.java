@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.cyberagent.android.gpuimage.GPUImageNativeLibrary;
+
+import static jp.co.cyberagent.android.gpuimage.benchmark.HostChecks.check;
+
+/**
+ * Converts a camera frame with the Java port of the original loop and with the host build of
+ * the native converters. The setup first checks that the native converters write exactly the
+ * pixels of the Java port, see {@link #verify()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvConverterBenchmark {
+
+    @Param({"640x480", "1920x1080"})
+    public String size;
+
+    private int width;
+    private int height;
+    private byte[] nv21;
+    private int[] argb;
+
+    @State(Scope.Thread)
+    public static class Threads {
+        @Param({"1", "4"})
+        public int count;
+
+        @Setup
+        public void setUp() {
+            // Before setting the count, the check changes it
+            verify();
+            GPUImageNativeLibrary.setYUVThreadCount(count);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        nv21 = new byte[width * height * 3 / 2];
+        new Random(42).nextBytes(nv21);
+        argb = new int[width * height];
+    }
+
+    @Benchmark
+    public int[] javaReference() {
+        YuvReference.nv21ToArgb(nv21, width, height, argb);
+        return argb;
+    }
+
+    @Benchmark
+    public int[] nativeYUVtoRBGA(final Threads threads) {
+        GPUImageNativeLibrary.YUVtoRBGA(nv21, width, height, argb);
+        return argb;
+    }
+
+    @Benchmark
+    public int[] nativeYUVtoARBG(final Threads threads) {
+        GPUImageNativeLibrary.YUVtoARBG(nv21, width, height, argb);
+        return argb;
+    }
+
+    /**
+     * Checks the native converters against the Java port for every width up to 130, which
+     * covers the vector loops with any tail, and for frames split across 1 to 4 threads. The
+     * thread count is 1 afterwards.
+     *
+     * @throws AssertionError if a pixel differs
+     */
+    static void verify() {
+        Random random = new Random(42);
+        GPUImageNativeLibrary.setYUVThreadCount(1);
+        for (int width = 1; width <= 130; width++) {
+            for (int height = 1; height <= 3; height++) {
+                verifyFrame(random, width, height);
+            }
+        }
+        for (int threads = 1; threads <= 4; threads++) {
+            GPUImageNativeLibrary.setYUVThreadCount(threads);
+            verifyFrame(random, 1027, 513);
+            verifyFrame(random, 1920, 1081);
+        }
+        GPUImageNativeLibrary.setYUVThreadCount(1);
+    }
+
+    private static void verifyFrame(final Random random, final int width, final int height) {
+        // Odd sizes read the chroma of a last half row and pair
+        byte[] nv21 = new byte[width * height + (height + 1) / 2 * width + 1];
+        random.nextBytes(nv21);
+        int[] expected = new int[width * height];
+        int[] actual = new int[width * height];
+        YuvReference.nv21ToArgb(nv21, width, height, expected);
+
+        GPUImageNativeLibrary.YUVtoRBGA(nv21, width, height, actual);
+        checkPixels("YUVtoRBGA", width, height, expected, actual);
+
+        // RGBA bytes, read as little endian ints
+        for (int i = 0; i < expected.length; i++) {
+            int argb = expected[i];
+            expected[i] = (argb & 0xff00ff00) | ((argb >> 16) & 0xff) | ((argb & 0xff) << 16);
+        }
+        GPUImageNativeLibrary.YUVtoARBG(nv21, width, height, actual);
+        checkPixels("YUVtoARBG", width, height, expected, actual);
+    }
+
+    private static void checkPixels(final String name, final int width, final int height,
+                                    final int[] expected, final int[] actual) {
+        for (int i = 0; i < actual.length; i++) {
+            if (actual[i] != expected[i]) {
+                check(false, name + " " + width + "x" + height + " pixel " + i + ": "
+                        + Integer.toHexString(actual[i]) + " instead of "
+                        + Integer.toHexString(expected[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.benchmark;
+
+/**
+ * Java port of the loop GPUImageNativeLibrary.YUVtoRBGA was first written as, the baseline the
+ * native converters are measured against.
+ */
+final class YuvReference {
+
+    private YuvReference() {
+    }
+
+    static void nv21ToArgb(final byte[] yuv, final int width, final int height, final int[] out) {
+        int size = width * height;
+        int cb = 0;
+        int cr = 0;
+        for (int j = 0; j < height; j++) {
+            int pixel = j * width;
+            int row = j >> 1;
+            for (int i = 0; i < width; i++) {
+                int y = yuv[pixel];
+                if (y < 0) y += 255;
+                if ((i & 0x1) != 1) {
+                    int offset = size + row * width + (i >> 1) * 2;
+                    cb = yuv[offset];
+                    if (cb < 0) cb += 127; else cb -= 128;
+                    cr = yuv[offset + 1];
+                    if (cr < 0) cr += 127; else cr -= 128;
+                }
+
+                y = y + (y >> 3) + (y >> 5) + (y >> 7);
+                int r = y + (cr << 1) + (cr >> 6);
+                if (r < 0) r = 0; else if (r > 255) r = 255;
+                int g = y - cb + (cb >> 3) + (cb >> 4) - (cr >> 1) + (cr >> 3);
+                if (g < 0) g = 0; else if (g > 255) g = 255;
+                int b = y + cb + (cb >> 1) + (cb >> 4) + (cb >> 5);
+                if (b < 0) b = 0; else if (b > 255) b = 255;
+                out[pixel++] = 0xff000000 + (r << 16) + (g << 8) + b;
+            }
+        }
+    }
+}
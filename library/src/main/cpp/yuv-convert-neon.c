@@ -0,0 +1,63 @@
+#include "yuv-convert.h"
+
+#if defined(YUV_HAVE_NEON)
+
+#include <arm_neon.h>
+
+// Follows yuv_nv21_row_scalar step by step in 16 bit lanes, which hold every intermediate
+// value, and clamps by narrowing with unsigned saturation.
+
+static inline int16x8_t chroma(uint8x8_t c) {
+    // c - 128 - (c >= 128)
+    int8x8_t centered = vadd_s8(vreinterpret_s8_u8(veor_u8(c, vdup_n_u8(0x80))),
+                                vreinterpret_s8_u8(vcge_u8(c, vdup_n_u8(0x80))));
+    return vmovl_s8(centered);
+}
+
+static inline int16x8_t luma(uint8x8_t y) {
+    int16x8_t y16 = vreinterpretq_s16_u16(vmovl_u8(y));
+    return vaddq_s16(vaddq_s16(y16, vshrq_n_s16(y16, 3)),
+                     vaddq_s16(vshrq_n_s16(y16, 5), vshrq_n_s16(y16, 7)));
+}
+
+static inline uint8x16_t combine(int16x8_t yLo, int16x8_t yHi, int16x8_t c) {
+    // Every chroma pair covers two neighbouring pixels
+    int16x8x2_t pairs = vzipq_s16(c, c);
+    return vcombine_u8(vqmovun_s16(vaddq_s16(yLo, pairs.val[0])),
+                       vqmovun_s16(vaddq_s16(yHi, pairs.val[1])));
+}
+
+void yuv_nv21_row_neon(const uint8_t *yRow, const uint8_t *vuRow,
+                       uint8_t *outRow, int width, int order) {
+    int i;
+    for (i = 0; i + 16 <= width; i += 16) {
+        uint8x16_t y = vld1q_u8(yRow + i);
+        // y - (y >= 128)
+        y = vaddq_u8(y, vcgeq_u8(y, vdupq_n_u8(0x80)));
+        int16x8_t yLo = luma(vget_low_u8(y));
+        int16x8_t yHi = luma(vget_high_u8(y));
+
+        uint8x8x2_t vu = vld2_u8(vuRow + i);
+        int16x8_t cb = chroma(vu.val[0]);
+        int16x8_t cr = chroma(vu.val[1]);
+        int16x8_t rc = vaddq_s16(vshlq_n_s16(cr, 1), vshrq_n_s16(cr, 6));
+        int16x8_t gc = vsubq_s16(
+                vaddq_s16(vaddq_s16(vshrq_n_s16(cb, 3), vshrq_n_s16(cb, 4)),
+                          vshrq_n_s16(cr, 3)),
+                vaddq_s16(cb, vshrq_n_s16(cr, 1)));
+        int16x8_t bc = vaddq_s16(vaddq_s16(cb, vshrq_n_s16(cb, 1)),
+                                 vaddq_s16(vshrq_n_s16(cb, 4), vshrq_n_s16(cb, 5)));
+
+        uint8x16x4_t pixels;
+        uint8x16_t r = combine(yLo, yHi, rc);
+        uint8x16_t b = combine(yLo, yHi, bc);
+        pixels.val[0] = order == YUV_ORDER_BGRA ? b : r;
+        pixels.val[1] = combine(yLo, yHi, gc);
+        pixels.val[2] = order == YUV_ORDER_BGRA ? r : b;
+        pixels.val[3] = vdupq_n_u8(0xff);
+        vst4q_u8(outRow + i * 4, pixels);
+    }
+    yuv_nv21_pixels_scalar(yRow, vuRow, outRow, i, width, order);
+}
+
+#endif
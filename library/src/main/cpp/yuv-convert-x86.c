@@ -0,0 +1,143 @@
+#include "yuv-convert.h"
+
+#if defined(YUV_HAVE_X86)
+
+#include <immintrin.h>
+
+// Both converters follow yuv_nv21_row_scalar step by step in 16 bit lanes, which hold every
+// intermediate value, and clamp by packing with unsigned saturation.
+
+static inline void chroma_sse2(__m128i vu, __m128i *r, __m128i *g, __m128i *b) {
+    const __m128i zero = _mm_setzero_si128();
+    // c - 128 - (c >= 128), bytes from 128 on look negative when signed
+    __m128i c = _mm_add_epi8(_mm_xor_si128(vu, _mm_set1_epi8((char) 0x80)),
+                             _mm_cmplt_epi8(vu, zero));
+    __m128i cb = _mm_srai_epi16(_mm_slli_epi16(c, 8), 8);
+    __m128i cr = _mm_srai_epi16(c, 8);
+    *r = _mm_add_epi16(_mm_slli_epi16(cr, 1), _mm_srai_epi16(cr, 6));
+    *g = _mm_sub_epi16(_mm_add_epi16(_mm_add_epi16(_mm_srai_epi16(cb, 3), _mm_srai_epi16(cb, 4)),
+                                     _mm_srai_epi16(cr, 3)),
+                       _mm_add_epi16(cb, _mm_srai_epi16(cr, 1)));
+    *b = _mm_add_epi16(_mm_add_epi16(cb, _mm_srai_epi16(cb, 1)),
+                       _mm_add_epi16(_mm_srai_epi16(cb, 4), _mm_srai_epi16(cb, 5)));
+}
+
+static inline __m128i luma_sse2(__m128i y) {
+    return _mm_add_epi16(_mm_add_epi16(y, _mm_srli_epi16(y, 3)),
+                         _mm_add_epi16(_mm_srli_epi16(y, 5), _mm_srli_epi16(y, 7)));
+}
+
+static inline void store_sse2(uint8_t *out, __m128i c0, __m128i c1, __m128i c2) {
+    const __m128i alpha = _mm_set1_epi8((char) 0xff);
+    __m128i lo01 = _mm_unpacklo_epi8(c0, c1);
+    __m128i lo2a = _mm_unpacklo_epi8(c2, alpha);
+    __m128i hi01 = _mm_unpackhi_epi8(c0, c1);
+    __m128i hi2a = _mm_unpackhi_epi8(c2, alpha);
+    _mm_storeu_si128((__m128i *) out, _mm_unpacklo_epi16(lo01, lo2a));
+    _mm_storeu_si128((__m128i *) (out + 16), _mm_unpackhi_epi16(lo01, lo2a));
+    _mm_storeu_si128((__m128i *) (out + 32), _mm_unpacklo_epi16(hi01, hi2a));
+    _mm_storeu_si128((__m128i *) (out + 48), _mm_unpackhi_epi16(hi01, hi2a));
+}
+
+void yuv_nv21_row_sse2(const uint8_t *yRow, const uint8_t *vuRow,
+                       uint8_t *outRow, int width, int order) {
+    const __m128i zero = _mm_setzero_si128();
+    int i;
+    for (i = 0; i + 16 <= width; i += 16) {
+        __m128i y = _mm_loadu_si128((const __m128i *) (yRow + i));
+        // y - (y >= 128)
+        y = _mm_add_epi8(y, _mm_cmplt_epi8(y, zero));
+        __m128i yLo = luma_sse2(_mm_unpacklo_epi8(y, zero));
+        __m128i yHi = luma_sse2(_mm_unpackhi_epi8(y, zero));
+
+        __m128i rc, gc, bc;
+        chroma_sse2(_mm_loadu_si128((const __m128i *) (vuRow + i)), &rc, &gc, &bc);
+        // Every chroma pair covers two neighbouring pixels
+        __m128i r = _mm_packus_epi16(_mm_add_epi16(yLo, _mm_unpacklo_epi16(rc, rc)),
+                                     _mm_add_epi16(yHi, _mm_unpackhi_epi16(rc, rc)));
+        __m128i g = _mm_packus_epi16(_mm_add_epi16(yLo, _mm_unpacklo_epi16(gc, gc)),
+                                     _mm_add_epi16(yHi, _mm_unpackhi_epi16(gc, gc)));
+        __m128i b = _mm_packus_epi16(_mm_add_epi16(yLo, _mm_unpacklo_epi16(bc, bc)),
+                                     _mm_add_epi16(yHi, _mm_unpackhi_epi16(bc, bc)));
+        if (order == YUV_ORDER_BGRA) {
+            store_sse2(outRow + i * 4, b, g, r);
+        } else {
+            store_sse2(outRow + i * 4, r, g, b);
+        }
+    }
+    yuv_nv21_pixels_scalar(yRow, vuRow, outRow, i, width, order);
+}
+
+#define AVX2 __attribute__((target("avx2")))
+
+static inline AVX2 void chroma_avx2(__m256i vu, __m256i *r, __m256i *g, __m256i *b) {
+    const __m256i zero = _mm256_setzero_si256();
+    __m256i c = _mm256_add_epi8(_mm256_xor_si256(vu, _mm256_set1_epi8((char) 0x80)),
+                                _mm256_cmpgt_epi8(zero, vu));
+    __m256i cb = _mm256_srai_epi16(_mm256_slli_epi16(c, 8), 8);
+    __m256i cr = _mm256_srai_epi16(c, 8);
+    *r = _mm256_add_epi16(_mm256_slli_epi16(cr, 1), _mm256_srai_epi16(cr, 6));
+    *g = _mm256_sub_epi16(
+            _mm256_add_epi16(_mm256_add_epi16(_mm256_srai_epi16(cb, 3), _mm256_srai_epi16(cb, 4)),
+                             _mm256_srai_epi16(cr, 3)),
+            _mm256_add_epi16(cb, _mm256_srai_epi16(cr, 1)));
+    *b = _mm256_add_epi16(_mm256_add_epi16(cb, _mm256_srai_epi16(cb, 1)),
+                          _mm256_add_epi16(_mm256_srai_epi16(cb, 4), _mm256_srai_epi16(cb, 5)));
+}
+
+static inline AVX2 __m256i luma_avx2(__m256i y) {
+    return _mm256_add_epi16(_mm256_add_epi16(y, _mm256_srli_epi16(y, 3)),
+                            _mm256_add_epi16(_mm256_srli_epi16(y, 5), _mm256_srli_epi16(y, 7)));
+}
+
+static inline AVX2 void store_avx2(uint8_t *out, __m256i c0, __m256i c1, __m256i c2) {
+    const __m256i alpha = _mm256_set1_epi8((char) 0xff);
+    // Unpacking works within 128 bit lanes, so the low lane holds pixels 0-15 and the high
+    // lane pixels 16-31
+    __m256i lo01 = _mm256_unpacklo_epi8(c0, c1);
+    __m256i lo2a = _mm256_unpacklo_epi8(c2, alpha);
+    __m256i hi01 = _mm256_unpackhi_epi8(c0, c1);
+    __m256i hi2a = _mm256_unpackhi_epi8(c2, alpha);
+    __m256i p0 = _mm256_unpacklo_epi16(lo01, lo2a);
+    __m256i p1 = _mm256_unpackhi_epi16(lo01, lo2a);
+    __m256i p2 = _mm256_unpacklo_epi16(hi01, hi2a);
+    __m256i p3 = _mm256_unpackhi_epi16(hi01, hi2a);
+    _mm256_storeu_si256((__m256i *) out, _mm256_permute2x128_si256(p0, p1, 0x20));
+    _mm256_storeu_si256((__m256i *) (out + 32), _mm256_permute2x128_si256(p2, p3, 0x20));
+    _mm256_storeu_si256((__m256i *) (out + 64), _mm256_permute2x128_si256(p0, p1, 0x31));
+    _mm256_storeu_si256((__m256i *) (out + 96), _mm256_permute2x128_si256(p2, p3, 0x31));
+}
+
+AVX2 void yuv_nv21_row_avx2(const uint8_t *yRow, const uint8_t *vuRow,
+                            uint8_t *outRow, int width, int order) {
+    const __m256i zero = _mm256_setzero_si256();
+    int i;
+    for (i = 0; i + 32 <= width; i += 32) {
+        __m256i y = _mm256_loadu_si256((const __m256i *) (yRow + i));
+        y = _mm256_add_epi8(y, _mm256_cmpgt_epi8(zero, y));
+        __m256i yLo = luma_avx2(_mm256_unpacklo_epi8(y, zero));
+        __m256i yHi = luma_avx2(_mm256_unpackhi_epi8(y, zero));
+
+        // The chroma of pixels 0-15 is in the low lane, of pixels 16-31 in the high lane,
+        // just like the luma after unpacking
+        __m256i rc, gc, bc;
+        chroma_avx2(_mm256_loadu_si256((const __m256i *) (vuRow + i)), &rc, &gc, &bc);
+        __m256i r = _mm256_packus_epi16(
+                _mm256_add_epi16(yLo, _mm256_unpacklo_epi16(rc, rc)),
+                _mm256_add_epi16(yHi, _mm256_unpackhi_epi16(rc, rc)));
+        __m256i g = _mm256_packus_epi16(
+                _mm256_add_epi16(yLo, _mm256_unpacklo_epi16(gc, gc)),
+                _mm256_add_epi16(yHi, _mm256_unpackhi_epi16(gc, gc)));
+        __m256i b = _mm256_packus_epi16(
+                _mm256_add_epi16(yLo, _mm256_unpacklo_epi16(bc, bc)),
+                _mm256_add_epi16(yHi, _mm256_unpackhi_epi16(bc, bc)));
+        if (order == YUV_ORDER_BGRA) {
+            store_avx2(outRow + i * 4, b, g, r);
+        } else {
+            store_avx2(outRow + i * 4, r, g, b);
+        }
+    }
+    yuv_nv21_pixels_scalar(yRow, vuRow, outRow, i, width, order);
+}
+
+#endif
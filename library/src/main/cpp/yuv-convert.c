@@ -0,0 +1,261 @@
+#include "yuv-convert.h"
+
+#include <pthread.h>
+#include <string.h>
+
+#define MAX_THREADS 8
+#define MIN_PIXELS_PER_STRIPE (128 * 1024)
+
+static inline void convert_pixel(int y, int cb, int cr, uint8_t *pixel, int order) {
+    // The bytes used to be read as signed and fixed up with +255 and +127, which takes one off
+    // every value from 128 on; kept so the pixels stay the same
+    int Y = y - (y >> 7);
+    int Cb = cb - 128 - (cb >> 7);
+    int Cr = cr - 128 - (cr >> 7);
+
+    //ITU-R BT.601 conversion
+    //
+    //R = 1.164*(Y-16) + 2.018*(Cr-128);
+    //G = 1.164*(Y-16) - 0.813*(Cb-128) - 0.391*(Cr-128);
+    //B = 1.164*(Y-16) + 1.596*(Cb-128);
+    //
+    Y = Y + (Y >> 3) + (Y >> 5) + (Y >> 7);
+    int R = Y + Cr * 2 + (Cr >> 6);
+    if (R < 0) R = 0; else if (R > 255) R = 255;
+    int G = Y - Cb + (Cb >> 3) + (Cb >> 4) - (Cr >> 1) + (Cr >> 3);
+    if (G < 0) G = 0; else if (G > 255) G = 255;
+    int B = Y + Cb + (Cb >> 1) + (Cb >> 4) + (Cb >> 5);
+    if (B < 0) B = 0; else if (B > 255) B = 255;
+
+    if (order == YUV_ORDER_BGRA) {
+        pixel[0] = (uint8_t) B;
+        pixel[2] = (uint8_t) R;
+    } else {
+        pixel[0] = (uint8_t) R;
+        pixel[2] = (uint8_t) B;
+    }
+    pixel[1] = (uint8_t) G;
+    pixel[3] = 0xff;
+}
+
+void yuv_nv21_pixels_scalar(const uint8_t *y, const uint8_t *vu, uint8_t *out, int from,
+                            int to, int order) {
+    int i;
+    for (i = from; i < to; i++) {
+        convert_pixel(y[i], vu[i & ~1], vu[i | 1], out + i * 4, order);
+    }
+}
+
+void yuv_nv21_row_scalar(const uint8_t *y, const uint8_t *vu, uint8_t *out, int width,
+                         int order) {
+    yuv_nv21_pixels_scalar(y, vu, out, 0, width, order);
+}
+
+// Any other layout, e.g. planar or with U before V
+static void convert_row_generic(const uint8_t *y, const uint8_t *u, const uint8_t *v,
+                                int pixelStride, uint8_t *out, int width, int order) {
+    int i;
+    for (i = 0; i < width; i++) {
+        int offset = (i >> 1) * pixelStride;
+        convert_pixel(y[i], v[offset], u[offset], out + i * 4, order);
+    }
+}
+
+static int is_nv21(const yuv_image *image) {
+    return image->uvPixelStride == 2 && image->u == image->v + 1;
+}
+
+void yuv_image_nv21(yuv_image *image, const uint8_t *nv21, int width, int height) {
+    image->y = nv21;
+    image->v = nv21 + width * height;
+    image->u = image->v + 1;
+    image->yRowStride = width;
+    image->uvRowStride = width;
+    image->uvPixelStride = 2;
+    image->width = width;
+    image->height = height;
+}
+
+void yuv_image_crop(yuv_image *image, int left, int top, int width, int height) {
+    int uvOffset = (top >> 1) * image->uvRowStride + (left >> 1) * image->uvPixelStride;
+    image->y += top * image->yRowStride + left;
+    image->u += uvOffset;
+    image->v += uvOffset;
+    image->width = width;
+    image->height = height;
+}
+
+void yuv_image_to_nv21(const yuv_image *image, uint8_t *out) {
+    int width = image->width;
+    int chromaWidth = width / 2;
+    int chromaHeight = image->height / 2;
+    int j;
+    int i;
+    for (j = 0; j < image->height; j++) {
+        memcpy(out + j * width, image->y + j * image->yRowStride, (size_t) width);
+    }
+    uint8_t *vuOut = out + width * image->height;
+    for (j = 0; j < chromaHeight; j++) {
+        const uint8_t *u = image->u + j * image->uvRowStride;
+        const uint8_t *v = image->v + j * image->uvRowStride;
+        uint8_t *vuRow = vuOut + j * width;
+        if (is_nv21(image)) {
+            memcpy(vuRow, v, (size_t) chromaWidth * 2);
+            continue;
+        }
+        for (i = 0; i < chromaWidth; i++) {
+            vuRow[i * 2] = v[i * image->uvPixelStride];
+            vuRow[i * 2 + 1] = u[i * image->uvPixelStride];
+        }
+    }
+}
+
+static yuv_row_fn select_row(void) {
+#if defined(YUV_HAVE_NEON)
+    return yuv_nv21_row_neon;
+#elif defined(YUV_HAVE_X86)
+    // SSE2 is part of every x86 ABI Android supports, AVX2 has to be checked
+    __builtin_cpu_init();
+    if (__builtin_cpu_supports("avx2")) {
+        return yuv_nv21_row_avx2;
+    }
+    return yuv_nv21_row_sse2;
+#else
+    return yuv_nv21_row_scalar;
+#endif
+}
+
+static pthread_once_t row_once = PTHREAD_ONCE_INIT;
+static yuv_row_fn row_fn;
+
+static void init_row(void) {
+    row_fn = select_row();
+}
+
+static void convert_rows(const yuv_image *image, uint8_t *out, int start, int end, int order) {
+    int nv21 = is_nv21(image);
+    int j;
+    for (j = start; j < end; j++) {
+        const uint8_t *y = image->y + j * image->yRowStride;
+        int uvOffset = (j >> 1) * image->uvRowStride;
+        uint8_t *outRow = out + j * image->width * 4;
+        if (nv21) {
+            row_fn(y, image->v + uvOffset, outRow, image->width, order);
+        } else {
+            convert_row_generic(y, image->u + uvOffset, image->v + uvOffset,
+                                image->uvPixelStride, outRow, image->width, order);
+        }
+    }
+}
+
+// A small pool of workers which take stripes of the current frame until none are left. The
+// calling thread takes stripes as well, so a frame is split into thread_count stripes.
+static pthread_mutex_t call_mutex = PTHREAD_MUTEX_INITIALIZER;
+static pthread_mutex_t pool_mutex = PTHREAD_MUTEX_INITIALIZER;
+static pthread_cond_t work_cond = PTHREAD_COND_INITIALIZER;
+static pthread_cond_t done_cond = PTHREAD_COND_INITIALIZER;
+static int thread_count = 1;
+static int worker_count;
+static unsigned int generation;
+
+static struct {
+    yuv_image image;
+    uint8_t *out;
+    int order;
+    int stripes;
+    int next;
+    int remaining;
+} job;
+
+// Called with pool_mutex held, which is held again on return
+static void run_stripes(void) {
+    while (job.next < job.stripes) {
+        int stripe = job.next++;
+        yuv_image image = job.image;
+        uint8_t *out = job.out;
+        int order = job.order;
+        int start = image.height * stripe / job.stripes;
+        int end = image.height * (stripe + 1) / job.stripes;
+        pthread_mutex_unlock(&pool_mutex);
+        convert_rows(&image, out, start, end, order);
+        pthread_mutex_lock(&pool_mutex);
+        if (--job.remaining == 0) {
+            pthread_cond_signal(&done_cond);
+        }
+    }
+}
+
+static void *worker_main(void *arg) {
+    unsigned int seen = 0;
+    (void) arg;
+    pthread_mutex_lock(&pool_mutex);
+    for (;;) {
+        while (generation == seen) {
+            pthread_cond_wait(&work_cond, &pool_mutex);
+        }
+        seen = generation;
+        run_stripes();
+    }
+    return NULL;
+}
+
+void yuv_set_thread_count(int count) {
+    if (count < 1) count = 1;
+    if (count > MAX_THREADS) count = MAX_THREADS;
+    pthread_mutex_lock(&pool_mutex);
+    thread_count = count;
+    // Workers are kept for the life of the process, there are only a few of them
+    while (worker_count < count - 1) {
+        pthread_t thread;
+        pthread_attr_t attr;
+        pthread_attr_init(&attr);
+        pthread_attr_setdetachstate(&attr, PTHREAD_CREATE_DETACHED);
+        int result = pthread_create(&thread, &attr, worker_main, NULL);
+        pthread_attr_destroy(&attr);
+        if (result != 0) {
+            thread_count = worker_count + 1;
+            break;
+        }
+        worker_count++;
+    }
+    pthread_mutex_unlock(&pool_mutex);
+}
+
+void yuv_image_to_rgb(const yuv_image *image, uint8_t *out, int order) {
+    pthread_once(&row_once, init_row);
+
+    pthread_mutex_lock(&pool_mutex);
+    int stripes = thread_count;
+    pthread_mutex_unlock(&pool_mutex);
+    int maxStripes = image->width * image->height / MIN_PIXELS_PER_STRIPE;
+    if (stripes > maxStripes) stripes = maxStripes;
+    if (stripes > image->height) stripes = image->height;
+    if (stripes <= 1) {
+        convert_rows(image, out, 0, image->height, order);
+        return;
+    }
+
+    // One frame at a time is split, the job is shared by all workers
+    pthread_mutex_lock(&call_mutex);
+    pthread_mutex_lock(&pool_mutex);
+    job.image = *image;
+    job.out = out;
+    job.order = order;
+    job.stripes = stripes;
+    job.next = 0;
+    job.remaining = stripes;
+    generation++;
+    pthread_cond_broadcast(&work_cond);
+    run_stripes();
+    while (job.remaining > 0) {
+        pthread_cond_wait(&done_cond, &pool_mutex);
+    }
+    pthread_mutex_unlock(&pool_mutex);
+    pthread_mutex_unlock(&call_mutex);
+}
+
+void yuv_nv21_to_rgb(const uint8_t *nv21, uint8_t *out, int width, int height, int order) {
+    yuv_image image;
+    yuv_image_nv21(&image, nv21, width, height);
+    yuv_image_to_rgb(&image, out, order);
+}
@@ -0,0 +1,73 @@
+#ifndef GPUIMAGE_YUV_CONVERT_H
+#define GPUIMAGE_YUV_CONVERT_H
+
+#include <stdint.h>
+
+// Byte order of the converted pixels in memory, alpha is always last.
+// YUVtoRBGA writes BGRA, i.e. 0xAARRGGBB ints on little endian, YUVtoARBG writes RGBA.
+#define YUV_ORDER_BGRA 0
+#define YUV_ORDER_RGBA 1
+
+// A YUV 4:2:0 frame in any of the layouts of Android's YUV_420_888, planar like I420 or
+// semi-planar like NV21 and NV12, e.g. the planes of a camera2 Image.
+typedef struct {
+    const uint8_t *y;
+    const uint8_t *u;
+    const uint8_t *v;
+    int yRowStride;
+    int uvRowStride;
+    int uvPixelStride;
+    int width;
+    int height;
+} yuv_image;
+
+// Describes a tightly packed NV21 frame.
+void yuv_image_nv21(yuv_image *image, const uint8_t *nv21, int width, int height);
+
+// Moves the planes' pointers to the top left corner of a crop rect. The chroma of an odd
+// corner is taken from the sample covering it.
+void yuv_image_crop(yuv_image *image, int left, int top, int width, int height);
+
+// Copies a frame into a tightly packed NV21 frame.
+void yuv_image_to_nv21(const yuv_image *image, uint8_t *out);
+
+// Converts a frame into 4 byte pixels with the fastest row converter of the CPU, split into
+// row stripes across the worker threads for large frames.
+void yuv_image_to_rgb(const yuv_image *image, uint8_t *out, int order);
+
+// Converts an NV21 frame into 4 byte pixels, see yuv_image_to_rgb.
+void yuv_nv21_to_rgb(const uint8_t *nv21, uint8_t *out, int width, int height, int order);
+
+// Sets the number of threads converting a large frame, including the calling thread.
+void yuv_set_thread_count(int count);
+
+// Converts one row of an NV21 frame, given its luma row and the interleaved chroma row
+// covering it. Every implementation produces exactly the pixels of yuv_nv21_row_scalar.
+typedef void (*yuv_row_fn)(const uint8_t *y, const uint8_t *vu, uint8_t *out, int width,
+                           int order);
+
+void yuv_nv21_row_scalar(const uint8_t *y, const uint8_t *vu, uint8_t *out, int width,
+                         int order);
+
+// Converts the pixels [from, to) of one row, used for the tails of the vectorised rows.
+void yuv_nv21_pixels_scalar(const uint8_t *y, const uint8_t *vu, uint8_t *out, int from,
+                            int to, int order);
+
+#if defined(__ARM_NEON) || defined(__ARM_NEON__)
+#define YUV_HAVE_NEON 1
+
+void yuv_nv21_row_neon(const uint8_t *y, const uint8_t *vu, uint8_t *out, int width,
+                       int order);
+#endif
+
+#if defined(__i386__) || defined(__x86_64__)
+#define YUV_HAVE_X86 1
+
+void yuv_nv21_row_sse2(const uint8_t *y, const uint8_t *vu, uint8_t *out, int width,
+                       int order);
+
+void yuv_nv21_row_avx2(const uint8_t *y, const uint8_t *vu, uint8_t *out, int width,
+                       int order);
+#endif
+
+#endif // GPUIMAGE_YUV_CONVERT_H
@@ -3,64 +3,21 @@
 #include <android/bitmap.h>
 #include <GLES2/gl2.h>
 
+#include "yuv-convert.h"
+
 
 JNIEXPORT void JNICALL
 Java_jp_co_cyberagent_android_gpuimage_GPUImageNativeLibrary_YUVtoRBGA(JNIEnv *env, jobject obj,
                                                                        jbyteArray yuv420sp,
                                                                        jint width, jint height,
                                                                        jintArray rgbOut) {
-    int sz;
-    int i;
-    int j;
-    int Y;
-    int Cr = 0;
-    int Cb = 0;
-    int pixPtr = 0;
-    int jDiv2 = 0;
-    int R = 0;
-    int G = 0;
-    int B = 0;
-    int cOff;
-    int w = width;
-    int h = height;
-    sz = w * h;
-
     jint *rgbData = (jint *) ((*env)->GetPrimitiveArrayCritical(env, rgbOut, 0));
     jbyte *yuv = (jbyte *) (*env)->GetPrimitiveArrayCritical(env, yuv420sp, 0);
 
-    for (j = 0; j < h; j++) {
-        pixPtr = j * w;
-        jDiv2 = j >> 1;
-        for (i = 0; i < w; i++) {
-            Y = yuv[pixPtr];
-            if (Y < 0) Y += 255;
-            if ((i & 0x1) != 1) {
-                cOff = sz + jDiv2 * w + (i >> 1) * 2;
-                Cb = yuv[cOff];
-                if (Cb < 0) Cb += 127; else Cb -= 128;
-                Cr = yuv[cOff + 1];
-                if (Cr < 0) Cr += 127; else Cr -= 128;
-            }
-
-            //ITU-R BT.601 conversion
-            //
-            //R = 1.164*(Y-16) + 2.018*(Cr-128);
-            //G = 1.164*(Y-16) - 0.813*(Cb-128) - 0.391*(Cr-128);
-            //B = 1.164*(Y-16) + 1.596*(Cb-128);
-            //
-            Y = Y + (Y >> 3) + (Y >> 5) + (Y >> 7);
-            R = Y + (Cr << 1) + (Cr >> 6);
-            if (R < 0) R = 0; else if (R > 255) R = 255;
-            G = Y - Cb + (Cb >> 3) + (Cb >> 4) - (Cr >> 1) + (Cr >> 3);
-            if (G < 0) G = 0; else if (G > 255) G = 255;
-            B = Y + Cb + (Cb >> 1) + (Cb >> 4) + (Cb >> 5);
-            if (B < 0) B = 0; else if (B > 255) B = 255;
-            rgbData[pixPtr++] = 0xff000000 + (R << 16) + (G << 8) + B;
-        }
-    }
+    yuv_nv21_to_rgb((const uint8_t *) yuv, (uint8_t *) rgbData, width, height, YUV_ORDER_BGRA);
 
     (*env)->ReleasePrimitiveArrayCritical(env, rgbOut, rgbData, 0);
-    (*env)->ReleasePrimitiveArrayCritical(env, yuv420sp, yuv, 0);
+    (*env)->ReleasePrimitiveArrayCritical(env, yuv420sp, yuv, JNI_ABORT);
 }
 
 JNIEXPORT void JNICALL
@@ -68,60 +25,98 @@ Java_jp_co_cyberagent_android_gpuimage_GPUImageNativeLibrary_YUVtoARBG(JNIEnv *e
                                                                        jbyteArray yuv420sp,
                                                                        jint width, jint height,
                                                                        jintArray rgbOut) {
-    int sz;
-    int i;
-    int j;
-    int Y;
-    int Cr = 0;
-    int Cb = 0;
-    int pixPtr = 0;
-    int jDiv2 = 0;
-    int R = 0;
-    int G = 0;
-    int B = 0;
-    int cOff;
-    int w = width;
-    int h = height;
-    sz = w * h;
-
     jint *rgbData = (jint *) ((*env)->GetPrimitiveArrayCritical(env, rgbOut, 0));
     jbyte *yuv = (jbyte *) (*env)->GetPrimitiveArrayCritical(env, yuv420sp, 0);
 
-    for (j = 0; j < h; j++) {
-        pixPtr = j * w;
-        jDiv2 = j >> 1;
-        for (i = 0; i < w; i++) {
-            Y = yuv[pixPtr];
-            if (Y < 0) Y += 255;
-            if ((i & 0x1) != 1) {
-                cOff = sz + jDiv2 * w + (i >> 1) * 2;
-                Cb = yuv[cOff];
-                if (Cb < 0) Cb += 127; else Cb -= 128;
-                Cr = yuv[cOff + 1];
-                if (Cr < 0) Cr += 127; else Cr -= 128;
-            }
-
-            //ITU-R BT.601 conversion
-            //
-            //R = 1.164*(Y-16) + 2.018*(Cr-128);
-            //G = 1.164*(Y-16) - 0.813*(Cb-128) - 0.391*(Cr-128);
-            //B = 1.164*(Y-16) + 1.596*(Cb-128);
-            //
-            Y = Y + (Y >> 3) + (Y >> 5) + (Y >> 7);
-            R = Y + (Cr << 1) + (Cr >> 6);
-            if (R < 0) R = 0; else if (R > 255) R = 255;
-            G = Y - Cb + (Cb >> 3) + (Cb >> 4) - (Cr >> 1) + (Cr >> 3);
-            if (G < 0) G = 0; else if (G > 255) G = 255;
-            B = Y + Cb + (Cb >> 1) + (Cb >> 4) + (Cb >> 5);
-            if (B < 0) B = 0; else if (B > 255) B = 255;
-            rgbData[pixPtr++] = 0xff000000 + (B << 16) + (G << 8) + R;
-        }
-    }
+    yuv_nv21_to_rgb((const uint8_t *) yuv, (uint8_t *) rgbData, width, height, YUV_ORDER_RGBA);
 
     (*env)->ReleasePrimitiveArrayCritical(env, rgbOut, rgbData, 0);
-    (*env)->ReleasePrimitiveArrayCritical(env, yuv420sp, yuv, 0);
+    (*env)->ReleasePrimitiveArrayCritical(env, yuv420sp, yuv, JNI_ABORT);
+}
+
+JNIEXPORT void JNICALL
+Java_jp_co_cyberagent_android_gpuimage_GPUImageNativeLibrary_setYUVThreadCount(JNIEnv *env,
+                                                                               jclass clazz,
+                                                                               jint count) {
+    yuv_set_thread_count(count);
+}
+
+// Reads the planes of a YUV_420_888 frame without copying them, throwing if a buffer is not
+// direct or too small for the crop rect
+static int get_planes(JNIEnv *env, jobject yBuffer, jobject uBuffer, jobject vBuffer,
+                      jint yRowStride, jint uvRowStride, jint uvPixelStride,
+                      jint cropLeft, jint cropTop, jint width, jint height, yuv_image *image) {
+    const uint8_t *y = (*env)->GetDirectBufferAddress(env, yBuffer);
+    const uint8_t *u = (*env)->GetDirectBufferAddress(env, uBuffer);
+    const uint8_t *v = (*env)->GetDirectBufferAddress(env, vBuffer);
+    jclass exception = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+    if (y == NULL || u == NULL || v == NULL) {
+        (*env)->ThrowNew(env, exception, "The planes must be direct buffers");
+        return 0;
+    }
+    if (width < 2 || height < 2 || cropLeft < 0 || cropTop < 0 || uvPixelStride <= 0) {
+        (*env)->ThrowNew(env, exception, "Invalid frame size");
+        return 0;
+    }
+    // The last row of a plane may end right after its last sample, without row padding
+    jlong yEnd = (jlong) (cropTop + height - 1) * yRowStride + cropLeft + width;
+    jlong uvEnd = (jlong) ((cropTop >> 1) + height / 2 - 1) * uvRowStride
+                  + (jlong) ((cropLeft >> 1) + width / 2 - 1) * uvPixelStride + 1;
+    if ((*env)->GetDirectBufferCapacity(env, yBuffer) < yEnd
+        || (*env)->GetDirectBufferCapacity(env, uBuffer) < uvEnd
+        || (*env)->GetDirectBufferCapacity(env, vBuffer) < uvEnd) {
+        (*env)->ThrowNew(env, exception, "The planes are smaller than the frame");
+        return 0;
+    }
+    image->y = y;
+    image->u = u;
+    image->v = v;
+    image->yRowStride = yRowStride;
+    image->uvRowStride = uvRowStride;
+    image->uvPixelStride = uvPixelStride;
+    yuv_image_crop(image, cropLeft, cropTop, width, height);
+    return 1;
 }
 
+JNIEXPORT void JNICALL
+Java_jp_co_cyberagent_android_gpuimage_GPUImageNativeLibrary_YUV420888toNV21(
+        JNIEnv *env, jclass clazz, jobject yBuffer, jobject uBuffer, jobject vBuffer,
+        jint yRowStride, jint uvRowStride, jint uvPixelStride, jint cropLeft, jint cropTop,
+        jint width, jint height, jobject nv21Out) {
+    yuv_image image;
+    if (!get_planes(env, yBuffer, uBuffer, vBuffer, yRowStride, uvRowStride, uvPixelStride,
+                    cropLeft, cropTop, width, height, &image)) {
+        return;
+    }
+    uint8_t *out = (*env)->GetDirectBufferAddress(env, nv21Out);
+    if (out == NULL
+        || (*env)->GetDirectBufferCapacity(env, nv21Out) < (jlong) width * height * 3 / 2) {
+        (*env)->ThrowNew(env, (*env)->FindClass(env, "java/lang/IllegalArgumentException"),
+                         "The output must be a direct buffer of the frame's size");
+        return;
+    }
+    yuv_image_to_nv21(&image, out);
+}
+
+JNIEXPORT void JNICALL
+Java_jp_co_cyberagent_android_gpuimage_GPUImageNativeLibrary_YUV420888toRBGA(
+        JNIEnv *env, jclass clazz, jobject yBuffer, jobject uBuffer, jobject vBuffer,
+        jint yRowStride, jint uvRowStride, jint uvPixelStride, jint cropLeft, jint cropTop,
+        jint width, jint height, jintArray rgbOut) {
+    yuv_image image;
+    if (!get_planes(env, yBuffer, uBuffer, vBuffer, yRowStride, uvRowStride, uvPixelStride,
+                    cropLeft, cropTop, width, height, &image)) {
+        return;
+    }
+    if ((*env)->GetArrayLength(env, rgbOut) < width * height) {
+        (*env)->ThrowNew(env, (*env)->FindClass(env, "java/lang/IllegalArgumentException"),
+                         "The output is smaller than the frame");
+        return;
+    }
+    jint *rgbData = (jint *) ((*env)->GetPrimitiveArrayCritical(env, rgbOut, 0));
+    yuv_image_to_rgb(&image, (uint8_t *) rgbData, YUV_ORDER_BGRA);
+    (*env)->ReleasePrimitiveArrayCritical(env, rgbOut, rgbData, 0);
+}
 
 JNIEXPORT void JNICALL
 Java_jp_co_cyberagent_android_gpuimage_GPUImageNativeLibrary_adjustBitmap(JNIEnv *jenv, jclass thiz,
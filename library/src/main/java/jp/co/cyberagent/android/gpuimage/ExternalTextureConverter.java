@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+import jp.co.cyberagent.android.gpuimage.util.RenderTargetPool;
+
+import static jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil.TEXTURE_NO_ROTATION;
+
+/**
+ * Draws the GL_TEXTURE_EXTERNAL_OES texture of a SurfaceTexture, e.g. the camera preview,
+ * into an RGBA texture the filters sample like any image, applying the SurfaceTexture's
+ * transform on the way. The frames never leave the GPU.
+ * <p>
+ * A converter belongs to the GL context it is used in and must only be used on its thread.
+ */
+class ExternalTextureConverter {
+    private static final String EXTERNAL_VERTEX_SHADER = "" +
+            "attribute vec4 position;\n" +
+            "attribute vec4 inputTextureCoordinate;\n" +
+            " \n" +
+            "uniform mat4 textureTransform;\n" +
+            " \n" +
+            "varying vec2 textureCoordinate;\n" +
+            " \n" +
+            "void main()\n" +
+            "{\n" +
+            "    gl_Position = position;\n" +
+            "    textureCoordinate = (textureTransform * inputTextureCoordinate).xy;\n" +
+            "}";
+
+    private static final String EXTERNAL_FRAGMENT_SHADER = "" +
+            "#extension GL_OES_EGL_image_external : require\n" +
+            "varying highp vec2 textureCoordinate;\n" +
+            " \n" +
+            "uniform samplerExternalOES inputImageTexture;\n" +
+            " \n" +
+            "void main()\n" +
+            "{\n" +
+            "     gl_FragColor = texture2D(inputImageTexture, textureCoordinate);\n" +
+            "}";
+
+    private final ExternalFilter filter = new ExternalFilter();
+    private final FloatBuffer cubeBuffer;
+    private final FloatBuffer textureBuffer;
+    private final int[] viewport = new int[4];
+    private RenderTargetPool.RenderTarget target;
+
+    ExternalTextureConverter() {
+        cubeBuffer = createBuffer(GPUImageRenderer.CUBE);
+        // SurfaceTexture coordinates start at the bottom, the image's first row goes into the
+        // target's first row like an uploaded bitmap
+        textureBuffer = createBuffer(TEXTURE_NO_ROTATION);
+    }
+
+    /**
+     * Creates an external texture for a SurfaceTexture.
+     */
+    static int createExternalTexture() {
+        GLBackend gl = GLBackend.current();
+        int[] textures = new int[1];
+        gl.glGenTextures(1, textures, 0);
+        GLState.current().activeTexture(0);
+        gl.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textures[0]);
+        gl.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
+                GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
+                GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
+                GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
+                GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0);
+        return textures[0];
+    }
+
+    /**
+     * Draws the latest image of an external texture. The framebuffer and viewport bound before
+     * are bound again afterwards.
+     *
+     * @param transform the matrix from SurfaceTexture.getTransformMatrix
+     * @return the RGBA texture, owned by the converter and reused for the next frame
+     */
+    int convert(final int externalTexture, final float[] transform, final int width,
+                final int height) {
+        GLState state = GLState.current();
+        if (target != null && (target.getWidth() != width || target.getHeight() != height)) {
+            release();
+        }
+        int framebuffer = state.getFramebuffer();
+        state.getViewport(viewport);
+        if (target == null) {
+            target = RenderTargetPool.RenderTarget.create(width, height);
+        }
+        filter.ifNeedInit();
+        filter.externalTexture = externalTexture;
+        filter.setTransform(transform);
+        state.bindFramebuffer(target.getFramebuffer());
+        state.viewport(0, 0, width, height);
+        filter.onDraw(OpenGlUtils.NO_TEXTURE, cubeBuffer, textureBuffer);
+        state.bindFramebuffer(framebuffer);
+        state.viewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+        return target.getTexture();
+    }
+
+    /**
+     * Deletes the framebuffer. The converter can be used again afterwards.
+     */
+    void release() {
+        if (target != null) {
+            target.delete();
+            target = null;
+        }
+    }
+
+    /**
+     * Like {@link #release()}, also freeing the program.
+     */
+    void destroy() {
+        release();
+        filter.destroy();
+    }
+
+    private static FloatBuffer createBuffer(final float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+
+    private static class ExternalFilter extends GPUImageFilter {
+        private int textureTransformUniform;
+        int externalTexture;
+
+        ExternalFilter() {
+            super(EXTERNAL_VERTEX_SHADER, EXTERNAL_FRAGMENT_SHADER);
+        }
+
+        @Override
+        public void onInit() {
+            super.onInit();
+            textureTransformUniform = getUniformLocation("textureTransform");
+        }
+
+        void setTransform(final float[] transform) {
+            setUniformMatrix4f(textureTransformUniform, transform);
+        }
+
+        @Override
+        protected void onDrawArraysPre() {
+            // The sampler reads the external target of unit 0, which GLState does not track
+            GLState.current().activeTexture(0);
+            GLBackend.current().glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, externalTexture);
+        }
+    }
+}
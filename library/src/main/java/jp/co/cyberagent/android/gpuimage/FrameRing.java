@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Hands camera frames from the camera thread to the GL thread through three slots: one being
+ * written, the latest complete one and one being drawn. Writing never waits for the GL thread
+ * and the GL thread always gets the latest complete frame, so a frame is never drawn while it
+ * is overwritten. A frame the GL thread did not take before the next one was published is
+ * dropped, which keeps the preview at most one frame behind the camera.
+ * <p>
+ * The buffers of the slots are kept from frame to frame and only reallocated when the
+ * resolution changes.
+ */
+final class FrameRing {
+    /**
+     * Frames waiting longer than this for the GL thread count as late, two frames at 60 fps.
+     */
+    static final long LATE_FRAME_NANOS = 33000000L;
+
+    static final class Frame {
+        int width;
+        int height;
+        /**
+         * Whether the frame holds NV21 data for the GPU or converted pixels.
+         */
+        boolean yuv;
+        ByteBuffer nv21;
+        IntBuffer rgba;
+        long publishedNanos;
+
+        ByteBuffer nv21(final int width, final int height) {
+            int size = width * height * 3 / 2;
+            if (nv21 == null || nv21.capacity() != size) {
+                nv21 = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+            }
+            nv21.clear();
+            return nv21;
+        }
+
+        IntBuffer rgba(final int width, final int height) {
+            if (rgba == null || rgba.capacity() != width * height) {
+                rgba = IntBuffer.allocate(width * height);
+            }
+            return rgba;
+        }
+    }
+
+    private Frame writing = new Frame();
+    private Frame ready = new Frame();
+    private Frame drawing = new Frame();
+    private boolean readyIsNew;
+    private long droppedFrames;
+    private long lateFrames;
+
+    /**
+     * Gets the slot to write the next frame into. Called on the camera thread.
+     */
+    synchronized Frame beginWrite() {
+        return writing;
+    }
+
+    /**
+     * Publishes the frame written since {@link #beginWrite()}.
+     */
+    synchronized void endWrite() {
+        if (readyIsNew) {
+            droppedFrames++;
+        }
+        writing.publishedNanos = System.nanoTime();
+        Frame frame = ready;
+        ready = writing;
+        writing = frame;
+        readyIsNew = true;
+    }
+
+    /**
+     * Takes the latest complete frame, which stays untouched until the next call. Called on the
+     * GL thread.
+     *
+     * @return the frame or null if none was published since the last call
+     */
+    synchronized Frame takeLatest() {
+        if (!readyIsNew) {
+            return null;
+        }
+        Frame frame = drawing;
+        drawing = ready;
+        ready = frame;
+        readyIsNew = false;
+        if (System.nanoTime() - drawing.publishedNanos > LATE_FRAME_NANOS) {
+            lateFrames++;
+        }
+        return drawing;
+    }
+
+    /**
+     * Gets the number of frames replaced by a newer one before the GL thread took them.
+     */
+    synchronized long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+
+    /**
+     * Gets the number of frames which waited longer than {@link #LATE_FRAME_NANOS} for the GL
+     * thread.
+     */
+    synchronized long getLateFrameCount() {
+        return lateFrames;
+    }
+}
@@ -16,6 +16,7 @@
 
 package jp.co.cyberagent.android.gpuimage;
 
+import android.annotation.TargetApi;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.content.pm.ConfigurationInfo;
@@ -25,12 +26,15 @@ import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
 import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.hardware.Camera;
 import android.media.ExifInterface;
+import android.media.Image;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.opengl.GLSurfaceView;
 import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
 import android.provider.MediaStore;
@@ -44,8 +48,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.FrameProfiler;
 import jp.co.cyberagent.android.gpuimage.util.Rotation;
 
 /**
@@ -141,6 +148,33 @@ public class GPUImage {
         renderer.setBackgroundColor(red, green, blue);
     }
 
+    /**
+     * Enables per-filter timing of the rendered frames.
+     *
+     * @param profiler the profiler or null to stop profiling
+     */
+    public void setFrameProfiler(final FrameProfiler profiler) {
+        renderer.setFrameProfiler(profiler);
+    }
+
+    /**
+     * Reads the next rendered frame back without stalling the render thread. Rendering goes on
+     * while the pixels are transferred on OpenGL ES 3.0; older devices read them right away.
+     *
+     * @param callback notified on the GL thread when the pixels arrived, may be null
+     * @return a future of the frame
+     */
+    public Future<Bitmap> readPixelsAsync(final PixelReader.Callback callback) {
+        Future<Bitmap> result = renderer.readPixelsAsync(callback, new Runnable() {
+            @Override
+            public void run() {
+                requestRender();
+            }
+        });
+        requestRender();
+        return result;
+    }
+
     /**
      * Request the preview to be rendered again.
      */
@@ -189,6 +223,32 @@ public class GPUImage {
             glTextureView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
         }
         renderer.setUpSurfaceTexture(camera);
+        setCameraRotation(degrees, flipHorizontal, flipVertical);
+    }
+
+    /**
+     * Sets up the camera to be connected to GPUImage through the external texture of a
+     * SurfaceTexture, so that the preview frames are filtered without ever being copied to
+     * or converted by the CPU.
+     *
+     * @param camera         the camera
+     * @param degrees        by how many degrees the image should be rotated
+     * @param flipHorizontal if the image should be flipped horizontally
+     * @param flipVertical   if the image should be flipped vertically
+     */
+    public void setUpCameraTexture(final Camera camera, final int degrees,
+                                   final boolean flipHorizontal, final boolean flipVertical) {
+        if (surfaceType == SURFACE_TYPE_SURFACE_VIEW) {
+            glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        } else if (surfaceType == SURFACE_TYPE_TEXTURE_VIEW) {
+            glTextureView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        }
+        renderer.setUpCameraTexture(camera);
+        setCameraRotation(degrees, flipHorizontal, flipVertical);
+    }
+
+    private void setCameraRotation(final int degrees, final boolean flipHorizontal,
+                                   final boolean flipVertical) {
         Rotation rotation = Rotation.NORMAL;
         switch (degrees) {
             case 90:
@@ -238,6 +298,17 @@ public class GPUImage {
         renderer.onPreviewFrame(data, width, height);
     }
 
+    /**
+     * Update camera preview frame with a YUV_420_888 image, e.g. from a camera2 ImageReader.
+     * The planes are read in place, the image can be closed right after.
+     *
+     * @param image Camera preview image for frame.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public void updatePreviewFrame(final Image image) {
+        renderer.onPreviewFrame(image);
+    }
+
     /**
      * This sets the scale type of GPUImage. This has to be run before setting the image.
      * If image is set and scale type changed, image needs to be reset.
@@ -353,24 +424,24 @@ public class GPUImage {
      */
     public Bitmap getBitmapWithFilterApplied(final Bitmap bitmap, boolean recycle) {
         if (glSurfaceView != null || glTextureView != null) {
-            renderer.deleteImage();
-            renderer.runOnDraw(new Runnable() {
-
-                @Override
-                public void run() {
-                    synchronized (filter) {
-                        filter.destroy();
-                        filter.notify();
-                    }
-                }
-            });
-            synchronized (filter) {
-                requestRender();
-                try {
-                    filter.wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            // Render next to the preview, reusing its programs and, if possible, its texture
+            Future<Bitmap> result = renderer.renderOffscreen(
+                    bitmap != currentBitmap ? bitmap : null, recycle && bitmap != currentBitmap,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            requestRender();
+                        }
+                    });
+            requestRender();
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return null;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                return null;
             }
         }
 
@@ -386,12 +457,6 @@ public class GPUImage {
         renderer.deleteImage();
         buffer.destroy();
 
-        this.renderer.setFilter(filter);
-        if (currentBitmap != null) {
-            this.renderer.setImageBitmap(currentBitmap, false);
-        }
-        requestRender();
-
         return result;
     }
 
@@ -425,6 +490,29 @@ public class GPUImage {
         buffer.destroy();
     }
 
+    /**
+     * Gets small previews of an image for multiple filters, e.g. for a filter picker. Much
+     * faster than {@link #getBitmapForMultipleFilters(Bitmap, List, ResponseListener)} as the
+     * image is scaled down once and all previews are rendered into one atlas, see
+     * {@link ThumbnailAtlasRenderer}. The listener is called in filter order.
+     *
+     * @param bitmap   the bitmap on which the filters will be applied
+     * @param filters  the filters which will be applied on the bitmap
+     * @param maxSize  the size of the longer side of the previews
+     * @param listener the listener on which the results will be notified
+     */
+    public static void getThumbnailsForMultipleFilters(final Bitmap bitmap,
+                                                       final List<GPUImageFilter> filters, final int maxSize,
+                                                       final ResponseListener<Bitmap> listener) {
+        ThumbnailAtlasRenderer.render(bitmap, filters, maxSize, new ThumbnailAtlasRenderer.Listener() {
+            @Override
+            public void onThumbnail(final int index, final Bitmap atlas, final Rect bounds) {
+                listener.response(Bitmap.createBitmap(atlas, bounds.left, bounds.top,
+                        bounds.width(), bounds.height()));
+            }
+        });
+    }
+
     /**
      * Save current image with applied filter to Pictures. It will be stored on
      * the default Picture folder on the phone below the given folderName and
@@ -18,6 +18,8 @@ package jp.co.cyberagent.android.gpuimage;
 
 import android.graphics.Bitmap;
 
+import java.nio.ByteBuffer;
+
 public class GPUImageNativeLibrary {
     static {
         System.loadLibrary("yuv-decoder");
@@ -27,5 +29,37 @@ public class GPUImageNativeLibrary {
 
     public static native void YUVtoARBG(byte[] yuv, int width, int height, int[] out);
 
+    /**
+     * Packs a YUV_420_888 frame, e.g. the planes of a camera2 Image, into a tightly packed NV21
+     * frame. The planes are read in place, from the start of their buffers.
+     *
+     * @param uvPixelStride the pixel stride of the chroma planes, 1 if planar and 2 if
+     *                      interleaved
+     * @param nv21Out       a direct buffer of at least width * height * 3 / 2 bytes
+     * @throws IllegalArgumentException if a buffer is not direct or too small
+     */
+    public static native void YUV420888toNV21(ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                              int yRowStride, int uvRowStride, int uvPixelStride,
+                                              int cropLeft, int cropTop, int width, int height,
+                                              ByteBuffer nv21Out);
+
+    /**
+     * Converts a YUV_420_888 frame into pixels like {@link #YUVtoRBGA(byte[], int, int, int[])},
+     * reading the planes in place.
+     *
+     * @throws IllegalArgumentException if a buffer is not direct or too small
+     */
+    public static native void YUV420888toRBGA(ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                              int yRowStride, int uvRowStride, int uvPixelStride,
+                                              int cropLeft, int cropTop, int width, int height,
+                                              int[] out);
+
     public static native void adjustBitmap(Bitmap srcBitmap);
+
+    /**
+     * Sets the number of threads converting large camera frames, 1 by default.
+     *
+     * @param count the number of threads including the calling one, at most 8
+     */
+    public static native void setYUVThreadCount(int count);
 }
@@ -16,28 +16,39 @@
 
 package jp.co.cyberagent.android.gpuimage;
 
+import android.annotation.TargetApi;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.PreviewCallback;
 import android.hardware.Camera.Size;
+import android.media.Image;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
+import android.os.Build;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.Future;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilterGroup;
+import jp.co.cyberagent.android.gpuimage.util.FrameProfiler;
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
+import jp.co.cyberagent.android.gpuimage.util.LookupTextureCache;
 import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+import jp.co.cyberagent.android.gpuimage.util.ProgramCache;
+import jp.co.cyberagent.android.gpuimage.util.RenderTargetPool;
+import jp.co.cyberagent.android.gpuimage.util.RenderTaskQueue;
 import jp.co.cyberagent.android.gpuimage.util.Rotation;
 import jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil;
 
@@ -45,6 +56,8 @@ import static jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil.TEXTURE
 
 public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.Renderer, PreviewCallback {
     private static final int NO_IMAGE = -1;
+    private static final Object PREVIEW_FRAME_TASK = new Object();
+    private static final int CAMERA_BUFFER_COUNT = 2;
     public static final float CUBE[] = {
             -1.0f, -1.0f,
             1.0f, -1.0f,
@@ -60,7 +73,37 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
     private SurfaceTexture surfaceTexture = null;
     private final FloatBuffer glCubeBuffer;
     private final FloatBuffer glTextureBuffer;
-    private IntBuffer glRgbBuffer;
+    private final FloatBuffer offscreenCubeBuffer = createBuffer(CUBE);
+    private FloatBuffer offscreenTextureBuffer;
+    private boolean offscreenFlipHorizontal;
+    private boolean offscreenFlipVertical;
+    private YuvConverter yuvConverter;
+    private boolean convertYuvOnGpu = true;
+    private int yuvColorSpace = YuvConverter.COLOR_SPACE_BT601;
+    private boolean textureFromConverter;
+    private final FrameRing previewFrames = new FrameRing();
+    private final Runnable uploadLatestPreviewFrame = new Runnable() {
+        @Override
+        public void run() {
+            FrameRing.Frame latest = previewFrames.takeLatest();
+            if (latest == null) {
+                return;
+            }
+            if (latest.yuv) {
+                latest.nv21.position(0);
+                uploadPreviewFrame(latest.nv21, null, latest.width, latest.height);
+            } else {
+                uploadPreviewFrame(null, latest.rgba, latest.width, latest.height);
+            }
+        }
+    };
+    private volatile boolean cameraBuffersAdded;
+    private ExternalTextureConverter externalConverter;
+    private int externalTextureId = NO_IMAGE;
+    private int externalWidth;
+    private int externalHeight;
+    private final float[] externalTransform = new float[16];
+    private volatile boolean externalFrameAvailable;
 
     private int outputWidth;
     private int outputHeight;
@@ -68,8 +111,12 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
     private int imageHeight;
     private int addedPadding;
 
-    private final Queue<Runnable> runOnDraw;
-    private final Queue<Runnable> runOnDrawEnd;
+    private final RenderTaskQueue runOnDraw;
+    private volatile FrameProfiler profiler;
+    private PixelReader pixelReader;
+    private Object glContext;
+    private volatile RenderTargetPool renderTargets;
+    private final RenderTaskQueue runOnDrawEnd;
     private Rotation rotation;
     private boolean flipHorizontal;
     private boolean flipVertical;
@@ -81,8 +128,8 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
 
     public GPUImageRenderer(final GPUImageFilter filter) {
         this.filter = filter;
-        runOnDraw = new LinkedList<>();
-        runOnDrawEnd = new LinkedList<>();
+        runOnDraw = new RenderTaskQueue();
+        runOnDrawEnd = new RenderTaskQueue();
 
         glCubeBuffer = ByteBuffer.allocateDirect(CUBE.length * 4)
                 .order(ByteOrder.nativeOrder())
@@ -97,17 +144,46 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
 
     @Override
     public void onSurfaceCreated(final GL10 unused, final EGLConfig config) {
-        GLES20.glClearColor(backgroundRed, backgroundGreen, backgroundBlue, 1);
-        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+        GLBackend gl = GLBackend.current();
+        Object context = gl.getCurrentContext();
+        if (glContext != null && !glContext.equals(context)) {
+            forgetContext(glContext);
+        }
+        // A new context may have the handle of an old one, but none of its objects
+        forgetContext(context);
+        glContext = context;
+        GLState.current().invalidate();
+        if (pixelReader != null) {
+            // The buffers of the reads in flight went away with the old context
+            pixelReader.abandon();
+            pixelReader = null;
+        }
+        if (textureFromConverter) {
+            glTextureId = NO_IMAGE;
+            textureFromConverter = false;
+        }
+        // Their textures and programs went away with the old context as well
+        yuvConverter = null;
+        externalConverter = null;
+        gl.glClearColor(backgroundRed, backgroundGreen, backgroundBlue, 1);
+        gl.glDisable(GLES20.GL_DEPTH_TEST);
         filter.ifNeedInit();
     }
 
+    /**
+     * Drops what the shared caches hold for a context which is gone or was just created.
+     */
+    static void forgetContext(final Object context) {
+        ProgramCache.onContextLost(context);
+        LookupTextureCache.onContextLost(context);
+    }
+
     @Override
     public void onSurfaceChanged(final GL10 gl, final int width, final int height) {
         outputWidth = width;
         outputHeight = height;
-        GLES20.glViewport(0, 0, width, height);
-        GLES20.glUseProgram(filter.getProgram());
+        GLState.current().viewport(0, 0, width, height);
+        GLState.current().useProgram(filter.getProgram());
         filter.onOutputSizeChanged(width, height);
         adjustImageScaling();
         synchronized (surfaceChangedWaiter) {
@@ -117,13 +193,56 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
 
     @Override
     public void onDrawFrame(final GL10 gl) {
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-        runAll(runOnDraw);
+        final FrameProfiler profiler = this.profiler;
+        if (profiler != null) {
+            profiler.beginFrame();
+        }
+        // Anything outside the library may have changed the GL state since the last frame
+        GLState.current().invalidate();
+        if (pixelReader != null) {
+            pixelReader.poll();
+            // The buffers of an offscreen render larger than the preview are not kept
+            pixelReader.trim(outputWidth, outputHeight);
+        }
+        GLBackend.current().glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        if (profiler != null) {
+            profiler.beginDrain();
+        }
+        runOnDraw.runAll();
+        if (profiler != null) {
+            profiler.endDrain();
+        }
+        if (externalTextureId != NO_IMAGE) {
+            drawExternalTexture();
+        }
+        // Groups measure each of their passes themselves
+        boolean measurePass = profiler != null && !(filter instanceof GPUImageFilterGroup);
+        if (measurePass) {
+            profiler.beginPass(filter);
+        }
         filter.onDraw(glTextureId, glCubeBuffer, glTextureBuffer);
-        runAll(runOnDrawEnd);
-        if (surfaceTexture != null) {
+        if (measurePass) {
+            profiler.endPass();
+        }
+        runOnDrawEnd.runAll();
+        if (surfaceTexture != null && externalTextureId == NO_IMAGE) {
+            // Only keeps the camera going, the frames come through the preview callback
             surfaceTexture.updateTexImage();
         }
+        if (profiler != null) {
+            profiler.endFrame();
+        }
+    }
+
+    /**
+     * Runs the queued tasks and uploads of the renderer and its filter, so that a single
+     * following {@link #onDrawFrame(GL10)} renders every change made so far. Must be called on
+     * the GL thread, e.g. by {@link PixelBuffer} before drawing its only frame.
+     */
+    public void prepare() {
+        GLState.current().invalidate();
+        runOnDraw.runAll();
+        filter.prepare();
     }
 
     /**
@@ -139,51 +258,134 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
         backgroundBlue = blue;
     }
 
-    private void runAll(Queue<Runnable> queue) {
-        synchronized (queue) {
-            while (!queue.isEmpty()) {
-                queue.poll().run();
-            }
-        }
-    }
-
     @Override
     public void onPreviewFrame(final byte[] data, final Camera camera) {
         final Size previewSize = camera.getParameters().getPreviewSize();
         onPreviewFrame(data, previewSize.width, previewSize.height);
+        if (cameraBuffersAdded) {
+            // The frame was copied, so the camera can fill the buffer again right away
+            int size = previewSize.width * previewSize.height * 3 / 2;
+            camera.addCallbackBuffer(data.length == size ? data : new byte[size]);
+        }
     }
 
+    /**
+     * Takes an NV21 frame. The data is copied before returning, so the caller can reuse the
+     * array right after. Only the latest frame is drawn when the GL thread falls behind, see
+     * {@link #getDroppedPreviewFrameCount()}.
+     */
     public void onPreviewFrame(final byte[] data, final int width, final int height) {
-        if (glRgbBuffer == null) {
-            glRgbBuffer = IntBuffer.allocate(width * height);
-        }
-        if (runOnDraw.isEmpty()) {
-            runOnDraw(new Runnable() {
-                @Override
-                public void run() {
-                    GPUImageNativeLibrary.YUVtoRBGA(data, width, height, glRgbBuffer.array());
-                    glTextureId = OpenGlUtils.loadTexture(glRgbBuffer, width, height, glTextureId);
-
-                    if (imageWidth != width) {
-                        imageWidth = width;
-                        imageHeight = height;
-                        adjustImageScaling();
-                    }
-                }
-            });
+        FrameRing.Frame frame = previewFrames.beginWrite();
+        frame.yuv = convertYuvOnGpu;
+        frame.width = width;
+        frame.height = height;
+        if (frame.yuv) {
+            frame.nv21(width, height).put(data, 0, width * height * 3 / 2);
+        } else {
+            GPUImageNativeLibrary.YUVtoRBGA(data, width, height, frame.rgba(width, height).array());
+        }
+        previewFrames.endWrite();
+        runOnDraw(PREVIEW_FRAME_TASK, uploadLatestPreviewFrame);
+    }
+
+    /**
+     * Takes a YUV_420_888 frame, e.g. from a camera2 ImageReader. The planes are read in place
+     * before returning, so the image can be closed right after.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public void onPreviewFrame(final Image image) {
+        Rect crop = image.getCropRect();
+        // Chroma samples cover 2x2 pixels, so the frame starts and ends on even pixels
+        int left = crop.left & ~1;
+        int top = crop.top & ~1;
+        int width = (crop.right - left) & ~1;
+        int height = (crop.bottom - top) & ~1;
+        Image.Plane[] planes = image.getPlanes();
+
+        FrameRing.Frame frame = previewFrames.beginWrite();
+        frame.yuv = convertYuvOnGpu;
+        frame.width = width;
+        frame.height = height;
+        if (frame.yuv) {
+            GPUImageNativeLibrary.YUV420888toNV21(planes[0].getBuffer(), planes[1].getBuffer(),
+                    planes[2].getBuffer(), planes[0].getRowStride(), planes[1].getRowStride(),
+                    planes[1].getPixelStride(), left, top, width, height,
+                    frame.nv21(width, height));
+        } else {
+            GPUImageNativeLibrary.YUV420888toRBGA(planes[0].getBuffer(), planes[1].getBuffer(),
+                    planes[2].getBuffer(), planes[0].getRowStride(), planes[1].getRowStride(),
+                    planes[1].getPixelStride(), left, top, width, height,
+                    frame.rgba(width, height).array());
+        }
+        previewFrames.endWrite();
+        runOnDraw(PREVIEW_FRAME_TASK, uploadLatestPreviewFrame);
+    }
+
+    /**
+     * Gets the number of camera frames skipped because a newer one arrived before the GL thread
+     * drew them.
+     */
+    public long getDroppedPreviewFrameCount() {
+        return previewFrames.getDroppedFrameCount();
+    }
+
+    /**
+     * Gets the number of camera frames which waited more than two 60 fps frames for the GL
+     * thread.
+     */
+    public long getLatePreviewFrameCount() {
+        return previewFrames.getLateFrameCount();
+    }
+
+    private void uploadPreviewFrame(final ByteBuffer nv21, final IntBuffer rgba, final int width,
+                                    final int height) {
+        FrameProfiler profiler = FrameProfiler.current();
+        if (profiler != null) {
+            profiler.beginUpload();
+        }
+        if (nv21 != null) {
+            if (yuvConverter == null) {
+                yuvConverter = new YuvConverter();
+                yuvConverter.setColorSpace(yuvColorSpace);
+            }
+            if (!textureFromConverter && glTextureId != NO_IMAGE) {
+                GLState.current().deleteTextures(1, new int[]{glTextureId}, 0);
+            }
+            glTextureId = yuvConverter.convert(nv21, width, height);
+            textureFromConverter = true;
+        } else {
+            releaseConvertedTexture();
+            glTextureId = OpenGlUtils.loadTexture(rgba, width, height, glTextureId);
+        }
+        if (profiler != null) {
+            profiler.endUpload();
+        }
+
+        if (imageWidth != width) {
+            imageWidth = width;
+            imageHeight = height;
+            adjustImageScaling();
         }
     }
 
     public void setUpSurfaceTexture(final Camera camera) {
+        final Size previewSize = camera.getParameters().getPreviewSize();
         runOnDraw(new Runnable() {
             @Override
             public void run() {
                 int[] textures = new int[1];
-                GLES20.glGenTextures(1, textures, 0);
+                GLBackend.current().glGenTextures(1, textures, 0);
                 surfaceTexture = new SurfaceTexture(textures[0]);
                 try {
                     camera.setPreviewTexture(surfaceTexture);
-                    camera.setPreviewCallback(GPUImageRenderer.this);
+                    // The camera fills a few buffers handed back after each frame instead of
+                    // allocating a new array for every frame
+                    camera.setPreviewCallbackWithBuffer(GPUImageRenderer.this);
+                    int size = previewSize.width * previewSize.height * 3 / 2;
+                    for (int i = 0; i < CAMERA_BUFFER_COUNT; i++) {
+                        camera.addCallbackBuffer(new byte[size]);
+                    }
+                    cameraBuffersAdded = true;
                     camera.startPreview();
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -192,6 +394,76 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
         });
     }
 
+    /**
+     * Shows the camera preview through the external texture of its SurfaceTexture instead of
+     * preview callbacks, so the frames never pass through the CPU. A pass applying the
+     * SurfaceTexture's transform draws every new frame into the texture the filter reads.
+     */
+    public void setUpCameraTexture(final Camera camera) {
+        final Size previewSize = camera.getParameters().getPreviewSize();
+        runOnDraw(new Runnable() {
+            @Override
+            public void run() {
+                if (surfaceTexture != null) {
+                    surfaceTexture.release();
+                }
+                if (externalTextureId != NO_IMAGE) {
+                    GLBackend.current().glDeleteTextures(1, new int[]{externalTextureId}, 0);
+                }
+                externalTextureId = ExternalTextureConverter.createExternalTexture();
+                externalWidth = previewSize.width;
+                externalHeight = previewSize.height;
+                surfaceTexture = new SurfaceTexture(externalTextureId);
+                surfaceTexture.setOnFrameAvailableListener(
+                        new SurfaceTexture.OnFrameAvailableListener() {
+                            @Override
+                            public void onFrameAvailable(final SurfaceTexture texture) {
+                                externalFrameAvailable = true;
+                            }
+                        });
+                try {
+                    camera.setPreviewTexture(surfaceTexture);
+                    camera.setPreviewCallback(null);
+                    cameraBuffersAdded = false;
+                    camera.startPreview();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private void drawExternalTexture() {
+        if (!externalFrameAvailable) {
+            return;
+        }
+        externalFrameAvailable = false;
+        FrameProfiler profiler = FrameProfiler.current();
+        if (profiler != null) {
+            profiler.beginUpload();
+        }
+        surfaceTexture.updateTexImage();
+        surfaceTexture.getTransformMatrix(externalTransform);
+        if (externalConverter == null) {
+            externalConverter = new ExternalTextureConverter();
+        }
+        if (!textureFromConverter && glTextureId != NO_IMAGE) {
+            GLState.current().deleteTextures(1, new int[]{glTextureId}, 0);
+        }
+        glTextureId = externalConverter.convert(externalTextureId, externalTransform,
+                externalWidth, externalHeight);
+        textureFromConverter = true;
+        if (profiler != null) {
+            profiler.endUpload();
+        }
+
+        if (imageWidth != externalWidth || imageHeight != externalHeight) {
+            imageWidth = externalWidth;
+            imageHeight = externalHeight;
+            adjustImageScaling();
+        }
+    }
+
     public void setFilter(final GPUImageFilter filter) {
         runOnDraw(new Runnable() {
 
@@ -199,11 +471,12 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
             public void run() {
                 final GPUImageFilter oldFilter = GPUImageRenderer.this.filter;
                 GPUImageRenderer.this.filter = filter;
-                if (oldFilter != null) {
+                // Init first so programs shared with the old filter stay in the cache
+                GPUImageRenderer.this.filter.ifNeedInit();
+                if (oldFilter != null && oldFilter != filter) {
                     oldFilter.destroy();
                 }
-                GPUImageRenderer.this.filter.ifNeedInit();
-                GLES20.glUseProgram(GPUImageRenderer.this.filter.getProgram());
+                GLState.current().useProgram(GPUImageRenderer.this.filter.getProgram());
                 GPUImageRenderer.this.filter.onOutputSizeChanged(outputWidth, outputHeight);
             }
         });
@@ -214,7 +487,11 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
 
             @Override
             public void run() {
-                GLES20.glDeleteTextures(1, new int[]{
+                if (textureFromConverter) {
+                    releaseConvertedTexture();
+                    return;
+                }
+                GLState.current().deleteTextures(1, new int[]{
                         glTextureId
                 }, 0);
                 glTextureId = NO_IMAGE;
@@ -222,6 +499,47 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
         });
     }
 
+    /**
+     * Chooses where camera frames passed to {@link #onPreviewFrame(byte[], int, int)} are
+     * converted to RGBA. On the GPU, the default, the planes are uploaded as they are and
+     * converted in a shader; otherwise they are converted by the native library first.
+     */
+    public void setConvertYuvOnGpu(final boolean onGpu) {
+        convertYuvOnGpu = onGpu;
+    }
+
+    /**
+     * Sets the color space used to convert camera frames on the GPU.
+     *
+     * @param colorSpace e.g. {@link YuvConverter#COLOR_SPACE_BT601}
+     */
+    public void setYuvColorSpace(final int colorSpace) {
+        YuvConverter.checkColorSpace(colorSpace);
+        yuvColorSpace = colorSpace;
+        runOnDraw(new Runnable() {
+            @Override
+            public void run() {
+                if (yuvConverter != null) {
+                    yuvConverter.setColorSpace(colorSpace);
+                }
+            }
+        });
+    }
+
+    private void releaseConvertedTexture() {
+        if (textureFromConverter) {
+            // The texture belongs to a converter, so it must not be uploaded into or deleted
+            if (yuvConverter != null) {
+                yuvConverter.release();
+            }
+            if (externalConverter != null) {
+                externalConverter.release();
+            }
+            glTextureId = NO_IMAGE;
+            textureFromConverter = false;
+        }
+    }
+
     public void setImageBitmap(final Bitmap bitmap) {
         setImageBitmap(bitmap, true);
     }
@@ -248,8 +566,16 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
                     addedPadding = 0;
                 }
 
+                releaseConvertedTexture();
+                FrameProfiler profiler = FrameProfiler.current();
+                if (profiler != null) {
+                    profiler.beginUpload();
+                }
                 glTextureId = OpenGlUtils.loadTexture(
                         resizedBitmap != null ? resizedBitmap : bitmap, glTextureId, recycle);
+                if (profiler != null) {
+                    profiler.endUpload();
+                }
                 if (resizedBitmap != null) {
                     resizedBitmap.recycle();
                 }
@@ -348,15 +674,186 @@ public class GPUImageRenderer implements GLSurfaceView.Renderer, GLTextureView.R
         return flipVertical;
     }
 
-    protected void runOnDraw(final Runnable runnable) {
-        synchronized (runOnDraw) {
-            runOnDraw.add(runnable);
+    /**
+     * Enables per-frame profiling of the filter passes, see {@link FrameProfiler}.
+     *
+     * @param profiler the profiler or null to stop profiling
+     */
+    public void setFrameProfiler(final FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public FrameProfiler getFrameProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Gets the queue of tasks run before each frame, e.g. to monitor its depth and wait times.
+     */
+    public RenderTaskQueue getDrawTaskQueue() {
+        return runOnDraw;
+    }
+
+    /**
+     * Gets the queue of tasks run after each frame.
+     */
+    public RenderTaskQueue getDrawEndTaskQueue() {
+        return runOnDrawEnd;
+    }
+
+    /**
+     * Reads the next rendered frame back without waiting for the GPU to finish it, see
+     * {@link PixelReader}.
+     *
+     * @param callback notified on the GL thread, may be null
+     * @param wakeUp   run on the GL thread while the read is in flight to request another frame,
+     *                 may be null if frames are rendered continuously
+     * @return a future of the frame
+     */
+    public Future<Bitmap> readPixelsAsync(final PixelReader.Callback callback,
+                                          final Runnable wakeUp) {
+        final PixelReader.Readback readback = new PixelReader.Readback(callback);
+        runOnDrawEnd(new Runnable() {
+            @Override
+            public void run() {
+                GLState.current().bindFramebuffer(0);
+                read(outputWidth, outputHeight, readback, wakeUp);
+            }
+        });
+        return readback;
+    }
+
+    /**
+     * Renders an image with the current filter into an offscreen framebuffer of the image's
+     * size and reads it back. This happens on the GL thread right before the next preview
+     * frame, so the filter keeps its linked programs and the preview is not disturbed.
+     *
+     * @param bitmap  the image to render or null to reuse the texture of the current image
+     * @param recycle recycle the bitmap once it was uploaded
+     * @param wakeUp  see {@link #readPixelsAsync(PixelReader.Callback, Runnable)}
+     * @return a future of the filtered image
+     */
+    public Future<Bitmap> renderOffscreen(final Bitmap bitmap, final boolean recycle,
+                                          final Runnable wakeUp) {
+        return renderOffscreen(bitmap, recycle, 0, 0, wakeUp);
+    }
+
+    /**
+     * Like {@link #renderOffscreen(Bitmap, boolean, Runnable)}, stretching the image to the
+     * given output size.
+     *
+     * @param width  the output width or 0 for the image's width
+     * @param height the output height or 0 for the image's height
+     */
+    public Future<Bitmap> renderOffscreen(final Bitmap bitmap, final boolean recycle,
+                                          final int width, final int height,
+                                          final Runnable wakeUp) {
+        final PixelReader.Readback readback = new PixelReader.Readback(null);
+        runOnDraw(new Runnable() {
+            @Override
+            public void run() {
+                int outWidth = width > 0 ? width : bitmap != null ? bitmap.getWidth() : imageWidth;
+                int outHeight = height > 0 ? height : bitmap != null ? bitmap.getHeight() : imageHeight;
+                int texture = bitmap != null
+                        ? OpenGlUtils.loadTexture(bitmap, OpenGlUtils.NO_TEXTURE, recycle)
+                        : glTextureId;
+                if (texture == NO_IMAGE || outWidth == 0 || outHeight == 0) {
+                    readback.complete(null);
+                    return;
+                }
+                GLState state = GLState.current();
+                // Groups switch to their framebuffers of the export size, kept from the last
+                // export, and back to the preview's afterwards
+                filter.onOutputSizeChanged(outWidth, outHeight);
+
+                RenderTargetPool pool = renderTargets;
+                RenderTargetPool.RenderTarget target = pool != null
+                        ? pool.acquire(outWidth, outHeight)
+                        : RenderTargetPool.RenderTarget.create(outWidth, outHeight);
+                state.bindFramebuffer(target.getFramebuffer());
+                state.viewport(0, 0, outWidth, outHeight);
+                GLBackend.current().glClear(GLES20.GL_COLOR_BUFFER_BIT);
+                filter.onDraw(texture, offscreenCubeBuffer, getOffscreenTextureBuffer());
+                read(outWidth, outHeight, readback, wakeUp);
+
+                state.bindFramebuffer(0);
+                if (pool != null) {
+                    pool.release(target);
+                } else {
+                    target.delete();
+                }
+                if (bitmap != null) {
+                    state.deleteTextures(1, new int[]{texture}, 0);
+                }
+                // Without a surface there is no preview to restore
+                if (outputWidth > 0 && outputHeight > 0) {
+                    state.viewport(0, 0, outputWidth, outputHeight);
+                    filter.onOutputSizeChanged(outputWidth, outputHeight);
+                }
+            }
+        });
+        return readback;
+    }
+
+    /**
+     * Keeps the framebuffers of {@link #renderOffscreen} for reuse instead of creating new ones
+     * for every image.
+     *
+     * @param pool a pool used only on this renderer's GL thread, or null
+     */
+    public void setRenderTargetPool(final RenderTargetPool pool) {
+        renderTargets = pool;
+    }
+
+    /**
+     * Gets the texture coordinates of offscreen renders, which are flipped like the preview but
+     * not rotated. Only replaced when the flip changes.
+     */
+    private FloatBuffer getOffscreenTextureBuffer() {
+        boolean horizontal = flipHorizontal;
+        boolean vertical = flipVertical;
+        if (offscreenTextureBuffer == null || offscreenFlipHorizontal != horizontal
+                || offscreenFlipVertical != vertical) {
+            offscreenTextureBuffer = createBuffer(
+                    TextureRotationUtil.getRotation(Rotation.NORMAL, horizontal, vertical));
+            offscreenFlipHorizontal = horizontal;
+            offscreenFlipVertical = vertical;
         }
+        return offscreenTextureBuffer;
     }
 
-    protected void runOnDrawEnd(final Runnable runnable) {
-        synchronized (runOnDrawEnd) {
-            runOnDrawEnd.add(runnable);
+    private void read(final int width, final int height, final PixelReader.Readback readback,
+                      final Runnable wakeUp) {
+        if (pixelReader == null) {
+            pixelReader = new PixelReader();
+        }
+        pixelReader.setWakeUp(wakeUp);
+        pixelReader.readInto(width, height, readback);
+        if (wakeUp != null && !readback.isDone()) {
+            wakeUp.run();
         }
     }
+
+    private static FloatBuffer createBuffer(final float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+
+    protected void runOnDraw(final Runnable runnable) {
+        runOnDraw.post(runnable);
+    }
+
+    /**
+     * Runs the task before the next frame, dropping a pending task posted with the same key.
+     */
+    protected void runOnDraw(final Object key, final Runnable runnable) {
+        runOnDraw.post(key, runnable);
+    }
+
+    protected void runOnDrawEnd(final Runnable runnable) {
+        runOnDrawEnd.post(runnable);
+    }
 }
@@ -16,11 +16,13 @@
 
 package jp.co.cyberagent.android.gpuimage;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.hardware.Camera;
+import android.media.Image;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.opengl.GLSurfaceView;
@@ -39,6 +41,8 @@ import android.widget.ProgressBar;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 
 import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
@@ -154,6 +158,20 @@ public class GPUImageView extends FrameLayout {
         gpuImage.setUpCamera(camera, degrees, flipHorizontal, flipVertical);
     }
 
+    /**
+     * Sets up the camera to be connected to GPUImageView through the external texture of a
+     * SurfaceTexture, so that the preview frames never pass through the CPU.
+     *
+     * @param camera         the camera
+     * @param degrees        by how many degrees the image should be rotated
+     * @param flipHorizontal if the image should be flipped horizontally
+     * @param flipVertical   if the image should be flipped vertically
+     */
+    public void setUpCameraTexture(final Camera camera, final int degrees,
+                                   final boolean flipHorizontal, final boolean flipVertical) {
+        gpuImage.setUpCameraTexture(camera, degrees, flipHorizontal, flipVertical);
+    }
+
     /**
      * Update camera preview frame with YUV format data.
      *
@@ -165,6 +183,17 @@ public class GPUImageView extends FrameLayout {
         gpuImage.updatePreviewFrame(data, width, height);
     }
 
+    /**
+     * Update camera preview frame with a YUV_420_888 image, e.g. from a camera2 ImageReader.
+     * The planes are read in place, the image can be closed right after.
+     *
+     * @param image Camera preview image for frame.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public void updatePreviewFrame(Image image) {
+        gpuImage.updatePreviewFrame(image);
+    }
+
     /**
      * Sets the background color
      *
@@ -399,24 +428,22 @@ public class GPUImageView extends FrameLayout {
      * @throws InterruptedException
      */
     public Bitmap capture() throws InterruptedException {
-        final Semaphore waiter = new Semaphore(0);
-
-        final int width = surfaceView.getMeasuredWidth();
-        final int height = surfaceView.getMeasuredHeight();
-
-        // Take picture on OpenGL thread
-        final Bitmap resultBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        gpuImage.runOnGLThread(new Runnable() {
-            @Override
-            public void run() {
-                GPUImageNativeLibrary.adjustBitmap(resultBitmap);
-                waiter.release();
-            }
-        });
-        requestRender();
-        waiter.acquire();
+        try {
+            return captureAsync(null).get();
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
 
-        return resultBitmap;
+    /**
+     * Capture the current image with the size as it is displayed without blocking, so the view
+     * keeps rendering while the pixels are transferred.
+     *
+     * @param callback notified on the GL thread when the capture is done, may be null
+     * @return a future of the current output
+     */
+    public Future<Bitmap> captureAsync(final PixelReader.Callback callback) {
+        return gpuImage.readPixelsAsync(callback);
     }
 
     /**
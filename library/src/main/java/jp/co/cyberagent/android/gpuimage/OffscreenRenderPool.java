@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.ProgramCache;
+import jp.co.cyberagent.android.gpuimage.util.RenderTargetPool;
+
+/**
+ * Renders images with filters on a fixed number of worker threads, each owning a long-lived
+ * offscreen GL context. Workers keep their linked programs and render targets between jobs,
+ * so batches of images are not slowed down by context creation, shader compilation and
+ * framebuffer allocation.
+ * <p>
+ * A filter is initialized on the worker running its job and destroyed afterwards, so it must
+ * not be drawn anywhere else, e.g. in a preview, until its job is done.
+ */
+public class OffscreenRenderPool {
+    public static final int PRIORITY_LOW = -1;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+
+    private static final int MAX_FREE_TARGETS = 2;
+
+    private final PriorityBlockingQueue<RenderJob> jobs = new PriorityBlockingQueue<>();
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean shutdown;
+
+    /**
+     * @param threadCount the number of worker threads and GL contexts
+     */
+    public OffscreenRenderPool(final int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        for (int i = 0; i < threadCount; i++) {
+            Worker worker = new Worker("OffscreenRenderPool-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Renders a bitmap at its own size with normal priority.
+     */
+    public Future<Bitmap> submit(final Bitmap bitmap, final GPUImageFilter filter) {
+        return submit(bitmap, filter, 0, 0, PRIORITY_NORMAL);
+    }
+
+    /**
+     * Queues a job. Jobs of higher priority run first, jobs of the same priority in the order
+     * they were submitted. Cancelling a job which has not started yet skips it.
+     *
+     * @param bitmap   the image to render, it is not recycled
+     * @param filter   the filter to apply
+     * @param width    the output width or 0 for the bitmap's width
+     * @param height   the output height or 0 for the bitmap's height
+     * @param priority e.g. {@link #PRIORITY_NORMAL}
+     * @return a future of the filtered image
+     */
+    public Future<Bitmap> submit(final Bitmap bitmap, final GPUImageFilter filter,
+                                 final int width, final int height, final int priority) {
+        if (shutdown) {
+            throw new IllegalStateException("The pool was shut down");
+        }
+        RenderJob job = new RenderJob(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws Exception {
+                return ((Worker) Thread.currentThread()).render(bitmap, filter, width, height);
+            }
+        }, priority, sequence.getAndIncrement());
+        jobs.add(job);
+        return job;
+    }
+
+    /**
+     * @return the number of jobs waiting for a worker
+     */
+    public int getQueuedJobCount() {
+        return jobs.size();
+    }
+
+    /**
+     * Cancels the queued jobs and releases the GL contexts once the running jobs are done.
+     */
+    public void shutdown() {
+        shutdown = true;
+        RenderJob job;
+        while ((job = jobs.poll()) != null) {
+            job.cancel(false);
+        }
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private static final class RenderJob extends FutureTask<Bitmap>
+            implements Comparable<RenderJob> {
+        private final int priority;
+        private final long sequence;
+
+        RenderJob(final Callable<Bitmap> callable, final int priority, final long sequence) {
+            super(callable);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final RenderJob other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private final class Worker extends Thread {
+        private GPUImageRenderer renderer;
+        private GPUImageFilter idleFilter;
+
+        Worker(final String name) {
+            super(name);
+        }
+
+        @Override
+        public void run() {
+            PixelBuffer buffer = new PixelBuffer(1, 1);
+            RenderTargetPool targets = new RenderTargetPool(MAX_FREE_TARGETS);
+            idleFilter = new GPUImageFilter();
+            renderer = new GPUImageRenderer(idleFilter);
+            renderer.setRenderTargetPool(targets);
+            renderer.onSurfaceCreated(null, null);
+            // After onSurfaceCreated, which resets the settings of the new context
+            ProgramCache.setKeepUnused(true);
+            try {
+                while (!shutdown) {
+                    RenderJob job;
+                    try {
+                        job = jobs.take();
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    job.run();
+                    // A job cancelled while running may have interrupted this thread
+                    Thread.interrupted();
+                }
+            } finally {
+                idleFilter.destroy();
+                targets.clear();
+                ProgramCache.setKeepUnused(false);
+                buffer.destroy();
+            }
+        }
+
+        Bitmap render(final Bitmap bitmap, final GPUImageFilter filter, final int width,
+                      final int height) throws Exception {
+            renderer.setFilter(filter);
+            Future<Bitmap> result = renderer.renderOffscreen(bitmap, false, width, height, null);
+            try {
+                renderer.prepare();
+                return result.get();
+            } finally {
+                // The programs stay linked for the next job, the filter is free again
+                renderer.setFilter(idleFilter);
+                renderer.prepare();
+            }
+        }
+    }
+}
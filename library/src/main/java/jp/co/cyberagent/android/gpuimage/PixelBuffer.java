@@ -12,6 +12,8 @@ import android.graphics.Bitmap;
 import android.opengl.GLSurfaceView;
 import android.util.Log;
 
+import java.util.concurrent.Future;
+
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.egl.EGLContext;
@@ -38,6 +40,7 @@ public class PixelBuffer {
     private GLSurfaceView.Renderer renderer; // borrow this interface
     private int width, height;
     private Bitmap bitmap;
+    private PixelReader pixelReader;
 
     private EGL10 egl10;
     private EGLDisplay eglDisplay;
@@ -47,7 +50,7 @@ public class PixelBuffer {
     private EGLSurface eglSurface;
     private GL10 gl10;
 
-    private String mThreadOwner;
+    private Thread mThreadOwner;
 
     public PixelBuffer(final int width, final int height) {
         this.width = width;
@@ -82,14 +85,14 @@ public class PixelBuffer {
         gl10 = (GL10) eglContext.getGL();
 
         // Record thread owner of OpenGL context
-        mThreadOwner = Thread.currentThread().getName();
+        mThreadOwner = Thread.currentThread();
     }
 
     public void setRenderer(final GLSurfaceView.Renderer renderer) {
         this.renderer = renderer;
 
         // Does this thread own the OpenGL context?
-        if (!Thread.currentThread().getName().equals(mThreadOwner)) {
+        if (Thread.currentThread() != mThreadOwner) {
             Log.e(TAG, "setRenderer: This thread does not own the OpenGL context.");
             return;
         }
@@ -107,22 +110,57 @@ public class PixelBuffer {
         }
 
         // Does this thread own the OpenGL context?
-        if (!Thread.currentThread().getName().equals(mThreadOwner)) {
+        if (Thread.currentThread() != mThreadOwner) {
             Log.e(TAG, "getBitmap: This thread does not own the OpenGL context.");
             return null;
         }
 
-        // Call the renderer draw routine (it seems that some filters do not
-        // work if this is only called once)
-        renderer.onDrawFrame(gl10);
-        renderer.onDrawFrame(gl10);
+        drawFrame();
         convertToBitmap();
         return bitmap;
     }
 
+    /**
+     * Renders like {@link #getBitmap()} but reads the pixels back asynchronously where the
+     * context supports it, so the next image can be rendered while they are transferred.
+     * Calling get() on the returned future from the owning thread waits for the pixels.
+     *
+     * @return a future of the rendered bitmap or null if rendering is not possible
+     */
+    public Future<Bitmap> getBitmapAsync() {
+        // Do we have a renderer?
+        if (renderer == null) {
+            Log.e(TAG, "getBitmapAsync: Renderer was not set.");
+            return null;
+        }
+
+        // Does this thread own the OpenGL context?
+        if (Thread.currentThread() != mThreadOwner) {
+            Log.e(TAG, "getBitmapAsync: This thread does not own the OpenGL context.");
+            return null;
+        }
+
+        if (pixelReader == null) {
+            pixelReader = new PixelReader();
+        }
+        pixelReader.poll();
+        drawFrame();
+        return pixelReader.read(width, height, null);
+    }
+
     public void destroy() {
-        renderer.onDrawFrame(gl10);
-        renderer.onDrawFrame(gl10);
+        // Run the queued cleanup, e.g. deleting the image texture
+        if (renderer instanceof GPUImageRenderer) {
+            ((GPUImageRenderer) renderer).prepare();
+        } else if (renderer != null) {
+            renderer.onDrawFrame(gl10);
+            renderer.onDrawFrame(gl10);
+        }
+        if (pixelReader != null) {
+            pixelReader.release();
+            pixelReader = null;
+        }
+        GPUImageRenderer.forgetContext(eglContext);
         egl10.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE,
                 EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
 
@@ -131,6 +169,18 @@ public class PixelBuffer {
         egl10.eglTerminate(eglDisplay);
     }
 
+    private void drawFrame() {
+        if (renderer instanceof GPUImageRenderer) {
+            // Apply every pending change up front, so one draw is enough
+            ((GPUImageRenderer) renderer).prepare();
+            renderer.onDrawFrame(gl10);
+        } else {
+            // Other renderers may only pick up their pending changes in the first draw
+            renderer.onDrawFrame(gl10);
+            renderer.onDrawFrame(gl10);
+        }
+    }
+
     private EGLConfig chooseConfig() {
         int[] attribList = new int[]{
                 EGL_DEPTH_SIZE, 0,
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+
+/**
+ * Reads the bound framebuffer back into bitmaps without stalling the GL pipeline. On OpenGL
+ * ES 3.0 the pixels are copied into one of two pixel pack buffers and a fence is inserted; the
+ * bitmap is filled once the GPU has passed the fence, which {@link #poll()} checks without
+ * blocking. On OpenGL ES 2.0 the pixels are read synchronously, as before.
+ * <p>
+ * A reader belongs to the GL context current when it was created and must only be used on its
+ * thread.
+ */
+public class PixelReader {
+    private static final int BUFFER_COUNT = 2;
+    private static final long WAIT_NANOS = 1000000L;
+
+    public interface Callback {
+        /**
+         * Called on the GL thread when the pixels were read.
+         *
+         * @param bitmap the pixels or null if the read failed, e.g. because the context was lost
+         */
+        void onPixelsRead(Bitmap bitmap);
+    }
+
+    private final boolean async;
+    private final Thread glThread;
+    private final int[] packBuffers = new int[BUFFER_COUNT];
+    private final int[] packBufferSizes = new int[BUFFER_COUNT];
+    private final ArrayDeque<Readback> pending = new ArrayDeque<>();
+    private int nextBuffer;
+    private ByteBuffer flipBuffer;
+    private Runnable wakeUp;
+
+    /**
+     * Creates a reader for the GL context current on the calling thread.
+     */
+    public PixelReader() {
+        async = isAsyncSupported();
+        glThread = Thread.currentThread();
+    }
+
+    /**
+     * Checks whether the context current on the calling thread can read pixels asynchronously.
+     */
+    public static boolean isAsyncSupported() {
+        return GLBackend.current().isGLES3();
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Sets the action run by {@link #poll()} while reads are still in flight, e.g. requesting
+     * another frame from a view which only renders when dirty.
+     */
+    public void setWakeUp(final Runnable wakeUp) {
+        this.wakeUp = wakeUp;
+    }
+
+    /**
+     * Starts reading the bound framebuffer.
+     *
+     * @param callback notified on the GL thread, may be null
+     * @return a future of the bitmap; calling get() on the GL thread finishes the read at once
+     */
+    public Future<Bitmap> read(final int width, final int height, final Callback callback) {
+        Readback readback = new Readback(callback);
+        readInto(width, height, readback);
+        return readback;
+    }
+
+    /**
+     * Starts reading the bound framebuffer into a readback created ahead of time, so that its
+     * future can be handed out before the read is issued on the GL thread.
+     */
+    void readInto(final int width, final int height, final Readback readback) {
+        readback.reader = this;
+        readback.width = width;
+        readback.height = height;
+        if (!async) {
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            GPUImageNativeLibrary.adjustBitmap(bitmap);
+            readback.complete(bitmap);
+            return;
+        }
+        startRead(readback);
+    }
+
+    /**
+     * Finishes the reads the GPU is done with, without blocking. Call on the GL thread, e.g. at
+     * the start of every frame.
+     */
+    public void poll() {
+        while (!pending.isEmpty()) {
+            Readback readback = pending.peekFirst();
+            if (!isSignaled(readback.fence, 0, 0)) {
+                break;
+            }
+            pending.removeFirst();
+            finishRead(readback);
+        }
+        if (!pending.isEmpty() && wakeUp != null) {
+            wakeUp.run();
+        }
+    }
+
+    /**
+     * Waits for and finishes every read in flight.
+     */
+    public void finishAll() {
+        while (!pending.isEmpty()) {
+            waitFor(pending.peekFirst());
+        }
+    }
+
+    /**
+     * Deletes the pixel pack buffers. Reads in flight are finished first.
+     */
+    public void release() {
+        finishAll();
+        if (async && packBuffers[0] != 0) {
+            GLBackend.current().glDeleteBuffers(BUFFER_COUNT, packBuffers, 0);
+            packBuffers[0] = 0;
+            packBuffers[1] = 0;
+        }
+        flipBuffer = null;
+    }
+
+    /**
+     * Deletes the pixel pack buffers and the flip buffer if they are larger than reads of the
+     * given size need, unless reads are in flight. A reader which read a larger size once, e.g.
+     * for an export, so goes back to the memory of its usual reads.
+     */
+    public void trim(final int width, final int height) {
+        if (!pending.isEmpty()) {
+            return;
+        }
+        int size = width * height * 4;
+        if (packBufferSizes[0] > size || packBufferSizes[1] > size) {
+            release();
+            packBufferSizes[0] = 0;
+            packBufferSizes[1] = 0;
+        } else if (flipBuffer != null && flipBuffer.capacity() > size) {
+            flipBuffer = null;
+        }
+    }
+
+    /**
+     * Fails the reads in flight without touching GL, for when the context was lost.
+     */
+    public void abandon() {
+        while (!pending.isEmpty()) {
+            pending.removeFirst().complete(null);
+        }
+        packBuffers[0] = 0;
+        packBuffers[1] = 0;
+    }
+
+    private void startRead(final Readback readback) {
+        GLBackend gl = GLBackend.current();
+        if (pending.size() == BUFFER_COUNT) {
+            // Both buffers are in flight, the oldest one is the next to be reused
+            waitFor(pending.peekFirst());
+        }
+        if (packBuffers[0] == 0) {
+            gl.glGenBuffers(BUFFER_COUNT, packBuffers, 0);
+            packBufferSizes[0] = 0;
+            packBufferSizes[1] = 0;
+        }
+        int index = nextBuffer;
+        nextBuffer = (nextBuffer + 1) % BUFFER_COUNT;
+        int size = readback.width * readback.height * 4;
+        gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, packBuffers[index]);
+        if (packBufferSizes[index] != size) {
+            gl.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, size, null, GLES30.GL_STREAM_READ);
+            packBufferSizes[index] = size;
+        }
+        gl.glReadPixels(0, 0, readback.width, readback.height,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+        gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        readback.buffer = index;
+        readback.fence = gl.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        // Make sure the fence reaches the GPU even if no frame follows
+        gl.glFlush();
+        pending.addLast(readback);
+    }
+
+    private void waitFor(final Readback readback) {
+        while (pending.contains(readback)) {
+            Readback oldest = pending.peekFirst();
+            while (!isSignaled(oldest.fence, GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_NANOS)) {
+                // Keep waiting, the GPU is still busy
+            }
+            pending.removeFirst();
+            finishRead(oldest);
+        }
+    }
+
+    private static boolean isSignaled(final long fence, final int flags, final long timeout) {
+        int status = GLBackend.current().glClientWaitSync(fence, flags, timeout);
+        // A failed wait is treated as done rather than waited on forever
+        return status == GLES30.GL_ALREADY_SIGNALED || status == GLES30.GL_CONDITION_SATISFIED
+                || status == GLES30.GL_WAIT_FAILED;
+    }
+
+    private void finishRead(final Readback readback) {
+        GLBackend gl = GLBackend.current();
+        gl.glDeleteSync(readback.fence);
+        int width = readback.width;
+        int height = readback.height;
+        int rowSize = width * 4;
+        int size = rowSize * height;
+        gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, packBuffers[readback.buffer]);
+        ByteBuffer pixels = gl.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER, 0, size,
+                GLES30.GL_MAP_READ_BIT);
+        if (pixels == null) {
+            gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+            readback.complete(null);
+            return;
+        }
+        if (flipBuffer == null || flipBuffer.capacity() < size) {
+            flipBuffer = ByteBuffer.allocateDirect(size);
+        }
+        // GL rows start at the bottom, bitmap rows at the top
+        flipBuffer.clear();
+        for (int row = height - 1; row >= 0; row--) {
+            pixels.limit((row + 1) * rowSize).position(row * rowSize);
+            flipBuffer.put(pixels);
+        }
+        gl.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+        gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        flipBuffer.flip();
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.copyPixelsFromBuffer(flipBuffer);
+        readback.complete(bitmap);
+    }
+
+    /**
+     * A read in flight, completed on the GL thread.
+     */
+    static class Readback implements Future<Bitmap> {
+        private final Callback callback;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile PixelReader reader;
+        private volatile Bitmap bitmap;
+        private int width;
+        private int height;
+        private int buffer;
+        private long fence;
+
+        Readback(final Callback callback) {
+            this.callback = callback;
+        }
+
+        void complete(final Bitmap bitmap) {
+            this.bitmap = bitmap;
+            done.countDown();
+            if (callback != null) {
+                callback.onPixelsRead(bitmap);
+            }
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public Bitmap get() throws InterruptedException, ExecutionException {
+            if (!finishOnGLThread()) {
+                done.await();
+            }
+            return result();
+        }
+
+        @Override
+        public Bitmap get(final long timeout, final TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!finishOnGLThread() && !done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private boolean finishOnGLThread() {
+            PixelReader reader = this.reader;
+            if (reader == null || reader.glThread != Thread.currentThread()) {
+                return false;
+            }
+            // Waiting for the GL thread on itself would never end
+            reader.waitFor(this);
+            return true;
+        }
+
+        private Bitmap result() throws ExecutionException {
+            if (bitmap == null) {
+                throw new ExecutionException(new CancellationException("The pixels were not read"));
+            }
+            return bitmap;
+        }
+    }
+}
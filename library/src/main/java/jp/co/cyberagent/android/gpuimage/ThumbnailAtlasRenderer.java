@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+import jp.co.cyberagent.android.gpuimage.util.ProgramCache;
+import jp.co.cyberagent.android.gpuimage.util.RenderTargetPool;
+
+import static jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil.TEXTURE_NO_ROTATION;
+
+/**
+ * Renders small previews of one image with many filters, e.g. for a filter picker. The image
+ * is scaled down and uploaded once, every filter draws into its own cell of an atlas and the
+ * atlas is read back at once. Atlases larger than the maximum texture size are split into
+ * pages; a page is delivered while the next one is drawn.
+ */
+public class ThumbnailAtlasRenderer {
+
+    public interface Listener {
+        /**
+         * Called on the rendering thread for every filter, in order.
+         *
+         * @param index  the index of the filter
+         * @param atlas  the page of the atlas holding the thumbnail, shared by other filters
+         * @param bounds the thumbnail's cell in the atlas
+         */
+        void onThumbnail(int index, Bitmap atlas, Rect bounds);
+    }
+
+    private ThumbnailAtlasRenderer() {
+    }
+
+    /**
+     * Renders the thumbnails on the calling thread, which must not have a current GL context.
+     * The filters are destroyed afterwards.
+     *
+     * @param bitmap  the source image
+     * @param filters the filters to preview
+     * @param maxSize the size of the longer side of a thumbnail
+     * @param listener notified as soon as each thumbnail is available
+     */
+    public static void render(final Bitmap bitmap, final List<GPUImageFilter> filters,
+                              final int maxSize, final Listener listener) {
+        GLBackend gl = GLBackend.current();
+        if (filters.isEmpty()) {
+            return;
+        }
+        float scale = Math.min(1f, (float) maxSize / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        int cellWidth = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int cellHeight = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        Bitmap thumbnail = Bitmap.createScaledBitmap(bitmap, cellWidth, cellHeight, true);
+
+        PixelBuffer buffer = new PixelBuffer(1, 1);
+        GLState state = GLState.current();
+        state.invalidate();
+        ProgramCache.setKeepUnused(true);
+        int[] maxTextureSize = new int[1];
+        gl.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, maxTextureSize, 0);
+
+        int count = filters.size();
+        int columns = Math.max(1, Math.min(count, maxTextureSize[0] / cellWidth));
+        int rows = Math.max(1, Math.min((count + columns - 1) / columns,
+                maxTextureSize[0] / cellHeight));
+        int pageWidth = columns * cellWidth;
+        int pageHeight = rows * cellHeight;
+        int cellsPerPage = columns * rows;
+
+        int texture = OpenGlUtils.loadTexture(thumbnail, OpenGlUtils.NO_TEXTURE, thumbnail != bitmap);
+        RenderTargetPool.RenderTarget target = RenderTargetPool.RenderTarget.create(pageWidth, pageHeight);
+        FloatBuffer cubeBuffer = createBuffer(GPUImageRenderer.CUBE);
+        FloatBuffer textureBuffer = createBuffer(TEXTURE_NO_ROTATION);
+        PixelReader reader = new PixelReader();
+        try {
+            Future<Bitmap> previousPage = null;
+            int previousStart = 0;
+            for (int start = 0; start < count; start += cellsPerPage) {
+                state.bindFramebuffer(target.getFramebuffer());
+                state.viewport(0, 0, pageWidth, pageHeight);
+                gl.glClearColor(0, 0, 0, 0);
+                gl.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+                int end = Math.min(count, start + cellsPerPage);
+                for (int i = start; i < end; i++) {
+                    int cell = i - start;
+                    GPUImageFilter filter = filters.get(i);
+                    filter.ifNeedInit();
+                    filter.onOutputSizeChanged(cellWidth, cellHeight);
+                    filter.prepare();
+                    // Rows are read back bottom up, so the first row of cells is at the top
+                    state.bindFramebuffer(target.getFramebuffer());
+                    state.viewport(cell % columns * cellWidth,
+                            pageHeight - (cell / columns + 1) * cellHeight, cellWidth, cellHeight);
+                    filter.onDraw(texture, cubeBuffer, textureBuffer);
+                    filter.destroy();
+                }
+                Future<Bitmap> page = reader.read(pageWidth, pageHeight, null);
+                if (previousPage != null) {
+                    deliver(previousPage, previousStart, cellsPerPage, columns, cellWidth,
+                            cellHeight, count, listener);
+                }
+                previousPage = page;
+                previousStart = start;
+            }
+            deliver(previousPage, previousStart, cellsPerPage, columns, cellWidth, cellHeight,
+                    count, listener);
+        } finally {
+            reader.release();
+            target.delete();
+            state.deleteTextures(1, new int[]{texture}, 0);
+            ProgramCache.setKeepUnused(false);
+            buffer.destroy();
+        }
+    }
+
+    private static void deliver(final Future<Bitmap> page, final int start, final int cellsPerPage,
+                                final int columns, final int cellWidth, final int cellHeight,
+                                final int count, final Listener listener) {
+        Bitmap atlas;
+        try {
+            atlas = page.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            return;
+        }
+        int end = Math.min(count, start + cellsPerPage);
+        for (int i = start; i < end; i++) {
+            int cell = i - start;
+            int left = cell % columns * cellWidth;
+            int top = cell / columns * cellHeight;
+            listener.onThumbnail(i, atlas, new Rect(left, top, left + cellWidth, top + cellHeight));
+        }
+    }
+
+    private static FloatBuffer createBuffer(final float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+}
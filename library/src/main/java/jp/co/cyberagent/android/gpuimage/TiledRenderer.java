@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ExecutionException;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+import jp.co.cyberagent.android.gpuimage.util.RenderTargetPool;
+
+import static jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil.TEXTURE_NO_ROTATION;
+
+/**
+ * Applies a filter to images too large for a single texture or framebuffer. The image is
+ * split into tiles which are decoded one at a time, grown by the filter's
+ * {@link GPUImageFilter#getSamplingRadius() sampling radius} so that every output pixel sees
+ * the same neighbourhood as in a single pass, filtered and cropped back. Only one tile is held
+ * in memory at a time unless the output is stitched into one bitmap.
+ * <p>
+ * The tiles are drawn in a context of their own, so the filter must not be initialized, i.e.
+ * not be drawn by a preview at the same time. It is initialized for the tiles and destroyed
+ * once they are done.
+ */
+public class TiledRenderer {
+    private static final int DEFAULT_TILE_SIZE = 2048;
+
+    public interface TileListener {
+        /**
+         * Called on the rendering thread for every filtered tile, row by row.
+         *
+         * @param tile   the filtered pixels, owned by the listener
+         * @param bounds the position of the tile in the image
+         */
+        void onTile(Bitmap tile, Rect bounds);
+    }
+
+    private interface RegionSource {
+        int getWidth();
+
+        int getHeight();
+
+        Bitmap decodeRegion(Rect region);
+
+        void releaseRegion(Bitmap region);
+    }
+
+    private TiledRenderer() {
+    }
+
+    /**
+     * Filters a decoder's image into one bitmap of the full size.
+     */
+    public static Bitmap render(final BitmapRegionDecoder decoder, final GPUImageFilter filter) {
+        final Bitmap result = Bitmap.createBitmap(decoder.getWidth(), decoder.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(result);
+        render(decoder, filter, DEFAULT_TILE_SIZE, new TileListener() {
+            @Override
+            public void onTile(final Bitmap tile, final Rect bounds) {
+                canvas.drawBitmap(tile, bounds.left, bounds.top, null);
+                tile.recycle();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Filters a decoder's image tile by tile, decoding each region only when it is drawn.
+     *
+     * @param tileSize the largest tile side including the margin, capped by the GL limits
+     * @throws IllegalArgumentException if the filter can not be rendered in tiles or is
+     *                                  initialized
+     */
+    public static void render(final BitmapRegionDecoder decoder, final GPUImageFilter filter,
+                              final int tileSize, final TileListener listener) {
+        render(new RegionSource() {
+            @Override
+            public int getWidth() {
+                return decoder.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return decoder.getHeight();
+            }
+
+            @Override
+            public Bitmap decodeRegion(final Rect region) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                return decoder.decodeRegion(region, options);
+            }
+
+            @Override
+            public void releaseRegion(final Bitmap region) {
+                region.recycle();
+            }
+        }, filter, tileSize, listener);
+    }
+
+    /**
+     * Filters a bitmap which is larger than the GL limits tile by tile.
+     *
+     * @throws IllegalArgumentException if the filter can not be rendered in tiles or is
+     *                                  initialized
+     */
+    public static void render(final Bitmap bitmap, final GPUImageFilter filter,
+                              final int tileSize, final TileListener listener) {
+        render(new RegionSource() {
+            @Override
+            public int getWidth() {
+                return bitmap.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return bitmap.getHeight();
+            }
+
+            @Override
+            public Bitmap decodeRegion(final Rect region) {
+                return Bitmap.createBitmap(bitmap, region.left, region.top,
+                        region.width(), region.height());
+            }
+
+            @Override
+            public void releaseRegion(final Bitmap region) {
+                // A region covering the whole bitmap is the bitmap itself
+                if (region != bitmap) {
+                    region.recycle();
+                }
+            }
+        }, filter, tileSize, listener);
+    }
+
+    private static void render(final RegionSource source, final GPUImageFilter filter,
+                               final int tileSize, final TileListener listener) {
+        GLBackend gl = GLBackend.current();
+        int margin = filter.getSamplingRadius();
+        if (margin == GPUImageFilter.SAMPLING_RADIUS_UNBOUNDED) {
+            throw new IllegalArgumentException(filter.getClass().getSimpleName()
+                    + " depends on the whole image and can not be rendered in tiles");
+        }
+        if (filter.isInitialized()) {
+            // Its programs and textures belong to another context, which the tiles can not use
+            throw new IllegalArgumentException(filter.getClass().getSimpleName()
+                    + " is initialized in another context, pass a filter which is not drawn");
+        }
+
+        PixelBuffer buffer = new PixelBuffer(1, 1);
+        GLState state = GLState.current();
+        state.invalidate();
+        int[] limits = new int[2];
+        gl.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, limits, 0);
+        gl.glGetIntegerv(GLES20.GL_MAX_RENDERBUFFER_SIZE, limits, 1);
+        int paddedSize = Math.min(tileSize, Math.min(limits[0], limits[1]));
+        int step = paddedSize - 2 * margin;
+        if (step <= 0) {
+            buffer.destroy();
+            throw new IllegalArgumentException("The tiles are too small for a margin of "
+                    + margin + " pixels");
+        }
+
+        FloatBuffer cubeBuffer = createBuffer(GPUImageRenderer.CUBE);
+        FloatBuffer textureBuffer = createBuffer(TEXTURE_NO_ROTATION);
+        RenderTargetPool targets = new RenderTargetPool(1);
+        PixelReader reader = new PixelReader();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int outputWidth = 0;
+        int outputHeight = 0;
+        try {
+            filter.ifNeedInit();
+            for (int top = 0; top < height; top += step) {
+                for (int left = 0; left < width; left += step) {
+                    Rect bounds = new Rect(left, top, Math.min(width, left + step),
+                            Math.min(height, top + step));
+                    // Edge tiles are not grown beyond the image, where sampling clamps anyway
+                    Rect padded = new Rect(Math.max(0, bounds.left - margin),
+                            Math.max(0, bounds.top - margin),
+                            Math.min(width, bounds.right + margin),
+                            Math.min(height, bounds.bottom + margin));
+
+                    Bitmap region = source.decodeRegion(padded);
+                    int texture = OpenGlUtils.loadTexture(region, OpenGlUtils.NO_TEXTURE, false);
+                    source.releaseRegion(region);
+                    if (padded.width() != outputWidth || padded.height() != outputHeight) {
+                        outputWidth = padded.width();
+                        outputHeight = padded.height();
+                        filter.onOutputSizeChanged(outputWidth, outputHeight);
+                    }
+                    filter.prepare();
+                    RenderTargetPool.RenderTarget target = targets.acquire(outputWidth, outputHeight);
+                    state.bindFramebuffer(target.getFramebuffer());
+                    state.viewport(0, 0, outputWidth, outputHeight);
+                    filter.onDraw(texture, cubeBuffer, textureBuffer);
+                    Bitmap filtered = reader.read(outputWidth, outputHeight, null).get();
+                    targets.release(target);
+                    state.deleteTextures(1, new int[]{texture}, 0);
+
+                    Bitmap tile = Bitmap.createBitmap(filtered, bounds.left - padded.left,
+                            bounds.top - padded.top, bounds.width(), bounds.height());
+                    if (tile != filtered) {
+                        filtered.recycle();
+                    }
+                    listener.onTile(tile, bounds);
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Reading a tile failed", e);
+        } finally {
+            // Only what was initialized above, the filter came in uninitialized
+            filter.destroy();
+            reader.release();
+            targets.clear();
+            buffer.destroy();
+        }
+    }
+
+    private static FloatBuffer createBuffer(final float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter;
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
+import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+import jp.co.cyberagent.android.gpuimage.util.RenderTargetPool;
+
+/**
+ * Converts camera frames to RGBA on the GPU. The luma plane is uploaded as a GL_LUMINANCE
+ * texture and the interleaved chroma plane as a GL_LUMINANCE_ALPHA texture of half the size,
+ * which a single pass converts into an RGBA texture the filters sample like any image.
+ * <p>
+ * A converter belongs to the GL context it is used in and must only be used on its thread.
+ */
+public class YuvConverter {
+    /**
+     * ITU-R BT.601 with luma in [16, 235], as produced by most camera HALs.
+     */
+    public static final int COLOR_SPACE_BT601 = 0;
+    /**
+     * ITU-R BT.601 with luma in [0, 255], as used by JPEG.
+     */
+    public static final int COLOR_SPACE_BT601_FULL_RANGE = 1;
+    /**
+     * ITU-R BT.709 with luma in [16, 235], as used by HD video.
+     */
+    public static final int COLOR_SPACE_BT709 = 2;
+
+    // Column major, applied to (Y, U, V) after the offsets were subtracted
+    private static final float[][] CONVERSION_MATRICES = {
+            {
+                    1.164f, 1.164f, 1.164f,
+                    0.0f, -0.392f, 2.017f,
+                    1.596f, -0.813f, 0.0f
+            },
+            {
+                    1.0f, 1.0f, 1.0f,
+                    0.0f, -0.344f, 1.772f,
+                    1.402f, -0.714f, 0.0f
+            },
+            {
+                    1.164f, 1.164f, 1.164f,
+                    0.0f, -0.213f, 2.112f,
+                    1.793f, -0.533f, 0.0f
+            }
+    };
+    private static final float[][] CONVERSION_OFFSETS = {
+            {16.0f / 255.0f, 0.5f, 0.5f},
+            {0.0f, 0.5f, 0.5f},
+            {16.0f / 255.0f, 0.5f, 0.5f}
+    };
+
+    // Draws the image's first row into the target's first row, like an uploaded bitmap
+    private static final float[] TEXTURE_COORDINATES = {
+            0.0f, 0.0f,
+            1.0f, 0.0f,
+            0.0f, 1.0f,
+            1.0f, 1.0f,
+    };
+
+    private static final String CONVERSION_FRAGMENT_SHADER = "" +
+            "varying highp vec2 textureCoordinate;\n" +
+            " \n" +
+            "uniform sampler2D inputImageTexture;\n" +
+            "uniform sampler2D chromaTexture;\n" +
+            "uniform mediump mat3 conversionMatrix;\n" +
+            "uniform mediump vec3 conversionOffset;\n" +
+            " \n" +
+            "void main()\n" +
+            "{\n" +
+            "     mediump vec3 yuv;\n" +
+            "     yuv.x = texture2D(inputImageTexture, textureCoordinate).r;\n" +
+            "     // NV21 stores V before U, in the luminance and alpha channels\n" +
+            "     yuv.yz = texture2D(chromaTexture, textureCoordinate).ar;\n" +
+            "     gl_FragColor = vec4(conversionMatrix * (yuv - conversionOffset), 1.0);\n" +
+            "}";
+
+    private final ConversionFilter filter = new ConversionFilter();
+    private final FloatBuffer cubeBuffer;
+    private final FloatBuffer textureBuffer;
+    private final int[] viewport = new int[4];
+    private int lumaTexture = OpenGlUtils.NO_TEXTURE;
+    private int chromaTexture = OpenGlUtils.NO_TEXTURE;
+    private RenderTargetPool.RenderTarget target;
+    private int width;
+    private int height;
+
+    public YuvConverter() {
+        cubeBuffer = createBuffer(GPUImageRenderer.CUBE);
+        textureBuffer = createBuffer(TEXTURE_COORDINATES);
+    }
+
+    /**
+     * Sets the color space of the frames, {@link #COLOR_SPACE_BT601} by default.
+     */
+    public void setColorSpace(final int colorSpace) {
+        checkColorSpace(colorSpace);
+        filter.setColorSpace(colorSpace);
+    }
+
+    static void checkColorSpace(final int colorSpace) {
+        if (colorSpace < COLOR_SPACE_BT601 || colorSpace > COLOR_SPACE_BT709) {
+            throw new IllegalArgumentException("Unknown color space " + colorSpace);
+        }
+    }
+
+    /**
+     * Uploads an NV21 frame and converts it. The framebuffer and viewport bound before are
+     * bound again afterwards.
+     *
+     * @return the RGBA texture, owned by the converter and reused for the next frame
+     */
+    public int convert(final byte[] nv21, final int width, final int height) {
+        return convert(ByteBuffer.wrap(nv21), width, height);
+    }
+
+    /**
+     * Like {@link #convert(byte[], int, int)}, with the frame starting at the buffer's position.
+     */
+    public int convert(final ByteBuffer nv21, final int width, final int height) {
+        GLBackend gl = GLBackend.current();
+        GLState state = GLState.current();
+        if (width != this.width || height != this.height) {
+            release();
+            this.width = width;
+            this.height = height;
+        }
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        // Rows of the planes are tightly packed and not aligned to 4 bytes
+        gl.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        ByteBuffer planes = nv21.duplicate();
+        int start = planes.position();
+        lumaTexture = uploadPlane(lumaTexture, GLES20.GL_LUMINANCE, width, height, planes);
+        planes.position(start + width * height);
+        chromaTexture = uploadPlane(chromaTexture, GLES20.GL_LUMINANCE_ALPHA, chromaWidth,
+                chromaHeight, planes);
+        gl.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+
+        int framebuffer = state.getFramebuffer();
+        state.getViewport(viewport);
+        if (target == null) {
+            target = RenderTargetPool.RenderTarget.create(width, height);
+        }
+        filter.ifNeedInit();
+        filter.chromaTexture = chromaTexture;
+        state.bindFramebuffer(target.getFramebuffer());
+        state.viewport(0, 0, width, height);
+        filter.onDraw(lumaTexture, cubeBuffer, textureBuffer);
+        state.bindFramebuffer(framebuffer);
+        state.viewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+        return target.getTexture();
+    }
+
+    /**
+     * Deletes the textures and the framebuffer. The converter can be used again afterwards.
+     */
+    public void release() {
+        GLState state = GLState.current();
+        if (lumaTexture != OpenGlUtils.NO_TEXTURE) {
+            state.deleteTextures(2, new int[]{lumaTexture, chromaTexture}, 0);
+            lumaTexture = OpenGlUtils.NO_TEXTURE;
+            chromaTexture = OpenGlUtils.NO_TEXTURE;
+        }
+        if (target != null) {
+            target.delete();
+            target = null;
+        }
+        width = 0;
+        height = 0;
+    }
+
+    /**
+     * Like {@link #release()}, also freeing the conversion program.
+     */
+    public void destroy() {
+        release();
+        filter.destroy();
+    }
+
+    private static int uploadPlane(final int texture, final int format, final int width,
+                                   final int height, final ByteBuffer pixels) {
+        GLBackend gl = GLBackend.current();
+        GLState state = GLState.current();
+        if (texture != OpenGlUtils.NO_TEXTURE) {
+            state.bindTexture(texture);
+            gl.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height, format,
+                    GLES20.GL_UNSIGNED_BYTE, pixels);
+            return texture;
+        }
+        int[] textures = new int[1];
+        gl.glGenTextures(1, textures, 0);
+        state.bindTexture(textures[0]);
+        gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format,
+                GLES20.GL_UNSIGNED_BYTE, pixels);
+        return textures[0];
+    }
+
+    private static FloatBuffer createBuffer(final float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+
+    private static class ConversionFilter extends GPUImageFilter {
+        private int chromaTextureUniform;
+        private int conversionMatrixUniform;
+        private int conversionOffsetUniform;
+        private int colorSpace = COLOR_SPACE_BT601;
+        int chromaTexture;
+
+        ConversionFilter() {
+            super(NO_FILTER_VERTEX_SHADER, CONVERSION_FRAGMENT_SHADER);
+        }
+
+        @Override
+        public void onInit() {
+            super.onInit();
+            chromaTextureUniform = getUniformLocation("chromaTexture");
+            conversionMatrixUniform = getUniformLocation("conversionMatrix");
+            conversionOffsetUniform = getUniformLocation("conversionOffset");
+            setInteger(chromaTextureUniform, getExtraTextureUnit());
+        }
+
+        @Override
+        public void onInitialized() {
+            super.onInitialized();
+            setColorSpace(colorSpace);
+        }
+
+        void setColorSpace(final int colorSpace) {
+            this.colorSpace = colorSpace;
+            if (!isInitialized()) {
+                return;
+            }
+            setUniformMatrix3f(conversionMatrixUniform, CONVERSION_MATRICES[colorSpace]);
+            setFloatVec3(conversionOffsetUniform, CONVERSION_OFFSETS[colorSpace]);
+        }
+
+        @Override
+        protected void onDrawArraysPre() {
+            GLState.current().bindTexture(getExtraTextureUnit(), chromaTexture);
+        }
+    }
+}
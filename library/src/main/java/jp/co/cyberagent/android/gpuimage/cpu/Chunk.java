@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * A run of up to {@link #SIZE} consecutive pixels unpacked into one float array per channel,
+ * the way a shader sees them, so the filters loop over plain arrays. The overlay arrays hold
+ * the second input of blend filters at the same positions.
+ */
+final class Chunk {
+    static final int SIZE = 256;
+
+    private static final float UNIT = 1.0f / 255.0f;
+
+    final float[] r = new float[SIZE];
+    final float[] g = new float[SIZE];
+    final float[] b = new float[SIZE];
+    final float[] a = new float[SIZE];
+    final float[] r2 = new float[SIZE];
+    final float[] g2 = new float[SIZE];
+    final float[] b2 = new float[SIZE];
+    final float[] a2 = new float[SIZE];
+    /**
+     * The index of the first pixel in the image.
+     */
+    int offset;
+    int count;
+
+    void load(final int[] pixels, final int offset, final int count) {
+        this.offset = offset;
+        this.count = count;
+        unpack(pixels, offset, count, r, g, b, a);
+    }
+
+    void loadOverlay(final int[] pixels) {
+        unpack(pixels, offset, count, r2, g2, b2, a2);
+    }
+
+    void store(final int[] pixels) {
+        float[] r = this.r;
+        float[] g = this.g;
+        float[] b = this.b;
+        float[] a = this.a;
+        for (int i = 0; i < count; i++) {
+            pixels[offset + i] = toByte(a[i]) << 24 | toByte(r[i]) << 16 | toByte(g[i]) << 8
+                    | toByte(b[i]);
+        }
+    }
+
+    /**
+     * Clamps and rounds the channels to 8 bits, like writing to an RGBA8 render target
+     * between the passes of a filter group.
+     */
+    void quantize() {
+        quantize(r, count);
+        quantize(g, count);
+        quantize(b, count);
+        quantize(a, count);
+    }
+
+    /**
+     * Gets the index of a quantized value in a table of the 256 values of a channel.
+     */
+    static int index(final float value) {
+        return (int) (value * 255.0f + 0.5f);
+    }
+
+    private static void quantize(final float[] channel, final int count) {
+        for (int i = 0; i < count; i++) {
+            channel[i] = toByte(channel[i]) * UNIT;
+        }
+    }
+
+    private static int toByte(final float value) {
+        // Clamped as an int, which is cheaper than clamping the float, and NaN becomes 0
+        return Math.min(Math.max((int) (value * 255.0f + 0.5f), 0), 255);
+    }
+
+    private static void unpack(final int[] pixels, final int offset, final int count,
+                               final float[] r, final float[] g, final float[] b,
+                               final float[] a) {
+        for (int i = 0; i < count; i++) {
+            int pixel = pixels[offset + i];
+            a[i] = (pixel >>> 24) * UNIT;
+            r[i] = (pixel >> 16 & 0xff) * UNIT;
+            g[i] = (pixel >> 8 & 0xff) * UNIT;
+            b[i] = (pixel & 0xff) * UNIT;
+        }
+    }
+}
@@ -0,0 +1,621 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Blends an overlay image of the same size over the image, in one of the modes of the
+ * GPUImage blend filters, e.g. {@link Mode#MULTIPLY} for
+ * {@link jp.co.cyberagent.android.gpuimage.filter.GPUImageMultiplyBlendFilter}.
+ */
+public class CpuBlendFilter extends CpuFilter {
+
+    public enum Mode {
+        ADD, ALPHA, CHROMA_KEY, COLOR, COLOR_BURN, COLOR_DODGE, DARKEN, DIFFERENCE, DISSOLVE,
+        DIVIDE, EXCLUSION, HARD_LIGHT, HUE, LIGHTEN, LINEAR_BURN, LUMINOSITY, MULTIPLY, NORMAL,
+        OVERLAY, SATURATION, SCREEN, SOFT_LIGHT, SOURCE_OVER, SUBTRACT
+    }
+
+    private final Mode mode;
+    private int[] overlay;
+    private float mix = 0.5f;
+    private float thresholdSensitivity = 0.4f;
+    private float smoothing = 0.1f;
+    private float[] colorToReplace = new float[]{0.0f, 1.0f, 0.0f};
+
+    public CpuBlendFilter(final Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Sets the overlay, ARGB pixels of the size of the filtered image.
+     */
+    public void setOverlay(final int[] overlay) {
+        this.overlay = overlay;
+    }
+
+    /**
+     * Sets the share of the overlay in {@link Mode#ALPHA} and {@link Mode#DISSOLVE}, from 0.0
+     * to 1.0, 0.5 as the normal level.
+     */
+    public void setMix(final float mix) {
+        this.mix = mix;
+    }
+
+    /**
+     * Sets how close to the color to replace a pixel must be to be replaced by the overlay in
+     * {@link Mode#CHROMA_KEY}, 0.4 as the normal level.
+     */
+    public void setThresholdSensitivity(final float thresholdSensitivity) {
+        this.thresholdSensitivity = thresholdSensitivity;
+    }
+
+    /**
+     * Sets how smoothly {@link Mode#CHROMA_KEY} fades into the overlay, 0.1 as the normal
+     * level.
+     */
+    public void setSmoothing(final float smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Sets the color {@link Mode#CHROMA_KEY} replaces, green by default.
+     */
+    public void setColorToReplace(final float red, final float green, final float blue) {
+        colorToReplace = new float[]{red, green, blue};
+    }
+
+    @Override
+    void prepare(final int width, final int height) {
+        if (overlay == null || overlay.length < width * height) {
+            throw new IllegalStateException("the overlay must be as large as the image");
+        }
+    }
+
+    @Override
+    void filter(final Chunk chunk) {
+        chunk.loadOverlay(overlay);
+        switch (mode) {
+            case ADD:
+                add(chunk);
+                break;
+            case ALPHA:
+                alpha(chunk, mix);
+                break;
+            case CHROMA_KEY:
+                chromaKey(chunk, thresholdSensitivity, smoothing, colorToReplace);
+                break;
+            case COLOR_BURN:
+                colorBurn(chunk);
+                break;
+            case COLOR_DODGE:
+                colorDodge(chunk);
+                break;
+            case DARKEN:
+                darken(chunk);
+                break;
+            case DIFFERENCE:
+                difference(chunk);
+                break;
+            case DISSOLVE:
+                dissolve(chunk, mix);
+                break;
+            case DIVIDE:
+                divide(chunk);
+                break;
+            case EXCLUSION:
+                exclusion(chunk);
+                break;
+            case HARD_LIGHT:
+                hardLight(chunk);
+                break;
+            case LIGHTEN:
+                lighten(chunk);
+                break;
+            case LINEAR_BURN:
+                linearBurn(chunk);
+                break;
+            case MULTIPLY:
+                multiply(chunk);
+                break;
+            case NORMAL:
+                normal(chunk);
+                break;
+            case OVERLAY:
+                overlay(chunk);
+                break;
+            case SCREEN:
+                screen(chunk);
+                break;
+            case SOFT_LIGHT:
+                softLight(chunk);
+                break;
+            case SOURCE_OVER:
+                sourceOver(chunk);
+                break;
+            case SUBTRACT:
+                subtract(chunk);
+                break;
+            default:
+                nonSeparable(chunk, mode);
+                break;
+        }
+    }
+
+    private static void add(final Chunk chunk) {
+        add(chunk.r, chunk.r2, chunk);
+        add(chunk.g, chunk.g2, chunk);
+        add(chunk.b, chunk.b2, chunk);
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        for (int i = 0; i < chunk.count; i++) {
+            a[i] = a2[i] + a[i] - a2[i] * a[i];
+        }
+    }
+
+    private static void add(final float[] c, final float[] o, final Chunk chunk) {
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        for (int i = 0; i < chunk.count; i++) {
+            if (o[i] * a[i] + c[i] * a2[i] >= a2[i] * a[i]) {
+                c[i] = a2[i] * a[i] + o[i] * (1.0f - a[i]) + c[i] * (1.0f - a2[i]);
+            } else {
+                c[i] = o[i] + c[i];
+            }
+        }
+    }
+
+    private static void alpha(final Chunk chunk, final float mix) {
+        float[] a2 = chunk.a2;
+        mix(chunk.r, chunk.r2, a2, mix, chunk.count);
+        mix(chunk.g, chunk.g2, a2, mix, chunk.count);
+        mix(chunk.b, chunk.b2, a2, mix, chunk.count);
+    }
+
+    /**
+     * Mixes c towards o by weight times factor.
+     */
+    private static void mix(final float[] c, final float[] o, final float[] weight,
+                            final float factor, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] += (o[i] - c[i]) * weight[i] * factor;
+        }
+    }
+
+    private static void mix(final float[] c, final float[] o, final float weight,
+                            final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] += (o[i] - c[i]) * weight;
+        }
+    }
+
+    private static void chromaKey(final Chunk chunk, final float thresholdSensitivity,
+                                  final float smoothing, final float[] colorToReplace) {
+        float maskY = 0.2989f * colorToReplace[0] + 0.5866f * colorToReplace[1]
+                + 0.1145f * colorToReplace[2];
+        float maskCr = 0.7132f * (colorToReplace[0] - maskY);
+        float maskCb = 0.5647f * (colorToReplace[2] - maskY);
+        float[] r = chunk.r;
+        float[] g = chunk.g;
+        float[] b = chunk.b;
+        float[] a = chunk.a;
+        for (int i = 0; i < chunk.count; i++) {
+            float y = 0.2989f * r[i] + 0.5866f * g[i] + 0.1145f * b[i];
+            float cr = 0.7132f * (r[i] - y);
+            float cb = 0.5647f * (b[i] - y);
+            float distance = (float) Math.sqrt((cr - maskCr) * (cr - maskCr)
+                    + (cb - maskCb) * (cb - maskCb));
+            float blend = 1.0f - smoothstep(thresholdSensitivity,
+                    thresholdSensitivity + smoothing, distance);
+            r[i] += (chunk.r2[i] - r[i]) * blend;
+            g[i] += (chunk.g2[i] - g[i]) * blend;
+            b[i] += (chunk.b2[i] - b[i]) * blend;
+            a[i] += (chunk.a2[i] - a[i]) * blend;
+        }
+    }
+
+    private static float smoothstep(final float edge0, final float edge1, final float x) {
+        float t = Math.min(Math.max((x - edge0) / (edge1 - edge0), 0.0f), 1.0f);
+        return t * t * (3.0f - 2.0f * t);
+    }
+
+    private static void colorBurn(final Chunk chunk) {
+        colorBurn(chunk.r, chunk.r2, chunk.count);
+        colorBurn(chunk.g, chunk.g2, chunk.count);
+        colorBurn(chunk.b, chunk.b2, chunk.count);
+        colorBurn(chunk.a, chunk.a2, chunk.count);
+    }
+
+    private static void colorBurn(final float[] c, final float[] o, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] = 1.0f - (1.0f - c[i]) / o[i];
+        }
+    }
+
+    private static void colorDodge(final Chunk chunk) {
+        colorDodge(chunk.r, chunk.r2, chunk);
+        colorDodge(chunk.g, chunk.g2, chunk);
+        colorDodge(chunk.b, chunk.b2, chunk);
+        fill(chunk.a, 1.0f, chunk.count);
+    }
+
+    private static void colorDodge(final float[] c, final float[] o, final Chunk chunk) {
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        for (int i = 0; i < chunk.count; i++) {
+            float product = a2[i] * a[i];
+            float rightHand = o[i] * (1.0f - a[i]) + c[i] * (1.0f - a2[i]);
+            if (o[i] * a[i] + c[i] * a2[i] <= product) {
+                float overlay = Math.min(Math.max(o[i] / Math.min(Math.max(a2[i], 0.01f), 1.0f),
+                        0.0f), 0.99f);
+                c[i] = c[i] * a2[i] / (1.0f - overlay) + rightHand;
+            } else {
+                c[i] = product + rightHand;
+            }
+        }
+    }
+
+    private static void darken(final Chunk chunk) {
+        darken(chunk.r, chunk.r2, chunk);
+        darken(chunk.g, chunk.g2, chunk);
+        darken(chunk.b, chunk.b2, chunk);
+        fill(chunk.a, 1.0f, chunk.count);
+    }
+
+    private static void darken(final float[] c, final float[] o, final Chunk chunk) {
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        for (int i = 0; i < chunk.count; i++) {
+            c[i] = Math.min(o[i] * a[i], c[i] * a2[i]) + o[i] * (1.0f - a[i])
+                    + c[i] * (1.0f - a2[i]);
+        }
+    }
+
+    private static void difference(final Chunk chunk) {
+        difference(chunk.r, chunk.r2, chunk.count);
+        difference(chunk.g, chunk.g2, chunk.count);
+        difference(chunk.b, chunk.b2, chunk.count);
+    }
+
+    private static void difference(final float[] c, final float[] o, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] = Math.abs(o[i] - c[i]);
+        }
+    }
+
+    private static void dissolve(final Chunk chunk, final float mix) {
+        mix(chunk.r, chunk.r2, mix, chunk.count);
+        mix(chunk.g, chunk.g2, mix, chunk.count);
+        mix(chunk.b, chunk.b2, mix, chunk.count);
+        mix(chunk.a, chunk.a2, mix, chunk.count);
+    }
+
+    private static void divide(final Chunk chunk) {
+        divide(chunk.r, chunk.r2, chunk);
+        divide(chunk.g, chunk.g2, chunk);
+        divide(chunk.b, chunk.b2, chunk);
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        for (int i = 0; i < chunk.count; i++) {
+            a[i] = a2[i] + a[i] - a2[i] * a[i];
+        }
+    }
+
+    private static void divide(final float[] c, final float[] o, final Chunk chunk) {
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        for (int i = 0; i < chunk.count; i++) {
+            float rest = o[i] * (1.0f - a[i]) + c[i] * (1.0f - a2[i]);
+            if (a2[i] == 0.0f || c[i] / o[i] > a[i] / a2[i]) {
+                c[i] = a2[i] * a[i] + rest;
+            } else {
+                c[i] = c[i] * a2[i] * a2[i] / o[i] + rest;
+            }
+        }
+    }
+
+    private static void exclusion(final Chunk chunk) {
+        exclusion(chunk.r, chunk.r2, chunk);
+        exclusion(chunk.g, chunk.g2, chunk);
+        exclusion(chunk.b, chunk.b2, chunk);
+    }
+
+    private static void exclusion(final float[] c, final float[] o, final Chunk chunk) {
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        for (int i = 0; i < chunk.count; i++) {
+            c[i] = o[i] * a[i] + c[i] * a2[i] - 2.0f * o[i] * c[i] + o[i] * (1.0f - a[i])
+                    + c[i] * (1.0f - a2[i]);
+        }
+    }
+
+    private static void hardLight(final Chunk chunk) {
+        light(chunk.r, chunk.r2, chunk, true);
+        light(chunk.g, chunk.g2, chunk, true);
+        light(chunk.b, chunk.b2, chunk, true);
+        fill(chunk.a, 1.0f, chunk.count);
+    }
+
+    private static void overlay(final Chunk chunk) {
+        light(chunk.r, chunk.r2, chunk, false);
+        light(chunk.g, chunk.g2, chunk, false);
+        light(chunk.b, chunk.b2, chunk, false);
+        fill(chunk.a, 1.0f, chunk.count);
+    }
+
+    /**
+     * Hard light, choosing multiply or screen by the overlay, or overlay, choosing by the base.
+     */
+    private static void light(final float[] c, final float[] o, final Chunk chunk,
+                              final boolean byOverlay) {
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        for (int i = 0; i < chunk.count; i++) {
+            boolean dark = byOverlay ? 2.0f * o[i] < a2[i] : 2.0f * c[i] < a[i];
+            float rest = o[i] * (1.0f - a[i]) + c[i] * (1.0f - a2[i]);
+            if (dark) {
+                c[i] = 2.0f * o[i] * c[i] + rest;
+            } else {
+                c[i] = a2[i] * a[i] - 2.0f * (a[i] - c[i]) * (a2[i] - o[i]) + rest;
+            }
+        }
+    }
+
+    private static void lighten(final Chunk chunk) {
+        lighten(chunk.r, chunk.r2, chunk.count);
+        lighten(chunk.g, chunk.g2, chunk.count);
+        lighten(chunk.b, chunk.b2, chunk.count);
+        lighten(chunk.a, chunk.a2, chunk.count);
+    }
+
+    private static void lighten(final float[] c, final float[] o, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] = Math.max(c[i], o[i]);
+        }
+    }
+
+    private static void linearBurn(final Chunk chunk) {
+        linearBurn(chunk.r, chunk.r2, chunk.count);
+        linearBurn(chunk.g, chunk.g2, chunk.count);
+        linearBurn(chunk.b, chunk.b2, chunk.count);
+    }
+
+    private static void linearBurn(final float[] c, final float[] o, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] = c[i] + o[i] - 1.0f;
+        }
+    }
+
+    private static void multiply(final Chunk chunk) {
+        // The alpha last, the colors use the old one
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        multiply(chunk.r, chunk.r2, a, a2, chunk.count);
+        multiply(chunk.g, chunk.g2, a, a2, chunk.count);
+        multiply(chunk.b, chunk.b2, a, a2, chunk.count);
+        for (int i = 0; i < chunk.count; i++) {
+            a[i] = a2[i] * a[i] + a2[i] * (1.0f - a[i]) + a[i] * (1.0f - a2[i]);
+        }
+    }
+
+    private static void multiply(final float[] c, final float[] o, final float[] a,
+                                 final float[] a2, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] = o[i] * c[i] + o[i] * (1.0f - a[i]) + c[i] * (1.0f - a2[i]);
+        }
+    }
+
+    private static void normal(final Chunk chunk) {
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        normal(chunk.r, chunk.r2, a, a2, chunk.count);
+        normal(chunk.g, chunk.g2, a, a2, chunk.count);
+        normal(chunk.b, chunk.b2, a, a2, chunk.count);
+        for (int i = 0; i < chunk.count; i++) {
+            a[i] = a2[i] + a[i] * (1.0f - a2[i]);
+        }
+    }
+
+    private static void normal(final float[] c, final float[] o, final float[] a,
+                               final float[] a2, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] = o[i] + c[i] * a[i] * (1.0f - a2[i]);
+        }
+    }
+
+    private static void screen(final Chunk chunk) {
+        screen(chunk.r, chunk.r2, chunk.count);
+        screen(chunk.g, chunk.g2, chunk.count);
+        screen(chunk.b, chunk.b2, chunk.count);
+        screen(chunk.a, chunk.a2, chunk.count);
+    }
+
+    private static void screen(final float[] c, final float[] o, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] = 1.0f - (1.0f - o[i]) * (1.0f - c[i]);
+        }
+    }
+
+    private static void softLight(final Chunk chunk) {
+        float[] a = chunk.a;
+        float[] a2 = chunk.a2;
+        softLight(chunk.r, chunk.r2, a, a2, chunk.count);
+        softLight(chunk.g, chunk.g2, a, a2, chunk.count);
+        softLight(chunk.b, chunk.b2, a, a2, chunk.count);
+        for (int i = 0; i < chunk.count; i++) {
+            a[i] = a[i] * a2[i] + a2[i] * (1.0f - a[i]) + a[i] * (1.0f - a2[i]);
+        }
+    }
+
+    private static void softLight(final float[] c, final float[] o, final float[] a,
+                                  final float[] a2, final int count) {
+        for (int i = 0; i < count; i++) {
+            float normalized = c[i] / a[i];
+            c[i] = c[i] * (a2[i] * normalized + 2.0f * o[i] * (1.0f - normalized))
+                    + o[i] * (1.0f - a[i]) + c[i] * (1.0f - a2[i]);
+        }
+    }
+
+    private static void sourceOver(final Chunk chunk) {
+        float[] a2 = chunk.a2;
+        mix(chunk.r, chunk.r2, a2, 1.0f, chunk.count);
+        mix(chunk.g, chunk.g2, a2, 1.0f, chunk.count);
+        mix(chunk.b, chunk.b2, a2, 1.0f, chunk.count);
+        mix(chunk.a, a2, a2, 1.0f, chunk.count);
+    }
+
+    private static void subtract(final Chunk chunk) {
+        subtract(chunk.r, chunk.r2, chunk.count);
+        subtract(chunk.g, chunk.g2, chunk.count);
+        subtract(chunk.b, chunk.b2, chunk.count);
+    }
+
+    private static void subtract(final float[] c, final float[] o, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] -= o[i];
+        }
+    }
+
+    private static void fill(final float[] c, final float value, final int count) {
+        for (int i = 0; i < count; i++) {
+            c[i] = value;
+        }
+    }
+
+    /**
+     * The modes mixing the hue, saturation and luminosity of both images, as in the PDF
+     * blend modes.
+     */
+    private static void nonSeparable(final Chunk chunk, final Mode mode) {
+        float[] r = chunk.r;
+        float[] g = chunk.g;
+        float[] b = chunk.b;
+        float[] r2 = chunk.r2;
+        float[] g2 = chunk.g2;
+        float[] b2 = chunk.b2;
+        float[] a2 = chunk.a2;
+        float[] color = new float[3];
+        for (int i = 0; i < chunk.count; i++) {
+            switch (mode) {
+                case COLOR:
+                    set(color, r2[i], g2[i], b2[i]);
+                    setLum(color, lum(r[i], g[i], b[i]));
+                    break;
+                case HUE:
+                    set(color, r2[i], g2[i], b2[i]);
+                    setSat(color, sat(r[i], g[i], b[i]));
+                    setLum(color, lum(r[i], g[i], b[i]));
+                    break;
+                case SATURATION:
+                    set(color, r[i], g[i], b[i]);
+                    setSat(color, sat(r2[i], g2[i], b2[i]));
+                    setLum(color, lum(r[i], g[i], b[i]));
+                    break;
+                case LUMINOSITY:
+                    set(color, r[i], g[i], b[i]);
+                    setLum(color, lum(r2[i], g2[i], b2[i]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("not a non-separable mode: " + mode);
+            }
+            float keep = 1.0f - a2[i];
+            r[i] = r[i] * keep + color[0] * a2[i];
+            g[i] = g[i] * keep + color[1] * a2[i];
+            b[i] = b[i] * keep + color[2] * a2[i];
+        }
+    }
+
+    private static void set(final float[] color, final float r, final float g, final float b) {
+        color[0] = r;
+        color[1] = g;
+        color[2] = b;
+    }
+
+    private static float lum(final float r, final float g, final float b) {
+        return r * 0.3f + g * 0.59f + b * 0.11f;
+    }
+
+    private static float sat(final float r, final float g, final float b) {
+        return Math.max(Math.max(r, g), b) - Math.min(Math.min(r, g), b);
+    }
+
+    private static void setLum(final float[] c, final float l) {
+        float d = l - lum(c[0], c[1], c[2]);
+        c[0] += d;
+        c[1] += d;
+        c[2] += d;
+        // Clip the color into range keeping its luminosity
+        float lum = lum(c[0], c[1], c[2]);
+        float n = Math.min(Math.min(c[0], c[1]), c[2]);
+        float x = Math.max(Math.max(c[0], c[1]), c[2]);
+        if (n < 0.0f) {
+            for (int i = 0; i < 3; i++) {
+                c[i] = lum + (c[i] - lum) * lum / (lum - n);
+            }
+        }
+        if (x > 1.0f) {
+            for (int i = 0; i < 3; i++) {
+                c[i] = lum + (c[i] - lum) * (1.0f - lum) / (x - lum);
+            }
+        }
+    }
+
+    private static float mid(final float min, final float mid, final float max, final float s) {
+        return (mid - min) * s / (max - min);
+    }
+
+    private static void setSat(final float[] c, final float s) {
+        float r = c[0];
+        float g = c[1];
+        float b = c[2];
+        if (r > g) {
+            if (r > b) {
+                if (g > b) {
+                    g = mid(b, g, r, s);
+                    b = 0.0f;
+                } else {
+                    b = mid(g, b, r, s);
+                    g = 0.0f;
+                }
+                r = s;
+            } else {
+                // Like the shader, which clears red instead of green here
+                b = s;
+                r = 0.0f;
+            }
+        } else if (r > b) {
+            r = mid(b, r, g, s);
+            g = s;
+            b = 0.0f;
+        } else if (g > b) {
+            b = mid(r, b, g, s);
+            g = s;
+            r = 0.0f;
+        } else if (b > g) {
+            g = mid(r, g, b, s);
+            b = s;
+            r = 0.0f;
+        } else {
+            r = 0.0f;
+            g = 0.0f;
+            b = 0.0f;
+        }
+        c[0] = r;
+        c[1] = g;
+        c[2] = b;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Adds a brightness from -1.0 to 1.0 to the color channels, 0.0 as the normal level.
+ */
+public class CpuBrightnessFilter extends CpuFilter {
+    private float brightness;
+
+    public CpuBrightnessFilter() {
+        this(0.0f);
+    }
+
+    public CpuBrightnessFilter(final float brightness) {
+        this.brightness = brightness;
+    }
+
+    public void setBrightness(final float brightness) {
+        this.brightness = brightness;
+    }
+
+    @Override
+    void filter(final Chunk chunk) {
+        add(chunk.r, chunk.count, brightness);
+        add(chunk.g, chunk.count, brightness);
+        add(chunk.b, chunk.count, brightness);
+    }
+
+    private static void add(final float[] channel, final int count, final float value) {
+        for (int i = 0; i < count; i++) {
+            channel[i] += value;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Inverts the color channels.
+ */
+public class CpuColorInvertFilter extends CpuFilter {
+
+    @Override
+    void filter(final Chunk chunk) {
+        invert(chunk.r, chunk.count);
+        invert(chunk.g, chunk.count);
+        invert(chunk.b, chunk.count);
+    }
+
+    private static void invert(final float[] channel, final int count) {
+        for (int i = 0; i < count; i++) {
+            channel[i] = 1.0f - channel[i];
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Transforms the RGBA color by a 4x4 matrix and mixes the result with the original color by an
+ * intensity. Row i of the matrix, i.e. elements 4i to 4i + 3, gives output channel i.
+ */
+public class CpuColorMatrixFilter extends CpuFilter {
+    private float intensity;
+    private float[] colorMatrix;
+
+    public CpuColorMatrixFilter() {
+        this(1.0f, new float[]{
+                1.0f, 0.0f, 0.0f, 0.0f,
+                0.0f, 1.0f, 0.0f, 0.0f,
+                0.0f, 0.0f, 1.0f, 0.0f,
+                0.0f, 0.0f, 0.0f, 1.0f
+        });
+    }
+
+    public CpuColorMatrixFilter(final float intensity, final float[] colorMatrix) {
+        this.intensity = intensity;
+        setColorMatrix(colorMatrix);
+    }
+
+    public void setIntensity(final float intensity) {
+        this.intensity = intensity;
+    }
+
+    public void setColorMatrix(final float[] colorMatrix) {
+        if (colorMatrix.length != 16) {
+            throw new IllegalArgumentException("colorMatrix must have 16 elements");
+        }
+        this.colorMatrix = colorMatrix.clone();
+    }
+
+    @Override
+    void filter(final Chunk chunk) {
+        float[] m = colorMatrix;
+        float intensity = this.intensity;
+        float keep = 1.0f - intensity;
+        float[] r = chunk.r;
+        float[] g = chunk.g;
+        float[] b = chunk.b;
+        float[] a = chunk.a;
+        for (int i = 0; i < chunk.count; i++) {
+            float red = r[i];
+            float green = g[i];
+            float blue = b[i];
+            float alpha = a[i];
+            r[i] = intensity * (m[0] * red + m[1] * green + m[2] * blue + m[3] * alpha)
+                    + keep * red;
+            g[i] = intensity * (m[4] * red + m[5] * green + m[6] * blue + m[7] * alpha)
+                    + keep * green;
+            b[i] = intensity * (m[8] * red + m[9] * green + m[10] * blue + m[11] * alpha)
+                    + keep * blue;
+            a[i] = intensity * (m[12] * red + m[13] * green + m[14] * blue + m[15] * alpha)
+                    + keep * alpha;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Scales the color channels around 0.5 by a contrast from 0.0 to 4.0, 1.0 as the normal
+ * level.
+ */
+public class CpuContrastFilter extends CpuFilter {
+    private float contrast;
+
+    public CpuContrastFilter() {
+        this(1.2f);
+    }
+
+    public CpuContrastFilter(final float contrast) {
+        this.contrast = contrast;
+    }
+
+    public void setContrast(final float contrast) {
+        this.contrast = contrast;
+    }
+
+    @Override
+    void filter(final Chunk chunk) {
+        scale(chunk.r, chunk.count, contrast);
+        scale(chunk.g, chunk.count, contrast);
+        scale(chunk.b, chunk.count, contrast);
+    }
+
+    private static void scale(final float[] channel, final int count, final float contrast) {
+        for (int i = 0; i < count; i++) {
+            channel[i] = (channel[i] - 0.5f) * contrast + 0.5f;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Multiplies the color channels by 2 to the power of an exposure from -10.0 to 10.0, 0.0 as
+ * the normal level.
+ */
+public class CpuExposureFilter extends CpuFilter {
+    private float exposure;
+
+    public CpuExposureFilter() {
+        this(1.0f);
+    }
+
+    public CpuExposureFilter(final float exposure) {
+        this.exposure = exposure;
+    }
+
+    public void setExposure(final float exposure) {
+        this.exposure = exposure;
+    }
+
+    @Override
+    void filter(final Chunk chunk) {
+        float factor = (float) Math.pow(2.0, exposure);
+        multiply(chunk.r, chunk.count, factor);
+        multiply(chunk.g, chunk.count, factor);
+        multiply(chunk.b, chunk.count, factor);
+    }
+
+    private static void multiply(final float[] channel, final int count, final float factor) {
+        for (int i = 0; i < count; i++) {
+            channel[i] *= factor;
+        }
+    }
+}
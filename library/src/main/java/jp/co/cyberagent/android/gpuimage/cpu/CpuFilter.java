@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * A per-pixel filter computed on the CPU by {@link CpuFilterEngine}, giving the same colors as
+ * the shader of the GPUImage filter of the same name. Filters are configured before and must
+ * not be changed while an engine applies them.
+ */
+public abstract class CpuFilter {
+
+    CpuFilter() {
+    }
+
+    /**
+     * Called once before the filter is applied to an image, to check the inputs and build the
+     * tables the bands share.
+     */
+    void prepare(final int width, final int height) {
+    }
+
+    /**
+     * Filters the pixels of the chunk in place. Called from several threads at once, each with
+     * its own chunk.
+     */
+    abstract void filter(Chunk chunk);
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies per-pixel filters to ARGB pixels on the CPU, for devices without OpenGL ES 2.0, for
+ * servers and as a reference for the output of the GPU. The image is split into bands of rows
+ * which the threads of the engine and the calling thread take one after another, and every
+ * band goes through all filters while it is in the cache.
+ * <p>
+ * Like a {@link jp.co.cyberagent.android.gpuimage.filter.GPUImageFilterGroup}, the colors are
+ * clamped and rounded to 8 bits after every filter.
+ */
+public final class CpuFilterEngine {
+    /**
+     * Bands per thread, so a thread which got slow bands does not hold up the others.
+     */
+    private static final int BANDS_PER_THREAD = 4;
+    private static final int MIN_BAND_PIXELS = 16 * 1024;
+
+    private static CpuFilterEngine defaultEngine;
+
+    private final int threads;
+    private final ExecutorService executor;
+
+    /**
+     * Creates an engine with a thread per processor.
+     */
+    public CpuFilterEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads the number of threads working on an image, including the calling one
+     */
+    public CpuFilterEngine(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+        if (threads > 1) {
+            executor = new ThreadPoolExecutor(threads - 1, threads - 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CpuFilterEngine-"
+                            + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Gets the engine shared by the process, with a thread per processor.
+     */
+    public static synchronized CpuFilterEngine getDefault() {
+        if (defaultEngine == null) {
+            defaultEngine = new CpuFilterEngine();
+        }
+        return defaultEngine;
+    }
+
+    /**
+     * Filters a bitmap.
+     *
+     * @return a new ARGB_8888 bitmap of the same size
+     */
+    public Bitmap apply(final Bitmap bitmap, final CpuFilter... filters) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        apply(pixels, width, height, filters);
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Filters ARGB pixels in place, e.g. those of {@link Bitmap#getPixels}, with the filters in
+     * order. Returns when all pixels are done.
+     *
+     * @param pixels the pixels, row after row without padding
+     */
+    public void apply(final int[] pixels, final int width, final int height,
+                      final CpuFilter... filters) {
+        apply(pixels, width, height, Arrays.asList(filters));
+    }
+
+    /**
+     * Like {@link #apply(int[], int, int, CpuFilter...)}.
+     */
+    public void apply(final int[] pixels, final int width, final int height,
+                      final List<CpuFilter> filters) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("pixels holds less than width * height pixels");
+        }
+        final CpuFilter[] chain = filters.toArray(new CpuFilter[filters.size()]);
+        for (CpuFilter filter : chain) {
+            filter.prepare(width, height);
+        }
+        int bandRows = Math.max(1, Math.max(MIN_BAND_PIXELS / Math.max(width, 1),
+                height / (threads * BANDS_PER_THREAD)));
+        final Bands bands = new Bands(pixels, width, height, bandRows, chain);
+        int helpers = Math.min(threads - 1, bands.count - 1);
+        if (helpers <= 0) {
+            bands.run();
+            bands.rethrow();
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(helpers);
+        for (int i = 0; i < helpers; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        bands.run();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        bands.run();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        bands.rethrow();
+    }
+
+    /**
+     * Stops the threads of the engine. It must not be used afterwards.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The bands of one image, handed out to whichever thread asks next.
+     */
+    private static final class Bands implements Runnable {
+        private final int[] pixels;
+        private final int width;
+        private final int height;
+        private final int bandRows;
+        private final CpuFilter[] filters;
+        private final AtomicInteger next = new AtomicInteger();
+        final int count;
+        private volatile RuntimeException failure;
+
+        Bands(final int[] pixels, final int width, final int height, final int bandRows,
+              final CpuFilter[] filters) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.bandRows = bandRows;
+            this.filters = filters;
+            count = (height + bandRows - 1) / bandRows;
+        }
+
+        @Override
+        public void run() {
+            Chunk chunk = new Chunk();
+            try {
+                int band;
+                while (failure == null && (band = next.getAndIncrement()) < count) {
+                    int start = band * bandRows * width;
+                    int end = Math.min(band * bandRows + bandRows, height) * width;
+                    filterBand(chunk, start, end);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        private void filterBand(final Chunk chunk, final int start, final int end) {
+            for (int offset = start; offset < end; offset += Chunk.SIZE) {
+                chunk.load(pixels, offset, Math.min(Chunk.SIZE, end - offset));
+                for (int i = 0; i < filters.length; i++) {
+                    filters[i].filter(chunk);
+                    if (i < filters.length - 1) {
+                        // The last one is rounded when stored
+                        chunk.quantize();
+                    }
+                }
+                chunk.store(pixels);
+            }
+        }
+
+        void rethrow() {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
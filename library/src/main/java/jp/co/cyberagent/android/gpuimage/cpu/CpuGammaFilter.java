@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Raises the color channels to the power of a gamma from 0.0 to 3.0, 1.0 as the normal level.
+ */
+public class CpuGammaFilter extends CurveFilter {
+    private float gamma;
+
+    public CpuGammaFilter() {
+        this(1.2f);
+    }
+
+    public CpuGammaFilter(final float gamma) {
+        this.gamma = gamma;
+    }
+
+    public void setGamma(final float gamma) {
+        this.gamma = gamma;
+    }
+
+    @Override
+    float curve(final int channel, final float value) {
+        return (float) Math.pow(value, gamma);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Replaces the color by its luminance.
+ */
+public class CpuGrayscaleFilter extends CpuFilter {
+
+    @Override
+    void filter(final Chunk chunk) {
+        float[] r = chunk.r;
+        float[] g = chunk.g;
+        float[] b = chunk.b;
+        for (int i = 0; i < chunk.count; i++) {
+            float luminance = r[i] * 0.2125f + g[i] * 0.7154f + b[i] * 0.0721f;
+            r[i] = luminance;
+            g[i] = luminance;
+            b[i] = luminance;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Maps the input range of every color channel to an output range, with a gamma for the
+ * midtones, like the Levels dialog of Photoshop.
+ */
+public class CpuLevelsFilter extends CurveFilter {
+    private final float[] min = new float[]{0.0f, 0.0f, 0.0f};
+    private final float[] mid = new float[]{1.0f, 1.0f, 1.0f};
+    private final float[] max = new float[]{1.0f, 1.0f, 1.0f};
+    private final float[] minOutput = new float[]{0.0f, 0.0f, 0.0f};
+    private final float[] maxOutput = new float[]{1.0f, 1.0f, 1.0f};
+
+    public void setMin(float min, float mid, float max, float minOut, float maxOut) {
+        setRedMin(min, mid, max, minOut, maxOut);
+        setGreenMin(min, mid, max, minOut, maxOut);
+        setBlueMin(min, mid, max, minOut, maxOut);
+    }
+
+    public void setMin(float min, float mid, float max) {
+        setMin(min, mid, max, 0.0f, 1.0f);
+    }
+
+    public void setRedMin(float min, float mid, float max, float minOut, float maxOut) {
+        set(0, min, mid, max, minOut, maxOut);
+    }
+
+    public void setRedMin(float min, float mid, float max) {
+        setRedMin(min, mid, max, 0, 1);
+    }
+
+    public void setGreenMin(float min, float mid, float max, float minOut, float maxOut) {
+        set(1, min, mid, max, minOut, maxOut);
+    }
+
+    public void setGreenMin(float min, float mid, float max) {
+        setGreenMin(min, mid, max, 0, 1);
+    }
+
+    public void setBlueMin(float min, float mid, float max, float minOut, float maxOut) {
+        set(2, min, mid, max, minOut, maxOut);
+    }
+
+    public void setBlueMin(float min, float mid, float max) {
+        setBlueMin(min, mid, max, 0, 1);
+    }
+
+    private void set(final int channel, final float min, final float mid, final float max,
+                     final float minOut, final float maxOut) {
+        this.min[channel] = min;
+        this.mid[channel] = mid;
+        this.max[channel] = max;
+        minOutput[channel] = minOut;
+        maxOutput[channel] = maxOut;
+    }
+
+    @Override
+    float curve(final int channel, final float value) {
+        float scaled = Math.min(Math.max(value - min[channel], 0.0f)
+                / (max[channel] - min[channel]), 1.0f);
+        float adjusted = (float) Math.pow(scaled, 1.0f / mid[channel]);
+        return minOutput[channel] + (maxOutput[channel] - minOutput[channel]) * adjusted;
+    }
+}
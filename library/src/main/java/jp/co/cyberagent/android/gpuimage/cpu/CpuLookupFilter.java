@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Maps the colors through a 512x512 lookup image of 64 blue slices of 64x64 red and green,
+ * tiled 8x8, mixed with the original colors by an intensity. The lookup image is read with
+ * linear filtering like the texture of the shader.
+ */
+public class CpuLookupFilter extends CpuFilter {
+    private static final int SIZE = 512;
+
+    private int[] lookup;
+    private float intensity;
+
+    /**
+     * @param lookup the ARGB pixels of the lookup image, row after row
+     */
+    public CpuLookupFilter(final int[] lookup) {
+        this(lookup, 1.0f);
+    }
+
+    public CpuLookupFilter(final int[] lookup, final float intensity) {
+        setLookup(lookup);
+        this.intensity = intensity;
+    }
+
+    public void setLookup(final int[] lookup) {
+        if (lookup.length != SIZE * SIZE) {
+            throw new IllegalArgumentException("lookup must be 512x512 pixels");
+        }
+        this.lookup = lookup.clone();
+    }
+
+    public void setIntensity(final float intensity) {
+        this.intensity = intensity;
+    }
+
+    @Override
+    void filter(final Chunk chunk) {
+        int[] lookup = this.lookup;
+        float intensity = this.intensity;
+        float[] r = chunk.r;
+        float[] g = chunk.g;
+        float[] b = chunk.b;
+        float[] color1 = new float[3];
+        float[] color2 = new float[3];
+        for (int i = 0; i < chunk.count; i++) {
+            float blue = b[i] * 63.0f;
+            int slice1 = (int) Math.floor(blue);
+            int slice2 = (int) Math.ceil(blue);
+            // Texel centers of the slice, 63 texels from the one for 0.0 to the one for 1.0
+            float x = r[i] * 63.0f;
+            float y = g[i] * 63.0f;
+            sample(lookup, (slice1 % 8) * 64 + x, (slice1 / 8) * 64 + y, color1);
+            sample(lookup, (slice2 % 8) * 64 + x, (slice2 / 8) * 64 + y, color2);
+            float weight = blue - slice1;
+            float red = color1[0] + (color2[0] - color1[0]) * weight;
+            float green = color1[1] + (color2[1] - color1[1]) * weight;
+            float newBlue = color1[2] + (color2[2] - color1[2]) * weight;
+            r[i] += (red - r[i]) * intensity;
+            g[i] += (green - g[i]) * intensity;
+            b[i] += (newBlue - b[i]) * intensity;
+        }
+    }
+
+    private static void sample(final int[] lookup, final float x, final float y,
+                               final float[] color) {
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, SIZE - 1);
+        int y1 = Math.min(y0 + 1, SIZE - 1);
+        float fx = x - x0;
+        float fy = y - y0;
+        int topLeft = lookup[y0 * SIZE + x0];
+        int topRight = lookup[y0 * SIZE + x1];
+        int bottomLeft = lookup[y1 * SIZE + x0];
+        int bottomRight = lookup[y1 * SIZE + x1];
+        for (int channel = 0; channel < 3; channel++) {
+            int shift = 16 - channel * 8;
+            float top = lerp(topLeft >> shift & 0xff, topRight >> shift & 0xff, fx);
+            float bottom = lerp(bottomLeft >> shift & 0xff, bottomRight >> shift & 0xff, fx);
+            color[channel] = lerp(top, bottom, fy) / 255.0f;
+        }
+    }
+
+    private static float lerp(final float from, final float to, final float weight) {
+        return from + (to - from) * weight;
+    }
+}
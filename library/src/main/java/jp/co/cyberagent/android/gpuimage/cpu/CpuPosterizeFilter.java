@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Reduces every channel, alpha included, to a number of levels from 1 to 256.
+ */
+public class CpuPosterizeFilter extends CpuFilter {
+    private int colorLevels;
+
+    public CpuPosterizeFilter() {
+        this(10);
+    }
+
+    public CpuPosterizeFilter(final int colorLevels) {
+        this.colorLevels = colorLevels;
+    }
+
+    public void setColorLevels(final int colorLevels) {
+        this.colorLevels = colorLevels;
+    }
+
+    @Override
+    void filter(final Chunk chunk) {
+        float levels = colorLevels;
+        posterize(chunk.r, chunk.count, levels);
+        posterize(chunk.g, chunk.count, levels);
+        posterize(chunk.b, chunk.count, levels);
+        posterize(chunk.a, chunk.count, levels);
+    }
+
+    private static void posterize(final float[] channel, final int count, final float levels) {
+        for (int i = 0; i < count; i++) {
+            channel[i] = (float) Math.floor(channel[i] * levels + 0.5f) / levels;
+        }
+    }
+}
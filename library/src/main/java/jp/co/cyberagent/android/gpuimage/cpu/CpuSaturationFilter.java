@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * Mixes the color with its luminance by a saturation from 0.0, gray, to 2.0, 1.0 as the normal
+ * level.
+ */
+public class CpuSaturationFilter extends CpuFilter {
+    private float saturation;
+
+    public CpuSaturationFilter() {
+        this(1.0f);
+    }
+
+    public CpuSaturationFilter(final float saturation) {
+        this.saturation = saturation;
+    }
+
+    public void setSaturation(final float saturation) {
+        this.saturation = saturation;
+    }
+
+    @Override
+    void filter(final Chunk chunk) {
+        float saturation = this.saturation;
+        float[] r = chunk.r;
+        float[] g = chunk.g;
+        float[] b = chunk.b;
+        for (int i = 0; i < chunk.count; i++) {
+            float luminance = r[i] * 0.2125f + g[i] * 0.7154f + b[i] * 0.0721f;
+            r[i] = luminance + (r[i] - luminance) * saturation;
+            g[i] = luminance + (g[i] - luminance) * saturation;
+            b[i] = luminance + (b[i] - luminance) * saturation;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+import jp.co.cyberagent.android.gpuimage.filter.GPUImageToneCurveFilter;
+
+/**
+ * Maps the color channels through the curves of a
+ * {@link GPUImageToneCurveFilter}, read between the entries of its table like the shader does.
+ */
+public class CpuToneCurveFilter extends CurveFilter {
+    private byte[] toneCurveTable;
+
+    /**
+     * @param toneCurveTable the table of {@link GPUImageToneCurveFilter#getToneCurveTable()}
+     */
+    public CpuToneCurveFilter(final byte[] toneCurveTable) {
+        setToneCurveTable(toneCurveTable);
+    }
+
+    /**
+     * Uses the curves the filter has at the time of the call.
+     */
+    public CpuToneCurveFilter(final GPUImageToneCurveFilter filter) {
+        this(filter.getToneCurveTable());
+    }
+
+    public void setToneCurveTable(final byte[] toneCurveTable) {
+        if (toneCurveTable.length != 256 * 4) {
+            throw new IllegalArgumentException("toneCurveTable must have 256 RGBA entries");
+        }
+        this.toneCurveTable = toneCurveTable.clone();
+    }
+
+    @Override
+    float curve(final int channel, final float value) {
+        // Linear filtering of the 256 texels, whose centers are at (i + 0.5) / 256
+        float position = Math.min(Math.max(value * 256.0f - 0.5f, 0.0f), 255.0f);
+        int left = (int) position;
+        int right = Math.min(left + 1, 255);
+        float weight = position - left;
+        float leftValue = (toneCurveTable[left * 4 + channel] & 0xff) / 255.0f;
+        float rightValue = (toneCurveTable[right * 4 + channel] & 0xff) / 255.0f;
+        return leftValue + (rightValue - leftValue) * weight;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.cyberagent.android.gpuimage.cpu;
+
+/**
+ * A filter mapping every color channel through a function of its own value. The function is
+ * computed once per channel for the 256 values a channel can have, the pixels only look it up.
+ */
+abstract class CurveFilter extends CpuFilter {
+    private final float[] red = new float[256];
+    private final float[] green = new float[256];
+    private final float[] blue = new float[256];
+
+    /**
+     * Computes the output of a channel, 0 for red, 1 for green and 2 for blue.
+     */
+    abstract float curve(int channel, float value);
+
+    @Override
+    void prepare(final int width, final int height) {
+        for (int i = 0; i < 256; i++) {
+            float value = i / 255.0f;
+            red[i] = curve(0, value);
+            green[i] = curve(1, value);
+            blue[i] = curve(2, value);
+        }
+    }
+
+    @Override
+    void filter(final Chunk chunk) {
+        map(chunk.r, chunk.count, red);
+        map(chunk.g, chunk.count, green);
+        map(chunk.b, chunk.count, blue);
+    }
+
+    private static void map(final float[] channel, final int count, final float[] table) {
+        for (int i = 0; i < count; i++) {
+            channel[i] = table[Chunk.index(channel[i])];
+        }
+    }
+}
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImage3x3TextureSamplingFilter extends GPUImageFilter {
     public static final String THREE_X_THREE_TEXTURE_SAMPLING_VERTEX_SHADER = "" +
             "attribute vec4 position;\n" +
@@ -79,8 +77,8 @@ public class GPUImage3x3TextureSamplingFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        uniformTexelWidthLocation = GLES20.glGetUniformLocation(getProgram(), "texelWidth");
-        uniformTexelHeightLocation = GLES20.glGetUniformLocation(getProgram(), "texelHeight");
+        uniformTexelWidthLocation = getUniformLocation("texelWidth");
+        uniformTexelHeightLocation = getUniformLocation("texelHeight");
     }
 
     @Override
@@ -122,4 +120,10 @@ public class GPUImage3x3TextureSamplingFilter extends GPUImageFilter {
         setFloat(uniformTexelWidthLocation, texelWidth);
         setFloat(uniformTexelHeightLocation, texelHeight);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        // Texel sizes set directly are relative to the output, not to pixels
+        return hasOverriddenImageSizeFactor ? SAMPLING_RADIUS_UNBOUNDED : (int) Math.ceil(lineSize);
+    }
 }
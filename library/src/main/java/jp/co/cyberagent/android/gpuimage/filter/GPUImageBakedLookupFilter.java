@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import jp.co.cyberagent.android.gpuimage.util.GLState;
+import jp.co.cyberagent.android.gpuimage.util.LookupTable;
+import jp.co.cyberagent.android.gpuimage.util.LookupTextureCache;
+import jp.co.cyberagent.android.gpuimage.util.RenderTargetPool;
+import jp.co.cyberagent.android.gpuimage.util.Rotation;
+import jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil;
+
+import static jp.co.cyberagent.android.gpuimage.GPUImageRenderer.CUBE;
+
+/**
+ * Renders a run of color mappings (see {@link GPUImageFilter#isColorMapping()}) as a single
+ * lookup pass. The members are drawn over an identity 512x512 lookup image, which then maps
+ * the input colors like the whole run. The image is drawn again only when a member changed a
+ * uniform or queued a draw task since, so a frame costs one pass however long the run is.
+ * <p>
+ * Instances are created by {@link GPUImageFilterGroup} when lookup baking is enabled. The
+ * group stays responsible for the initialization, size changes and destruction of the
+ * members.
+ */
+public class GPUImageBakedLookupFilter extends GPUImageLookupFilter {
+    private static final LookupTable IDENTITY = LookupTable.createIdentity(LookupTable.TILED_SIZE);
+
+    private final List<GPUImageFilter> filters;
+    private final int[] uniformVersions;
+    private final FloatBuffer cubeBuffer;
+    private final FloatBuffer textureBuffer;
+    private final int[] viewport = new int[4];
+    private final RenderTargetPool.RenderTarget[] targets = new RenderTargetPool.RenderTarget[2];
+    private LookupTextureCache.Texture identityTexture;
+    private int bakedTexture;
+    private boolean baked;
+
+    /**
+     * @param filters the color mappings in the order they are applied
+     */
+    public GPUImageBakedLookupFilter(final List<GPUImageFilter> filters) {
+        this.filters = filters;
+        uniformVersions = new int[filters.size()];
+        cubeBuffer = createBuffer(CUBE);
+        // Keeps the rows in place, the lookup image is read back like it was drawn
+        textureBuffer = createBuffer(TextureRotationUtil.getRotation(Rotation.NORMAL, false, true));
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] != null) {
+                targets[i].delete();
+                targets[i] = null;
+            }
+        }
+        if (identityTexture != null) {
+            LookupTextureCache.release(identityTexture);
+            identityTexture = null;
+        }
+        baked = false;
+    }
+
+    @Override
+    public void onDraw(final int textureId, final FloatBuffer cubeBuffer,
+                       final FloatBuffer textureBuffer) {
+        if (isInitialized() && isChanged()) {
+            bake();
+        }
+        super.onDraw(textureId, cubeBuffer, textureBuffer);
+    }
+
+    /**
+     * Gets the filters baked into this pass.
+     *
+     * @return the color mappings
+     */
+    public List<GPUImageFilter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Whether all members are still color mappings, which some only are for some parameters.
+     */
+    boolean isBakeable() {
+        for (int i = 0; i < filters.size(); i++) {
+            if (!filters.get(i).isColorMapping()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    boolean isTexture3DAllowed() {
+        return false;
+    }
+
+    @Override
+    int getSecondTexture() {
+        return bakedTexture;
+    }
+
+    private boolean isChanged() {
+        if (!baked) {
+            return true;
+        }
+        for (int i = 0; i < filters.size(); i++) {
+            GPUImageFilter filter = filters.get(i);
+            if (!filter.isInitialized() || !filter.getDrawTaskQueue().isEmpty()
+                    || filter.getUniformVersion() != uniformVersions[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void bake() {
+        GLState state = GLState.current();
+        int framebuffer = state.getFramebuffer();
+        state.getViewport(viewport);
+        if (identityTexture == null) {
+            identityTexture = LookupTextureCache.acquire(IDENTITY, false);
+        }
+        int size = LookupTable.TILED_IMAGE_SIZE;
+        int texture = identityTexture.getId();
+        for (int i = 0; i < filters.size(); i++) {
+            RenderTargetPool.RenderTarget target = targets[i % 2];
+            if (target == null) {
+                target = RenderTargetPool.RenderTarget.create(size, size);
+                targets[i % 2] = target;
+            }
+            GPUImageFilter filter = filters.get(i);
+            filter.ifNeedInit();
+            // Before drawing, so a value set meanwhile is baked with the next frame
+            uniformVersions[i] = filter.getUniformVersion();
+            state.bindFramebuffer(target.getFramebuffer());
+            state.viewport(0, 0, size, size);
+            filter.onDraw(texture, cubeBuffer, textureBuffer);
+            texture = target.getTexture();
+        }
+        bakedTexture = texture;
+        baked = true;
+        state.bindFramebuffer(framebuffer);
+        state.viewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+    }
+
+    private static FloatBuffer createBuffer(final float[] values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+}
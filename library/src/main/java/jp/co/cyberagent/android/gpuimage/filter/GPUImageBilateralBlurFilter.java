@@ -5,9 +5,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
-
 public class GPUImageBilateralBlurFilter extends GPUImageFilter {
     public static final String BILATERAL_VERTEX_SHADER = "" +
             "attribute vec4 position;\n" +
@@ -126,8 +123,8 @@ public class GPUImageBilateralBlurFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        disFactorLocation = GLES20.glGetUniformLocation(getProgram(), "distanceNormalizationFactor");
-        singleStepOffsetLocation = GLES20.glGetUniformLocation(getProgram(), "singleStepOffset");
+        disFactorLocation = getUniformLocation("distanceNormalizationFactor");
+        singleStepOffsetLocation = getUniformLocation("singleStepOffset");
     }
 
     @Override
@@ -150,4 +147,9 @@ public class GPUImageBilateralBlurFilter extends GPUImageFilter {
         super.onOutputSizeChanged(width, height);
         setTexelSize(width, height);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return 4;
+    }
 }
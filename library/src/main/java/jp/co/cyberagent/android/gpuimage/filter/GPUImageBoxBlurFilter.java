@@ -116,4 +116,10 @@ public class GPUImageBoxBlurFilter extends GPUImageTwoPassTextureSamplingFilter
     public float getHorizontalTexelOffsetRatio() {
         return blurSize;
     }
+
+    @Override
+    public int getSamplingRadius() {
+        // The outer samples sit between the third and fourth texel
+        return (int) Math.ceil(4 * blurSize);
+    }
 }
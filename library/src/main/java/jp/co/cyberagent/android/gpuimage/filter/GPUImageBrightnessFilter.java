@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * brightness value ranges from -1.0 to 1.0, with 0.0 as the normal level
  */
@@ -50,7 +48,7 @@ public class GPUImageBrightnessFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        brightnessLocation = GLES20.glGetUniformLocation(getProgram(), "brightness");
+        brightnessLocation = getUniformLocation("brightness");
     }
 
     @Override
@@ -63,4 +61,14 @@ public class GPUImageBrightnessFilter extends GPUImageFilter {
         this.brightness = brightness;
         setFloat(brightnessLocation, this.brightness);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
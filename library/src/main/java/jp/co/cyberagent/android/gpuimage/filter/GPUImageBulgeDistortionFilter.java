@@ -17,7 +17,6 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
 import android.graphics.PointF;
-import android.opengl.GLES20;
 
 public class GPUImageBulgeDistortionFilter extends GPUImageFilter {
     public static final String BULGE_FRAGMENT_SHADER = "" +
@@ -72,10 +71,10 @@ public class GPUImageBulgeDistortionFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        scaleLocation = GLES20.glGetUniformLocation(getProgram(), "scale");
-        radiusLocation = GLES20.glGetUniformLocation(getProgram(), "radius");
-        centerLocation = GLES20.glGetUniformLocation(getProgram(), "center");
-        aspectRatioLocation = GLES20.glGetUniformLocation(getProgram(), "aspectRatio");
+        scaleLocation = getUniformLocation("scale");
+        radiusLocation = getUniformLocation("radius");
+        centerLocation = getUniformLocation("center");
+        aspectRatioLocation = getUniformLocation("aspectRatio");
     }
 
     @Override
@@ -128,4 +127,9 @@ public class GPUImageBulgeDistortionFilter extends GPUImageFilter {
         this.center = center;
         setPoint(centerLocation, center);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
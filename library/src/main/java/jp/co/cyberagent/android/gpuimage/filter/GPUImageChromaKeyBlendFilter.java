@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Selectively replaces a color in the first image with the second image
  */
@@ -65,9 +63,9 @@ public class GPUImageChromaKeyBlendFilter extends GPUImageTwoInputFilter {
     @Override
     public void onInit() {
         super.onInit();
-        thresholdSensitivityLocation = GLES20.glGetUniformLocation(getProgram(), "thresholdSensitivity");
-        smoothingLocation = GLES20.glGetUniformLocation(getProgram(), "smoothing");
-        colorToReplaceLocation = GLES20.glGetUniformLocation(getProgram(), "colorToReplace");
+        thresholdSensitivityLocation = getUniformLocation("thresholdSensitivity");
+        smoothingLocation = getUniformLocation("smoothing");
+        colorToReplaceLocation = getUniformLocation("colorToReplace");
     }
 
     @Override
@@ -1,7 +1,5 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Created by edward_chiang on 13/10/16.
  */
@@ -160,10 +158,10 @@ public class GPUImageColorBalanceFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        shadowsLocation = GLES20.glGetUniformLocation(getProgram(), "shadowsShift");
-        midtonesLocation = GLES20.glGetUniformLocation(getProgram(), "midtonesShift");
-        highlightsLocation = GLES20.glGetUniformLocation(getProgram(), "highlightsShift");
-        preserveLuminosityLocation = GLES20.glGetUniformLocation(getProgram(), "preserveLuminosity");
+        shadowsLocation = getUniformLocation("shadowsShift");
+        midtonesLocation = getUniformLocation("midtonesShift");
+        highlightsLocation = getUniformLocation("highlightsShift");
+        preserveLuminosityLocation = getUniformLocation("preserveLuminosity");
     }
 
     @Override
@@ -194,4 +192,14 @@ public class GPUImageColorBalanceFilter extends GPUImageFilter {
         this.preserveLuminosity = preserveLuminosity;
         setInteger(preserveLuminosityLocation, preserveLuminosity ? 1 : 0);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Applies a ColorMatrix to the image.
  */
@@ -61,8 +59,8 @@ public class GPUImageColorMatrixFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        colorMatrixLocation = GLES20.glGetUniformLocation(getProgram(), "colorMatrix");
-        intensityLocation = GLES20.glGetUniformLocation(getProgram(), "intensity");
+        colorMatrixLocation = getUniformLocation("colorMatrix");
+        intensityLocation = getUniformLocation("intensity");
     }
 
     @Override
@@ -81,4 +79,21 @@ public class GPUImageColorMatrixFilter extends GPUImageFilter {
         this.colorMatrix = colorMatrix;
         setUniformMatrix4f(colorMatrixLocation, colorMatrix);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    /**
+     * Only while the matrix keeps alpha as it is and does not mix it into red, green and blue,
+     * since a baked lookup only maps opaque colors.
+     */
+    @Override
+    public boolean isColorMapping() {
+        float[] matrix = colorMatrix;
+        return matrix[3] == 0.0f && matrix[7] == 0.0f && matrix[11] == 0.0f
+                && matrix[12] == 0.0f && matrix[13] == 0.0f && matrix[14] == 0.0f
+                && matrix[15] == 1.0f;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Changes the contrast of the image.<br>
  * <br>
@@ -52,7 +50,7 @@ public class GPUImageContrastFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        contrastLocation = GLES20.glGetUniformLocation(getProgram(), "contrast");
+        contrastLocation = getUniformLocation("contrast");
     }
 
     @Override
@@ -65,4 +63,14 @@ public class GPUImageContrastFilter extends GPUImageFilter {
         this.contrast = contrast;
         setFloat(contrastLocation, this.contrast);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
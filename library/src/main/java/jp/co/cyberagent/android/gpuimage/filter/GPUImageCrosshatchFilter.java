@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * crossHatchSpacing: The fractional width of the image to use as the spacing for the crosshatch. The default is 0.03.
  * lineWidth: A relative width for the crosshatch lines. The default is 0.003.
@@ -85,8 +83,8 @@ public class GPUImageCrosshatchFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        crossHatchSpacingLocation = GLES20.glGetUniformLocation(getProgram(), "crossHatchSpacing");
-        lineWidthLocation = GLES20.glGetUniformLocation(getProgram(), "lineWidth");
+        crossHatchSpacingLocation = getUniformLocation("crossHatchSpacing");
+        lineWidthLocation = getUniformLocation("lineWidth");
     }
 
     @Override
@@ -127,4 +125,9 @@ public class GPUImageCrosshatchFilter extends GPUImageFilter {
         this.lineWidth = lineWidth;
         setFloat(lineWidthLocation, this.lineWidth);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
@@ -257,6 +257,8 @@ public class GPUImageDilationFilter extends GPUImageTwoPassTextureSamplingFilter
                     "}\n";
 
 
+    private int radius = 1;
+
     public GPUImageDilationFilter() {
         this(1);
     }
@@ -269,6 +271,7 @@ public class GPUImageDilationFilter extends GPUImageTwoPassTextureSamplingFilter
      */
     public GPUImageDilationFilter(int radius) {
         this(getVertexShader(radius), getFragmentShader(radius));
+        this.radius = radius;
     }
 
     private GPUImageDilationFilter(String vertexShader, String fragmentShader) {
@@ -302,4 +305,9 @@ public class GPUImageDilationFilter extends GPUImageTwoPassTextureSamplingFilter
                 return FRAGMENT_SHADER_4;
         }
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return radius;
+    }
 }
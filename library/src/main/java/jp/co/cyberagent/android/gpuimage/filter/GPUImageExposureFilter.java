@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * exposure: The adjusted exposure (-10.0 - 10.0, with 0.0 as the default)
  */
@@ -50,7 +48,7 @@ public class GPUImageExposureFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        exposureLocation = GLES20.glGetUniformLocation(getProgram(), "exposure");
+        exposureLocation = getUniformLocation("exposure");
     }
 
     @Override
@@ -63,4 +61,14 @@ public class GPUImageExposureFilter extends GPUImageFilter {
         this.exposure = exposure;
         setFloat(exposureLocation, this.exposure);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
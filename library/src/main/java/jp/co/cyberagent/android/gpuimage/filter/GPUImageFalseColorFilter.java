@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageFalseColorFilter extends GPUImageFilter {
     public static final String FALSECOLOR_FRAGMENT_SHADER = "" +
             "precision lowp float;\n" +
@@ -61,8 +59,8 @@ public class GPUImageFalseColorFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        firstColorLocation = GLES20.glGetUniformLocation(getProgram(), "firstColor");
-        secondColorLocation = GLES20.glGetUniformLocation(getProgram(), "secondColor");
+        firstColorLocation = getUniformLocation("firstColor");
+        secondColorLocation = getUniformLocation("secondColor");
     }
 
     @Override
@@ -81,4 +79,14 @@ public class GPUImageFalseColorFilter extends GPUImageFilter {
         this.secondColor = secondColor;
         setFloatVec3(secondColorLocation, secondColor);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
@@ -23,9 +23,12 @@ import android.opengl.GLES20;
 
 import java.io.InputStream;
 import java.nio.FloatBuffer;
-import java.util.LinkedList;
 
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
 import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
+import jp.co.cyberagent.android.gpuimage.util.ProgramCache;
+import jp.co.cyberagent.android.gpuimage.util.RenderTaskQueue;
 
 public class GPUImageFilter {
     public static final String NO_FILTER_VERTEX_SHADER = "" +
@@ -49,9 +52,18 @@ public class GPUImageFilter {
             "     gl_FragColor = texture2D(inputImageTexture, textureCoordinate);\n" +
             "}";
 
-    private final LinkedList<Runnable> runOnDraw;
+    static final int DEFAULT_EXTRA_TEXTURE_UNIT = 3;
+    /**
+     * Sampling radius of filters whose output depends on where a pixel lies in the whole
+     * image, e.g. a vignette, so they can not be rendered in tiles.
+     */
+    public static final int SAMPLING_RADIUS_UNBOUNDED = -1;
+
+    private final RenderTaskQueue runOnDraw;
+    private final UniformState uniformState;
     private final String vertexShader;
     private final String fragmentShader;
+    private ProgramCache.Program program;
     private int glProgId;
     private int glAttribPosition;
     private int glUniformTexture;
@@ -59,13 +71,17 @@ public class GPUImageFilter {
     private int outputWidth;
     private int outputHeight;
     private boolean isInitialized;
+    private ProgramCache.Program fusedProgram;
+    private String uniformPrefix = "";
+    private int extraTextureUnit = DEFAULT_EXTRA_TEXTURE_UNIT;
 
     public GPUImageFilter() {
         this(NO_FILTER_VERTEX_SHADER, NO_FILTER_FRAGMENT_SHADER);
     }
 
     public GPUImageFilter(final String vertexShader, final String fragmentShader) {
-        runOnDraw = new LinkedList<>();
+        runOnDraw = new RenderTaskQueue();
+        uniformState = new UniformState();
         this.vertexShader = vertexShader;
         this.fragmentShader = fragmentShader;
     }
@@ -76,10 +92,16 @@ public class GPUImageFilter {
     }
 
     public void onInit() {
-        glProgId = OpenGlUtils.loadProgram(vertexShader, fragmentShader);
-        glAttribPosition = GLES20.glGetAttribLocation(glProgId, "position");
-        glUniformTexture = GLES20.glGetUniformLocation(glProgId, "inputImageTexture");
-        glAttribTextureCoordinate = GLES20.glGetAttribLocation(glProgId, "inputTextureCoordinate");
+        if (fusedProgram != null) {
+            program = fusedProgram;
+        } else {
+            program = ProgramCache.acquire(getVertexShader(), getFragmentShader());
+        }
+        glProgId = program.getId();
+        glAttribPosition = program.getAttribLocation("position");
+        glUniformTexture = program.getUniformLocation("inputImageTexture");
+        glAttribTextureCoordinate = program.getAttribLocation("inputTextureCoordinate");
+        uniformState.setInt(glUniformTexture, 0);
         isInitialized = true;
     }
 
@@ -92,7 +114,12 @@ public class GPUImageFilter {
 
     public final void destroy() {
         isInitialized = false;
-        GLES20.glDeleteProgram(glProgId);
+        if (program != null && fusedProgram == null) {
+            ProgramCache.release(program);
+        }
+        program = null;
+        // Locations are only valid for the program they were looked up in
+        uniformState.clear();
         onDestroy();
     }
 
@@ -106,42 +133,78 @@ public class GPUImageFilter {
 
     public void onDraw(final int textureId, final FloatBuffer cubeBuffer,
                        final FloatBuffer textureBuffer) {
-        GLES20.glUseProgram(glProgId);
+        GLState state = GLState.current();
+        state.useProgram(glProgId);
         runPendingOnDrawTasks();
         if (!isInitialized) {
             return;
         }
+        if (program.use(this)) {
+            restoreUniformState();
+        }
+        flushUniformState();
 
         cubeBuffer.position(0);
-        GLES20.glVertexAttribPointer(glAttribPosition, 2, GLES20.GL_FLOAT, false, 0, cubeBuffer);
-        GLES20.glEnableVertexAttribArray(glAttribPosition);
+        state.vertexAttribPointer(glAttribPosition, 2, cubeBuffer);
+        state.enableVertexAttribArray(glAttribPosition);
         textureBuffer.position(0);
-        GLES20.glVertexAttribPointer(glAttribTextureCoordinate, 2, GLES20.GL_FLOAT, false, 0,
-                textureBuffer);
-        GLES20.glEnableVertexAttribArray(glAttribTextureCoordinate);
-        if (textureId != OpenGlUtils.NO_TEXTURE) {
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-            GLES20.glUniform1i(glUniformTexture, 0);
-        }
+        state.vertexAttribPointer(glAttribTextureCoordinate, 2, textureBuffer);
+        state.enableVertexAttribArray(glAttribTextureCoordinate);
+        // Without an input, unbind so a pass never samples the texture it renders into
+        state.bindTexture(0, textureId != OpenGlUtils.NO_TEXTURE ? textureId : 0);
         onDrawArraysPre();
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
-        GLES20.glDisableVertexAttribArray(glAttribPosition);
-        GLES20.glDisableVertexAttribArray(glAttribTextureCoordinate);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        state.applyVertexAttribArrays();
+        GLBackend.current().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 
+    /**
+     * Called right before drawing, to bind additional textures and attributes. Bindings should
+     * go through {@link GLState}; state changed with direct GL calls has to be followed by
+     * {@link GLState#invalidate()}.
+     */
     protected void onDrawArraysPre() {
     }
 
-    protected void runPendingOnDrawTasks() {
-        synchronized (runOnDraw) {
-            while (!runOnDraw.isEmpty()) {
-                runOnDraw.removeFirst().run();
-            }
+    /**
+     * Runs the tasks queued with runOnDraw, so that the next draw shows every change made so
+     * far. Does nothing before the filter was initialized. Must be called on the GL thread.
+     */
+    public void prepare() {
+        if (isInitialized) {
+            runPendingOnDrawTasks();
         }
     }
 
+    protected void runPendingOnDrawTasks() {
+        runOnDraw.runAll();
+    }
+
+    /**
+     * Marks every uniform to be set again with the latest value passed to the setters. Needed
+     * when the shared program was used by another filter since this filter last drew.
+     */
+    protected void restoreUniformState() {
+        uniformState.invalidate();
+    }
+
+    /**
+     * Uploads the uniforms changed since the last draw to the program in use.
+     */
+    void flushUniformState() {
+        uniformState.flush();
+    }
+
+    /**
+     * Gets how far around each pixel, in pixels, the filter reads its input. Rendering in
+     * tiles adds this margin to every tile, so the seams do not show.
+     *
+     * @return the radius, 0 if only the pixel itself is read or
+     * {@link #SAMPLING_RADIUS_UNBOUNDED}
+     */
+    public int getSamplingRadius() {
+        return 0;
+    }
+
     public boolean isInitialized() {
         return isInitialized;
     }
@@ -170,105 +233,145 @@ public class GPUImageFilter {
         return glUniformTexture;
     }
 
+    String getVertexShader() {
+        return vertexShader;
+    }
+
+    String getFragmentShader() {
+        return fragmentShader;
+    }
+
+    /**
+     * Looks up a uniform of this filter's fragment shader. When the filter is part of a fused
+     * pass the name is resolved against its namespaced copy in the generated shader.
+     *
+     * @param name the uniform name as declared in the filter's own shader
+     * @return the uniform location in the current program
+     */
+    protected int getUniformLocation(final String name) {
+        return program.getUniformLocation(uniformPrefix + name);
+    }
+
+    /**
+     * Whether this filter only ever samples inputImageTexture at textureCoordinate, so that
+     * {@link GPUImageFilterGroup} may fuse it with its neighbours into a single pass.
+     *
+     * @return true if the filter is a per-pixel function of its input
+     */
+    public boolean isPointWise() {
+        return false;
+    }
+
+    /**
+     * Whether the filter maps every opaque RGB color to another one, independent of the
+     * pixel's position and keeping its alpha, so that {@link GPUImageFilterGroup} may bake it
+     * into a lookup table. Functions with steps such as thresholds are better left out, the
+     * table only holds 64 values per channel. The answer may depend on the current parameters, a
+     * group stops baking a filter as soon as it returns false.
+     *
+     * @return true if the filter is a smooth function of the input color
+     */
+    public boolean isColorMapping() {
+        return false;
+    }
+
+    /**
+     * The texture unit used for an additional sampler such as a lookup or curve texture.
+     */
+    protected int getExtraTextureUnit() {
+        return extraTextureUnit;
+    }
+
+    void setExtraTextureUnit(final int unit) {
+        extraTextureUnit = unit;
+    }
+
+    /**
+     * Gets a counter increased by every uniform value set on the filter.
+     */
+    int getUniformVersion() {
+        return uniformState.getVersion();
+    }
+
+    ProgramCache.Program getCachedProgram() {
+        return program;
+    }
+
+    /**
+     * Whether the filter draws as a member of a {@link GPUImageFusedFilter}.
+     */
+    boolean isFused() {
+        return fusedProgram != null;
+    }
+
+    void attachToFusedProgram(final ProgramCache.Program program, final String prefix) {
+        fusedProgram = program;
+        uniformPrefix = prefix;
+    }
+
+    void detachFromFusedProgram() {
+        if (fusedProgram != null) {
+            program = null;
+            glProgId = 0;
+        }
+        fusedProgram = null;
+        uniformPrefix = "";
+        extraTextureUnit = DEFAULT_EXTRA_TEXTURE_UNIT;
+    }
+
     protected void setInteger(final int location, final int intValue) {
-        runOnDraw(new Runnable() {
-            @Override
-            public void run() {
-                ifNeedInit();
-                GLES20.glUniform1i(location, intValue);
-            }
-        });
+        uniformState.setInt(location, intValue);
     }
 
     protected void setFloat(final int location, final float floatValue) {
-        runOnDraw(new Runnable() {
-            @Override
-            public void run() {
-                ifNeedInit();
-                GLES20.glUniform1f(location, floatValue);
-            }
-        });
+        uniformState.setFloat(location, floatValue);
     }
 
     protected void setFloatVec2(final int location, final float[] arrayValue) {
-        runOnDraw(new Runnable() {
-            @Override
-            public void run() {
-                ifNeedInit();
-                GLES20.glUniform2fv(location, 1, FloatBuffer.wrap(arrayValue));
-            }
-        });
+        uniformState.setFloats(location, UniformState.TYPE_VEC2, arrayValue, 2);
     }
 
     protected void setFloatVec3(final int location, final float[] arrayValue) {
-        runOnDraw(new Runnable() {
-            @Override
-            public void run() {
-                ifNeedInit();
-                GLES20.glUniform3fv(location, 1, FloatBuffer.wrap(arrayValue));
-            }
-        });
+        uniformState.setFloats(location, UniformState.TYPE_VEC3, arrayValue, 3);
     }
 
     protected void setFloatVec4(final int location, final float[] arrayValue) {
-        runOnDraw(new Runnable() {
-            @Override
-            public void run() {
-                ifNeedInit();
-                GLES20.glUniform4fv(location, 1, FloatBuffer.wrap(arrayValue));
-            }
-        });
+        uniformState.setFloats(location, UniformState.TYPE_VEC4, arrayValue, 4);
     }
 
     protected void setFloatArray(final int location, final float[] arrayValue) {
-        runOnDraw(new Runnable() {
-            @Override
-            public void run() {
-                ifNeedInit();
-                GLES20.glUniform1fv(location, arrayValue.length, FloatBuffer.wrap(arrayValue));
-            }
-        });
+        uniformState.setFloats(location, UniformState.TYPE_FLOAT_ARRAY, arrayValue,
+                arrayValue.length);
     }
 
     protected void setPoint(final int location, final PointF point) {
-        runOnDraw(new Runnable() {
-            @Override
-            public void run() {
-                ifNeedInit();
-                float[] vec2 = new float[2];
-                vec2[0] = point.x;
-                vec2[1] = point.y;
-                GLES20.glUniform2fv(location, 1, vec2, 0);
-            }
-        });
+        uniformState.setFloat2(location, point.x, point.y);
     }
 
     protected void setUniformMatrix3f(final int location, final float[] matrix) {
-        runOnDraw(new Runnable() {
-
-            @Override
-            public void run() {
-                ifNeedInit();
-                GLES20.glUniformMatrix3fv(location, 1, false, matrix, 0);
-            }
-        });
+        uniformState.setFloats(location, UniformState.TYPE_MAT3, matrix, 9);
     }
 
     protected void setUniformMatrix4f(final int location, final float[] matrix) {
-        runOnDraw(new Runnable() {
-
-            @Override
-            public void run() {
-                ifNeedInit();
-                GLES20.glUniformMatrix4fv(location, 1, false, matrix, 0);
-            }
-        });
+        uniformState.setFloats(location, UniformState.TYPE_MAT4, matrix, 16);
     }
 
     protected void runOnDraw(final Runnable runnable) {
-        synchronized (runOnDraw) {
-            runOnDraw.addLast(runnable);
-        }
+        runOnDraw.post(runnable);
+    }
+
+    /**
+     * Runs the task before the next draw, dropping a pending task posted with the same key.
+     */
+    protected void runOnDraw(final Object key, final Runnable runnable) {
+        runOnDraw.post(key, runnable);
+    }
+
+    /**
+     * Gets the queue of tasks run before each draw, e.g. to monitor its depth and wait times.
+     */
+    public RenderTaskQueue getDrawTaskQueue() {
+        return runOnDraw;
     }
 
     public static String loadShader(String file, Context context) {
@@ -25,6 +25,9 @@ import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+import jp.co.cyberagent.android.gpuimage.util.FrameProfiler;
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
 import jp.co.cyberagent.android.gpuimage.util.Rotation;
 import jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil;
 
@@ -34,13 +37,31 @@ import static jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil.TEXTURE
 /**
  * Resembles a filter that consists of multiple filters applied after each
  * other.
+ * <p>
+ * The framebuffers between the passes are kept for one previous output size as well, so
+ * switching to another size and back, e.g. from the preview's to an export's, does not
+ * recreate the preview's. The other size's are deleted after the first frame back.
  */
 public class GPUImageFilterGroup extends GPUImageFilter {
 
     private List<GPUImageFilter> filters;
     private List<GPUImageFilter> mergedFilters;
+    private final int[] targetViewport = new int[4];
+    private List<GPUImageFilter> renderFilters;
+    private boolean fusionEnabled;
+    private boolean lookupBakingEnabled;
     private int[] frameBuffers;
     private int[] frameBufferTextures;
+    private int frameBufferWidth;
+    private int frameBufferHeight;
+    // The framebuffers of the previous output size, kept for switching back to it
+    private int[] spareFrameBuffers;
+    private int[] spareFrameBufferTextures;
+    private int spareWidth;
+    private int spareHeight;
+    // The spare framebuffers are of the size just left after switching back, so go after a draw
+    private boolean dropSpareAfterDraw;
+    private int[] passTargets;
 
     private final FloatBuffer glCubeBuffer;
     private final FloatBuffer glTextureBuffer;
@@ -91,6 +112,42 @@ public class GPUImageFilterGroup extends GPUImageFilter {
         updateMergedFilters();
     }
 
+    /**
+     * Enables fusing runs of point-wise filters (see {@link GPUImageFilter#isPointWise()}) into
+     * a single generated shader, so that the run costs one pass instead of one per filter.
+     * Filters which sample neighbouring pixels are still rendered as separate passes.
+     * Has to be called before the group is initialized.
+     *
+     * @param fusionEnabled true to fuse point-wise filters
+     */
+    public void setFusionEnabled(final boolean fusionEnabled) {
+        this.fusionEnabled = fusionEnabled;
+        updateMergedFilters();
+    }
+
+    public boolean isFusionEnabled() {
+        return fusionEnabled;
+    }
+
+    /**
+     * Enables baking runs of color mappings (see {@link GPUImageFilter#isColorMapping()}) into
+     * a single {@link GPUImageBakedLookupFilter} pass. The run is drawn into a lookup image
+     * once and again whenever one of its filters changes, so a frame costs one pass however
+     * many color adjustments are stacked. The colors are interpolated between 64 steps per
+     * channel, which is close to but not exactly what drawing the filters gives. Has to be
+     * called before the group is initialized.
+     *
+     * @param lookupBakingEnabled true to bake color mappings
+     */
+    public void setLookupBakingEnabled(final boolean lookupBakingEnabled) {
+        this.lookupBakingEnabled = lookupBakingEnabled;
+        updateMergedFilters();
+    }
+
+    public boolean isLookupBakingEnabled() {
+        return lookupBakingEnabled;
+    }
+
     /*
      * (non-Javadoc)
      * @see jp.co.cyberagent.android.gpuimage.filter.GPUImageFilter#onInit()
@@ -98,6 +155,12 @@ public class GPUImageFilterGroup extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
+        if (fusionEnabled) {
+            // Fused passes first, so their members are not compiled on their own below
+            for (GPUImageFilter filter : renderFilters) {
+                filter.ifNeedInit();
+            }
+        }
         for (GPUImageFilter filter : filters) {
             filter.ifNeedInit();
         }
@@ -113,20 +176,90 @@ public class GPUImageFilterGroup extends GPUImageFilter {
         for (GPUImageFilter filter : filters) {
             filter.destroy();
         }
+        if (renderFilters != null) {
+            for (GPUImageFilter filter : renderFilters) {
+                if (isGeneratedPass(filter)) {
+                    filter.destroy();
+                }
+            }
+        }
         super.onDestroy();
     }
 
     private void destroyFramebuffers() {
-        if (frameBufferTextures != null) {
-            GLES20.glDeleteTextures(frameBufferTextures.length, frameBufferTextures, 0);
-            frameBufferTextures = null;
+        deleteFramebuffers(frameBuffers, frameBufferTextures);
+        frameBuffers = null;
+        frameBufferTextures = null;
+        destroySpareFramebuffers();
+    }
+
+    private void destroySpareFramebuffers() {
+        deleteFramebuffers(spareFrameBuffers, spareFrameBufferTextures);
+        spareFrameBuffers = null;
+        spareFrameBufferTextures = null;
+        dropSpareAfterDraw = false;
+    }
+
+    private static void deleteFramebuffers(final int[] frameBuffers, final int[] textures) {
+        if (textures != null) {
+            GLState.current().deleteTextures(textures.length, textures, 0);
         }
         if (frameBuffers != null) {
-            GLES20.glDeleteFramebuffers(frameBuffers.length, frameBuffers, 0);
-            frameBuffers = null;
+            GLState.current().deleteFramebuffers(frameBuffers.length, frameBuffers, 0);
         }
     }
 
+    /**
+     * Keeps the framebuffers for the case the output size changes back to theirs, e.g. after
+     * rendering an export of another size than the preview, and takes the kept ones back if
+     * they have the new size. Otherwise the kept ones are deleted, so a group holds at most two
+     * sets. When switching back, the ones kept now are deleted after the next draw, so the
+     * export's do not stay around with the preview's.
+     */
+    private void stashFramebuffers(final int width, final int height) {
+        int[] buffers = frameBuffers;
+        int[] textures = frameBufferTextures;
+        int bufferWidth = frameBufferWidth;
+        int bufferHeight = frameBufferHeight;
+        frameBuffers = null;
+        frameBufferTextures = null;
+        dropSpareAfterDraw = restoreSpareFramebuffers(width, height);
+        if (!dropSpareAfterDraw) {
+            destroySpareFramebuffers();
+        }
+        spareFrameBuffers = buffers;
+        spareFrameBufferTextures = textures;
+        spareWidth = bufferWidth;
+        spareHeight = bufferHeight;
+    }
+
+    /**
+     * Takes the kept framebuffers back if they have the size and number needed.
+     *
+     * @return true if the kept framebuffers are used
+     */
+    private boolean restoreSpareFramebuffers(final int width, final int height) {
+        if (spareFrameBuffers == null || spareWidth != width || spareHeight != height
+                || spareFrameBuffers.length != getFramebufferCount()) {
+            return false;
+        }
+        frameBuffers = spareFrameBuffers;
+        frameBufferTextures = spareFrameBufferTextures;
+        frameBufferWidth = width;
+        frameBufferHeight = height;
+        spareFrameBuffers = null;
+        spareFrameBufferTextures = null;
+        return true;
+    }
+
+    private int getFramebufferCount() {
+        int count = 0;
+        for (int target : passTargets) {
+            count = Math.max(count, target + 1);
+        }
+        return count;
+    }
+
     /*
      * (non-Javadoc)
      * @see
@@ -136,43 +269,104 @@ public class GPUImageFilterGroup extends GPUImageFilter {
     @Override
     public void onOutputSizeChanged(final int width, final int height) {
         super.onOutputSizeChanged(width, height);
-        if (frameBuffers != null) {
-            destroyFramebuffers();
+        if (frameBuffers != null && (frameBufferWidth != width || frameBufferHeight != height)) {
+            stashFramebuffers(width, height);
         }
 
         int size = filters.size();
         for (int i = 0; i < size; i++) {
             filters.get(i).onOutputSizeChanged(width, height);
         }
+        if (renderFilters != null) {
+            for (GPUImageFilter filter : renderFilters) {
+                if (isGeneratedPass(filter)) {
+                    filter.onOutputSizeChanged(width, height);
+                }
+            }
+        }
+
+        // The framebuffers are created on the first draw, so groups which are merged into
+        // another group and never drawn themselves do not hold any
+        if (renderFilters != null && renderFilters.size() > 0) {
+            passTargets = assignFramebuffers(getLastUses(renderFilters.size()));
+            if (frameBuffers != null && frameBuffers.length != getFramebufferCount()) {
+                deleteFramebuffers(frameBuffers, frameBufferTextures);
+                frameBuffers = null;
+                frameBufferTextures = null;
+            }
+        }
+    }
+
+    private void createFramebuffers(final int width, final int height) {
+        GLBackend gl = GLBackend.current();
+        int count = getFramebufferCount();
+        frameBufferWidth = width;
+        frameBufferHeight = height;
+        frameBuffers = new int[count];
+        frameBufferTextures = new int[count];
+        GLState state = GLState.current();
+
+        for (int i = 0; i < count; i++) {
+            gl.glGenFramebuffers(1, frameBuffers, i);
+            gl.glGenTextures(1, frameBufferTextures, i);
+            state.bindTexture(frameBufferTextures[i]);
+            gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+            gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+            state.bindFramebuffer(frameBuffers[i]);
+            gl.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                    GLES20.GL_TEXTURE_2D, frameBufferTextures[i], 0);
+        }
+        state.bindFramebuffer(0);
+    }
 
-        if (mergedFilters != null && mergedFilters.size() > 0) {
-            size = mergedFilters.size();
-            frameBuffers = new int[size - 1];
-            frameBufferTextures = new int[size - 1];
-
-            for (int i = 0; i < size - 1; i++) {
-                GLES20.glGenFramebuffers(1, frameBuffers, i);
-                GLES20.glGenTextures(1, frameBufferTextures, i);
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, frameBufferTextures[i]);
-                GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
-                        GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
-                GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-                        GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-                GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-                        GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-                GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-                        GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-                GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-                        GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-
-                GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffers[i]);
-                GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
-                        GLES20.GL_TEXTURE_2D, frameBufferTextures[i], 0);
-
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-                GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    /**
+     * Returns for the output of every pass but the last one the index of the last pass which
+     * reads it. Every pass of a group only reads the output of the pass before it.
+     */
+    private static int[] getLastUses(final int passCount) {
+        int[] lastUses = new int[Math.max(passCount - 1, 0)];
+        for (int i = 0; i < lastUses.length; i++) {
+            lastUses[i] = i + 1;
+        }
+        return lastUses;
+    }
+
+    /**
+     * Assigns the output of every pass to a framebuffer. A framebuffer is reused as soon as the
+     * last pass reading its content has run, so a linear chain needs two framebuffers no matter
+     * how long it is, while outputs which are read by later passes keep their own.
+     *
+     * @param lastUses index of the last pass reading the output of each pass
+     * @return index of the framebuffer each pass renders to
+     */
+    static int[] assignFramebuffers(final int[] lastUses) {
+        int[] targets = new int[lastUses.length];
+        int[] busyUntil = new int[lastUses.length];
+        int count = 0;
+        for (int pass = 0; pass < lastUses.length; pass++) {
+            int target = count;
+            for (int i = 0; i < count; i++) {
+                if (busyUntil[i] < pass) {
+                    target = i;
+                    break;
+                }
+            }
+            if (target == count) {
+                count++;
             }
+            busyUntil[target] = lastUses[pass];
+            targets[pass] = target;
         }
+        return targets;
     }
 
     /*
@@ -185,20 +379,47 @@ public class GPUImageFilterGroup extends GPUImageFilter {
     public void onDraw(final int textureId, final FloatBuffer cubeBuffer,
                        final FloatBuffer textureBuffer) {
         runPendingOnDrawTasks();
-        if (!isInitialized() || frameBuffers == null || frameBufferTextures == null) {
+        if (!isInitialized() || passTargets == null) {
             return;
         }
-        if (mergedFilters != null) {
-            int size = mergedFilters.size();
+        // The last pass draws to whatever the caller bound, not necessarily the screen or
+        // all of it
+        int target = GLState.current().getFramebuffer();
+        GLState.current().getViewport(targetViewport);
+        if (lookupBakingEnabled && renderFilters != null && !isBakingValid()) {
+            updateRenderFilters();
+        }
+        if (passTargets.length != renderFilters.size() - 1) {
+            // Filters were added after the output size was set
+            destroyFramebuffers();
+            passTargets = assignFramebuffers(getLastUses(renderFilters.size()));
+        }
+        if (frameBuffers == null
+                && !restoreSpareFramebuffers(getOutputWidth(), getOutputHeight())) {
+            createFramebuffers(getOutputWidth(), getOutputHeight());
+        }
+        if (renderFilters != null) {
+            GLState state = GLState.current();
+            FrameProfiler profiler = FrameProfiler.current();
+            int size = renderFilters.size();
             int previousTexture = textureId;
             for (int i = 0; i < size; i++) {
-                GPUImageFilter filter = mergedFilters.get(i);
+                GPUImageFilter filter = renderFilters.get(i);
+                filter.ifNeedInit();
                 boolean isNotLast = i < size - 1;
                 if (isNotLast) {
-                    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffers[i]);
-                    GLES20.glClearColor(0, 0, 0, 0);
+                    state.bindFramebuffer(frameBuffers[passTargets[i]]);
+                    state.viewport(0, 0, getOutputWidth(), getOutputHeight());
+                    GLBackend.current().glClearColor(0, 0, 0, 0);
+                } else {
+                    state.bindFramebuffer(target);
+                    state.viewport(targetViewport[0], targetViewport[1],
+                            targetViewport[2], targetViewport[3]);
                 }
 
+                if (profiler != null) {
+                    profiler.beginPass(filter);
+                }
                 if (i == 0) {
                     filter.onDraw(previousTexture, cubeBuffer, textureBuffer);
                 } else if (i == size - 1) {
@@ -207,12 +428,46 @@ public class GPUImageFilterGroup extends GPUImageFilter {
                     filter.onDraw(previousTexture, glCubeBuffer, glTextureBuffer);
                 }
 
+                if (profiler != null) {
+                    profiler.endPass();
+                }
+
                 if (isNotLast) {
-                    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
-                    previousTexture = frameBufferTextures[i];
+                    previousTexture = frameBufferTextures[passTargets[i]];
                 }
             }
         }
+        if (dropSpareAfterDraw) {
+            destroySpareFramebuffers();
+        }
+    }
+
+    /**
+     * Passes read the output of the previous ones, so their radii add up.
+     */
+    @Override
+    public int getSamplingRadius() {
+        int radius = 0;
+        for (GPUImageFilter filter : filters) {
+            int filterRadius = filter.getSamplingRadius();
+            if (filterRadius == SAMPLING_RADIUS_UNBOUNDED) {
+                return SAMPLING_RADIUS_UNBOUNDED;
+            }
+            radius += filterRadius;
+        }
+        return radius;
+    }
+
+    @Override
+    public void prepare() {
+        super.prepare();
+        // The tasks of the group may have replaced the passes
+        if (isInitialized() && renderFilters != null) {
+            for (GPUImageFilter filter : renderFilters) {
+                filter.ifNeedInit();
+                filter.prepare();
+            }
+        }
     }
 
     /**
@@ -228,6 +483,16 @@ public class GPUImageFilterGroup extends GPUImageFilter {
         return mergedFilters;
     }
 
+    /**
+     * Gets the filters which are actually drawn, one per pass. Equals the merged filters
+     * unless fusion is enabled.
+     *
+     * @return the filters drawn by this group
+     */
+    public List<GPUImageFilter> getRenderFilters() {
+        return renderFilters;
+    }
+
     public void updateMergedFilters() {
         if (filters == null) {
             return;
@@ -251,5 +516,101 @@ public class GPUImageFilterGroup extends GPUImageFilter {
             }
             mergedFilters.add(filter);
         }
+        updateRenderFilters();
+    }
+
+    private void updateRenderFilters() {
+        final List<GPUImageFilter> oldFilters = renderFilters;
+        List<GPUImageFilter> filters = lookupBakingEnabled
+                ? bakeColorMappings(mergedFilters) : mergedFilters;
+        if (!fusionEnabled) {
+            renderFilters = filters;
+        } else {
+            List<GPUImageFilter> passes = new ArrayList<>();
+            List<GPUImageFilter> run = new ArrayList<>();
+            for (GPUImageFilter filter : filters) {
+                if (GPUImageFusedFilter.canFuse(filter)) {
+                    if (!GPUImageFusedFilter.canAppend(run, filter)) {
+                        addRun(run, passes);
+                    }
+                    run.add(filter);
+                } else {
+                    addRun(run, passes);
+                    passes.add(filter);
+                }
+            }
+            addRun(run, passes);
+            renderFilters = passes;
+        }
+
+        // Generated passes which are replaced own GL objects which have to be released on the
+        // GL thread
+        if (oldFilters != null && oldFilters != mergedFilters) {
+            runOnDraw(new Runnable() {
+                @Override
+                public void run() {
+                    for (GPUImageFilter filter : oldFilters) {
+                        if (isGeneratedPass(filter) && filter.isInitialized()) {
+                            filter.destroy();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Replaces every run of at least two color mappings with a lookup pass.
+     */
+    private static List<GPUImageFilter> bakeColorMappings(final List<GPUImageFilter> filters) {
+        List<GPUImageFilter> passes = new ArrayList<>();
+        List<GPUImageFilter> run = new ArrayList<>();
+        for (GPUImageFilter filter : filters) {
+            if (filter.isColorMapping()) {
+                run.add(filter);
+                continue;
+            }
+            addBakedRun(run, passes);
+            passes.add(filter);
+        }
+        addBakedRun(run, passes);
+        return passes;
+    }
+
+    private static void addBakedRun(List<GPUImageFilter> run, List<GPUImageFilter> passes) {
+        if (run.size() == 1) {
+            passes.add(run.get(0));
+        } else if (run.size() > 1) {
+            passes.add(new GPUImageBakedLookupFilter(new ArrayList<>(run)));
+        }
+        run.clear();
+    }
+
+    /**
+     * Whether the baked passes still only hold color mappings. A filter may stop being one when
+     * its parameters change, e.g. a color matrix which starts to change alpha.
+     */
+    private boolean isBakingValid() {
+        for (int i = 0; i < renderFilters.size(); i++) {
+            GPUImageFilter filter = renderFilters.get(i);
+            if (filter instanceof GPUImageBakedLookupFilter
+                    && !((GPUImageBakedLookupFilter) filter).isBakeable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isGeneratedPass(final GPUImageFilter filter) {
+        return filter instanceof GPUImageFusedFilter || filter instanceof GPUImageBakedLookupFilter;
+    }
+
+    private static void addRun(List<GPUImageFilter> run, List<GPUImageFilter> passes) {
+        if (run.size() == 1) {
+            passes.add(run.get(0));
+        } else if (run.size() > 1) {
+            passes.add(new GPUImageFusedFilter(new ArrayList<>(run)));
+        }
+        run.clear();
     }
 }
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.filter;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders a run of point-wise filters in a single pass. The fragment shader of every member
+ * is rewritten into a function with namespaced uniforms and the functions are chained in one
+ * generated shader, so no intermediate framebuffer is needed between the members.
+ * <p>
+ * Instances are created by {@link GPUImageFilterGroup} when fusion is enabled. The group stays
+ * responsible for the size changes and destruction of the members.
+ */
+public class GPUImageFusedFilter extends GPUImageFilter {
+    // Unit 0 is the input image, GLES 2.0 guarantees 8 fragment texture units
+    private static final int FIRST_EXTRA_TEXTURE_UNIT = 1;
+    private static final int MAX_EXTRA_TEXTURES = 7;
+
+    private static final Pattern COMMENT = Pattern.compile("//[^\\n]*|/\\*[\\s\\S]*?\\*/");
+    private static final Pattern MAIN = Pattern.compile("void\\s+main\\s*\\(\\s*(void\\s*)?\\)\\s*\\{");
+    private static final Pattern PRECISION = Pattern.compile("precision\\s+(\\w+)\\s+(\\w+)\\s*;");
+    private static final Pattern VARYING = Pattern.compile("varying\\s+(\\w+\\s+)?vec2\\s+textureCoordinate2?\\s*;");
+    private static final Pattern INPUT_SAMPLER = Pattern.compile("uniform\\s+(\\w+\\s+)?sampler2D\\s+inputImageTexture\\s*;");
+    private static final Pattern INPUT_SAMPLE = Pattern.compile("texture2D\\s*\\(\\s*inputImageTexture\\s*,\\s*textureCoordinate\\s*\\)");
+    private static final Pattern GL_FRAG_COLOR = Pattern.compile("\\bgl_FragColor\\b");
+    private static final Pattern DECLARATION = Pattern.compile("\\b(?:uniform|const)\\s+(?:(?:lowp|mediump|highp)\\s+)?(\\w+)\\s+(\\w+)");
+    private static final Pattern FUNCTION = Pattern.compile("\\b(?:void|bool|int|float|[bi]?vec[234]|mat[234])\\s+(\\w+)\\s*\\(");
+    private static final Pattern UNSUPPORTED = Pattern.compile("#|\\bstruct\\b|\\bdiscard\\b|\\bgl_FragData\\b");
+    private static final Pattern RETURN = Pattern.compile("\\breturn\\b");
+    private static final List<String> PRECISIONS = Arrays.asList("lowp", "mediump", "highp");
+
+    private final List<GPUImageFilter> filters;
+
+    /**
+     * Instantiates a new fused pass. Every filter must satisfy {@link #canFuse(GPUImageFilter)}
+     * and the list must have been built with {@link #canAppend(List, GPUImageFilter)}.
+     *
+     * @param filters the point-wise filters in the order they are applied
+     */
+    public GPUImageFusedFilter(final List<GPUImageFilter> filters) {
+        super(buildVertexShader(filters), buildFragmentShader(filters));
+        this.filters = filters;
+    }
+
+    /**
+     * Checks whether the given filter can take part in a fused pass.
+     *
+     * @param filter the filter to check
+     * @return true if the filter's fragment shader can be inlined
+     */
+    public static boolean canFuse(final GPUImageFilter filter) {
+        if (!filter.isPointWise()
+                || filter instanceof GPUImageFilterGroup
+                || filter instanceof GPUImageFusedFilter
+                || filter instanceof GPUImageBakedLookupFilter) {
+            return false;
+        }
+        String vertexShader = filter.getVertexShader();
+        if (!NO_FILTER_VERTEX_SHADER.equals(vertexShader)
+                && !GPUImageTwoInputFilter.VERTEX_SHADER.equals(vertexShader)) {
+            return false;
+        }
+        return countExtraSamplers(filter.getFragmentShader()) <= 1
+                && rewrite(filter.getFragmentShader(), "f_") != null;
+    }
+
+    /**
+     * Checks whether a fusable filter can be appended to a run without running out of
+     * texture units or mixing different second texture coordinates.
+     *
+     * @param run    the filters already in the run
+     * @param filter the filter to append
+     * @return true if the filter fits into the same pass
+     */
+    public static boolean canAppend(final List<GPUImageFilter> run, final GPUImageFilter filter) {
+        int extraTextures = countExtraSamplers(filter.getFragmentShader());
+        for (GPUImageFilter member : run) {
+            extraTextures += countExtraSamplers(member.getFragmentShader());
+            if (member instanceof GPUImageTwoInputFilter && filter instanceof GPUImageTwoInputFilter
+                    && !((GPUImageTwoInputFilter) member).getTexture2CoordinatesBuffer()
+                    .equals(((GPUImageTwoInputFilter) filter).getTexture2CoordinatesBuffer())) {
+                return false;
+            }
+        }
+        return extraTextures <= MAX_EXTRA_TEXTURES;
+    }
+
+    @Override
+    public void onInit() {
+        super.onInit();
+        int extraTextureUnit = FIRST_EXTRA_TEXTURE_UNIT;
+        for (int i = 0; i < filters.size(); i++) {
+            GPUImageFilter filter = filters.get(i);
+            if (filter.isInitialized()) {
+                filter.destroy();
+            }
+            filter.attachToFusedProgram(getCachedProgram(), prefix(i));
+            if (countExtraSamplers(filter.getFragmentShader()) > 0) {
+                filter.setExtraTextureUnit(extraTextureUnit++);
+            }
+            filter.ifNeedInit();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        for (GPUImageFilter filter : filters) {
+            // Members are usually destroyed by their group already, while still attached
+            if (filter.isInitialized()) {
+                filter.destroy();
+            }
+            filter.detachFromFusedProgram();
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    protected void runPendingOnDrawTasks() {
+        super.runPendingOnDrawTasks();
+        for (GPUImageFilter filter : filters) {
+            filter.runPendingOnDrawTasks();
+        }
+    }
+
+    @Override
+    protected void restoreUniformState() {
+        super.restoreUniformState();
+        for (GPUImageFilter filter : filters) {
+            filter.restoreUniformState();
+        }
+    }
+
+    @Override
+    void flushUniformState() {
+        super.flushUniformState();
+        for (GPUImageFilter filter : filters) {
+            filter.flushUniformState();
+        }
+    }
+
+    @Override
+    protected void onDrawArraysPre() {
+        for (GPUImageFilter filter : filters) {
+            filter.onDrawArraysPre();
+        }
+    }
+
+    /**
+     * Gets the filters rendered by this pass.
+     *
+     * @return the fused filters
+     */
+    public List<GPUImageFilter> getFilters() {
+        return filters;
+    }
+
+    private static String prefix(final int index) {
+        return "f" + index + "_";
+    }
+
+    private static String buildVertexShader(final List<GPUImageFilter> filters) {
+        for (GPUImageFilter filter : filters) {
+            if (filter instanceof GPUImageTwoInputFilter) {
+                return GPUImageTwoInputFilter.VERTEX_SHADER;
+            }
+        }
+        return NO_FILTER_VERTEX_SHADER;
+    }
+
+    private static String buildFragmentShader(final List<GPUImageFilter> filters) {
+        StringBuilder shader = new StringBuilder();
+        for (Map.Entry<String, String> precision : getDefaultPrecisions(filters).entrySet()) {
+            shader.append("precision ").append(precision.getValue()).append(' ')
+                    .append(precision.getKey()).append(";\n");
+        }
+        shader.append("\n")
+                .append("varying highp vec2 textureCoordinate;\n");
+        if (GPUImageTwoInputFilter.VERTEX_SHADER.equals(buildVertexShader(filters))) {
+            shader.append("varying highp vec2 textureCoordinate2;\n");
+        }
+        shader.append("\n")
+                .append("uniform sampler2D inputImageTexture;\n");
+        for (int i = 0; i < filters.size(); i++) {
+            String stage = rewrite(filters.get(i).getFragmentShader(), prefix(i));
+            if (stage == null) {
+                throw new IllegalArgumentException(filters.get(i).getClass().getSimpleName()
+                        + " can not be fused");
+            }
+            shader.append(stage);
+        }
+        shader.append("\n")
+                .append("void main()\n")
+                .append("{\n")
+                .append("    vec4 color = texture2D(inputImageTexture, textureCoordinate);\n");
+        for (int i = 0; i < filters.size(); i++) {
+            // Clamp like the RGBA framebuffer between two separate passes would
+            shader.append("    color = clamp(").append(prefix(i)).append("main(color), 0.0, 1.0);\n");
+        }
+        shader.append("    gl_FragColor = color;\n")
+                .append("}\n");
+        return shader.toString();
+    }
+
+    /**
+     * Gets for every type the highest default precision any member declares, as the members
+     * lose their own precision statements and must not compute with less than they asked for.
+     * Floats default to mediump if no member declares their precision.
+     *
+     * @return the precision of each type
+     */
+    private static Map<String, String> getDefaultPrecisions(final List<GPUImageFilter> filters) {
+        Map<String, String> precisions = new LinkedHashMap<>();
+        for (GPUImageFilter filter : filters) {
+            String source = COMMENT.matcher(filter.getFragmentShader()).replaceAll(" ");
+            Matcher matcher = PRECISION.matcher(source);
+            while (matcher.find()) {
+                String precision = matcher.group(1);
+                String current = precisions.get(matcher.group(2));
+                if (current == null
+                        || PRECISIONS.indexOf(precision) > PRECISIONS.indexOf(current)) {
+                    precisions.put(matcher.group(2), precision);
+                }
+            }
+        }
+        if (!precisions.containsKey("float")) {
+            precisions.put("float", "mediump");
+        }
+        return precisions;
+    }
+
+    private static int countExtraSamplers(final String fragmentShader) {
+        Matcher matcher = DECLARATION.matcher(COMMENT.matcher(fragmentShader).replaceAll(" "));
+        int count = 0;
+        while (matcher.find()) {
+            if (matcher.group(1).equals("sampler2D")
+                    && !matcher.group(2).equals("inputImageTexture")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Turns a fragment shader into a function {@code vec4 <prefix>main(vec4)} that takes the
+     * input color instead of sampling inputImageTexture. Every global declared by the shader
+     * is prefixed to avoid clashes with the other members.
+     *
+     * @return the rewritten source or null if the shader is not a per-pixel function
+     */
+    private static String rewrite(final String fragmentShader, final String prefix) {
+        String source = COMMENT.matcher(fragmentShader).replaceAll(" ");
+        Matcher main = MAIN.matcher(source);
+        if (!main.find()) {
+            return null;
+        }
+        int bodyEnd = findClosingBrace(source, main.end());
+        if (bodyEnd < 0 || source.substring(bodyEnd + 1).trim().length() > 0) {
+            return null;
+        }
+        String globals = source.substring(0, main.start());
+        String body = source.substring(main.end(), bodyEnd);
+        if (UNSUPPORTED.matcher(globals).find() || UNSUPPORTED.matcher(body).find()
+                || RETURN.matcher(body).find()) {
+            return null;
+        }
+
+        globals = PRECISION.matcher(globals).replaceAll("");
+        globals = VARYING.matcher(globals).replaceAll("");
+        globals = INPUT_SAMPLER.matcher(globals).replaceAll("");
+        body = INPUT_SAMPLE.matcher(body).replaceAll(prefix + "inputColor");
+        body = GL_FRAG_COLOR.matcher(body).replaceAll(prefix + "fragColor");
+        if (containsWord(globals, "inputImageTexture") || containsWord(body, "inputImageTexture")) {
+            return null;
+        }
+
+        Set<String> names = new HashSet<>();
+        Matcher declaration = DECLARATION.matcher(globals);
+        while (declaration.find()) {
+            names.add(declaration.group(2));
+        }
+        Matcher function = FUNCTION.matcher(globals);
+        while (function.find()) {
+            names.add(function.group(1));
+        }
+
+        for (String name : names) {
+            // Skip swizzles and struct fields such as ".r"
+            Pattern identifier = Pattern.compile("(?<![.\\w])" + Pattern.quote(name) + "\\b");
+            globals = identifier.matcher(globals).replaceAll(prefix + name);
+            body = identifier.matcher(body).replaceAll(prefix + name);
+        }
+
+        return "\n" + globals.trim() + "\n\n" +
+                "vec4 " + prefix + "main(vec4 " + prefix + "inputColor)\n" +
+                "{\n" +
+                "    vec4 " + prefix + "fragColor;\n" +
+                "    " + body.trim() + "\n" +
+                "    return " + prefix + "fragColor;\n" +
+                "}\n";
+    }
+
+    private static int findClosingBrace(final String source, final int start) {
+        int depth = 1;
+        for (int i = start; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean containsWord(final String source, final String word) {
+        return Pattern.compile("\\b" + word + "\\b").matcher(source).find();
+    }
+}
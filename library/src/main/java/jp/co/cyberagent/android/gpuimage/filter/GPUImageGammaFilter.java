@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * gamma value ranges from 0.0 to 3.0, with 1.0 as the normal level
  */
@@ -50,7 +48,7 @@ public class GPUImageGammaFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        gammaLocation = GLES20.glGetUniformLocation(getProgram(), "gamma");
+        gammaLocation = getUniformLocation("gamma");
     }
 
     @Override
@@ -63,4 +61,14 @@ public class GPUImageGammaFilter extends GPUImageFilter {
         this.gamma = gamma;
         setFloat(gammaLocation, this.gamma);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
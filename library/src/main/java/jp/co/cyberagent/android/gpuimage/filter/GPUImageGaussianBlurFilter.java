@@ -119,4 +119,10 @@ public class GPUImageGaussianBlurFilter extends GPUImageTwoPassTextureSamplingFi
             }
         });
     }
+
+    @Override
+    public int getSamplingRadius() {
+        // Four taps on either side, blurSize texels apart
+        return (int) Math.ceil(4 * blurSize);
+    }
 }
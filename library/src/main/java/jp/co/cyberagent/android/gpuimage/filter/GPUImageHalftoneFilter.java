@@ -1,7 +1,5 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageHalftoneFilter extends GPUImageFilter {
     public static final String HALFTONE_FRAGMENT_SHADER = "" +
             "varying highp vec2 textureCoordinate;\n" +
@@ -44,8 +42,8 @@ public class GPUImageHalftoneFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        fractionalWidthOfPixelLocation = GLES20.glGetUniformLocation(getProgram(), "fractionalWidthOfPixel");
-        aspectRatioLocation = GLES20.glGetUniformLocation(getProgram(), "aspectRatio");
+        fractionalWidthOfPixelLocation = getUniformLocation("fractionalWidthOfPixel");
+        aspectRatioLocation = getUniformLocation("aspectRatio");
     }
 
     @Override
@@ -70,4 +68,9 @@ public class GPUImageHalftoneFilter extends GPUImageFilter {
         this.aspectRatio = aspectRatio;
         setFloat(aspectRatioLocation, this.aspectRatio);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * The haze filter can be used to add or remove haze.
  * <p>
@@ -64,8 +62,8 @@ public class GPUImageHazeFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        distanceLocation = GLES20.glGetUniformLocation(getProgram(), "distance");
-        slopeLocation = GLES20.glGetUniformLocation(getProgram(), "slope");
+        distanceLocation = getUniformLocation("distance");
+        slopeLocation = getUniformLocation("slope");
     }
 
     @Override
@@ -94,4 +92,14 @@ public class GPUImageHazeFilter extends GPUImageFilter {
         this.slope = slope;
         setFloat(slopeLocation, slope);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Adjusts the shadows and highlights of an image
  * shadows: Increase to lighten shadows, from 0.0 to 1.0, with 0.0 as the default.
@@ -63,8 +61,8 @@ public class GPUImageHighlightShadowFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        highlightsLocation = GLES20.glGetUniformLocation(getProgram(), "highlights");
-        shadowsLocation = GLES20.glGetUniformLocation(getProgram(), "shadows");
+        highlightsLocation = getUniformLocation("highlights");
+        shadowsLocation = getUniformLocation("shadows");
     }
 
     @Override
@@ -83,4 +81,14 @@ public class GPUImageHighlightShadowFilter extends GPUImageFilter {
         this.shadows = shadows;
         setFloat(shadowsLocation, this.shadows);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
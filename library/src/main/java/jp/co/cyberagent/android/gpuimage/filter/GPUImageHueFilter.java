@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageHueFilter extends GPUImageFilter {
     public static final String HUE_FRAGMENT_SHADER = "" +
             "precision highp float;\n" +
@@ -79,7 +77,7 @@ public class GPUImageHueFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        hueLocation = GLES20.glGetUniformLocation(getProgram(), "hueAdjust");
+        hueLocation = getUniformLocation("hueAdjust");
     }
 
     @Override
@@ -93,4 +91,14 @@ public class GPUImageHueFilter extends GPUImageFilter {
         float hueAdjust = (this.hue % 360.0f) * (float) Math.PI / 180.0f;
         setFloat(hueLocation, hueAdjust);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
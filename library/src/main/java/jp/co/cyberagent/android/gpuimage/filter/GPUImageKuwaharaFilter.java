@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Kuwahara image abstraction, drawn from the work of Kyprianidis, et. al. in their publication
  * "Anisotropic Kuwahara Filtering on the GPU" within the GPU Pro collection. This produces an oil-painting-like
@@ -129,7 +127,7 @@ public class GPUImageKuwaharaFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        radiusLocation = GLES20.glGetUniformLocation(getProgram(), "radius");
+        radiusLocation = getUniformLocation("radius");
     }
 
     @Override
@@ -148,4 +146,10 @@ public class GPUImageKuwaharaFilter extends GPUImageFilter {
         this.radius = radius;
         setInteger(radiusLocation, radius);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        // The shader steps by a fixed fraction of the image rather than by pixels
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageLaplacianFilter extends GPUImage3x3TextureSamplingFilter {
     public static final String LAPLACIAN_FRAGMENT_SHADER = "" +
             "precision highp float;\n" +
@@ -79,7 +77,7 @@ public class GPUImageLaplacianFilter extends GPUImage3x3TextureSamplingFilter {
     @Override
     public void onInit() {
         super.onInit();
-        uniformConvolutionMatrix = GLES20.glGetUniformLocation(getProgram(), "convolutionMatrix");
+        uniformConvolutionMatrix = getUniformLocation("convolutionMatrix");
     }
 
     @Override
@@ -1,7 +1,5 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Created by vashisthg 30/05/14.
  */
@@ -55,11 +53,11 @@ public class GPUImageLevelsFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        minLocation = GLES20.glGetUniformLocation(getProgram(), "levelMinimum");
-        midLocation = GLES20.glGetUniformLocation(getProgram(), "levelMiddle");
-        maxLocation = GLES20.glGetUniformLocation(getProgram(), "levelMaximum");
-        minOutputLocation = GLES20.glGetUniformLocation(getProgram(), "minOutput");
-        maxOutputLocation = GLES20.glGetUniformLocation(getProgram(), "maxOutput");
+        minLocation = getUniformLocation("levelMinimum");
+        midLocation = getUniformLocation("levelMiddle");
+        maxLocation = getUniformLocation("levelMaximum");
+        minOutputLocation = getUniformLocation("minOutput");
+        maxOutputLocation = getUniformLocation("maxOutput");
     }
 
     @Override
@@ -126,4 +124,14 @@ public class GPUImageLevelsFilter extends GPUImageFilter {
     public void setBlueMin(float min, float mid, float max) {
         setBlueMin(min, mid, max, 0, 1);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
@@ -16,8 +16,20 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
+import android.graphics.Bitmap;
+import android.opengl.GLES30;
 
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
+import jp.co.cyberagent.android.gpuimage.util.LookupTable;
+import jp.co.cyberagent.android.gpuimage.util.LookupTextureCache;
+
+/**
+ * Maps colors through a {@link LookupTable}, e.g. of a 512x512 lookup image or a .cube file.
+ * Tables are uploaded through {@link LookupTextureCache}, so filters with equal tables share
+ * one texture. On GLES 3 the table is sampled as a 3D texture with trilinear filtering, on
+ * GLES 2 and when fused with other filters as a 512x512 lookup image.
+ */
 public class GPUImageLookupFilter extends GPUImageTwoInputFilter {
 
     public static final String LOOKUP_FRAGMENT_SHADER = "varying highp vec2 textureCoordinate;\n" +
@@ -57,8 +69,52 @@ public class GPUImageLookupFilter extends GPUImageTwoInputFilter {
             "     gl_FragColor = mix(textureColor, vec4(newColor.rgb, textureColor.w), intensity);\n" +
             " }";
 
+    public static final String LOOKUP_3D_VERTEX_SHADER = "#version 300 es\n" +
+            "in vec4 position;\n" +
+            "in vec4 inputTextureCoordinate;\n" +
+            " \n" +
+            "out vec2 textureCoordinate;\n" +
+            " \n" +
+            "void main()\n" +
+            "{\n" +
+            "    gl_Position = position;\n" +
+            "    textureCoordinate = inputTextureCoordinate.xy;\n" +
+            "}";
+
+    public static final String LOOKUP_3D_FRAGMENT_SHADER = "#version 300 es\n" +
+            " precision highp float;\n" +
+            " \n" +
+            " in highp vec2 textureCoordinate;\n" +
+            " \n" +
+            " uniform sampler2D inputImageTexture;\n" +
+            " uniform highp sampler3D inputImageTexture2; // lookup texture\n" +
+            " \n" +
+            " uniform lowp float intensity;\n" +
+            " uniform highp float lookupSize;\n" +
+            " \n" +
+            " out lowp vec4 fragColor;\n" +
+            " \n" +
+            " void main()\n" +
+            " {\n" +
+            "     highp vec4 textureColor = texture(inputImageTexture, textureCoordinate);\n" +
+            "     \n" +
+            "     // From the center of the first texel for 0.0 to the last one for 1.0\n" +
+            "     highp vec3 texPos = textureColor.rgb * ((lookupSize - 1.0) / lookupSize)\n" +
+            "             + 0.5 / lookupSize;\n" +
+            "     lowp vec4 newColor = texture(inputImageTexture2, texPos);\n" +
+            "     \n" +
+            "     fragColor = mix(textureColor, vec4(newColor.rgb, textureColor.w), intensity);\n" +
+            " }";
+
+    private static final Object LOOKUP_TEXTURE_TASK = new Object();
+
     private int intensityLocation;
+    private int lookupSizeLocation;
     private float intensity;
+    private volatile LookupTable lookupTable;
+    private Bitmap bitmap;
+    private volatile boolean texture3D;
+    private LookupTextureCache.Texture lookupTexture;
 
     public GPUImageLookupFilter() {
         this(1.0f);
@@ -71,18 +127,143 @@ public class GPUImageLookupFilter extends GPUImageTwoInputFilter {
 
     @Override
     public void onInit() {
+        // A fused pass is generated from the GLES 2 shader
+        texture3D = !isFused() && isTexture3DAllowed() && LookupTextureCache.is3DSupported();
         super.onInit();
-        intensityLocation = GLES20.glGetUniformLocation(getProgram(), "intensity");
+        intensityLocation = getUniformLocation("intensity");
+        lookupSizeLocation = getUniformLocation("lookupSize");
     }
 
     @Override
     public void onInitialized() {
         super.onInitialized();
         setIntensity(intensity);
+        if (lookupTable != null) {
+            setLookupTable(lookupTable);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (lookupTexture != null) {
+            LookupTextureCache.release(lookupTexture);
+            lookupTexture = null;
+        }
+        texture3D = false;
+    }
+
+    /**
+     * Whether the table may be sampled as a 3D texture, false for subclasses drawing their
+     * own 512x512 lookup image.
+     */
+    boolean isTexture3DAllowed() {
+        return true;
+    }
+
+    @Override
+    String getVertexShader() {
+        return texture3D ? LOOKUP_3D_VERTEX_SHADER : super.getVertexShader();
+    }
+
+    @Override
+    String getFragmentShader() {
+        return texture3D ? LOOKUP_3D_FRAGMENT_SHADER : super.getFragmentShader();
+    }
+
+    /**
+     * Sets the table to map the colors through.
+     */
+    public void setLookupTable(final LookupTable lookupTable) {
+        this.lookupTable = lookupTable;
+        runOnDraw(LOOKUP_TEXTURE_TASK, new Runnable() {
+            @Override
+            public void run() {
+                updateLookupTexture();
+            }
+        });
+    }
+
+    public LookupTable getLookupTable() {
+        return lookupTable;
+    }
+
+    /**
+     * Sets a 512x512 lookup image, which is converted to a {@link LookupTable} right away and
+     * may be recycled afterwards. Images scaled to another size are resampled, see {@link
+     * LookupTable#fromBitmap(Bitmap)}.
+     */
+    @Override
+    public void setBitmap(final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        this.bitmap = bitmap;
+        setLookupTable(LookupTable.fromBitmap(bitmap));
+    }
+
+    @Override
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    @Override
+    public void recycleBitmap() {
+        if (bitmap != null && !bitmap.isRecycled()) {
+            bitmap.recycle();
+            bitmap = null;
+        }
     }
 
     public void setIntensity(final float intensity) {
         this.intensity = intensity;
         setFloat(intensityLocation, this.intensity);
     }
+
+    private void updateLookupTexture() {
+        LookupTable table = lookupTable;
+        if (lookupTexture != null) {
+            if (lookupTexture.getTable() == table && lookupTexture.is3D() == texture3D) {
+                return;
+            }
+            LookupTextureCache.release(lookupTexture);
+            lookupTexture = null;
+        }
+        if (table == null) {
+            return;
+        }
+        GLState.current().activeTexture(getExtraTextureUnit());
+        lookupTexture = LookupTextureCache.acquire(table, texture3D);
+        if (texture3D) {
+            setFloat(lookupSizeLocation, lookupTexture.getSize());
+        }
+    }
+
+    @Override
+    int getSecondTexture() {
+        if (lookupTexture == null) {
+            return super.getSecondTexture();
+        }
+        return lookupTexture.is3D() ? 0 : lookupTexture.getId();
+    }
+
+    @Override
+    protected void onDrawArraysPre() {
+        super.onDrawArraysPre();
+        if (lookupTexture != null && lookupTexture.is3D()) {
+            // The unit is active after binding the 2D texture, GLState does not track 3D ones
+            GLBackend.current().glBindTexture(GLES30.GL_TEXTURE_3D, lookupTexture.getId());
+        }
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
+
+    @Override
+    public int getSamplingRadius() {
+        // The lookup table is addressed by color, not by position
+        return 0;
+    }
 }
@@ -39,4 +39,14 @@ public class GPUImageLuminanceFilter extends GPUImageFilter {
     public GPUImageLuminanceFilter() {
         super(NO_FILTER_VERTEX_SHADER, LUMINANCE_FRAGMENT_SHADER);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
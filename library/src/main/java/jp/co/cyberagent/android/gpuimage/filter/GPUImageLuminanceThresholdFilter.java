@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageLuminanceThresholdFilter extends GPUImageFilter {
 
     public static final String LUMINANCE_THRESHOLD_FRAGMENT_SHADER = "" +
@@ -52,7 +50,7 @@ public class GPUImageLuminanceThresholdFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        uniformThresholdLocation = GLES20.glGetUniformLocation(getProgram(), "threshold");
+        uniformThresholdLocation = getUniformLocation("threshold");
     }
 
     @Override
@@ -65,4 +63,9 @@ public class GPUImageLuminanceThresholdFilter extends GPUImageFilter {
         this.threshold = threshold;
         setFloat(uniformThresholdLocation, threshold);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
 }
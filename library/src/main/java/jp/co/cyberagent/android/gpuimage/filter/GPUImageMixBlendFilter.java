@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageMixBlendFilter extends GPUImageTwoInputFilter {
 
     private int mixLocation;
@@ -35,7 +33,7 @@ public class GPUImageMixBlendFilter extends GPUImageTwoInputFilter {
     @Override
     public void onInit() {
         super.onInit();
-        mixLocation = GLES20.glGetUniformLocation(getProgram(), "mixturePercent");
+        mixLocation = getUniformLocation("mixturePercent");
     }
 
     @Override
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Converts the image to a single-color version, based on the luminance of each pixel
  * intensity: The degree to which the specific color replaces the normal image color (0.0 - 1.0, with 1.0 as the default)
@@ -73,8 +71,8 @@ public class GPUImageMonochromeFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        intensityLocation = GLES20.glGetUniformLocation(getProgram(), "intensity");
-        filterColorLocation = GLES20.glGetUniformLocation(getProgram(), "filterColor");
+        intensityLocation = getUniformLocation("intensity");
+        filterColorLocation = getUniformLocation("filterColor");
     }
 
     @Override
@@ -98,4 +96,14 @@ public class GPUImageMonochromeFilter extends GPUImageFilter {
     public void setColor(final float red, final float green, final float blue) {
         setFloatVec3(filterColorLocation, new float[]{red, green, blue});
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
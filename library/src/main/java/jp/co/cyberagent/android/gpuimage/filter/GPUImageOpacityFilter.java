@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Adjusts the alpha channel of the incoming image
  * opacity: The value to multiply the incoming alpha channel for each pixel by (0.0 - 1.0, with 1.0 as the default)
@@ -51,7 +49,7 @@ public class GPUImageOpacityFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        opacityLocation = GLES20.glGetUniformLocation(getProgram(), "opacity");
+        opacityLocation = getUniformLocation("opacity");
     }
 
     @Override
@@ -64,4 +62,9 @@ public class GPUImageOpacityFilter extends GPUImageFilter {
         this.opacity = opacity;
         setFloat(opacityLocation, this.opacity);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Applies a grayscale effect to the image.
  */
@@ -55,9 +53,9 @@ public class GPUImagePixelationFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        imageWidthFactorLocation = GLES20.glGetUniformLocation(getProgram(), "imageWidthFactor");
-        imageHeightFactorLocation = GLES20.glGetUniformLocation(getProgram(), "imageHeightFactor");
-        pixelLocation = GLES20.glGetUniformLocation(getProgram(), "pixel");
+        imageWidthFactorLocation = getUniformLocation("imageWidthFactor");
+        imageHeightFactorLocation = getUniformLocation("imageHeightFactor");
+        pixelLocation = getUniformLocation("pixel");
     }
 
     @Override
@@ -77,4 +75,9 @@ public class GPUImagePixelationFilter extends GPUImageFilter {
         this.pixel = pixel;
         setFloat(pixelLocation, this.pixel);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Reduces the color range of the image. <br>
  * <br>
@@ -52,7 +50,7 @@ public class GPUImagePosterizeFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        glUniformColorLevels = GLES20.glGetUniformLocation(getProgram(), "colorLevels");
+        glUniformColorLevels = getUniformLocation("colorLevels");
     }
 
     @Override
@@ -65,4 +63,9 @@ public class GPUImagePosterizeFilter extends GPUImageFilter {
         this.colorLevels = colorLevels;
         setFloat(glUniformColorLevels, colorLevels);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
 }
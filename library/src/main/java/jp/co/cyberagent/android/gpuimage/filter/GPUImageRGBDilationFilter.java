@@ -253,6 +253,8 @@ public class GPUImageRGBDilationFilter extends GPUImageTwoPassTextureSamplingFil
                     "}\n";
 
 
+    private int radius = 1;
+
     public GPUImageRGBDilationFilter() {
         this(1);
     }
@@ -265,6 +267,7 @@ public class GPUImageRGBDilationFilter extends GPUImageTwoPassTextureSamplingFil
      */
     public GPUImageRGBDilationFilter(int radius) {
         this(getVertexShader(radius), getFragmentShader(radius));
+        this.radius = radius;
     }
 
     private GPUImageRGBDilationFilter(String vertexShader, String fragmentShader) {
@@ -298,4 +301,9 @@ public class GPUImageRGBDilationFilter extends GPUImageTwoPassTextureSamplingFil
                 return FRAGMENT_SHADER_4;
         }
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return radius;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Adjusts the individual RGB channels of an image
  * red: Normalized values by which each color channel is multiplied. The range is from 0.0 up, with 1.0 as the default.
@@ -61,9 +59,9 @@ public class GPUImageRGBFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        redLocation = GLES20.glGetUniformLocation(getProgram(), "red");
-        greenLocation = GLES20.glGetUniformLocation(getProgram(), "green");
-        blueLocation = GLES20.glGetUniformLocation(getProgram(), "blue");
+        redLocation = getUniformLocation("red");
+        greenLocation = getUniformLocation("green");
+        blueLocation = getUniformLocation("blue");
     }
 
     @Override
@@ -88,4 +86,14 @@ public class GPUImageRGBFilter extends GPUImageFilter {
         this.blue = blue;
         setFloat(blueLocation, this.blue);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * saturation: The degree of saturation or desaturation to apply to the image (0.0 - 2.0, with 1.0 as the default)
  */
@@ -56,7 +54,7 @@ public class GPUImageSaturationFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        saturationLocation = GLES20.glGetUniformLocation(getProgram(), "saturation");
+        saturationLocation = getUniformLocation("saturation");
     }
 
     @Override
@@ -69,4 +67,14 @@ public class GPUImageSaturationFilter extends GPUImageFilter {
         this.saturation = saturation;
         setFloat(saturationLocation, this.saturation);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Sharpens the picture. <br>
  * <br>
@@ -100,9 +98,9 @@ public class GPUImageSharpenFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        sharpnessLocation = GLES20.glGetUniformLocation(getProgram(), "sharpness");
-        imageWidthFactorLocation = GLES20.glGetUniformLocation(getProgram(), "imageWidthFactor");
-        imageHeightFactorLocation = GLES20.glGetUniformLocation(getProgram(), "imageHeightFactor");
+        sharpnessLocation = getUniformLocation("sharpness");
+        imageWidthFactorLocation = getUniformLocation("imageWidthFactor");
+        imageHeightFactorLocation = getUniformLocation("imageHeightFactor");
     }
 
     @Override
@@ -122,4 +120,9 @@ public class GPUImageSharpenFilter extends GPUImageFilter {
         this.sharpness = sharpness;
         setFloat(sharpnessLocation, this.sharpness);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return 1;
+    }
 }
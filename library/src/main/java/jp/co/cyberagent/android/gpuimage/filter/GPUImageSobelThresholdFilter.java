@@ -1,7 +1,5 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageSobelThresholdFilter extends
         GPUImage3x3TextureSamplingFilter {
     public static final String SOBEL_THRESHOLD_EDGE_DETECTION = "" +
@@ -58,7 +56,7 @@ public class GPUImageSobelThresholdFilter extends
     @Override
     public void onInit() {
         super.onInit();
-        uniformThresholdLocation = GLES20.glGetUniformLocation(getProgram(), "threshold");
+        uniformThresholdLocation = getUniformLocation("threshold");
     }
 
     @Override
@@ -1,7 +1,5 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageSolarizeFilter extends GPUImageFilter {
     public static final String SOLATIZE_FRAGMENT_SHADER = "" +
             "varying highp vec2 textureCoordinate;\n" +
@@ -36,7 +34,7 @@ public class GPUImageSolarizeFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        uniformThresholdLocation = GLES20.glGetUniformLocation(getProgram(), "threshold");
+        uniformThresholdLocation = getUniformLocation("threshold");
     }
 
     @Override
@@ -49,4 +47,9 @@ public class GPUImageSolarizeFilter extends GPUImageFilter {
         this.threshold = threshold;
         setFloat(uniformThresholdLocation, threshold);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
 }
@@ -17,7 +17,6 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
 import android.graphics.PointF;
-import android.opengl.GLES20;
 
 public class GPUImageSphereRefractionFilter extends GPUImageFilter {
     public static final String SPHERE_FRAGMENT_SHADER = "" +
@@ -69,10 +68,10 @@ public class GPUImageSphereRefractionFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        centerLocation = GLES20.glGetUniformLocation(getProgram(), "center");
-        radiusLocation = GLES20.glGetUniformLocation(getProgram(), "radius");
-        aspectRatioLocation = GLES20.glGetUniformLocation(getProgram(), "aspectRatio");
-        refractiveIndexLocation = GLES20.glGetUniformLocation(getProgram(), "refractiveIndex");
+        centerLocation = getUniformLocation("center");
+        radiusLocation = getUniformLocation("radius");
+        aspectRatioLocation = getUniformLocation("aspectRatio");
+        refractiveIndexLocation = getUniformLocation("refractiveIndex");
     }
 
     @Override
@@ -125,4 +124,9 @@ public class GPUImageSphereRefractionFilter extends GPUImageFilter {
         this.radius = radius;
         setFloat(radiusLocation, radius);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
@@ -17,7 +17,6 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
 import android.graphics.PointF;
-import android.opengl.GLES20;
 
 /**
  * Creates a swirl distortion on the image.
@@ -72,9 +71,9 @@ public class GPUImageSwirlFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        angleLocation = GLES20.glGetUniformLocation(getProgram(), "angle");
-        radiusLocation = GLES20.glGetUniformLocation(getProgram(), "radius");
-        centerLocation = GLES20.glGetUniformLocation(getProgram(), "center");
+        angleLocation = getUniformLocation("angle");
+        radiusLocation = getUniformLocation("radius");
+        centerLocation = getUniformLocation("center");
     }
 
     @Override
@@ -114,4 +113,9 @@ public class GPUImageSwirlFilter extends GPUImageFilter {
         this.center = center;
         setPoint(centerLocation, center);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * This uses Sobel edge detection to place a black border around objects,
  * and then it quantizes the colors present in the image to give a cartoon-like quality to the image.
@@ -88,8 +86,8 @@ public class GPUImageToonFilter extends GPUImage3x3TextureSamplingFilter {
     @Override
     public void onInit() {
         super.onInit();
-        thresholdLocation = GLES20.glGetUniformLocation(getProgram(), "threshold");
-        quantizationLevelsLocation = GLES20.glGetUniformLocation(getProgram(), "quantizationLevels");
+        thresholdLocation = getUniformLocation("threshold");
+        quantizationLevelsLocation = getUniformLocation("quantizationLevels");
     }
 
     @Override
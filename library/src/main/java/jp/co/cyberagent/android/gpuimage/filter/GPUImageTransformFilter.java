@@ -16,7 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
 import android.opengl.Matrix;
 
 import java.nio.ByteBuffer;
@@ -45,6 +44,11 @@ public class GPUImageTransformFilter extends GPUImageFilter {
 
     private float[] transform3D;
 
+    private final float[] adjustedVertices = new float[8];
+    private final FloatBuffer adjustedVertexBuffer = ByteBuffer.allocateDirect(8 * 4)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+
     // This applies the transform to the raw frame data if set to YES, the default of NO takes the aspect ratio of the image input into account when rotating
     private boolean ignoreAspectRatio;
 
@@ -64,8 +68,8 @@ public class GPUImageTransformFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        transformMatrixUniform = GLES20.glGetUniformLocation(getProgram(), "transformMatrix");
-        orthographicMatrixUniform = GLES20.glGetUniformLocation(getProgram(), "orthographicMatrix");
+        transformMatrixUniform = getUniformLocation("transformMatrix");
+        orthographicMatrixUniform = getUniformLocation("orthographicMatrix");
     }
 
     @Override
@@ -93,8 +97,6 @@ public class GPUImageTransformFilter extends GPUImageFilter {
 
         if (!ignoreAspectRatio) {
 
-            float[] adjustedVertices = new float[8];
-
             cubeBuffer.position(0);
             cubeBuffer.get(adjustedVertices);
 
@@ -104,10 +106,9 @@ public class GPUImageTransformFilter extends GPUImageFilter {
             adjustedVertices[5] *= normalizedHeight;
             adjustedVertices[7] *= normalizedHeight;
 
-            vertBuffer = ByteBuffer.allocateDirect(adjustedVertices.length * 4)
-                    .order(ByteOrder.nativeOrder())
-                    .asFloatBuffer();
-
+            // Reused every frame, the vertex buffer cache keys the geometry by its contents
+            vertBuffer = adjustedVertexBuffer;
+            vertBuffer.clear();
             vertBuffer.put(adjustedVertices).position(0);
         }
 
@@ -146,4 +147,9 @@ public class GPUImageTransformFilter extends GPUImageFilter {
     public boolean anchorTopLeft() {
         return anchorTopLeft;
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
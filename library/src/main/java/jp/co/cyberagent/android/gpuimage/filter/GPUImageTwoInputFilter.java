@@ -17,18 +17,19 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
 import android.graphics.Bitmap;
-import android.opengl.GLES20;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+import jp.co.cyberagent.android.gpuimage.util.GLState;
 import jp.co.cyberagent.android.gpuimage.util.OpenGlUtils;
 import jp.co.cyberagent.android.gpuimage.util.Rotation;
 import jp.co.cyberagent.android.gpuimage.util.TextureRotationUtil;
 
 public class GPUImageTwoInputFilter extends GPUImageFilter {
-    private static final String VERTEX_SHADER = "attribute vec4 position;\n" +
+    static final String VERTEX_SHADER = "attribute vec4 position;\n" +
             "attribute vec4 inputTextureCoordinate;\n" +
             "attribute vec4 inputTextureCoordinate2;\n" +
             " \n" +
@@ -42,10 +43,12 @@ public class GPUImageTwoInputFilter extends GPUImageFilter {
             "    textureCoordinate2 = inputTextureCoordinate2.xy;\n" +
             "}";
 
+    private static final Object BITMAP_TEXTURE_TASK = new Object();
+
     private int filterSecondTextureCoordinateAttribute;
     private int filterInputTextureUniform2;
     private int filterSourceTexture2 = OpenGlUtils.NO_TEXTURE;
-    private ByteBuffer texture2CoordinatesBuffer;
+    private FloatBuffer texture2CoordinatesBuffer;
     private Bitmap bitmap;
 
     public GPUImageTwoInputFilter(String fragmentShader) {
@@ -61,9 +64,9 @@ public class GPUImageTwoInputFilter extends GPUImageFilter {
     public void onInit() {
         super.onInit();
 
-        filterSecondTextureCoordinateAttribute = GLES20.glGetAttribLocation(getProgram(), "inputTextureCoordinate2");
-        filterInputTextureUniform2 = GLES20.glGetUniformLocation(getProgram(), "inputImageTexture2"); // This does assume a name of "inputImageTexture2" for second input texture in the fragment shader
-        GLES20.glEnableVertexAttribArray(filterSecondTextureCoordinateAttribute);
+        filterSecondTextureCoordinateAttribute = GLBackend.current().glGetAttribLocation(getProgram(), "inputTextureCoordinate2");
+        filterInputTextureUniform2 = getUniformLocation("inputImageTexture2"); // This does assume a name of "inputImageTexture2" for second input texture in the fragment shader
+        setInteger(filterInputTextureUniform2, getExtraTextureUnit());
     }
 
     @Override
@@ -82,13 +85,13 @@ public class GPUImageTwoInputFilter extends GPUImageFilter {
         if (this.bitmap == null) {
             return;
         }
-        runOnDraw(new Runnable() {
+        runOnDraw(BITMAP_TEXTURE_TASK, new Runnable() {
             public void run() {
                 if (filterSourceTexture2 == OpenGlUtils.NO_TEXTURE) {
                     if (bitmap == null || bitmap.isRecycled()) {
                         return;
                     }
-                    GLES20.glActiveTexture(GLES20.GL_TEXTURE3);
+                    GLState.current().activeTexture(getExtraTextureUnit());
                     filterSourceTexture2 = OpenGlUtils.loadTexture(bitmap, OpenGlUtils.NO_TEXTURE, false);
                 }
             }
@@ -108,7 +111,7 @@ public class GPUImageTwoInputFilter extends GPUImageFilter {
 
     public void onDestroy() {
         super.onDestroy();
-        GLES20.glDeleteTextures(1, new int[]{
+        GLState.current().deleteTextures(1, new int[]{
                 filterSourceTexture2
         }, 0);
         filterSourceTexture2 = OpenGlUtils.NO_TEXTURE;
@@ -116,13 +119,28 @@ public class GPUImageTwoInputFilter extends GPUImageFilter {
 
     @Override
     protected void onDrawArraysPre() {
-        GLES20.glEnableVertexAttribArray(filterSecondTextureCoordinateAttribute);
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE3);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, filterSourceTexture2);
-        GLES20.glUniform1i(filterInputTextureUniform2, 3);
+        GLState state = GLState.current();
+        state.enableVertexAttribArray(filterSecondTextureCoordinateAttribute);
+        state.bindTexture(getExtraTextureUnit(), getSecondTexture());
 
         texture2CoordinatesBuffer.position(0);
-        GLES20.glVertexAttribPointer(filterSecondTextureCoordinateAttribute, 2, GLES20.GL_FLOAT, false, 0, texture2CoordinatesBuffer);
+        state.vertexAttribPointer(filterSecondTextureCoordinateAttribute, 2, texture2CoordinatesBuffer);
+    }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    /**
+     * Gets the texture bound as inputImageTexture2, by default the one of the bitmap.
+     */
+    int getSecondTexture() {
+        return filterSourceTexture2;
+    }
+
+    FloatBuffer getTexture2CoordinatesBuffer() {
+        return texture2CoordinatesBuffer;
     }
 
     public void setRotation(final Rotation rotation, final boolean flipHorizontal, final boolean flipVertical) {
@@ -133,6 +151,12 @@ public class GPUImageTwoInputFilter extends GPUImageFilter {
         fBuffer.put(buffer);
         fBuffer.flip();
 
-        texture2CoordinatesBuffer = bBuffer;
+        texture2CoordinatesBuffer = fBuffer;
+    }
+
+    @Override
+    public int getSamplingRadius() {
+        // The second image is stretched over the whole output
+        return SAMPLING_RADIUS_UNBOUNDED;
     }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageTwoPassTextureSamplingFilter extends GPUImageTwoPassFilter {
     public GPUImageTwoPassTextureSamplingFilter(String firstVertexShader, String firstFragmentShader,
                                                 String secondVertexShader, String secondFragmentShader) {
@@ -34,15 +32,15 @@ public class GPUImageTwoPassTextureSamplingFilter extends GPUImageTwoPassFilter
     protected void initTexelOffsets() {
         float ratio = getHorizontalTexelOffsetRatio();
         GPUImageFilter filter = getFilters().get(0);
-        int texelWidthOffsetLocation = GLES20.glGetUniformLocation(filter.getProgram(), "texelWidthOffset");
-        int texelHeightOffsetLocation = GLES20.glGetUniformLocation(filter.getProgram(), "texelHeightOffset");
+        int texelWidthOffsetLocation = filter.getUniformLocation("texelWidthOffset");
+        int texelHeightOffsetLocation = filter.getUniformLocation("texelHeightOffset");
         filter.setFloat(texelWidthOffsetLocation, ratio / getOutputWidth());
         filter.setFloat(texelHeightOffsetLocation, 0);
 
         ratio = getVerticalTexelOffsetRatio();
         filter = getFilters().get(1);
-        texelWidthOffsetLocation = GLES20.glGetUniformLocation(filter.getProgram(), "texelWidthOffset");
-        texelHeightOffsetLocation = GLES20.glGetUniformLocation(filter.getProgram(), "texelHeightOffset");
+        texelWidthOffsetLocation = filter.getUniformLocation("texelWidthOffset");
+        texelHeightOffsetLocation = filter.getUniformLocation("texelHeightOffset");
         filter.setFloat(texelWidthOffsetLocation, 0);
         filter.setFloat(texelHeightOffsetLocation, ratio / getOutputHeight());
     }
@@ -60,4 +58,9 @@ public class GPUImageTwoPassTextureSamplingFilter extends GPUImageTwoPassFilter
     public float getHorizontalTexelOffsetRatio() {
         return 1f;
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return (int) Math.ceil(Math.max(getHorizontalTexelOffsetRatio(), getVerticalTexelOffsetRatio()));
+    }
 }
@@ -1,7 +1,5 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 public class GPUImageVibranceFilter extends GPUImageFilter {
     public static final String VIBRANCE_FRAGMENT_SHADER = "" +
             "varying highp vec2 textureCoordinate;\n" +
@@ -24,7 +22,7 @@ public class GPUImageVibranceFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        vibranceLocation = GLES20.glGetUniformLocation(getProgram(), "vibrance");
+        vibranceLocation = getUniformLocation("vibrance");
     }
 
     public GPUImageVibranceFilter() {
@@ -48,5 +46,14 @@ public class GPUImageVibranceFilter extends GPUImageFilter {
             setFloat(vibranceLocation, vibrance);
         }
     }
-}
 
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
+}
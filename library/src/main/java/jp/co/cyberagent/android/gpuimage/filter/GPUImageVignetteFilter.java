@@ -17,7 +17,6 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
 import android.graphics.PointF;
-import android.opengl.GLES20;
 
 /**
  * Performs a vignetting effect, fading out the image at the edges
@@ -74,10 +73,10 @@ public class GPUImageVignetteFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        vignetteCenterLocation = GLES20.glGetUniformLocation(getProgram(), "vignetteCenter");
-        vignetteColorLocation = GLES20.glGetUniformLocation(getProgram(), "vignetteColor");
-        vignetteStartLocation = GLES20.glGetUniformLocation(getProgram(), "vignetteStart");
-        vignetteEndLocation = GLES20.glGetUniformLocation(getProgram(), "vignetteEnd");
+        vignetteCenterLocation = getUniformLocation("vignetteCenter");
+        vignetteColorLocation = getUniformLocation("vignetteColor");
+        vignetteStartLocation = getUniformLocation("vignetteStart");
+        vignetteEndLocation = getUniformLocation("vignetteEnd");
     }
 
     @Override
@@ -108,4 +107,14 @@ public class GPUImageVignetteFilter extends GPUImageFilter {
         this.vignetteEnd = vignetteEnd;
         setFloat(vignetteEndLocation, this.vignetteEnd);
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
@@ -16,8 +16,6 @@
 
 package jp.co.cyberagent.android.gpuimage.filter;
 
-import android.opengl.GLES20;
-
 /**
  * Adjusts the white balance of incoming image. <br>
  * <br>
@@ -71,8 +69,8 @@ public class GPUImageWhiteBalanceFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        temperatureLocation = GLES20.glGetUniformLocation(getProgram(), "temperature");
-        tintLocation = GLES20.glGetUniformLocation(getProgram(), "tint");
+        temperatureLocation = getUniformLocation("temperature");
+        tintLocation = getUniformLocation("tint");
     }
 
     @Override
@@ -91,4 +89,14 @@ public class GPUImageWhiteBalanceFilter extends GPUImageFilter {
         this.tint = tint;
         setFloat(tintLocation, (float) (this.tint / 100.0));
     }
+
+    @Override
+    public boolean isPointWise() {
+        return true;
+    }
+
+    @Override
+    public boolean isColorMapping() {
+        return true;
+    }
 }
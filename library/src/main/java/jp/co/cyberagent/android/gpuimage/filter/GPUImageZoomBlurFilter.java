@@ -1,7 +1,6 @@
 package jp.co.cyberagent.android.gpuimage.filter;
 
 import android.graphics.PointF;
-import android.opengl.GLES20;
 
 public class GPUImageZoomBlurFilter extends GPUImageFilter {
     public static final String ZOOM_BLUR_FRAGMENT_SHADER = "" +
@@ -48,8 +47,8 @@ public class GPUImageZoomBlurFilter extends GPUImageFilter {
     @Override
     public void onInit() {
         super.onInit();
-        blurCenterLocation = GLES20.glGetUniformLocation(getProgram(), "blurCenter");
-        blurSizeLocation = GLES20.glGetUniformLocation(getProgram(), "blurSize");
+        blurCenterLocation = getUniformLocation("blurCenter");
+        blurSizeLocation = getUniformLocation("blurSize");
     }
 
     @Override
@@ -68,4 +67,9 @@ public class GPUImageZoomBlurFilter extends GPUImageFilter {
         this.blurSize = blurSize;
         setFloat(blurSizeLocation, blurSize);
     }
+
+    @Override
+    public int getSamplingRadius() {
+        return SAMPLING_RADIUS_UNBOUNDED;
+    }
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.filter;
+
+import android.graphics.PointF;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Evaluates the natural cubic splines of {@link GPUImageToneCurveFilter} and combines them into
+ * the table its texture is made of. The curves and tables of the most recently used control
+ * points are kept, so switching between presets or dragging a point back to where it was
+ * neither evaluates a spline again nor allocates.
+ */
+final class ToneCurveSpline {
+    static final int SIZE = 256;
+
+    private static final int CURVE_CACHE_SIZE = 32;
+    private static final int TABLE_CACHE_SIZE = 16;
+
+    // Most recently used first
+    private static final float[][] cachedPoints = new float[CURVE_CACHE_SIZE][];
+    private static final int[][] cachedCurves = new int[CURVE_CACHE_SIZE][];
+    private static int cachedCurveCount;
+
+    private static final int[][][] cachedTableCurves = new int[TABLE_CACHE_SIZE][][];
+    private static final ByteBuffer[] cachedTables = new ByteBuffer[TABLE_CACHE_SIZE];
+    private static int cachedTableCount;
+
+    private ToneCurveSpline() {
+    }
+
+    /**
+     * Gets the curve through control points in (0, 1): for each input from 0 to 255 the
+     * output minus the input. The array is shared and must not be modified.
+     *
+     * @return the curve or null if the points do not make one
+     */
+    static synchronized int[] getCurve(final PointF[] points) {
+        if (points == null || points.length == 0) {
+            return null;
+        }
+        for (int i = 0; i < cachedCurveCount; i++) {
+            if (matches(cachedPoints[i], points)) {
+                float[] key = cachedPoints[i];
+                int[] curve = cachedCurves[i];
+                moveToFront(cachedPoints, i, key);
+                moveToFront(cachedCurves, i, curve);
+                return curve;
+            }
+        }
+        int[] curve = createCurve(points);
+        if (curve != null) {
+            float[] key = new float[points.length * 2];
+            for (int i = 0; i < points.length; i++) {
+                key[i * 2] = points[i].x;
+                key[i * 2 + 1] = points[i].y;
+            }
+            cachedCurveCount = Math.min(cachedCurveCount + 1, CURVE_CACHE_SIZE);
+            moveToFront(cachedPoints, cachedCurveCount - 1, key);
+            moveToFront(cachedCurves, cachedCurveCount - 1, curve);
+        }
+        return curve;
+    }
+
+    /**
+     * Gets the table of 256 RGBA entries whose red, green and blue are the outputs of the
+     * curves for an input equal to their index. The buffer is shared and must not be modified.
+     *
+     * @param composite the curve applied to all channels, by {@link #getCurve(PointF[])}
+     * @return the table or null if one of the curves is null
+     */
+    static synchronized ByteBuffer getTable(final int[] composite, final int[] red,
+                                            final int[] green, final int[] blue) {
+        if (composite == null || red == null || green == null || blue == null) {
+            return null;
+        }
+        // The curves come from the cache, so the same points give the same arrays
+        for (int i = 0; i < cachedTableCount; i++) {
+            int[][] key = cachedTableCurves[i];
+            if (key[0] == composite && key[1] == red && key[2] == green && key[3] == blue) {
+                ByteBuffer table = cachedTables[i];
+                moveToFront(cachedTableCurves, i, key);
+                moveToFront(cachedTables, i, table);
+                return table;
+            }
+        }
+        byte[] table = new byte[SIZE * 4];
+        for (int i = 0; i < SIZE; i++) {
+            table[i * 4] = (byte) clamp(i + red[i] + composite[i]);
+            table[i * 4 + 1] = (byte) clamp(i + green[i] + composite[i]);
+            table[i * 4 + 2] = (byte) clamp(i + blue[i] + composite[i]);
+            table[i * 4 + 3] = (byte) 0xff;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(table);
+        cachedTableCount = Math.min(cachedTableCount + 1, TABLE_CACHE_SIZE);
+        moveToFront(cachedTableCurves, cachedTableCount - 1,
+                new int[][]{composite, red, green, blue});
+        moveToFront(cachedTables, cachedTableCount - 1, buffer);
+        return buffer;
+    }
+
+    private static boolean matches(final float[] key, final PointF[] points) {
+        if (key.length != points.length * 2) {
+            return false;
+        }
+        for (int i = 0; i < points.length; i++) {
+            if (key[i * 2] != points[i].x || key[i * 2 + 1] != points[i].y) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T> void moveToFront(final T[] entries, final int index, final T entry) {
+        System.arraycopy(entries, 0, entries, 1, index);
+        entries[0] = entry;
+    }
+
+    private static int clamp(final int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static int[] createCurve(final PointF[] points) {
+        int n = points.length;
+        if (n <= 1) {
+            return null;
+        }
+
+        // Sort by x, keeping the order of equal ones, and convert from (0, 1) to (0, 255)
+        PointF[] sorted = points.clone();
+        for (int i = 1; i < n; i++) {
+            PointF point = sorted[i];
+            int j = i - 1;
+            while (j >= 0 && sorted[j].x > point.x) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = point;
+        }
+        int[] x = new int[n];
+        int[] y = new int[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = (int) (sorted[i].x * 255);
+            y[i] = (int) (sorted[i].y * 255);
+        }
+
+        // The spline between the first and the last point, the last one included only if it
+        // completes 256 values
+        int count = 0;
+        for (int i = 0; i < n - 1; i++) {
+            count += Math.max(x[i + 1] - x[i], 0);
+        }
+        if (count == 0) {
+            return null;
+        }
+        boolean withLast = count == SIZE - 1;
+        int[] splineX = new int[withLast ? count + 1 : count];
+        int[] splineY = new int[splineX.length];
+        double[] sd = createSecondDerivative(x, y);
+        int k = 0;
+        for (int i = 0; i < n - 1; i++) {
+            double h = x[i + 1] - x[i];
+            for (int px = x[i]; px < x[i + 1]; px++) {
+                double b = (px - x[i]) / h;
+                double a = 1 - b;
+                double py = a * y[i] + b * y[i + 1]
+                        + (h * h / 6) * ((a * a * a - a) * sd[i] + (b * b * b - b) * sd[i + 1]);
+                if (py > 255.0) {
+                    py = 255.0;
+                } else if (py < 0.0) {
+                    py = 0.0;
+                }
+                splineX[k] = px;
+                splineY[k] = (int) Math.round(py);
+                k++;
+            }
+        }
+        if (withLast) {
+            splineX[k] = x[n - 1];
+            splineY[k] = y[n - 1];
+        }
+
+        // Outputs of 0 from 0 up to and including the first x, then the spline, then outputs
+        // of 255 after the last x. The entries are taken in this order whatever their x, like
+        // the original GPUImage does.
+        int head = splineX[0] > 0 ? splineX[0] + 1 : 0;
+        int lastX = splineX[splineX.length - 1];
+        int tail = lastX < 255 ? 255 - lastX : 0;
+        if (head + splineX.length + tail < SIZE) {
+            return null;
+        }
+        int[] curve = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            if (i < head) {
+                curve[i] = -i;
+            } else if (i < head + splineX.length) {
+                curve[i] = splineY[i - head] - splineX[i - head];
+            } else {
+                int tailX = lastX + 1 + i - head - splineX.length;
+                curve[i] = 255 - tailX;
+            }
+        }
+        return curve;
+    }
+
+    private static double[] createSecondDerivative(final int[] x, final int[] y) {
+        int n = x.length;
+        // The rows of the tridiagonal system, the first and last fixed to a second derivative
+        // of 0
+        double[] lower = new double[n];
+        double[] diagonal = new double[n];
+        double[] upper = new double[n];
+        double[] result = new double[n];
+        diagonal[0] = 1;
+        diagonal[n - 1] = 1;
+        for (int i = 1; i < n - 1; i++) {
+            lower[i] = (double) (x[i] - x[i - 1]) / 6;
+            diagonal[i] = (double) (x[i + 1] - x[i - 1]) / 3;
+            upper[i] = (double) (x[i + 1] - x[i]) / 6;
+            result[i] = (double) (y[i + 1] - y[i]) / (x[i + 1] - x[i])
+                    - (double) (y[i] - y[i - 1]) / (x[i] - x[i - 1]);
+        }
+
+        for (int i = 1; i < n; i++) {
+            double k = lower[i] / diagonal[i - 1];
+            diagonal[i] -= k * upper[i - 1];
+            lower[i] = 0;
+            result[i] -= k * result[i - 1];
+        }
+        for (int i = n - 2; i >= 0; i--) {
+            double k = upper[i] / diagonal[i + 1];
+            diagonal[i] -= k * lower[i + 1];
+            upper[i] = 0;
+            result[i] -= k * result[i + 1];
+        }
+        for (int i = 0; i < n; i++) {
+            result[i] /= diagonal[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.filter;
+
+import jp.co.cyberagent.android.gpuimage.util.GLBackend;
+
+/**
+ * Latest value of every uniform set on a filter. Setters may be called from any thread and
+ * only overwrite the slot of their uniform, {@link #flush()} uploads the dirty slots on the
+ * GL thread. Nothing is allocated once a uniform has its slot.
+ */
+final class UniformState {
+    static final int TYPE_INT = 0;
+    static final int TYPE_FLOAT = 1;
+    static final int TYPE_VEC2 = 2;
+    static final int TYPE_VEC3 = 3;
+    static final int TYPE_VEC4 = 4;
+    static final int TYPE_FLOAT_ARRAY = 5;
+    static final int TYPE_MAT3 = 6;
+    static final int TYPE_MAT4 = 7;
+
+    private static final int INITIAL_SLOTS = 8;
+
+    private int[] locations = new int[INITIAL_SLOTS];
+    private int[] types = new int[INITIAL_SLOTS];
+    private int[] offsets = new int[INITIAL_SLOTS];
+    private int[] lengths = new int[INITIAL_SLOTS];
+    private int[] intValues = new int[INITIAL_SLOTS];
+    private boolean[] dirty = new boolean[INITIAL_SLOTS];
+    private float[] floatValues = new float[INITIAL_SLOTS * 4];
+    private int slotCount;
+    private int floatCount;
+    private boolean anyDirty;
+    private int version;
+
+    synchronized void setInt(final int location, final int value) {
+        if (location < 0) {
+            return;
+        }
+        int slot = slot(location, TYPE_INT, 0);
+        intValues[slot] = value;
+        markDirty(slot);
+    }
+
+    synchronized void setFloat(final int location, final float value) {
+        if (location < 0) {
+            return;
+        }
+        int slot = slot(location, TYPE_FLOAT, 1);
+        floatValues[offsets[slot]] = value;
+        markDirty(slot);
+    }
+
+    synchronized void setFloat2(final int location, final float x, final float y) {
+        if (location < 0) {
+            return;
+        }
+        int slot = slot(location, TYPE_VEC2, 2);
+        floatValues[offsets[slot]] = x;
+        floatValues[offsets[slot] + 1] = y;
+        markDirty(slot);
+    }
+
+    synchronized void setFloats(final int location, final int type, final float[] values,
+                                final int length) {
+        if (location < 0) {
+            return;
+        }
+        int slot = slot(location, type, length);
+        System.arraycopy(values, 0, floatValues, offsets[slot], length);
+        markDirty(slot);
+    }
+
+    /**
+     * Marks every slot dirty so the next flush uploads all values again.
+     */
+    synchronized void invalidate() {
+        for (int i = 0; i < slotCount; i++) {
+            dirty[i] = true;
+        }
+        anyDirty = slotCount > 0;
+    }
+
+    synchronized void clear() {
+        slotCount = 0;
+        floatCount = 0;
+        anyDirty = false;
+    }
+
+    /**
+     * Gets a counter increased by every value set, to tell whether any uniform changed.
+     */
+    synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * Uploads the dirty uniforms to the program in use.
+     */
+    synchronized void flush() {
+        if (!anyDirty) {
+            return;
+        }
+        GLBackend gl = GLBackend.current();
+        for (int i = 0; i < slotCount; i++) {
+            if (!dirty[i]) {
+                continue;
+            }
+            dirty[i] = false;
+            int location = locations[i];
+            int offset = offsets[i];
+            switch (types[i]) {
+                case TYPE_INT:
+                    gl.glUniform1i(location, intValues[i]);
+                    break;
+                case TYPE_FLOAT:
+                    gl.glUniform1f(location, floatValues[offset]);
+                    break;
+                case TYPE_VEC2:
+                    gl.glUniform2fv(location, 1, floatValues, offset);
+                    break;
+                case TYPE_VEC3:
+                    gl.glUniform3fv(location, 1, floatValues, offset);
+                    break;
+                case TYPE_VEC4:
+                    gl.glUniform4fv(location, 1, floatValues, offset);
+                    break;
+                case TYPE_FLOAT_ARRAY:
+                    gl.glUniform1fv(location, lengths[i], floatValues, offset);
+                    break;
+                case TYPE_MAT3:
+                    gl.glUniformMatrix3fv(location, 1, false, floatValues, offset);
+                    break;
+                case TYPE_MAT4:
+                    gl.glUniformMatrix4fv(location, 1, false, floatValues, offset);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown uniform type " + types[i]);
+            }
+        }
+        anyDirty = false;
+    }
+
+    private void markDirty(final int slot) {
+        dirty[slot] = true;
+        anyDirty = true;
+        version++;
+    }
+
+    private int slot(final int location, final int type, final int length) {
+        for (int i = 0; i < slotCount; i++) {
+            if (locations[i] == location) {
+                if (lengths[i] < length) {
+                    offsets[i] = reserveFloats(length);
+                }
+                types[i] = type;
+                lengths[i] = length;
+                return i;
+            }
+        }
+        if (slotCount == locations.length) {
+            int capacity = slotCount * 2;
+            locations = copyOf(locations, capacity);
+            types = copyOf(types, capacity);
+            offsets = copyOf(offsets, capacity);
+            lengths = copyOf(lengths, capacity);
+            intValues = copyOf(intValues, capacity);
+            boolean[] newDirty = new boolean[capacity];
+            System.arraycopy(dirty, 0, newDirty, 0, slotCount);
+            dirty = newDirty;
+        }
+        int slot = slotCount++;
+        locations[slot] = location;
+        types[slot] = type;
+        offsets[slot] = reserveFloats(length);
+        lengths[slot] = length;
+        dirty[slot] = false;
+        return slot;
+    }
+
+    private int reserveFloats(final int length) {
+        if (floatCount + length > floatValues.length) {
+            float[] values = new float[Math.max(floatValues.length * 2, floatCount + length)];
+            System.arraycopy(floatValues, 0, values, 0, floatCount);
+            floatValues = values;
+        }
+        int offset = floatCount;
+        floatCount += length;
+        return offset;
+    }
+
+    private static int[] copyOf(final int[] array, final int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+}
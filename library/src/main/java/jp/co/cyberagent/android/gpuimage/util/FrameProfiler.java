@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opt-in profiler measuring the CPU and, where supported, GPU time of every filter pass of a
+ * frame. Set it on {@link jp.co.cyberagent.android.gpuimage.GPUImageRenderer}; the stats of
+ * each frame are published to the {@link Listener} and collected in rolling percentiles.
+ * <p>
+ * GPU times arrive a few frames late, so stats are published once the GPU has finished the
+ * frame. All begin and end methods must be called on the GL thread.
+ */
+public class FrameProfiler {
+    private static final int DEFAULT_WINDOW = 120;
+    private static final int MAX_PENDING_FRAMES = 4;
+
+    private static final ThreadLocal<FrameProfiler> active = new ThreadLocal<>();
+
+    public interface Listener {
+        /**
+         * Called on the GL thread for every profiled frame.
+         */
+        void onFrameStats(FrameStats stats);
+    }
+
+    private FrameTimer timer;
+    private volatile Listener listener;
+    private final int window;
+
+    private long frameNumber;
+    private long frameStart;
+    private long drainStart;
+    private long drainNanos;
+    private long uploadStart;
+    private long uploadNanos;
+    private int passDepth;
+    private long passStart;
+    private int passTimer;
+    private int passCount;
+    private String[] passNames = new String[8];
+    private long[] passCpuNanos = new long[8];
+    private int[] passTimers = new int[8];
+    private final ArrayDeque<PendingFrame> pendingFrames = new ArrayDeque<>();
+
+    private final RollingHistogram totalHistogram;
+    private final RollingHistogram drainHistogram;
+    private final RollingHistogram uploadHistogram;
+    private final Map<String, RollingHistogram> passCpuHistograms = new HashMap<>();
+    private final Map<String, RollingHistogram> passGpuHistograms = new HashMap<>();
+
+    /**
+     * Creates a profiler which measures GPU time when the GL context supports timer queries.
+     */
+    public FrameProfiler() {
+        this(null, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param timer  the clock and GPU timer backend, or null to pick one for the GL context
+     * @param window the number of recent frames the percentiles are computed from
+     */
+    public FrameProfiler(final FrameTimer timer, final int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.timer = timer;
+        this.window = window;
+        totalHistogram = new RollingHistogram(window);
+        drainHistogram = new RollingHistogram(window);
+        uploadHistogram = new RollingHistogram(window);
+    }
+
+    /**
+     * Gets the profiler of the frame being drawn on the calling thread.
+     *
+     * @return the profiler or null if the frame is not profiled
+     */
+    public static FrameProfiler current() {
+        return active.get();
+    }
+
+    public void setListener(final Listener listener) {
+        this.listener = listener;
+    }
+
+    public void beginFrame() {
+        if (timer == null) {
+            timer = GLTimerQueryFrameTimer.isSupported()
+                    ? new GLTimerQueryFrameTimer() : FrameTimer.SYSTEM;
+        }
+        active.set(this);
+        drainNanos = 0;
+        uploadNanos = 0;
+        passCount = 0;
+        passDepth = 0;
+        frameStart = timer.nanoTime();
+    }
+
+    public void beginDrain() {
+        drainStart = timer.nanoTime();
+    }
+
+    public void endDrain() {
+        drainNanos += timer.nanoTime() - drainStart;
+    }
+
+    public void beginUpload() {
+        uploadStart = timer.nanoTime();
+    }
+
+    public void endUpload() {
+        uploadNanos += timer.nanoTime() - uploadStart;
+    }
+
+    /**
+     * Starts measuring a filter pass. Passes begun while another one is measured are counted
+     * as part of the outer pass.
+     */
+    public void beginPass(final Object filter) {
+        if (passDepth++ > 0) {
+            return;
+        }
+        if (passCount == passNames.length) {
+            passNames = Arrays.copyOf(passNames, passCount * 2);
+            passCpuNanos = Arrays.copyOf(passCpuNanos, passCount * 2);
+            passTimers = Arrays.copyOf(passTimers, passCount * 2);
+        }
+        passNames[passCount] = filter.getClass().getSimpleName();
+        passStart = timer.nanoTime();
+        passTimer = timer.beginGpuTimer();
+    }
+
+    public void endPass() {
+        if (--passDepth > 0) {
+            return;
+        }
+        timer.endGpuTimer(passTimer);
+        passCpuNanos[passCount] = timer.nanoTime() - passStart;
+        passTimers[passCount] = passTimer;
+        passCount++;
+    }
+
+    public void endFrame() {
+        active.remove();
+        long totalNanos = timer.nanoTime() - frameStart;
+        pendingFrames.addLast(new PendingFrame(frameNumber++, totalNanos, drainNanos,
+                uploadNanos, Arrays.copyOf(passNames, passCount),
+                Arrays.copyOf(passCpuNanos, passCount), Arrays.copyOf(passTimers, passCount)));
+        publishFinishedFrames();
+    }
+
+    public Percentiles getTotalPercentiles() {
+        return totalHistogram.getPercentiles();
+    }
+
+    public Percentiles getDrainPercentiles() {
+        return drainHistogram.getPercentiles();
+    }
+
+    public Percentiles getUploadPercentiles() {
+        return uploadHistogram.getPercentiles();
+    }
+
+    /**
+     * @param name the simple class name of a filter
+     * @return the CPU time percentiles of the filter's passes or null if it was not drawn
+     */
+    public Percentiles getPassCpuPercentiles(final String name) {
+        return getPercentiles(passCpuHistograms, name);
+    }
+
+    /**
+     * @param name the simple class name of a filter
+     * @return the GPU time percentiles of the filter's passes or null if none were measured
+     */
+    public Percentiles getPassGpuPercentiles(final String name) {
+        return getPercentiles(passGpuHistograms, name);
+    }
+
+    private Percentiles getPercentiles(final Map<String, RollingHistogram> histograms,
+                                       final String name) {
+        RollingHistogram histogram;
+        synchronized (histograms) {
+            histogram = histograms.get(name);
+        }
+        return histogram != null ? histogram.getPercentiles() : null;
+    }
+
+    private void publishFinishedFrames() {
+        while (!pendingFrames.isEmpty()) {
+            PendingFrame frame = pendingFrames.peekFirst();
+            // Give up waiting for the GPU once too many frames are in flight
+            boolean force = pendingFrames.size() > MAX_PENDING_FRAMES;
+            if (!frame.resolveGpuTimes(timer, force)) {
+                return;
+            }
+            pendingFrames.removeFirst();
+            FrameStats stats = frame.toStats();
+            record(stats);
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onFrameStats(stats);
+            }
+        }
+    }
+
+    private void record(final FrameStats stats) {
+        totalHistogram.add(stats.getTotalNanos());
+        drainHistogram.add(stats.getDrainNanos());
+        uploadHistogram.add(stats.getUploadNanos());
+        for (int i = 0; i < stats.getPassCount(); i++) {
+            histogram(passCpuHistograms, stats.getPassName(i)).add(stats.getPassCpuNanos(i));
+            long gpuNanos = stats.getPassGpuNanos(i);
+            if (gpuNanos >= 0) {
+                histogram(passGpuHistograms, stats.getPassName(i)).add(gpuNanos);
+            }
+        }
+    }
+
+    private RollingHistogram histogram(final Map<String, RollingHistogram> histograms,
+                                       final String name) {
+        synchronized (histograms) {
+            RollingHistogram histogram = histograms.get(name);
+            if (histogram == null) {
+                histogram = new RollingHistogram(window);
+                histograms.put(name, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * The 50th, 95th and 99th percentile of a duration in nanoseconds.
+     */
+    public static final class Percentiles {
+        private final long p50;
+        private final long p95;
+        private final long p99;
+
+        Percentiles(final long p50, final long p95, final long p99) {
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+    }
+
+    private static final class RollingHistogram {
+        private final long[] samples;
+        private long[] sorted;
+        private int count;
+        private int next;
+
+        RollingHistogram(final int window) {
+            samples = new long[window];
+        }
+
+        synchronized void add(final long sample) {
+            samples[next] = sample;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+        }
+
+        synchronized Percentiles getPercentiles() {
+            if (count == 0) {
+                return new Percentiles(0, 0, 0);
+            }
+            if (sorted == null) {
+                sorted = new long[samples.length];
+            }
+            System.arraycopy(samples, 0, sorted, 0, count);
+            Arrays.sort(sorted, 0, count);
+            return new Percentiles(percentile(0.50), percentile(0.95), percentile(0.99));
+        }
+
+        private long percentile(final double p) {
+            int index = (int) Math.ceil(p * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+
+    private static final class PendingFrame {
+        private final long frameNumber;
+        private final long totalNanos;
+        private final long drainNanos;
+        private final long uploadNanos;
+        private final String[] passNames;
+        private final long[] passCpuNanos;
+        private final int[] passTimers;
+        private final long[] passGpuNanos;
+
+        PendingFrame(final long frameNumber, final long totalNanos, final long drainNanos,
+                     final long uploadNanos, final String[] passNames, final long[] passCpuNanos,
+                     final int[] passTimers) {
+            this.frameNumber = frameNumber;
+            this.totalNanos = totalNanos;
+            this.drainNanos = drainNanos;
+            this.uploadNanos = uploadNanos;
+            this.passNames = passNames;
+            this.passCpuNanos = passCpuNanos;
+            this.passTimers = passTimers;
+            passGpuNanos = new long[passTimers.length];
+            Arrays.fill(passGpuNanos, FrameTimer.PENDING);
+        }
+
+        /**
+         * @return true when every GPU time is known, releasing the timers
+         */
+        boolean resolveGpuTimes(final FrameTimer timer, final boolean force) {
+            boolean finished = true;
+            for (int i = 0; i < passTimers.length; i++) {
+                if (passGpuNanos[i] == FrameTimer.PENDING) {
+                    passGpuNanos[i] = timer.getGpuNanos(passTimers[i]);
+                    if (passGpuNanos[i] == FrameTimer.PENDING) {
+                        finished = false;
+                    }
+                }
+            }
+            if (!finished && !force) {
+                return false;
+            }
+            for (int i = 0; i < passTimers.length; i++) {
+                if (passGpuNanos[i] == FrameTimer.PENDING) {
+                    passGpuNanos[i] = FrameTimer.UNAVAILABLE;
+                }
+                timer.releaseGpuTimer(passTimers[i]);
+            }
+            return true;
+        }
+
+        FrameStats toStats() {
+            return new FrameStats(frameNumber, totalNanos, drainNanos, uploadNanos, passNames,
+                    passCpuNanos, passGpuNanos);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+/**
+ * Timings of one rendered frame, published by {@link FrameProfiler}. All durations are in
+ * nanoseconds. GPU durations are {@link FrameTimer#UNAVAILABLE} when they could not be measured.
+ */
+public final class FrameStats {
+    private final long frameNumber;
+    private final long totalNanos;
+    private final long drainNanos;
+    private final long uploadNanos;
+    private final String[] passNames;
+    private final long[] passCpuNanos;
+    private final long[] passGpuNanos;
+
+    FrameStats(final long frameNumber, final long totalNanos, final long drainNanos,
+               final long uploadNanos, final String[] passNames, final long[] passCpuNanos,
+               final long[] passGpuNanos) {
+        this.frameNumber = frameNumber;
+        this.totalNanos = totalNanos;
+        this.drainNanos = drainNanos;
+        this.uploadNanos = uploadNanos;
+        this.passNames = passNames;
+        this.passCpuNanos = passCpuNanos;
+        this.passGpuNanos = passGpuNanos;
+    }
+
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * @return the CPU time of the whole frame
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the CPU time spent running the tasks queued with runOnDraw, uploads included
+     */
+    public long getDrainNanos() {
+        return drainNanos;
+    }
+
+    /**
+     * @return the CPU time spent uploading image and camera textures
+     */
+    public long getUploadNanos() {
+        return uploadNanos;
+    }
+
+    /**
+     * @return the number of filter passes drawn in the frame
+     */
+    public int getPassCount() {
+        return passNames.length;
+    }
+
+    /**
+     * @return the simple class name of the filter drawing the pass
+     */
+    public String getPassName(final int pass) {
+        return passNames[pass];
+    }
+
+    /**
+     * @return the CPU time of submitting the pass
+     */
+    public long getPassCpuNanos(final int pass) {
+        return passCpuNanos[pass];
+    }
+
+    /**
+     * @return the GPU time of the pass or {@link FrameTimer#UNAVAILABLE}
+     */
+    public long getPassGpuNanos(final int pass) {
+        return passGpuNanos[pass];
+    }
+
+    /**
+     * @return the summed GPU time of all passes or {@link FrameTimer#UNAVAILABLE}
+     */
+    public long getGpuNanos() {
+        long total = 0;
+        for (long nanos : passGpuNanos) {
+            if (nanos < 0) {
+                return FrameTimer.UNAVAILABLE;
+            }
+            total += nanos;
+        }
+        return total;
+    }
+}
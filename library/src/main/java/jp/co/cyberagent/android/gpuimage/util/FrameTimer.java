@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+/**
+ * Clock and GPU timer backend of {@link FrameProfiler}. Implementations other than
+ * {@link #SYSTEM} and {@link GLTimerQueryFrameTimer} can be used to drive the profiler with
+ * a fake clock, without GL.
+ */
+public interface FrameTimer {
+    /**
+     * Result of {@link #getGpuNanos(int)} while the GPU has not finished the measured work.
+     */
+    long PENDING = -1;
+    /**
+     * Result of {@link #getGpuNanos(int)} when the measurement is unusable, e.g. because the
+     * GPU was disjoint or timing is not supported.
+     */
+    long UNAVAILABLE = -2;
+
+    /**
+     * A CPU only timer based on {@link System#nanoTime()}.
+     */
+    FrameTimer SYSTEM = new FrameTimer() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public int beginGpuTimer() {
+            return -1;
+        }
+
+        @Override
+        public void endGpuTimer(final int timer) {
+        }
+
+        @Override
+        public long getGpuNanos(final int timer) {
+            return UNAVAILABLE;
+        }
+
+        @Override
+        public void releaseGpuTimer(final int timer) {
+        }
+    };
+
+    /**
+     * @return the current CPU time in nanoseconds
+     */
+    long nanoTime();
+
+    /**
+     * Starts measuring the GPU time of the following commands. Timers do not nest.
+     *
+     * @return a timer handle or -1 if GPU timing is not supported
+     */
+    int beginGpuTimer();
+
+    void endGpuTimer(int timer);
+
+    /**
+     * @return the measured GPU time in nanoseconds, {@link #PENDING} or {@link #UNAVAILABLE}
+     */
+    long getGpuNanos(int timer);
+
+    /**
+     * Returns a timer handle for reuse once its result was read or is no longer needed.
+     */
+    void releaseGpuTimer(int timer);
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * The GL ES calls of the library. Filters, groups, the renderer and the utilities make every
+ * GL call through the backend of the process, which is android.opengl unless
+ * {@link #set(GLBackend)} installed another, e.g. one over desktop EGL and GL ES to run the
+ * filters without a device. The constants stay the ones of android.opengl.GLES20 and GLES30,
+ * which are the values of the GL ES headers.
+ * <p>
+ * The GL ES 3.0 calls are only made after {@link #isGLES3()} returned true. Only
+ * external textures, which need a SurfaceTexture, still depend on Android.
+ */
+public abstract class GLBackend {
+    private static volatile GLBackend current = new AndroidGLBackend();
+
+    /**
+     * Gets the backend every GL call goes through.
+     */
+    public static GLBackend current() {
+        return current;
+    }
+
+    /**
+     * Replaces the backend for the whole process. Must be called before any GL resources are
+     * created, as names from one backend mean nothing to another.
+     */
+    public static void set(final GLBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("backend must not be null");
+        }
+        current = backend;
+    }
+
+    /**
+     * Gets what identifies the context current on the calling thread, to notice when a thread
+     * switched contexts or a context was lost.
+     */
+    public abstract Object getCurrentContext();
+
+    /**
+     * Checks whether the context current on the calling thread is GL ES 3.0 or later, which the
+     * GL ES 3.0 calls need.
+     */
+    public boolean isGLES3() {
+        String version = glGetString(GLES20.GL_VERSION);
+        return version != null && version.startsWith("OpenGL ES ")
+                && !version.startsWith("OpenGL ES 2.") && !version.startsWith("OpenGL ES-");
+    }
+
+    public abstract void glActiveTexture(int texture);
+
+    public abstract void glAttachShader(int program, int shader);
+
+    public abstract void glBindBuffer(int target, int buffer);
+
+    public abstract void glBindFramebuffer(int target, int framebuffer);
+
+    public abstract void glBindTexture(int target, int texture);
+
+    public abstract void glBufferData(int target, int size, Buffer data, int usage);
+
+    public abstract void glClear(int mask);
+
+    public abstract void glClearColor(float red, float green, float blue, float alpha);
+
+    public abstract void glCompileShader(int shader);
+
+    public abstract int glCreateProgram();
+
+    public abstract int glCreateShader(int type);
+
+    public abstract void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    public abstract void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+
+    public abstract void glDeleteProgram(int program);
+
+    public abstract void glDeleteShader(int shader);
+
+    public abstract void glDeleteTextures(int n, int[] textures, int offset);
+
+    public abstract void glDisable(int cap);
+
+    public abstract void glDisableVertexAttribArray(int index);
+
+    public abstract void glDrawArrays(int mode, int first, int count);
+
+    public abstract void glEnableVertexAttribArray(int index);
+
+    public abstract void glFlush();
+
+    public abstract void glFramebufferTexture2D(int target, int attachment, int textarget,
+                                                int texture, int level);
+
+    public abstract void glGenBuffers(int n, int[] buffers, int offset);
+
+    public abstract void glGenFramebuffers(int n, int[] framebuffers, int offset);
+
+    public abstract void glGenTextures(int n, int[] textures, int offset);
+
+    public abstract int glGetAttribLocation(int program, String name);
+
+    public abstract void glGetIntegerv(int pname, int[] params, int offset);
+
+    public abstract void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    public abstract String glGetShaderInfoLog(int shader);
+
+    public abstract void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    public abstract String glGetString(int name);
+
+    public abstract int glGetUniformLocation(int program, String name);
+
+    public abstract boolean glIsBuffer(int buffer);
+
+    public abstract boolean glIsProgram(int program);
+
+    public abstract boolean glIsTexture(int texture);
+
+    public abstract void glLinkProgram(int program);
+
+    public abstract void glPixelStorei(int pname, int param);
+
+    public abstract void glReadPixels(int x, int y, int width, int height, int format, int type,
+                                      Buffer pixels);
+
+    public abstract void glShaderSource(int shader, String string);
+
+    public abstract void glTexImage2D(int target, int level, int internalformat, int width,
+                                      int height, int border, int format, int type, Buffer pixels);
+
+    public abstract void glTexParameterf(int target, int pname, float param);
+
+    public abstract void glTexParameteri(int target, int pname, int param);
+
+    public abstract void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+                                         int height, int format, int type, Buffer pixels);
+
+    public abstract void glUniform1f(int location, float x);
+
+    public abstract void glUniform1fv(int location, int count, float[] v, int offset);
+
+    public abstract void glUniform1i(int location, int x);
+
+    public abstract void glUniform2fv(int location, int count, float[] v, int offset);
+
+    public abstract void glUniform3fv(int location, int count, float[] v, int offset);
+
+    public abstract void glUniform4fv(int location, int count, float[] v, int offset);
+
+    public abstract void glUniformMatrix3fv(int location, int count, boolean transpose,
+                                            float[] value, int offset);
+
+    public abstract void glUniformMatrix4fv(int location, int count, boolean transpose,
+                                            float[] value, int offset);
+
+    public abstract void glUseProgram(int program);
+
+    public abstract void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                               int stride, Buffer ptr);
+
+    public abstract void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                               int stride, int offset);
+
+    public abstract void glViewport(int x, int y, int width, int height);
+
+    // GL ES 3.0
+
+    public abstract void glBeginQuery(int target, int id);
+
+    public abstract void glBindVertexArray(int array);
+
+    public abstract int glClientWaitSync(long sync, int flags, long timeout);
+
+    public abstract void glDeleteSync(long sync);
+
+    public abstract void glDeleteVertexArrays(int n, int[] arrays, int offset);
+
+    public abstract void glEndQuery(int target);
+
+    public abstract long glFenceSync(int condition, int flags);
+
+    public abstract void glGenQueries(int n, int[] ids, int offset);
+
+    public abstract void glGenVertexArrays(int n, int[] arrays, int offset);
+
+    public abstract void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+
+    /**
+     * @return the mapped range, or null if mapping failed
+     */
+    public abstract ByteBuffer glMapBufferRange(int target, int offset, int length, int access);
+
+    /**
+     * Reads into the bound GL_PIXEL_PACK_BUFFER.
+     */
+    public abstract void glReadPixels(int x, int y, int width, int height, int format, int type,
+                                      int offset);
+
+    public abstract void glTexImage3D(int target, int level, int internalformat, int width,
+                                      int height, int depth, int border, int format, int type,
+                                      Buffer pixels);
+
+    public abstract boolean glUnmapBuffer(int target);
+
+    // Bitmaps
+
+    /**
+     * Uploads a bitmap to a level of the bound texture like GLUtils.texImage2D, as premultiplied
+     * RGBA bytes read with {@link Bitmap#getPixels}. The Android backend hands the bitmap to
+     * GLUtils instead, which skips the copies.
+     */
+    public void texImage2D(final int target, final int level, final Bitmap bitmap) {
+        glTexImage2D(target, level, GLES20.GL_RGBA, bitmap.getWidth(), bitmap.getHeight(), 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, getPremultipliedRgba(bitmap));
+    }
+
+    /**
+     * Replaces a part of a level of the bound texture with a bitmap like GLUtils.texSubImage2D,
+     * see {@link #texImage2D(int, int, Bitmap)}.
+     */
+    public void texSubImage2D(final int target, final int level, final int xoffset,
+                              final int yoffset, final Bitmap bitmap) {
+        glTexSubImage2D(target, level, xoffset, yoffset, bitmap.getWidth(), bitmap.getHeight(),
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, getPremultipliedRgba(bitmap));
+    }
+
+    /**
+     * Converts the unpremultiplied ARGB colors of a bitmap to the premultiplied RGBA bytes a
+     * bitmap holds in memory, rounding like Skia.
+     */
+    static ByteBuffer getPremultipliedRgba(final Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] colors = new int[width * height];
+        bitmap.getPixels(colors, 0, width, 0, 0, width, height);
+        ByteBuffer rgba = ByteBuffer.allocateDirect(colors.length * 4);
+        for (int color : colors) {
+            int alpha = color >>> 24;
+            rgba.put((byte) premultiply((color >> 16) & 0xff, alpha));
+            rgba.put((byte) premultiply((color >> 8) & 0xff, alpha));
+            rgba.put((byte) premultiply(color & 0xff, alpha));
+            rgba.put((byte) alpha);
+        }
+        rgba.flip();
+        return rgba;
+    }
+
+    private static int premultiply(final int component, final int alpha) {
+        int product = component * alpha + 128;
+        return (product + (product >> 8)) >> 8;
+    }
+}
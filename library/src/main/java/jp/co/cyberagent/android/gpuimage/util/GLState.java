@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Shadow of the GL state changed by the filters, so that calls which would not change
+ * anything are skipped. There is one instance per thread, as a GL context is only current on
+ * one thread at a time.
+ * <p>
+ * Code which changes the tracked state with direct GL calls must call {@link #invalidate()}
+ * afterwards. {@link jp.co.cyberagent.android.gpuimage.GPUImageRenderer} does so before every
+ * frame.
+ */
+public final class GLState {
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int MAX_VERTEX_ATTRIBS = 32;
+
+    private static final ThreadLocal<GLState> current = new ThreadLocal<GLState>() {
+        @Override
+        protected GLState initialValue() {
+            return new GLState();
+        }
+    };
+
+    private GLBackend gl;
+    private Object context;
+    private VertexBufferCache vertexBuffers;
+    private VertexArrayCache vertexArrays;
+    private int program;
+    private int framebuffer;
+    private int arrayBuffer;
+    private int vertexArray;
+    private int activeTextureUnit;
+    private final int[] textures = new int[MAX_TEXTURE_UNITS];
+    private final int[] viewport = new int[4];
+    private int enabledAttribArrays;
+    private int knownAttribArrays;
+    private int usedAttribArrays;
+    private final Buffer[] attribBuffers = new Buffer[MAX_VERTEX_ATTRIBS];
+    private final int[] attribVertexBuffers = new int[MAX_VERTEX_ATTRIBS];
+    private final int[] attribSizes = new int[MAX_VERTEX_ATTRIBS];
+    private final Buffer[] pendingBuffers = new Buffer[MAX_VERTEX_ATTRIBS];
+    private final int[] pendingVertexBuffers = new int[MAX_VERTEX_ATTRIBS];
+    private final int[] pendingSizes = new int[MAX_VERTEX_ATTRIBS];
+    private final int[] query = new int[1];
+
+    private GLState() {
+        invalidate();
+    }
+
+    /**
+     * Gets the state tracker of the calling thread.
+     */
+    public static GLState current() {
+        return current.get();
+    }
+
+    /**
+     * Forgets the shadowed state, so the next call of every kind reaches the driver. Also
+     * notices when the thread switched to another EGL context.
+     */
+    public void invalidate() {
+        gl = GLBackend.current();
+        Object currentContext = gl.getCurrentContext();
+        if (vertexBuffers == null || !currentContext.equals(context) || !vertexBuffers.isValid()) {
+            // The buffers of another or a lost context can not be used, nor deleted here
+            context = currentContext;
+            vertexBuffers = new VertexBufferCache();
+            vertexArrays = gl.isGLES3() ? new VertexArrayCache() : null;
+        }
+        program = UNKNOWN;
+        framebuffer = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        vertexArray = UNKNOWN;
+        activeTextureUnit = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            textures[i] = UNKNOWN;
+        }
+        viewport[2] = UNKNOWN;
+        knownAttribArrays = 0;
+        enabledAttribArrays = 0;
+        usedAttribArrays = 0;
+        for (int i = 0; i < MAX_VERTEX_ATTRIBS; i++) {
+            attribBuffers[i] = null;
+            attribVertexBuffers[i] = UNKNOWN;
+            pendingBuffers[i] = null;
+        }
+    }
+
+    public void useProgram(final int program) {
+        if (this.program != program) {
+            this.program = program;
+            gl.glUseProgram(program);
+        }
+    }
+
+    public void bindFramebuffer(final int framebuffer) {
+        if (this.framebuffer != framebuffer) {
+            this.framebuffer = framebuffer;
+            gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        }
+    }
+
+    /**
+     * @return the bound framebuffer, queried from GL when it is not known
+     */
+    public int getFramebuffer() {
+        if (framebuffer == UNKNOWN) {
+            gl.glGetIntegerv(GLES20.GL_FRAMEBUFFER_BINDING, query, 0);
+            framebuffer = query[0];
+        }
+        return framebuffer;
+    }
+
+    public void bindArrayBuffer(final int buffer) {
+        if (arrayBuffer != buffer) {
+            arrayBuffer = buffer;
+            gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer);
+        }
+    }
+
+    /**
+     * Binds a GL ES 3.0 vertex array object, 0 for the default vertex array.
+     */
+    void bindVertexArray(final int array) {
+        if (vertexArray != array) {
+            vertexArray = array;
+            gl.glBindVertexArray(array);
+        }
+    }
+
+    /**
+     * Deletes a vertex array object. Deleting the bound one binds the default vertex array.
+     */
+    void deleteVertexArray(final int array) {
+        gl.glDeleteVertexArrays(1, new int[]{array}, 0);
+        if (vertexArray == array) {
+            vertexArray = 0;
+        }
+    }
+
+    public void viewport(final int x, final int y, final int width, final int height) {
+        if (viewport[0] != x || viewport[1] != y || viewport[2] != width || viewport[3] != height) {
+            viewport[0] = x;
+            viewport[1] = y;
+            viewport[2] = width;
+            viewport[3] = height;
+            gl.glViewport(x, y, width, height);
+        }
+    }
+
+    /**
+     * Copies the viewport into the given array, querying GL when it is not known.
+     */
+    public void getViewport(final int[] viewport) {
+        if (this.viewport[2] == UNKNOWN) {
+            gl.glGetIntegerv(GLES20.GL_VIEWPORT, this.viewport, 0);
+        }
+        System.arraycopy(this.viewport, 0, viewport, 0, 4);
+    }
+
+    /**
+     * Selects the texture unit, counted from 0 rather than GL_TEXTURE0.
+     */
+    public void activeTexture(final int unit) {
+        if (activeTextureUnit != unit) {
+            activeTextureUnit = unit;
+            gl.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+        }
+    }
+
+    /**
+     * Binds a 2D texture to the given unit, which is left active.
+     */
+    public void bindTexture(final int unit, final int texture) {
+        activeTexture(unit);
+        bindTexture(texture);
+    }
+
+    /**
+     * Binds a 2D texture to the active unit.
+     */
+    public void bindTexture(final int texture) {
+        if (activeTextureUnit == UNKNOWN || activeTextureUnit >= MAX_TEXTURE_UNITS) {
+            gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+            return;
+        }
+        if (textures[activeTextureUnit] != texture) {
+            textures[activeTextureUnit] = texture;
+            gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        }
+    }
+
+    /**
+     * Deletes textures. GL unbinds deleted textures, so their units are forgotten.
+     */
+    public void deleteTextures(final int n, final int[] textures, final int offset) {
+        gl.glDeleteTextures(n, textures, offset);
+        for (int i = offset; i < offset + n; i++) {
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+                if (this.textures[unit] == textures[i]) {
+                    this.textures[unit] = UNKNOWN;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes framebuffers. Deleting the bound framebuffer binds the default one.
+     */
+    public void deleteFramebuffers(final int n, final int[] framebuffers, final int offset) {
+        gl.glDeleteFramebuffers(n, framebuffers, offset);
+        for (int i = offset; i < offset + n; i++) {
+            if (framebuffer == framebuffers[i]) {
+                framebuffer = UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * Enables an attribute array for the next draw, see {@link #applyVertexAttribArrays()}.
+     */
+    public void enableVertexAttribArray(final int index) {
+        if (index < 0 || index >= MAX_VERTEX_ATTRIBS) {
+            if (index >= 0) {
+                gl.glEnableVertexAttribArray(index);
+            }
+            return;
+        }
+        usedAttribArrays |= 1 << index;
+        if (vertexArrays == null) {
+            enable(index);
+        }
+    }
+
+    /**
+     * Disables the attribute arrays which were left enabled by an earlier draw but were not
+     * enabled for the coming one. Call right before drawing.
+     * <p>
+     * On GL ES 3.0 the attributes of the coming draw are only set up here: a layout reading
+     * vertex buffers only is drawn with its vertex array object, any other layout with the
+     * default vertex array like on GL ES 2.0.
+     */
+    public void applyVertexAttribArrays() {
+        int used = usedAttribArrays;
+        usedAttribArrays = 0;
+        if (vertexArrays != null) {
+            int array = hasVertexBuffers(used)
+                    ? vertexArrays.get(used, pendingVertexBuffers, pendingSizes, this) : 0;
+            bindVertexArray(array);
+            if (array != 0) {
+                return;
+            }
+            for (int index = 0, bits = used; bits != 0; index++, bits >>>= 1) {
+                if ((bits & 1) != 0) {
+                    setVertexAttribPointer(index, pendingSizes[index],
+                            pendingVertexBuffers[index], pendingBuffers[index]);
+                    enable(index);
+                }
+            }
+        }
+        int unused = enabledAttribArrays & ~used;
+        for (int index = 0; unused != 0; index++, unused >>>= 1) {
+            if ((unused & 1) != 0) {
+                gl.glDisableVertexAttribArray(index);
+            }
+        }
+        enabledAttribArrays &= used;
+    }
+
+    /**
+     * Points a float attribute at the given coordinates. Small coordinate sets such as the
+     * corners of a quad are drawn from a vertex buffer object shared by all buffers with the
+     * same contents, larger ones from client memory. The buffer must be positioned at its
+     * first vertex and hold exactly the vertices up to its limit, until the draw on GL ES 3.0.
+     */
+    public void vertexAttribPointer(final int index, final int size, final Buffer buffer) {
+        if (index < 0) {
+            return;
+        }
+        int vertexBuffer = 0;
+        if (buffer instanceof FloatBuffer && buffer.limit() <= VertexBufferCache.MAX_FLOATS) {
+            vertexBuffer = vertexBuffers.get((FloatBuffer) buffer, this);
+        }
+        if (vertexArrays != null && index < MAX_VERTEX_ATTRIBS) {
+            // Set up with the vertex array when drawing
+            pendingVertexBuffers[index] = vertexBuffer;
+            pendingBuffers[index] = vertexBuffer == 0 ? buffer : null;
+            pendingSizes[index] = size;
+            return;
+        }
+        setVertexAttribPointer(index, size, vertexBuffer, buffer);
+    }
+
+    /**
+     * Sets a pointer of the default vertex array, from the vertex buffer unless it is 0.
+     */
+    private void setVertexAttribPointer(final int index, final int size, final int vertexBuffer,
+                                        final Buffer buffer) {
+        boolean tracked = index < MAX_VERTEX_ATTRIBS;
+        if (vertexBuffer != 0) {
+            if (tracked && attribVertexBuffers[index] == vertexBuffer && attribSizes[index] == size) {
+                return;
+            }
+            bindArrayBuffer(vertexBuffer);
+            gl.glVertexAttribPointer(index, size, GLES20.GL_FLOAT, false, 0, 0);
+            // The attribute keeps its buffer, unbind for code using client side arrays
+            bindArrayBuffer(0);
+            if (tracked) {
+                attribVertexBuffers[index] = vertexBuffer;
+                attribBuffers[index] = null;
+                attribSizes[index] = size;
+            }
+            return;
+        }
+        if (tracked) {
+            if (attribBuffers[index] == buffer && attribSizes[index] == size) {
+                return;
+            }
+            attribBuffers[index] = buffer;
+            attribVertexBuffers[index] = UNKNOWN;
+            attribSizes[index] = size;
+        }
+        bindArrayBuffer(0);
+        gl.glVertexAttribPointer(index, size, GLES20.GL_FLOAT, false, 0, buffer);
+    }
+
+    private void enable(final int index) {
+        int bit = 1 << index;
+        if ((knownAttribArrays & bit) == 0 || (enabledAttribArrays & bit) == 0) {
+            gl.glEnableVertexAttribArray(index);
+            knownAttribArrays |= bit;
+            enabledAttribArrays |= bit;
+        }
+    }
+
+    private boolean hasVertexBuffers(final int mask) {
+        for (int index = 0, bits = mask; bits != 0; index++, bits >>>= 1) {
+            if ((bits & 1) != 0 && pendingVertexBuffers[index] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void onVertexBufferChanged(final int buffer) {
+        for (int i = 0; i < MAX_VERTEX_ATTRIBS; i++) {
+            if (attribVertexBuffers[i] == buffer) {
+                attribVertexBuffers[i] = UNKNOWN;
+            }
+        }
+    }
+}
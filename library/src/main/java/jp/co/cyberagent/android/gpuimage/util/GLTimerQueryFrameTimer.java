@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Measures GPU time with the timer queries of EXT_disjoint_timer_query. Needs an OpenGL ES
+ * 3.0 context, which most devices hand out even when version 2 is requested.
+ */
+public class GLTimerQueryFrameTimer implements FrameTimer {
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+    private static final int MAX_TIMERS = 256;
+
+    private final int[] queries = new int[MAX_TIMERS];
+    private final boolean[] discarded = new boolean[MAX_TIMERS];
+    private final int[] freeTimers = new int[MAX_TIMERS];
+    private final int[] result = new int[1];
+    private int freeCount;
+    private int createdCount;
+
+    /**
+     * Checks whether the context current on the calling thread supports timer queries.
+     */
+    public static boolean isSupported() {
+        GLBackend gl = GLBackend.current();
+        if (!gl.isGLES3()) {
+            return false;
+        }
+        String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+        return extensions != null && extensions.contains("GL_EXT_disjoint_timer_query");
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public int beginGpuTimer() {
+        GLBackend gl = GLBackend.current();
+        int timer;
+        if (freeCount > 0) {
+            timer = freeTimers[--freeCount];
+        } else if (createdCount < MAX_TIMERS) {
+            timer = createdCount++;
+            gl.glGenQueries(1, queries, timer);
+        } else {
+            return -1;
+        }
+        discarded[timer] = false;
+        gl.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[timer]);
+        return timer;
+    }
+
+    @Override
+    public void endGpuTimer(final int timer) {
+        if (timer >= 0) {
+            GLBackend.current().glEndQuery(GL_TIME_ELAPSED_EXT);
+        }
+    }
+
+    @Override
+    public long getGpuNanos(final int timer) {
+        if (timer < 0) {
+            return UNAVAILABLE;
+        }
+        GLBackend gl = GLBackend.current();
+        gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        if (result[0] != 0) {
+            // Every measurement in flight is unreliable after a disjoint event
+            for (int i = 0; i < createdCount; i++) {
+                discarded[i] = true;
+            }
+        }
+        if (discarded[timer]) {
+            return UNAVAILABLE;
+        }
+        gl.glGetQueryObjectuiv(queries[timer], GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+        if (result[0] == 0) {
+            return PENDING;
+        }
+        gl.glGetQueryObjectuiv(queries[timer], GLES30.GL_QUERY_RESULT, result, 0);
+        return result[0] & 0xffffffffL;
+    }
+
+    @Override
+    public void releaseGpuTimer(final int timer) {
+        if (timer >= 0) {
+            freeTimers[freeCount++] = timer;
+        }
+    }
+}
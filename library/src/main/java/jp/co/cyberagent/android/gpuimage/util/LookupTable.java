@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import android.graphics.Bitmap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * A decoded 3D color lookup table: for each red, green and blue input on a grid of
+ * {@link #getSize()} steps the RGBA output. Tables with equal contents are equal, so
+ * {@link LookupTextureCache} uploads them once however often they are decoded.
+ */
+public final class LookupTable {
+    /**
+     * The grid size of the 512x512 lookup images, 64 blue slices of 64x64 tiled 8x8.
+     */
+    public static final int TILED_SIZE = 64;
+    public static final int TILED_IMAGE_SIZE = 512;
+
+    private static final int TILES_PER_ROW = TILED_IMAGE_SIZE / TILED_SIZE;
+    private static final int MAX_SIZE = 256;
+    private static final double[] POWERS_OF_TEN = new double[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private final int size;
+    // RGBA, red changing fastest, then green, then blue
+    private final byte[] data;
+    private final int hash;
+
+    private LookupTable(final int size, final byte[] data) {
+        this.size = size;
+        this.data = data;
+        hash = 31 * size + Arrays.hashCode(data);
+    }
+
+    /**
+     * Creates a table mapping every color to itself.
+     */
+    public static LookupTable createIdentity(final int size) {
+        if (size < 2 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("size must be from 2 to " + MAX_SIZE);
+        }
+        byte[] data = new byte[size * size * size * 4];
+        int i = 0;
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    data[i++] = toByte(r / (float) (size - 1));
+                    data[i++] = toByte(g / (float) (size - 1));
+                    data[i++] = toByte(b / (float) (size - 1));
+                    data[i++] = (byte) 0xff;
+                }
+            }
+        }
+        return new LookupTable(size, data);
+    }
+
+    /**
+     * Reads an Adobe .cube file with a 3D table, e.g. of size 17, 33 or 65, and closes the
+     * stream. The input domain has to be 0 to 1, output values are clamped to it.
+     *
+     * @throws IOException if the stream can not be read or does not hold a 3D table
+     */
+    public static LookupTable fromCube(final InputStream input) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+        try {
+            int size = 0;
+            byte[] data = null;
+            int count = 0;
+            float[] values = new float[3];
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+                char first = line.charAt(0);
+                if (first >= 'A' && first <= 'Z') {
+                    if (data != null) {
+                        throw new IOException("Keyword after the table data: " + line);
+                    }
+                    if (line.startsWith("LUT_3D_SIZE")) {
+                        size = parseSize(line);
+                    } else if (line.startsWith("LUT_1D_SIZE")) {
+                        throw new IOException("1D lookup tables are not supported");
+                    } else if (line.startsWith("DOMAIN_MIN")) {
+                        checkDomain(line, 0.0f);
+                    } else if (line.startsWith("DOMAIN_MAX")) {
+                        checkDomain(line, 1.0f);
+                    } else if (line.startsWith("LUT_3D_INPUT_RANGE")) {
+                        checkInputRange(line);
+                    }
+                    // TITLE and vendor keywords do not change the table
+                    continue;
+                }
+                if (data == null) {
+                    if (size == 0) {
+                        throw new IOException("LUT_3D_SIZE is missing");
+                    }
+                    data = new byte[size * size * size * 4];
+                }
+                if (count == size * size * size) {
+                    throw new IOException("More than " + count + " entries");
+                }
+                if (parseValues(line, values, 0) != 3) {
+                    throw new IOException("Not an RGB entry: " + line);
+                }
+                data[count * 4] = toByte(values[0]);
+                data[count * 4 + 1] = toByte(values[1]);
+                data[count * 4 + 2] = toByte(values[2]);
+                data[count * 4 + 3] = (byte) 0xff;
+                count++;
+            }
+            if (data == null || count != size * size * size) {
+                throw new IOException("Expected " + size * size * size + " entries, found "
+                        + count);
+            }
+            return new LookupTable(size, data);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads a lookup image as used by {@link
+     * jp.co.cyberagent.android.gpuimage.filter.GPUImageLookupFilter}. Images of another size
+     * than 512x512, e.g. scaled for the screen density when decoded from resources, are
+     * resampled bilinearly within each tile.
+     */
+    public static LookupTable fromBitmap(final Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        byte[] data = new byte[TILED_SIZE * TILED_SIZE * TILED_SIZE * 4];
+        boolean scaled = width != TILED_IMAGE_SIZE || height != TILED_IMAGE_SIZE;
+        int i = 0;
+        for (int b = 0; b < TILED_SIZE; b++) {
+            int tileX = (b % TILES_PER_ROW) * TILED_SIZE;
+            int tileY = (b / TILES_PER_ROW) * TILED_SIZE;
+            for (int g = 0; g < TILED_SIZE; g++) {
+                int row = (tileY + g) * TILED_IMAGE_SIZE + tileX;
+                for (int r = 0; r < TILED_SIZE; r++) {
+                    if (scaled) {
+                        sampleTile(pixels, width, height, tileX, tileY, r, g, data, i);
+                        i += 4;
+                        continue;
+                    }
+                    int pixel = pixels[row + r];
+                    data[i++] = (byte) (pixel >> 16);
+                    data[i++] = (byte) (pixel >> 8);
+                    data[i++] = (byte) pixel;
+                    data[i++] = (byte) 0xff;
+                }
+            }
+        }
+        return new LookupTable(TILED_SIZE, data);
+    }
+
+    /**
+     * Samples the pixel at r, g of the tile at tileX, tileY of a lookup image scaled from
+     * 512x512, without blending in the neighbouring tiles.
+     */
+    private static void sampleTile(final int[] pixels, final int width, final int height,
+                                   final int tileX, final int tileY, final int r, final int g,
+                                   final byte[] out, final int offset) {
+        float scaleX = width / (float) TILED_IMAGE_SIZE;
+        float scaleY = height / (float) TILED_IMAGE_SIZE;
+        // The source pixels covered by the tile
+        int left = Math.min((int) (tileX * scaleX), width - 1);
+        int right = Math.max(left, (int) Math.ceil((tileX + TILED_SIZE) * scaleX) - 1);
+        int top = Math.min((int) (tileY * scaleY), height - 1);
+        int bottom = Math.max(top, (int) Math.ceil((tileY + TILED_SIZE) * scaleY) - 1);
+        float x = Math.min(Math.max((tileX + r + 0.5f) * scaleX - 0.5f, left), right);
+        float y = Math.min(Math.max((tileY + g + 0.5f) * scaleY - 0.5f, top), bottom);
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, right);
+        int y1 = Math.min(y0 + 1, bottom);
+        float fx = x - x0;
+        float fy = y - y0;
+        int p00 = pixels[y0 * width + x0];
+        int p10 = pixels[y0 * width + x1];
+        int p01 = pixels[y1 * width + x0];
+        int p11 = pixels[y1 * width + x1];
+        for (int channel = 0; channel < 3; channel++) {
+            int shift = 16 - channel * 8;
+            float upper = lerp((p00 >> shift) & 0xff, (p10 >> shift) & 0xff, fx);
+            float lower = lerp((p01 >> shift) & 0xff, (p11 >> shift) & 0xff, fx);
+            out[offset + channel] = (byte) (int) (lerp(upper, lower, fy) + 0.5f);
+        }
+        out[offset + 3] = (byte) 0xff;
+    }
+
+    /**
+     * Gets the number of steps per channel.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the entries as RGBA bytes, red changing fastest, then green, then blue. The array
+     * is shared and must not be modified.
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Lays the table out as a 512x512 RGBA lookup image, first row first. Tables of another
+     * size than 64 are resampled with trilinear interpolation.
+     */
+    byte[] createTiledImage() {
+        byte[] image = new byte[TILED_IMAGE_SIZE * TILED_IMAGE_SIZE * 4];
+        float scale = (size - 1) / (float) (TILED_SIZE - 1);
+        for (int b = 0; b < TILED_SIZE; b++) {
+            int tileX = (b % TILES_PER_ROW) * TILED_SIZE;
+            int tileY = (b / TILES_PER_ROW) * TILED_SIZE;
+            for (int g = 0; g < TILED_SIZE; g++) {
+                int offset = ((tileY + g) * TILED_IMAGE_SIZE + tileX) * 4;
+                for (int r = 0; r < TILED_SIZE; r++) {
+                    if (size == TILED_SIZE) {
+                        System.arraycopy(data, ((b * size + g) * size + r) * 4, image,
+                                offset + r * 4, 4);
+                    } else {
+                        sample(r * scale, g * scale, b * scale, image, offset + r * 4);
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    private void sample(final float r, final float g, final float b, final byte[] out,
+                        final int offset) {
+        int r0 = Math.min((int) r, size - 2);
+        int g0 = Math.min((int) g, size - 2);
+        int b0 = Math.min((int) b, size - 2);
+        float fr = r - r0;
+        float fg = g - g0;
+        float fb = b - b0;
+        for (int channel = 0; channel < 3; channel++) {
+            float c00 = lerp(entry(r0, g0, b0, channel), entry(r0 + 1, g0, b0, channel), fr);
+            float c10 = lerp(entry(r0, g0 + 1, b0, channel),
+                    entry(r0 + 1, g0 + 1, b0, channel), fr);
+            float c01 = lerp(entry(r0, g0, b0 + 1, channel),
+                    entry(r0 + 1, g0, b0 + 1, channel), fr);
+            float c11 = lerp(entry(r0, g0 + 1, b0 + 1, channel),
+                    entry(r0 + 1, g0 + 1, b0 + 1, channel), fr);
+            float value = lerp(lerp(c00, c10, fg), lerp(c01, c11, fg), fb);
+            out[offset + channel] = (byte) (int) (value + 0.5f);
+        }
+        out[offset + 3] = (byte) 0xff;
+    }
+
+    private int entry(final int r, final int g, final int b, final int channel) {
+        return data[((b * size + g) * size + r) * 4 + channel] & 0xff;
+    }
+
+    private static float lerp(final float a, final float b, final float t) {
+        return a + (b - a) * t;
+    }
+
+    private static byte toByte(final float value) {
+        return (byte) (int) (Math.min(Math.max(value, 0.0f), 1.0f) * 255.0f + 0.5f);
+    }
+
+    private static int parseSize(final String line) throws IOException {
+        float[] value = new float[1];
+        if (parseValues(line, value, "LUT_3D_SIZE".length()) != 1) {
+            throw new IOException("Invalid " + line);
+        }
+        int size = (int) value[0];
+        if (size != value[0] || size < 2 || size > MAX_SIZE) {
+            throw new IOException("Unsupported " + line);
+        }
+        return size;
+    }
+
+    private static void checkDomain(final String line, final float expected)
+            throws IOException {
+        float[] values = new float[3];
+        int count = parseValues(line, values, "DOMAIN_MIN".length());
+        if (count != 3 || values[0] != expected || values[1] != expected
+                || values[2] != expected) {
+            throw new IOException("Only a domain of 0 to 1 is supported: " + line);
+        }
+    }
+
+    private static void checkInputRange(final String line) throws IOException {
+        float[] values = new float[2];
+        int count = parseValues(line, values, "LUT_3D_INPUT_RANGE".length());
+        if (count != 2 || values[0] != 0.0f || values[1] != 1.0f) {
+            throw new IOException("Only a domain of 0 to 1 is supported: " + line);
+        }
+    }
+
+    /**
+     * Parses the whitespace separated numbers of a line from the given index on.
+     *
+     * @return the number of values found, at most values.length + 1
+     */
+    private static int parseValues(final String line, final float[] values, final int start)
+            throws IOException {
+        int count = 0;
+        int i = start;
+        int length = line.length();
+        while (true) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                return count;
+            }
+            int end = i;
+            while (end < length && !Character.isWhitespace(line.charAt(end))) {
+                end++;
+            }
+            if (count == values.length) {
+                return count + 1;
+            }
+            values[count++] = parseNumber(line, i, end);
+            i = end;
+        }
+    }
+
+    /**
+     * Parses plain decimals such as "0.123456" without creating a string, the bulk of a .cube
+     * file, and anything else with {@link Float#parseFloat(String)}.
+     */
+    private static float parseNumber(final String line, final int start, final int end)
+            throws IOException {
+        int i = start;
+        boolean negative = line.charAt(i) == '-';
+        if (negative || line.charAt(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digits > 0 && digits <= 18) {
+            double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+            return (float) (negative ? -value : value);
+        }
+        try {
+            return Float.parseFloat(line.substring(start, end));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number in: " + line);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LookupTable)) {
+            return false;
+        }
+        LookupTable other = (LookupTable) o;
+        return hash == other.hash && size == other.size && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of uploaded {@link LookupTable}s, keyed by their contents. Filters with
+ * equal tables in the same EGL context share one texture. The textures of released tables are
+ * kept up to a memory limit, least recently used first out, so switching back and forth
+ * between lookup filters neither converts nor uploads the tables again.
+ * <p>
+ * Like with {@link ProgramCache}, the textures of a context must be dropped with
+ * {@link #onContextLost(Object)} when it is created or destroyed, as a new context hands out
+ * the same ids again.
+ * <p>
+ * All other methods must be called on a thread with a current EGL context.
+ */
+public final class LookupTextureCache {
+    private static final int DEFAULT_MAX_UNUSED_BYTES = 16 * 1024 * 1024;
+
+    private static final Map<Object, ContextTextures> contexts = new HashMap<>();
+    private static int maxUnusedBytes = DEFAULT_MAX_UNUSED_BYTES;
+
+    private LookupTextureCache() {
+    }
+
+    /**
+     * Checks whether the context current on the calling thread supports 3D textures.
+     */
+    public static boolean is3DSupported() {
+        return GLBackend.current().isGLES3();
+    }
+
+    /**
+     * Gets a texture holding a table, uploading it only if the current context does not have
+     * one yet. Every call must be balanced by {@link #release(Texture)}. Uploading binds the
+     * texture to the active unit.
+     *
+     * @param texture3D true for a GL_TEXTURE_3D of the table's size, false for a 512x512
+     *                  GL_TEXTURE_2D lookup image
+     */
+    public static synchronized Texture acquire(final LookupTable table, final boolean texture3D) {
+        Object context = GLBackend.current().getCurrentContext();
+        ContextTextures contextTextures = contexts.get(context);
+        if (contextTextures == null) {
+            contextTextures = new ContextTextures();
+            contexts.put(context, contextTextures);
+        }
+        Key key = new Key(table, texture3D);
+        Texture texture = contextTextures.textures.get(key);
+        if (texture == null) {
+            texture = new Texture(upload(table, texture3D), key, contextTextures,
+                    texture3D ? table.getSize() : LookupTable.TILED_SIZE);
+            contextTextures.textures.put(key, texture);
+        } else if (texture.refCount == 0) {
+            contextTextures.unusedBytes -= texture.getByteCount();
+        }
+        texture.refCount++;
+        return texture;
+    }
+
+    /**
+     * Gives up one reference to a texture. Unused textures are deleted once they exceed the
+     * memory limit.
+     *
+     * @param texture a texture returned by {@link #acquire(LookupTable, boolean)}
+     */
+    public static synchronized void release(final Texture texture) {
+        if (texture.refCount == 0) {
+            return;
+        }
+        texture.refCount--;
+        if (texture.refCount > 0) {
+            return;
+        }
+        if (texture.stale) {
+            return;
+        }
+        texture.owner.unusedBytes += texture.getByteCount();
+        trim(texture.owner);
+    }
+
+    /**
+     * Forgets the textures of a context which was just created or is about to be destroyed.
+     * The textures go away with their context, filters still holding one can release it
+     * without touching GL.
+     *
+     * @param context the context as returned by {@link GLBackend#getCurrentContext()}
+     */
+    public static synchronized void onContextLost(final Object context) {
+        ContextTextures contextTextures = contexts.remove(context);
+        if (contextTextures == null) {
+            return;
+        }
+        for (Texture texture : contextTextures.textures.values()) {
+            texture.stale = true;
+        }
+    }
+
+    /**
+     * Sets how many bytes the unused textures of a context may take, 16 MB by default. A
+     * limit of 0 deletes every texture as soon as its last user releases it.
+     */
+    public static synchronized void setMaxUnusedBytes(final int bytes) {
+        maxUnusedBytes = bytes;
+        ContextTextures contextTextures = contexts.get(GLBackend.current().getCurrentContext());
+        if (contextTextures != null) {
+            trim(contextTextures);
+        }
+    }
+
+    private static void trim(final ContextTextures contextTextures) {
+        Iterator<Texture> iterator = contextTextures.textures.values().iterator();
+        while (contextTextures.unusedBytes > maxUnusedBytes && iterator.hasNext()) {
+            Texture texture = iterator.next();
+            if (texture.refCount == 0) {
+                iterator.remove();
+                contextTextures.unusedBytes -= texture.getByteCount();
+                GLState.current().deleteTextures(1, new int[]{texture.id}, 0);
+            }
+        }
+        if (contextTextures.textures.isEmpty()) {
+            contexts.values().remove(contextTextures);
+        }
+    }
+
+    private static int upload(final LookupTable table, final boolean texture3D) {
+        GLBackend gl = GLBackend.current();
+        int[] textures = new int[1];
+        gl.glGenTextures(1, textures, 0);
+        if (texture3D) {
+            int size = table.getSize();
+            gl.glBindTexture(GLES30.GL_TEXTURE_3D, textures[0]);
+            setParameters(GLES30.GL_TEXTURE_3D);
+            gl.glTexParameteri(GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_R,
+                    GLES20.GL_CLAMP_TO_EDGE);
+            gl.glTexImage3D(GLES30.GL_TEXTURE_3D, 0, GLES30.GL_RGBA8, size, size, size, 0,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, ByteBuffer.wrap(table.getData()));
+            gl.glBindTexture(GLES30.GL_TEXTURE_3D, 0);
+        } else {
+            GLState.current().bindTexture(textures[0]);
+            setParameters(GLES20.GL_TEXTURE_2D);
+            gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, LookupTable.TILED_IMAGE_SIZE,
+                    LookupTable.TILED_IMAGE_SIZE, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
+                    ByteBuffer.wrap(table.createTiledImage()));
+        }
+        return textures[0];
+    }
+
+    private static void setParameters(final int target) {
+        GLBackend gl = GLBackend.current();
+        gl.glTexParameteri(target, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(target, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(target, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(target, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    }
+
+    /**
+     * A shared lookup texture.
+     */
+    public static final class Texture {
+        private final int id;
+        private final Key key;
+        private final ContextTextures owner;
+        private final int size;
+        private int refCount;
+        private boolean stale;
+
+        private Texture(final int id, final Key key, final ContextTextures owner,
+                        final int size) {
+            this.id = id;
+            this.key = key;
+            this.owner = owner;
+            this.size = size;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Whether the texture is a GL_TEXTURE_3D rather than a 512x512 lookup image.
+         */
+        public boolean is3D() {
+            return key.texture3D;
+        }
+
+        /**
+         * Gets the number of steps per channel.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        public LookupTable getTable() {
+            return key.table;
+        }
+
+        private int getByteCount() {
+            return key.texture3D ? size * size * size * 4
+                    : LookupTable.TILED_IMAGE_SIZE * LookupTable.TILED_IMAGE_SIZE * 4;
+        }
+    }
+
+    private static final class ContextTextures {
+        // Least recently acquired first
+        final Map<Key, Texture> textures = new LinkedHashMap<>(16, 0.75f, true);
+        int unusedBytes;
+    }
+
+    private static final class Key {
+        private final LookupTable table;
+        private final boolean texture3D;
+
+        Key(final LookupTable table, final boolean texture3D) {
+            this.table = table;
+            this.texture3D = texture3D;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return texture3D == other.texture3D && table.equals(other.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * table.hashCode() + (texture3D ? 1 : 0);
+        }
+    }
+}
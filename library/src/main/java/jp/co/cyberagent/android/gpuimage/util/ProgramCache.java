@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide cache of linked shader programs, keyed by their vertex and fragment source.
+ * Programs are shared by every filter with the same shaders in the same EGL context and are
+ * deleted once the last user releases them.
+ * <p>
+ * GL hands out the same ids again in a new context, even under the same handle, so the
+ * programs of a context must be dropped with {@link #onContextLost(Object)} when it is
+ * created or destroyed. {@link jp.co.cyberagent.android.gpuimage.GPUImageRenderer} and
+ * {@link jp.co.cyberagent.android.gpuimage.PixelBuffer} do so for their contexts.
+ * <p>
+ * All other methods must be called on a thread with a current EGL context.
+ */
+public final class ProgramCache {
+
+    private static final Map<Object, Map<Key, Program>> programs = new HashMap<>();
+    private static final Set<Object> keepingContexts = new HashSet<>();
+
+    private ProgramCache() {
+    }
+
+    /**
+     * Gets a linked program for the given shaders, compiling it only if the current context
+     * does not have one yet. Every call must be balanced by {@link #release(Program)}.
+     *
+     * @param vertexShader   the vertex shader source
+     * @param fragmentShader the fragment shader source
+     * @return the program, with an id of 0 if compiling or linking failed
+     */
+    public static synchronized Program acquire(final String vertexShader, final String fragmentShader) {
+        Object context = currentContext();
+        Map<Key, Program> contextPrograms = programs.get(context);
+        if (contextPrograms == null) {
+            contextPrograms = new HashMap<>();
+            programs.put(context, contextPrograms);
+        }
+        Key key = new Key(vertexShader, fragmentShader);
+        Program program = contextPrograms.get(key);
+        if (program == null) {
+            int id = OpenGlUtils.loadProgram(vertexShader, fragmentShader);
+            program = new Program(id, key, id != 0 ? contextPrograms : null);
+            if (id != 0) {
+                contextPrograms.put(key, program);
+            }
+        }
+        program.refCount++;
+        return program;
+    }
+
+    /**
+     * Gives up one reference to a program and deletes it when it was the last one.
+     *
+     * @param program a program returned by {@link #acquire(String, String)}
+     */
+    public static synchronized void release(final Program program) {
+        if (program.refCount == 0) {
+            return;
+        }
+        program.refCount--;
+        if (program.refCount > 0 || program.owner == null) {
+            return;
+        }
+        if (!program.stale && keepingContexts.contains(currentContext())) {
+            return;
+        }
+        delete(program);
+    }
+
+    /**
+     * Keeps the programs of the current context linked after their last user released them, so
+     * that filters initialized later do not compile them again. Useful for contexts rendering
+     * one short-lived filter after another. Turning it off deletes the unused programs.
+     */
+    public static synchronized void setKeepUnused(final boolean keep) {
+        Object context = currentContext();
+        if (keep) {
+            keepingContexts.add(context);
+            return;
+        }
+        keepingContexts.remove(context);
+        Map<Key, Program> contextPrograms = programs.get(context);
+        if (contextPrograms == null) {
+            return;
+        }
+        Iterator<Program> iterator = contextPrograms.values().iterator();
+        while (iterator.hasNext()) {
+            Program program = iterator.next();
+            if (program.refCount == 0) {
+                iterator.remove();
+                GLBackend.current().glDeleteProgram(program.id);
+            }
+        }
+        if (contextPrograms.isEmpty()) {
+            programs.remove(context);
+        }
+    }
+
+    /**
+     * Forgets the programs of a context which was just created or is about to be destroyed,
+     * together with its {@link #setKeepUnused(boolean)} setting. The programs of a context
+     * go away with it, filters still holding one can release it without touching GL.
+     *
+     * @param context the context as returned by {@link GLBackend#getCurrentContext()}
+     */
+    public static synchronized void onContextLost(final Object context) {
+        keepingContexts.remove(context);
+        Map<Key, Program> contextPrograms = programs.remove(context);
+        if (contextPrograms == null) {
+            return;
+        }
+        for (Program program : contextPrograms.values()) {
+            program.stale = true;
+        }
+    }
+
+    private static Object currentContext() {
+        return GLBackend.current().getCurrentContext();
+    }
+
+    private static void delete(final Program program) {
+        if (program.stale) {
+            // Dropped together with its context
+            return;
+        }
+        GLBackend.current().glDeleteProgram(program.id);
+        program.owner.remove(program.key);
+        if (program.owner.isEmpty()) {
+            programs.values().remove(program.owner);
+        }
+    }
+
+    /**
+     * A shared program together with its resolved attribute and uniform locations.
+     */
+    public static final class Program {
+        private final int id;
+        private final Key key;
+        private final Map<Key, Program> owner;
+        private final Map<String, Integer> attribLocations = new HashMap<>();
+        private final Map<String, Integer> uniformLocations = new HashMap<>();
+        private int refCount;
+        private boolean stale;
+        private Object user;
+
+        private Program(final int id, final Key key, final Map<Key, Program> owner) {
+            this.id = id;
+            this.key = key;
+            this.owner = owner;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getAttribLocation(final String name) {
+            Integer location = attribLocations.get(name);
+            if (location == null) {
+                location = GLBackend.current().glGetAttribLocation(id, name);
+                attribLocations.put(name, location);
+            }
+            return location;
+        }
+
+        public int getUniformLocation(final String name) {
+            Integer location = uniformLocations.get(name);
+            if (location == null) {
+                location = GLBackend.current().glGetUniformLocation(id, name);
+                uniformLocations.put(name, location);
+            }
+            return location;
+        }
+
+        /**
+         * Records who is about to draw with this program. Uniform values live in the program,
+         * so a user has to restore its own values whenever another user drew in between.
+         *
+         * @param user the object drawing with the program
+         * @return true if the program was last used by someone else
+         */
+        public boolean use(final Object user) {
+            if (this.user == user) {
+                return false;
+            }
+            this.user = user;
+            return true;
+        }
+    }
+
+    private static final class Key {
+        private final String vertexShader;
+        private final String fragmentShader;
+        private final int hash;
+
+        Key(final String vertexShader, final String fragmentShader) {
+            this.vertexShader = vertexShader;
+            this.fragmentShader = fragmentShader;
+            hash = 31 * vertexShader.hashCode() + fragmentShader.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash
+                    && vertexShader.equals(other.vertexShader)
+                    && fragmentShader.equals(other.fragmentShader);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
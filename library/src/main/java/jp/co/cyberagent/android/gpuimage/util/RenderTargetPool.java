@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Offscreen framebuffers kept for reuse. Sizes are rounded up to a size class, so images of
+ * similar sizes share the same targets and are drawn into their lower left corner.
+ * <p>
+ * A pool belongs to the GL context it is used in and must only be used on its thread.
+ */
+public final class RenderTargetPool {
+    private static final int SIZE_CLASS = 256;
+
+    private final int maxFree;
+    private final List<RenderTarget> free = new ArrayList<>();
+    private int maxTextureSize;
+
+    /**
+     * @param maxFree the number of unused targets kept, the oldest one is deleted beyond that
+     */
+    public RenderTargetPool(final int maxFree) {
+        this.maxFree = maxFree;
+    }
+
+    /**
+     * Gets a target of at least the given size.
+     */
+    public RenderTarget acquire(final int width, final int height) {
+        int targetWidth = roundUp(width);
+        int targetHeight = roundUp(height);
+        for (int i = 0; i < free.size(); i++) {
+            RenderTarget target = free.get(i);
+            if (target.width == targetWidth && target.height == targetHeight) {
+                free.remove(i);
+                return target;
+            }
+        }
+        return RenderTarget.create(targetWidth, targetHeight);
+    }
+
+    /**
+     * Gives a target back for reuse.
+     */
+    public void release(final RenderTarget target) {
+        free.add(target);
+        if (free.size() > maxFree) {
+            free.remove(0).delete();
+        }
+    }
+
+    /**
+     * Deletes the unused targets.
+     */
+    public void clear() {
+        for (RenderTarget target : free) {
+            target.delete();
+        }
+        free.clear();
+    }
+
+    private int roundUp(final int size) {
+        if (maxTextureSize == 0) {
+            int[] value = new int[1];
+            GLBackend.current().glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, value, 0);
+            maxTextureSize = value[0];
+        }
+        int rounded = (size + SIZE_CLASS - 1) / SIZE_CLASS * SIZE_CLASS;
+        return Math.max(size, Math.min(rounded, maxTextureSize));
+    }
+
+    /**
+     * A framebuffer with a color texture attached.
+     */
+    public static final class RenderTarget {
+        private final int framebuffer;
+        private final int texture;
+        private final int width;
+        private final int height;
+
+        private RenderTarget(final int framebuffer, final int texture, final int width,
+                             final int height) {
+            this.framebuffer = framebuffer;
+            this.texture = texture;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Creates a target of exactly the given size, leaving it bound.
+         */
+        public static RenderTarget create(final int width, final int height) {
+            GLBackend gl = GLBackend.current();
+            GLState state = GLState.current();
+            int[] framebuffer = new int[1];
+            int[] texture = new int[1];
+            gl.glGenFramebuffers(1, framebuffer, 0);
+            gl.glGenTextures(1, texture, 0);
+            state.bindTexture(texture[0]);
+            gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+            gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            gl.glTexParameterf(GLES20.GL_TEXTURE_2D,
+                    GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            state.bindFramebuffer(framebuffer[0]);
+            gl.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                    GLES20.GL_TEXTURE_2D, texture[0], 0);
+            return new RenderTarget(framebuffer[0], texture[0], width, height);
+        }
+
+        public int getFramebuffer() {
+            return framebuffer;
+        }
+
+        public int getTexture() {
+            return texture;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public void delete() {
+            GLState state = GLState.current();
+            state.deleteFramebuffers(1, new int[]{framebuffer}, 0);
+            state.deleteTextures(1, new int[]{texture}, 0);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Lock-free queue of tasks for the GL thread. Any number of threads may post tasks, only the
+ * GL thread may run them. Producers never wait for the GL thread, and it does not hold a lock
+ * while the tasks run.
+ * <p>
+ * Tasks posted with a key replace the pending task with the same key, so only the latest
+ * texture upload or frame is run.
+ * <p>
+ * The queue has a capacity it is expected to stay within. Tasks posted beyond it are still
+ * accepted, since the GL thread may not run for a while, e.g. while the view is paused, and
+ * counted by {@link #getOverflowCount()}.
+ */
+public final class RenderTaskQueue {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+    private static final AtomicIntegerFieldUpdater<Node> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "state");
+
+    private final int capacity;
+    private final AtomicReference<Node> tail;
+    private final ConcurrentHashMap<Object, Node> pendingByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong executedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    // Only touched by the consumer
+    private Node head;
+
+    public RenderTaskQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RenderTaskQueue(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        head = new Node(null, null);
+        tail = new AtomicReference<>(head);
+    }
+
+    /**
+     * Posts a task to run on the next drain.
+     *
+     * @param task the task
+     */
+    public void post(final Runnable task) {
+        post(null, task);
+    }
+
+    /**
+     * Posts a task that replaces any pending task with an equal key. The replaced task is
+     * dropped and the new one runs in its own position at the end of the queue.
+     *
+     * @param key  the coalescing key or null to always run the task
+     * @param task the task
+     */
+    public void post(final Object key, final Runnable task) {
+        int newDepth = depth.incrementAndGet();
+        if (newDepth > capacity) {
+            overflowCount.incrementAndGet();
+        }
+        updateMax(maxDepth, newDepth);
+
+        Node node = new Node(key, task);
+        if (key != null) {
+            Node replaced = pendingByKey.put(key, node);
+            if (replaced != null && replaced.cancel()) {
+                depth.decrementAndGet();
+                coalescedCount.incrementAndGet();
+            }
+        }
+        Node previous = tail.getAndSet(node);
+        NEXT.lazySet(previous, node);
+    }
+
+    /**
+     * Runs the posted tasks, including the ones posted by the tasks themselves. Must only be
+     * called from the consuming thread.
+     */
+    public void runAll() {
+        Node next;
+        while ((next = head.next) != null) {
+            head = next;
+            Runnable task = next.task;
+            next.task = null;
+            if (next.key != null) {
+                pendingByKey.remove(next.key, next);
+            }
+            if (!next.claim()) {
+                // Replaced by a later task, already removed from the depth
+                continue;
+            }
+            depth.decrementAndGet();
+            long wait = System.nanoTime() - next.postedNanos;
+            totalWaitNanos.addAndGet(wait);
+            updateMax(maxWaitNanos, wait);
+            executedCount.incrementAndGet();
+            task.run();
+        }
+    }
+
+    public boolean isEmpty() {
+        return depth.get() == 0;
+    }
+
+    /**
+     * @return the number of tasks waiting to run
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * @return the highest depth seen since the last {@link #resetStats()}
+     */
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    /**
+     * @return the number of tasks dropped because a task with the same key replaced them
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return the number of tasks posted while the queue already held its capacity of tasks
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the summed time between posting and running of all executed tasks
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.get();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public void resetStats() {
+        maxDepth.set(depth.get());
+        executedCount.set(0);
+        coalescedCount.set(0);
+        overflowCount.set(0);
+        totalWaitNanos.set(0);
+        maxWaitNanos.set(0);
+    }
+
+    private static void updateMax(final AtomicInteger max, final int value) {
+        int current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static final class Node {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int CLAIMED = 2;
+
+        final Object key;
+        final long postedNanos;
+        volatile int state = PENDING;
+        Runnable task;
+        volatile Node next;
+
+        Node(final Object key, final Runnable task) {
+            this.key = key;
+            this.task = task;
+            postedNanos = System.nanoTime();
+        }
+
+        boolean cancel() {
+            return STATE.compareAndSet(this, PENDING, CANCELLED);
+        }
+
+        boolean claim() {
+            return STATE.compareAndSet(this, PENDING, CLAIMED);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import android.opengl.GLES20;
+
+/**
+ * GL ES 3.0 vertex array objects for the attribute layouts drawn by the filters, i.e. which
+ * attributes are enabled and the vertex buffer and size each one reads. A program drawing
+ * the cube and texture coordinate variant it drew before then costs one bind instead of a
+ * pointer and enable call per attribute. Programs with the same attribute locations share
+ * the objects.
+ * <p>
+ * Owned by {@link GLState}, which drops it when the thread's EGL context changes. Vertex array
+ * objects are not shared between contexts.
+ */
+final class VertexArrayCache {
+    /**
+     * The most attributes of a layout, layouts with more are not cached.
+     */
+    static final int MAX_ATTRIBS = 4;
+    private static final int CAPACITY = 64;
+    private static final int KEY_LENGTH = MAX_ATTRIBS * 2;
+
+    private final int[] masks = new int[CAPACITY];
+    private final int[] keys = new int[CAPACITY * KEY_LENGTH];
+    private final int[] arrays = new int[CAPACITY];
+    private final long[] lastUses = new long[CAPACITY];
+    private int count;
+    private long useCounter;
+
+    /**
+     * Gets the vertex array object of a layout, setting one up when none exists yet. When the
+     * cache is full the least recently used object is deleted.
+     *
+     * @param mask          the enabled attributes, bit i for attribute i
+     * @param vertexBuffers the vertex buffer of every enabled attribute, by index
+     * @param sizes         the component count of every enabled attribute, by index
+     * @param state         the state of the current thread, used to bind the objects
+     * @return the vertex array object, bound if it was just set up, or 0 if the layout has
+     * more than {@link #MAX_ATTRIBS} attributes
+     */
+    int get(final int mask, final int[] vertexBuffers, final int[] sizes, final GLState state) {
+        if (Integer.bitCount(mask) > MAX_ATTRIBS) {
+            return 0;
+        }
+        for (int entry = 0; entry < count; entry++) {
+            if (masks[entry] == mask && matches(entry, mask, vertexBuffers, sizes)) {
+                lastUses[entry] = ++useCounter;
+                return arrays[entry];
+            }
+        }
+
+        GLBackend gl = GLBackend.current();
+        int entry;
+        if (count < CAPACITY) {
+            entry = count++;
+        } else {
+            entry = 0;
+            for (int i = 1; i < CAPACITY; i++) {
+                if (lastUses[i] < lastUses[entry]) {
+                    entry = i;
+                }
+            }
+            state.deleteVertexArray(arrays[entry]);
+        }
+        gl.glGenVertexArrays(1, arrays, entry);
+        masks[entry] = mask;
+        lastUses[entry] = ++useCounter;
+        state.bindVertexArray(arrays[entry]);
+        int key = entry * KEY_LENGTH;
+        for (int index = 0, bits = mask; bits != 0; index++, bits >>>= 1) {
+            if ((bits & 1) != 0) {
+                keys[key++] = vertexBuffers[index];
+                keys[key++] = sizes[index];
+                state.bindArrayBuffer(vertexBuffers[index]);
+                gl.glVertexAttribPointer(index, sizes[index], GLES20.GL_FLOAT, false, 0, 0);
+                gl.glEnableVertexAttribArray(index);
+            }
+        }
+        state.bindArrayBuffer(0);
+        return arrays[entry];
+    }
+
+    private boolean matches(final int entry, final int mask, final int[] vertexBuffers,
+                            final int[] sizes) {
+        int key = entry * KEY_LENGTH;
+        for (int index = 0, bits = mask; bits != 0; index++, bits >>>= 1) {
+            if ((bits & 1) != 0) {
+                if (keys[key++] != vertexBuffers[index] || keys[key++] != sizes[index]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
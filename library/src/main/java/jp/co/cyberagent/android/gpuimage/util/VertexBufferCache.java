@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 CyberAgent, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.cyberagent.android.gpuimage.util;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Vertex buffer objects for the small coordinate sets of the quads drawn by the filters,
+ * keyed by their contents. Each rotation, flip or scale variant is uploaded once and drawn
+ * from GPU memory afterwards, however many buffers hold the same coordinates.
+ * <p>
+ * The buffers drawn again and again, like the renderer's cube and the filters' texture
+ * coordinates, are also remembered by identity. Finding their entry then takes comparing
+ * the contents with it, which is still needed as buffers may change in place, instead of
+ * hashing them and searching the cache. A buffer is referenced until another one takes its
+ * slot.
+ * <p>
+ * Owned by {@link GLState}, which drops it when the thread's EGL context changes.
+ */
+final class VertexBufferCache {
+    static final int MAX_FLOATS = 16;
+    private static final int CAPACITY = 64;
+    private static final int IDENTITY_SLOTS = 64;
+
+    private final float[] contents = new float[CAPACITY * MAX_FLOATS];
+    private final int[] lengths = new int[CAPACITY];
+    private final int[] hashes = new int[CAPACITY];
+    private final int[] buffers = new int[CAPACITY];
+    private final long[] lastUses = new long[CAPACITY];
+    private final FloatBuffer[] identityKeys = new FloatBuffer[IDENTITY_SLOTS];
+    private final int[] identityEntries = new int[IDENTITY_SLOTS];
+    private int count;
+    private long useCounter;
+
+    /**
+     * Gets a vertex buffer holding the floats between 0 and the limit of the given buffer,
+     * uploading them when no buffer with these contents exists yet. When the cache is full the
+     * least recently used buffer object is filled with the new contents.
+     *
+     * @param state the state of the current thread, used to bind the buffer for the upload
+     * @return the buffer object id
+     */
+    int get(final FloatBuffer coordinates, final GLState state) {
+        int length = coordinates.limit();
+        int slot = System.identityHashCode(coordinates) & (IDENTITY_SLOTS - 1);
+        if (identityKeys[slot] == coordinates) {
+            int entry = identityEntries[slot];
+            if (lengths[entry] == length && matches(entry, coordinates, length)) {
+                lastUses[entry] = ++useCounter;
+                return buffers[entry];
+            }
+        }
+        int entry = find(coordinates, length, state);
+        identityKeys[slot] = coordinates;
+        identityEntries[slot] = entry;
+        return buffers[entry];
+    }
+
+    /**
+     * Finds the entry holding the coordinates, uploading them to a new or reused one.
+     */
+    private int find(final FloatBuffer coordinates, final int length, final GLState state) {
+        GLBackend gl = GLBackend.current();
+        int hash = length;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + Float.floatToIntBits(coordinates.get(i));
+        }
+        for (int entry = 0; entry < count; entry++) {
+            if (hashes[entry] == hash && lengths[entry] == length
+                    && matches(entry, coordinates, length)) {
+                lastUses[entry] = ++useCounter;
+                return entry;
+            }
+        }
+
+        int entry;
+        if (count < CAPACITY) {
+            entry = count++;
+            gl.glGenBuffers(1, buffers, entry);
+        } else {
+            entry = 0;
+            for (int i = 1; i < CAPACITY; i++) {
+                if (lastUses[i] < lastUses[entry]) {
+                    entry = i;
+                }
+            }
+            // Reuse the least recently used buffer object for the new contents
+            state.onVertexBufferChanged(buffers[entry]);
+        }
+        for (int i = 0; i < length; i++) {
+            contents[entry * MAX_FLOATS + i] = coordinates.get(i);
+        }
+        lengths[entry] = length;
+        hashes[entry] = hash;
+        lastUses[entry] = ++useCounter;
+
+        coordinates.position(0);
+        state.bindArrayBuffer(buffers[entry]);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, length * 4, coordinates,
+                GLES20.GL_STATIC_DRAW);
+        return entry;
+    }
+
+    /**
+     * Checks whether the buffers still exist, i.e. the context was not recreated.
+     */
+    boolean isValid() {
+        return count == 0 || GLBackend.current().glIsBuffer(buffers[0]);
+    }
+
+    private boolean matches(final int entry, final FloatBuffer coordinates, final int length) {
+        int offset = entry * MAX_FLOATS;
+        for (int i = 0; i < length; i++) {
+            if (Float.floatToIntBits(contents[offset + i])
+                    != Float.floatToIntBits(coordinates.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -77,6 +77,9 @@ class CameraActivity : AppCompatActivity() {
         cameraLoader.setOnPreviewFrameListener { data, width, height ->
             gpuImageView.updatePreviewFrame(data, width, height)
         }
+        cameraLoader.setOnPreviewImageListener { image ->
+            gpuImageView.updatePreviewFrame(image)
+        }
         gpuImageView.setRotation(getRotation(cameraLoader.getCameraOrientation()))
         gpuImageView.setRenderMode(GPUImageView.RENDERMODE_CONTINUOUSLY)
     }
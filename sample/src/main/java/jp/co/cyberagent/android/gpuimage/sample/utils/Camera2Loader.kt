@@ -99,7 +99,12 @@ class Camera2Loader(private val activity: Activity) : CameraLoader() {
                 ImageReader.newInstance(size.width, size.height, ImageFormat.YUV_420_888, 2).apply {
                     setOnImageAvailableListener({ reader ->
                         val image = reader?.acquireNextImage() ?: return@setOnImageAvailableListener
-                        onPreviewFrame?.invoke(image.generateNV21Data(), image.width, image.height)
+                        val onPreviewImage = onPreviewImage
+                        if (onPreviewImage != null) {
+                            onPreviewImage(image)
+                        } else {
+                            onPreviewFrame?.invoke(image.generateNV21Data(), image.width, image.height)
+                        }
                         image.close()
                     }, null)
                 }
@@ -1,9 +1,11 @@
 package jp.co.cyberagent.android.gpuimage.sample.utils
 
+import android.media.Image
 
 abstract class CameraLoader {
 
     protected var onPreviewFrame: ((data: ByteArray, width: Int, height: Int) -> Unit)? = null
+    protected var onPreviewImage: ((image: Image) -> Unit)? = null
 
     abstract fun onResume(width: Int, height: Int)
 
@@ -18,4 +20,12 @@ abstract class CameraLoader {
     fun setOnPreviewFrameListener(onPreviewFrame: (data: ByteArray, width: Int, height: Int) -> Unit) {
         this.onPreviewFrame = onPreviewFrame
     }
+
+    /**
+     * Receives YUV_420_888 images instead of NV21 data where the camera produces them. The
+     * image is closed once the listener returns.
+     */
+    fun setOnPreviewImageListener(onPreviewImage: (image: Image) -> Unit) {
+        this.onPreviewImage = onPreviewImage
+    }
 }
\ No newline at end of file